@@ -0,0 +1,420 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import static org.ode4j.ode.OdeConstants.dContactApprox1;
+import static org.ode4j.ode.OdeConstants.dContactBounce;
+import static org.ode4j.ode.OdeConstants.dContactSlip1;
+import static org.ode4j.ode.OdeConstants.dContactSlip2;
+import static org.ode4j.ode.OdeConstants.dContactSoftCFM;
+import static org.ode4j.ode.OdeConstants.dContactSoftERP;
+import static org.ode4j.ode.OdeConstants.dInfinity;
+
+import org.ode4j.math.DMatrix3;
+import org.ode4j.math.DVector3;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DContactJoint;
+import org.ode4j.ode.DFixedJoint;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DHinge2Joint;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DRotation;
+import org.ode4j.ode.DSapSpace;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Reproducible, render-free versions of the demo scenes used by the
+ * benchmarks.
+ * <p>
+ * All scenes seed the ODE random generator, so two runs with the same
+ * parameters produce exactly the same world.
+ */
+public final class BenchmarkScenes {
+
+	/** Seed used for all random placements. */
+	public static final long SEED = 42;
+
+	private BenchmarkScenes() {
+		// static factory
+	}
+
+	/**
+	 * Space types that can be selected with a JMH <code>@Param</code>.
+	 */
+	public enum SpaceType {
+		SIMPLE, HASH, SAP, SAP_INCREMENTAL, QUAD, BVH;
+
+		/**
+		 * @param worldSize Half extent of the area that contains the geoms,
+		 * only used by the quad tree space.
+		 * @return a new top level space of this type.
+		 */
+		public DSpace create(double worldSize) {
+			switch (this) {
+			case SIMPLE: return OdeHelper.createSimpleSpace();
+			case HASH: return OdeHelper.createHashSpace();
+			case SAP: return OdeHelper.createSapSpace(DSapSpace.AXES.XYZ);
+			case SAP_INCREMENTAL:
+				DSapSpace sap = OdeHelper.createSapSpace(DSapSpace.AXES.XYZ);
+				sap.setIncremental(true);
+				return sap;
+			case QUAD:
+				return OdeHelper.createQuadTreeSpace(new DVector3(0, 0, 0),
+						new DVector3(worldSize, worldSize, worldSize), 6);
+			case BVH: return OdeHelper.createBvhSpace();
+			default: throw new IllegalArgumentException(name());
+			}
+		}
+	}
+
+	/**
+	 * A world with its space, contact group and near callback.
+	 */
+	public static class Scene {
+		public final DWorld world;
+		public final DSpace space;
+		public final DJointGroup contactgroup;
+		private final DContactBuffer contacts;
+		private final int maxContacts;
+		private final boolean crashSurface;
+		/** Number of contact joints created by the last collide(). */
+		public int contactCount;
+
+		private final DNearCallback nearCallback = new DNearCallback() {
+			@Override
+			public void call(Object data, DGeom o1, DGeom o2) {
+				nearCallback(o1, o2);
+			}
+		};
+
+		private Scene(DWorld world, DSpace space, int maxContacts, boolean crashSurface) {
+			this.world = world;
+			this.space = space;
+			this.contactgroup = OdeHelper.createJointGroup();
+			this.contacts = new DContactBuffer(maxContacts);
+			this.maxContacts = maxContacts;
+			this.crashSurface = crashSurface;
+		}
+
+		private void nearCallback(DGeom o1, DGeom o2) {
+			DBody b1 = o1.getBody();
+			DBody b2 = o2.getBody();
+			if (b1 != null && b2 != null && OdeHelper.areConnectedExcluding(b1, b2, DContactJoint.class)) {
+				return;
+			}
+			int numc = OdeHelper.collide(o1, o2, maxContacts, contacts.getGeomBuffer());
+			for (int i = 0; i < numc; i++) {
+				DContact contact = contacts.get(i);
+				if (crashSurface) {
+					contact.surface.mode = dContactSlip1 | dContactSlip2 | dContactSoftERP
+							| dContactSoftCFM | dContactApprox1;
+					contact.surface.mu = (o1 instanceof DSphere || o2 instanceof DSphere) ? 20 : 0.5;
+					contact.surface.slip1 = 0.0;
+					contact.surface.slip2 = 0.0;
+					contact.surface.soft_erp = 0.8;
+					contact.surface.soft_cfm = 0.01;
+				} else {
+					contact.surface.mode = dContactBounce | dContactSoftCFM;
+					contact.surface.mu = dInfinity;
+					contact.surface.mu2 = 0;
+					contact.surface.bounce = 0.1;
+					contact.surface.bounce_vel = 0.1;
+					contact.surface.soft_cfm = 0.01;
+				}
+				DJoint c = OdeHelper.createContactJoint(world, contactgroup, contact);
+				c.attach(b1, b2);
+			}
+			contactCount += numc;
+		}
+
+		/**
+		 * Run broadphase and narrowphase, creating contact joints.
+		 */
+		public void collide() {
+			contactCount = 0;
+			space.collide(null, nearCallback);
+		}
+
+		/**
+		 * One full simulation step: collide, step, remove contacts.
+		 * @param stepsize step size
+		 * @param quick whether to use quickStep() or step()
+		 */
+		public void simulate(double stepsize, boolean quick) {
+			collide();
+			if (quick) {
+				world.quickStep(stepsize);
+			} else {
+				world.step(stepsize);
+			}
+			contactgroup.empty();
+		}
+
+		public void destroy() {
+			contactgroup.destroy();
+			space.destroy();
+			world.destroy();
+		}
+	}
+
+	/**
+	 * Random spheres dropped on a plane, as in <code>DemoSpaceStress</code>.
+	 * @param spaceType the broadphase to use
+	 * @param num number of spheres
+	 * @return the scene
+	 */
+	public static Scene spaceStress(SpaceType spaceType, int num) {
+		final double density = 5.0;
+		final double worldSize = 20;
+		DMisc.dRandSetSeed(SEED);
+		DWorld world = OdeHelper.createWorld();
+		DSpace space = spaceType.create(worldSize * 0.55);
+		world.setGravity(0, 0, -0.5);
+		world.setCFM(1e-5);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+
+		// spread spheres over the area so that the broadphase has something to do
+		double spread = worldSize * 0.5;
+		DMass m = OdeHelper.createMass();
+		DMatrix3 R = new DMatrix3();
+		for (int i = 0; i < num; i++) {
+			DBody body = OdeHelper.createBody(world);
+			double radius = (DMisc.dRandReal() * 0.5 + 0.1) * 0.5;
+			body.setPosition((DMisc.dRandReal() * 2 - 1) * spread,
+					(DMisc.dRandReal() * 2 - 1) * spread, DMisc.dRandReal() * 2 + radius);
+			DRotation.dRFromAxisAndAngle(R, DMisc.dRandReal() * 2.0 - 1.0, DMisc.dRandReal() * 2.0 - 1.0,
+					DMisc.dRandReal() * 2.0 - 1.0, DMisc.dRandReal() * 10.0 - 5.0);
+			body.setRotation(R);
+			m.setSphere(density, radius);
+			body.setMass(m);
+			DGeom g = OdeHelper.createSphere(space, radius);
+			g.setBody(body);
+		}
+		return new Scene(world, space, 4, false);
+	}
+
+	/**
+	 * Columns of stacked boxes on a plane, as in <code>DemoBoxstack</code>.
+	 * @param columns number of columns along x and y
+	 * @param height number of boxes per column
+	 * @return the scene
+	 */
+	public static Scene boxStack(int columns, int height) {
+		final double density = 5.0;
+		final double size = 0.5;
+		DMisc.dRandSetSeed(SEED);
+		DWorld world = OdeHelper.createWorld();
+		DSpace space = OdeHelper.createHashSpace();
+		world.setGravity(0, 0, -0.5);
+		world.setCFM(1e-5);
+		world.setContactMaxCorrectingVel(0.1);
+		world.setContactSurfaceLayer(0.001);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+
+		DMass m = OdeHelper.createMass();
+		m.setBox(density, size, size, size);
+		for (int x = 0; x < columns; x++) {
+			for (int y = 0; y < columns; y++) {
+				for (int z = 0; z < height; z++) {
+					DBody body = OdeHelper.createBody(world);
+					// small random offsets so that the stacks are not perfectly aligned
+					body.setPosition(x * size * 3 + (DMisc.dRandReal() - 0.5) * 0.05,
+							y * size * 3 + (DMisc.dRandReal() - 0.5) * 0.05,
+							size * 0.5 + z * size);
+					body.setMass(m);
+					DGeom g = OdeHelper.createBox(space, size, size, size);
+					g.setBody(body);
+				}
+			}
+		}
+		return new Scene(world, space, 8, false);
+	}
+
+	/**
+	 * Boxes packed side by side into a block on a plane. All boxes touch their 
+	 * neighbours, so the whole block is one large contact island.
+	 * @param side number of boxes along x and y
+	 * @param height number of boxes along z
+	 * @return the scene
+	 */
+	public static Scene boxBlock(int side, int height) {
+		final double size = 0.5;
+		// slight overlap, so that neighbours are in contact from the start
+		final double spacing = size * 0.999;
+		DWorld world = OdeHelper.createWorld();
+		DSpace space = OdeHelper.createHashSpace();
+		world.setGravity(0, 0, -0.5);
+		world.setCFM(1e-5);
+		world.setContactMaxCorrectingVel(0.1);
+		world.setContactSurfaceLayer(0.001);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+
+		DMass m = OdeHelper.createMass();
+		m.setBox(5.0, size, size, size);
+		for (int x = 0; x < side; x++) {
+			for (int y = 0; y < side; y++) {
+				for (int z = 0; z < height; z++) {
+					DBody body = OdeHelper.createBody(world);
+					body.setPosition(x * spacing, y * spacing, size * 0.5 + z * spacing);
+					body.setMass(m);
+					DGeom g = OdeHelper.createBox(space, size, size, size);
+					g.setBody(body);
+				}
+			}
+		}
+		return new Scene(world, space, 4, false);
+	}
+
+	/**
+	 * A horizontal chain of boxes connected by ball joints, with the first 
+	 * link attached to the static environment. The chain swings down under 
+	 * gravity. There are no geoms, so the island consists only of the 
+	 * <code>3 * links</code> unbounded rows of the joints.
+	 * @param links number of boxes
+	 * @return the scene
+	 */
+	public static Scene chain(int links) {
+		final double size = 0.2;
+		DWorld world = OdeHelper.createWorld();
+		DSpace space = OdeHelper.createHashSpace();
+		world.setGravity(0, 0, -9.81);
+		world.setCFM(1e-6);
+
+		DMass m = OdeHelper.createMass();
+		m.setBox(1.0, size, size * 0.5, size * 0.5);
+		DBody prev = null;
+		for (int i = 0; i < links; i++) {
+			DBody body = OdeHelper.createBody(world);
+			body.setPosition((i + 0.5) * size, 0, 10);
+			body.setMass(m);
+			DBallJoint joint = OdeHelper.createBallJoint(world);
+			joint.attach(body, prev);
+			joint.setAnchor(i * size, 0, 10);
+			prev = body;
+		}
+		return new Scene(world, space, 1, false);
+	}
+
+	/**
+	 * A wall of boxes and a centipede of hinge2-jointed bodies,
+	 * as in <code>DemoCrash</code>.
+	 * @return the scene
+	 */
+	public static Scene crash() {
+		final double length = 3.5;
+		final double width = 2.5;
+		final double height = 1.0;
+		final double radius = 0.5;
+		final double startz = 1.0;
+		final double fmax = 25;
+		final double wboxsize = 1.0;
+		final double wallwidth = 12;
+		final double wallheight = 10;
+
+		DMisc.dRandSetSeed(SEED);
+		DWorld world = OdeHelper.createWorld();
+		DSpace space = OdeHelper.createSapSpace(DSapSpace.AXES.XYZ);
+		world.setGravity(0, 0, -1.5);
+		world.setCFM(1e-5);
+		world.setERP(0.8);
+		world.setQuickStepNumIterations(20);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+		DMass m = OdeHelper.createMass();
+
+		// wall
+		for (double z = wboxsize / 2.0; z <= wallheight; z += wboxsize) {
+			for (double y = (-wallwidth + z) / 2; y <= (wallwidth - z) / 2; y += wboxsize) {
+				DBody b = OdeHelper.createBody(world);
+				b.setPosition(-20, y, z);
+				m.setBox(1, wboxsize, wboxsize, wboxsize);
+				m.adjust(1);
+				b.setMass(m);
+				DGeom g = OdeHelper.createBox(space, wboxsize, wboxsize, wboxsize);
+				g.setBody(b);
+			}
+		}
+
+		// centipede
+		DBody lastb = null;
+		for (double y = 0; y < 10 * length; y += length + 0.1) {
+			DBody chassis = OdeHelper.createBody(world);
+			chassis.setPosition(-15, y, startz);
+			m.setBox(1, width, length, height);
+			m.adjust(1);
+			chassis.setMass(m);
+			OdeHelper.createBox(space, width, length, height).setBody(chassis);
+
+			DBody prevLeft = chassis;
+			DBody prevRight = chassis;
+			for (double x = -17; x > -20; x -= radius * 2) {
+				prevLeft = createWheel(world, space, m, x, y, startz, radius, chassis, prevLeft,
+						x == -17, -10.0, fmax);
+				prevRight = createWheel(world, space, m, -30 - x, y, startz, radius, chassis, prevRight,
+						x == -17, 10.0, fmax);
+			}
+			if (lastb != null) {
+				DFixedJoint j = OdeHelper.createFixedJoint(world, null);
+				j.attach(chassis, lastb);
+				j.setFixed();
+			}
+			lastb = chassis;
+		}
+		return new Scene(world, space, 4, true);
+	}
+
+	private static DBody createWheel(DWorld world, DSpace space, DMass m,
+			double x, double y, double z, double radius,
+			DBody chassis, DBody previous, boolean first, double vel, double fmax) {
+		DBody wheel = OdeHelper.createBody(world);
+		wheel.setPosition(x, y, z);
+		m.setSphere(1, radius);
+		m.adjust(1);
+		wheel.setMass(m);
+		OdeHelper.createSphere(space, radius).setBody(wheel);
+
+		DHinge2Joint j = OdeHelper.createHinge2Joint(world, null);
+		j.attach(first ? chassis : previous, wheel);
+		DVector3C a = wheel.getPosition();
+		j.setAnchor(a);
+		j.setAxis1(0, 0, 1);
+		j.setAxis2(1, 0, 0);
+		j.setParamSuspensionERP(1.0);
+		j.setParamSuspensionCFM(1e-5);
+		j.setParamLoStop(0);
+		j.setParamHiStop(0);
+		j.setParamVel2(vel);
+		j.setParamFMax2(fmax);
+		return wheel;
+	}
+}
@@ -0,0 +1,217 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DConvex;
+import org.ode4j.ode.DCylinder;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DRotation;
+import org.ode4j.ode.DTriMesh;
+import org.ode4j.ode.DTriMeshData;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for individual narrow phase colliders, called through
+ * <code>OdeHelper.collide()</code> on a fixed, overlapping pair of geoms:
+ * <ul>
+ * <li> box-box: <code>CollideBoxBox</code> </li>
+ * <li> trimesh-box: <code>CollideTrimeshBox</code> </li>
+ * <li> cylinder-trimesh: <code>CollideCylinderTrimesh</code> </li>
+ * <li> convex-box and cylinder-cylinder: <code>CollisionLibccd</code> </li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ColliderBenchmark {
+
+	private static final int MAX_CONTACTS = 16;
+
+	/** Number of grid cells per side of the trimesh, i.e. 2*n*n triangles. */
+	@Param({"16", "128"})
+	public int trimeshGrid;
+
+	private final DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+
+	private DBox box1, box2;
+	private DTriMesh trimesh;
+	private DBox trimeshBox;
+	private DCylinder trimeshCylinder;
+	private DConvex convex;
+	private DBox convexBox;
+	private DCylinder cyl1, cyl2;
+
+	@Setup
+	public void createGeoms() {
+		OdeHelper.initODE2(0);
+		DMatrix3 R = new DMatrix3();
+
+		box1 = OdeHelper.createBox(1, 1, 1);
+		box2 = OdeHelper.createBox(1, 1, 1);
+		box2.setPosition(0.3, 0.2, 0.9);
+		DRotation.dRFromAxisAndAngle(R, 1, 1, 0, 0.4);
+		box2.setRotation(R);
+
+		trimesh = OdeHelper.createTriMesh(null, createGrid(trimeshGrid), null, null, null);
+		trimeshBox = OdeHelper.createBox(1, 1, 1);
+		trimeshBox.setPosition(trimeshGrid * 0.5, trimeshGrid * 0.5, 0.4);
+		trimeshBox.setRotation(R);
+		trimeshCylinder = OdeHelper.createCylinder(0.5, 1);
+		trimeshCylinder.setPosition(trimeshGrid * 0.5, trimeshGrid * 0.5, 0.4);
+		trimeshCylinder.setRotation(R);
+
+		convex = OdeHelper.createConvex(CUBE_PLANES, 6, CUBE_POINTS, 8, CUBE_POLYGONS);
+		convexBox = OdeHelper.createBox(0.5, 0.5, 0.5);
+		convexBox.setPosition(0.1, 0.1, 0.4);
+		convexBox.setRotation(R);
+
+		cyl1 = OdeHelper.createCylinder(0.5, 1);
+		cyl2 = OdeHelper.createCylinder(0.5, 1);
+		cyl2.setPosition(0.4, 0.2, 0.3);
+		cyl2.setRotation(R);
+
+		// Spaces update the AABBs before calling the colliders, some colliders rely on that.
+		for (DGeom g: allGeoms()) {
+			g.getAABB();
+		}
+	}
+
+	private DGeom[] allGeoms() {
+		return new DGeom[] {box1, box2, trimesh, trimeshBox, trimeshCylinder, convex, convexBox, cyl1, cyl2};
+	}
+
+	@TearDown
+	public void destroyGeoms() {
+		for (DGeom g: allGeoms()) {
+			g.destroy();
+		}
+		OdeHelper.closeODE();
+	}
+
+	@Benchmark
+	public int boxBox() {
+		return OdeHelper.collide(box1, box2, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int trimeshBox() {
+		return OdeHelper.collide(trimesh, trimeshBox, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int cylinderTrimesh() {
+		return OdeHelper.collide(trimeshCylinder, trimesh, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int libccdConvexBox() {
+		return OdeHelper.collide(convex, convexBox, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int libccdCylinderCylinder() {
+		return OdeHelper.collide(cyl1, cyl2, MAX_CONTACTS, contacts);
+	}
+
+	/**
+	 * A regular, slightly wavy grid of unit cells at z~0.
+	 */
+	private static DTriMeshData createGrid(int n) {
+		int nV = n + 1;
+		float[] vertices = new float[nV * nV * 3];
+		for (int y = 0; y < nV; y++) {
+			for (int x = 0; x < nV; x++) {
+				int pos = (x + y * nV) * 3;
+				vertices[pos] = x;
+				vertices[pos + 1] = y;
+				vertices[pos + 2] = ((x + y) % 3) * 0.05f;
+			}
+		}
+		int[] indices = new int[n * n * 6];
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				int i0 = x + y * nV;
+				int pos = (x + y * n) * 6;
+				indices[pos] = i0;
+				indices[pos + 1] = i0 + 1;
+				indices[pos + 2] = i0 + 1 + nV;
+				indices[pos + 3] = i0;
+				indices[pos + 4] = i0 + 1 + nV;
+				indices[pos + 5] = i0 + nV;
+			}
+		}
+		DTriMeshData data = OdeHelper.createTriMeshData();
+		data.build(vertices, indices);
+		return data;
+	}
+
+	// Convex cube, taken from DemoBoxstack
+	private static final double[] CUBE_PLANES = {
+		1.0, 0.0, 0.0, 0.25,
+		0.0, 1.0, 0.0, 0.25,
+		0.0, 0.0, 1.0, 0.25,
+		-1.0, 0.0, 0.0, 0.25,
+		0.0, -1.0, 0.0, 0.25,
+		0.0, 0.0, -1.0, 0.25
+	};
+
+	private static final double[] CUBE_POINTS = {
+		0.25, 0.25, 0.25,
+		-0.25, 0.25, 0.25,
+		0.25, -0.25, 0.25,
+		-0.25, -0.25, 0.25,
+		0.25, 0.25, -0.25,
+		-0.25, 0.25, -0.25,
+		0.25, -0.25, -0.25,
+		-0.25, -0.25, -0.25,
+	};
+
+	private static final int[] CUBE_POLYGONS = {
+		4, 0, 2, 6, 4,
+		4, 1, 0, 4, 5,
+		4, 0, 1, 3, 2,
+		4, 3, 1, 5, 7,
+		4, 2, 3, 7, 6,
+		4, 5, 4, 6, 7,
+	};
+}
@@ -0,0 +1,181 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DConvex;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DRotation;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Support queries of convexes with many points: AABB updates and libccd
+ * collisions of a slowly rotating polyhedral sphere with
+ * <code>2 + slices * (slices/2 - 1)</code> points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConvexSupportBenchmark {
+
+	private static final int MAX_CONTACTS = 4;
+
+	@Param({"8", "32", "128"})
+	public int slices;
+
+	private final DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+	private final DMatrix3 R = new DMatrix3();
+
+	private DConvex convex;
+	private DSphere sphere;
+	private DBox box;
+	private int frame;
+
+	@Setup
+	public void createGeoms() {
+		OdeHelper.initODE2(0);
+		convex = createGlobe(1, slices, slices / 2);
+		sphere = OdeHelper.createSphere(0.5);
+		sphere.setPosition(0.3, 0.2, 1.45);
+		box = OdeHelper.createBox(0.5, 0.5, 0.5);
+		box.setPosition(0.2, -0.3, 1.2);
+		sphere.getAABB();
+		box.getAABB();
+	}
+
+	@TearDown
+	public void destroyGeoms() {
+		for (DGeom g: new DGeom[] {convex, sphere, box}) {
+			g.destroy();
+		}
+		OdeHelper.closeODE();
+	}
+
+	/** Turns the convex a bit further, as between two steps. */
+	private void rotate() {
+		DRotation.dRFromAxisAndAngle(R, 0.3, 1, 0.2, (frame++ % 1000) * 0.01);
+		convex.setRotation(R);
+	}
+
+	@Benchmark
+	public DAABBC aabb() {
+		rotate();
+		return convex.getAABB();
+	}
+
+	@Benchmark
+	public int libccdConvexSphere() {
+		rotate();
+		convex.getAABB();
+		return OdeHelper.collide(convex, sphere, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int libccdConvexBox() {
+		rotate();
+		convex.getAABB();
+		return OdeHelper.collide(convex, box, MAX_CONTACTS, contacts);
+	}
+
+	/**
+	 * A polyhedral sphere from <code>slices</code> meridians and 
+	 * <code>stacks</code> parallels, quads in between and triangles at 
+	 * the poles.
+	 */
+	private static DConvex createGlobe(double r, int slices, int stacks) {
+		int pointCount = 2 + slices * (stacks - 1);
+		int planeCount = slices * stacks;
+		double[] points = new double[pointCount * 3];
+		points[2] = r;
+		points[pointCount * 3 - 1] = -r;
+		for (int i = 1; i < stacks; i++) {
+			double theta = Math.PI * i / stacks;
+			for (int j = 0; j < slices; j++) {
+				double phi = 2 * Math.PI * j / slices;
+				int p = 3 * (1 + (i - 1) * slices + j);
+				points[p] = r * Math.sin(theta) * Math.cos(phi);
+				points[p + 1] = r * Math.sin(theta) * Math.sin(phi);
+				points[p + 2] = r * Math.cos(theta);
+			}
+		}
+		double[] planes = new double[planeCount * 4];
+		int[] polygons = new int[2 * slices * 4 + (stacks - 2) * slices * 5];
+		int pos = 0;
+		int plane = 0;
+		for (int i = 0; i < stacks; i++) {
+			for (int j = 0; j < slices; j++) {
+				int j1 = (j + 1) % slices;
+				int a = 1 + (i - 1) * slices;
+				int b = 1 + i * slices;
+				int[] face;
+				if (i == 0) {
+					face = new int[] {0, b + j, b + j1};
+				} else if (i == stacks - 1) {
+					face = new int[] {pointCount - 1, a + j1, a + j};
+				} else {
+					face = new int[] {a + j, b + j, b + j1, a + j1};
+				}
+				polygons[pos++] = face.length;
+				for (int f: face) {
+					polygons[pos++] = f;
+				}
+				// the outward normal is the normalized centroid direction
+				double nx = 0, ny = 0, nz = 0;
+				for (int f: face) {
+					nx += points[f * 3];
+					ny += points[f * 3 + 1];
+					nz += points[f * 3 + 2];
+				}
+				double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+				planes[plane * 4] = nx / len;
+				planes[plane * 4 + 1] = ny / len;
+				planes[plane * 4 + 2] = nz / len;
+				planes[plane * 4 + 3] = (nx * points[face[0] * 3] + ny * points[face[0] * 3 + 1] 
+						+ nz * points[face[0] * 3 + 2]) / len;
+				plane++;
+			}
+		}
+		return OdeHelper.createConvex(planes, planeCount, points, pointCount, polygons);
+	}
+}
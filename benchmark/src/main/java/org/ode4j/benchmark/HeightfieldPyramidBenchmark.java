@@ -0,0 +1,150 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DHeightfield;
+import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
+import org.ode4j.ode.DHeightfieldData;
+import org.ode4j.ode.DRay;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Geoms and long rays against a large heightfield. ARRAY data has a min/max
+ * pyramid, CALLBACK data with the same heights has none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HeightfieldPyramidBenchmark {
+
+	private static final int SAMPLES = 2049;
+	private static final int MAX_CONTACTS = 16;
+	private static final int POSITIONS = 64;
+
+	public enum Source { ARRAY, CALLBACK }
+
+	@Param({"ARRAY", "CALLBACK"})
+	public Source source;
+
+	private final DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+
+	private DHeightfieldData data;
+	private DHeightfield terrain;
+	private DSphere sphere;
+	private DBox box;
+	private DRay ray;
+	private int frame;
+
+	@Setup
+	public void createGeoms() {
+		OdeHelper.initODE2(0);
+		final double[] heights = new double[SAMPLES * SAMPLES];
+		for (int z = 0; z < SAMPLES; z++) {
+			for (int x = 0; x < SAMPLES; x++) {
+				heights[x + z * SAMPLES] = Math.max(0, 4 * Math.sin(x * 0.05) * Math.cos(z * 0.03)) 
+						+ 0.2 * Math.sin(x * 0.9) * Math.sin(z * 0.7);
+			}
+		}
+		data = OdeHelper.createHeightfieldData();
+		if (source == Source.ARRAY) {
+			data.build(heights, false, SAMPLES - 1, SAMPLES - 1, SAMPLES, SAMPLES, 1, 0, 1, false);
+		} else {
+			data.buildCallback(null, new DHeightfieldGetHeight() {
+				@Override
+				public double call(Object pUserData, int x, int z) {
+					return heights[x + z * SAMPLES];
+				}
+			}, SAMPLES - 1, SAMPLES - 1, SAMPLES, SAMPLES, 1, 0, 1, false);
+		}
+		data.setBounds(-0.2, 4.2);
+		terrain = OdeHelper.createHeightfield(null, data, true);
+		terrain.getAABB();
+		sphere = OdeHelper.createSphere(0.5);
+		box = OdeHelper.createBox(6, 0.7, 6);
+		ray = OdeHelper.createRay(60);
+	}
+
+	@TearDown
+	public void destroyGeoms() {
+		for (DGeom g: new DGeom[] {terrain, sphere, box, ray}) {
+			g.destroy();
+		}
+		data.destroy();
+		OdeHelper.closeODE();
+	}
+
+	/** Moves the geom to the next of a fixed set of positions. */
+	private void place(DGeom g, double y) {
+		int i = frame++ % POSITIONS;
+		g.setPosition((i * 37 % POSITIONS + 0.3) * (SAMPLES - 1) / POSITIONS - SAMPLES / 2, y,
+				(i * 11 % POSITIONS + 0.6) * (SAMPLES - 1) / POSITIONS - SAMPLES / 2);
+		g.getAABB();
+	}
+
+	@Benchmark
+	public int sphere() {
+		place(sphere, 0.3);
+		return OdeHelper.collide(terrain, sphere, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int box() {
+		place(box, 0.3);
+		return OdeHelper.collide(terrain, box, MAX_CONTACTS, contacts);
+	}
+
+	/**
+	 * Nearly horizontal rays, as for line of sight tests. Much longer rays
+	 * run out of memory without the pyramid.
+	 */
+	@Benchmark
+	public int ray() {
+		int i = frame++ % POSITIONS;
+		ray.set((i * 37 % POSITIONS + 0.3) * (SAMPLES - 1) / POSITIONS - SAMPLES / 2, 5,
+				(i * 11 % POSITIONS + 0.6) * (SAMPLES - 1) / POSITIONS - SAMPLES / 2, 
+				0.7, -0.02, 0.7);
+		ray.getAABB();
+		return OdeHelper.collide(terrain, ray, MAX_CONTACTS, contacts);
+	}
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.benchmark.BenchmarkScenes.Scene;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.DxQuickStepKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the default QuickStep kernels with the Vector API kernels of the 
+ * <code>core-vector</code> module on one large contact island, see 
+ * {@link BenchmarkScenes#boxBlock(int, int)}.
+ * <p>
+ * The contacts are generated once per iteration, so that only 
+ * <code>quickStep()</code> is measured. The vector kernels require Java 17
+ * and the Vector API module, which forked VMs inherit from the command line:
+ * <pre>
+ * java --add-modules jdk.incubator.vector -jar benchmark/target/benchmarks.jar QuickStepKernelsBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QuickStepKernelsBenchmark {
+
+	private static final String VECTOR_KERNELS = "org.ode4j.vector.VectorQuickStepKernels";
+
+	@Param({"scalar", "vector"})
+	public String kernels;
+
+	/** Number of boxes along x and y, the block is 4 boxes high. */
+	@Param({"8", "24"})
+	public int side;
+
+	private Scene s;
+
+	@Setup(Level.Trial)
+	public void initOde() {
+		OdeHelper.initODE2(0);
+		DxQuickStepKernels.set("vector".equals(kernels) ? VECTOR_KERNELS : null);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeOde() {
+		DxQuickStepKernels.set((String)null);
+		OdeHelper.closeODE();
+	}
+
+	@Setup(Level.Iteration)
+	public void createScene() {
+		s = BenchmarkScenes.boxBlock(side, 4);
+		s.world.setQuickStepNumIterations(20);
+		s.collide();
+	}
+
+	@TearDown(Level.Iteration)
+	public void destroyScene() {
+		s.destroy();
+		s = null;
+	}
+
+	@Benchmark
+	public Scene quickStep() {
+		s.world.quickStep(0.001);
+		return s;
+	}
+}
@@ -0,0 +1,189 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.ode.DMisc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the constraint row ordering of the QuickStep SOR solver 
+ * (<code>DxQuickStep.SOR_LCP</code>) before and after it was moved to an 
+ * <code>int</code> permutation in the memory arena:
+ * <ul>
+ * <li> indexErrorObjects: one pooled <code>IndexError</code> object per 
+ * row, shuffled as object references. This is a copy of the old code. </li>
+ * <li> intPermutation: the row indices in an <code>int[]</code> slab 
+ * starting at an offset, as in the current code. </li>
+ * </ul>
+ * Both build the order (rows with findex == -1 first), shuffle it every 
+ * 8 iterations with <code>dRandInt()</code> and perform a simplified SOR 
+ * sweep that only touches the row data through the order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SORConstraintOrderBenchmark {
+
+	private static final int ITERATIONS = 20;
+
+	/** Number of constraint rows. */
+	@Param({"10000", "200000"})
+	public int m;
+
+	private static class IndexError {
+		int index;
+	}
+
+	private IndexError[] objectOrder;
+	private int[] intOrder;
+	private int intOrderP;
+
+	private int[] findex;
+	private double[] b;
+	private double[] Ad;
+	private double[] lambda;
+
+	@Setup
+	public void setup() {
+		DMisc.dRandSetSeed(0);
+		// contact joints: a normal row followed by two friction rows
+		findex = new int[m];
+		for (int i = 0; i < m; i++) {
+			findex[i] = i % 3 == 0 ? -1 : i - i % 3;
+		}
+		b = new double[m];
+		Ad = new double[m];
+		lambda = new double[m];
+		for (int i = 0; i < m; i++) {
+			b[i] = DMisc.dRandReal();
+			Ad[i] = 0.5 * DMisc.dRandReal();
+		}
+
+		objectOrder = new IndexError[m];
+		for (int i = 0; i < m; i++) {
+			objectOrder[i] = new IndexError();
+		}
+		// the arena hands out ranges of a larger slab
+		intOrderP = 64;
+		intOrder = new int[intOrderP + m];
+	}
+
+	private double sweep(int index) {
+		double delta = b[index] - lambda[index] * Ad[index];
+		double hi = findex[index] == -1 ? Double.POSITIVE_INFINITY : Math.abs(lambda[findex[index]]);
+		double l = lambda[index] + delta;
+		lambda[index] = l > hi ? hi : (l < -hi ? -hi : l);
+		return delta;
+	}
+
+	@Benchmark
+	public double indexErrorObjects() {
+		final IndexError[] order = objectOrder;
+		int orderhead = 0, ordertail = m - 1;
+		for (int i = 0; i < m; i++) {
+			if (findex[i] == -1) {
+				order[orderhead++].index = i;
+			} else {
+				order[ordertail--].index = i;
+			}
+		}
+		final int head_size = orderhead;
+
+		double sum = 0;
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			if ((iteration & 7) == 0) {
+				for (int i = 1; i < head_size; i++) {
+					int swapi = DMisc.dRandInt(i + 1);
+					IndexError tmp = order[i];
+					order[i] = order[swapi];
+					order[swapi] = tmp;
+				}
+				int tail_size = m - head_size;
+				for (int j = 1; j < tail_size; j++) {
+					int swapj = DMisc.dRandInt(j + 1);
+					IndexError tmp = order[head_size + j];
+					order[head_size + j] = order[head_size + swapj];
+					order[head_size + swapj] = tmp;
+				}
+			}
+			for (int i = 0; i < m; i++) {
+				sum += sweep(order[i].index);
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double intPermutation() {
+		final int[] order = intOrder;
+		final int orderP = intOrderP;
+		int orderhead = orderP, ordertail = orderP + m - 1;
+		for (int i = 0; i < m; i++) {
+			if (findex[i] == -1) {
+				order[orderhead++] = i;
+			} else {
+				order[ordertail--] = i;
+			}
+		}
+		final int head_size = orderhead - orderP;
+
+		double sum = 0;
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			if ((iteration & 7) == 0) {
+				for (int i = 1; i < head_size; i++) {
+					int swapi = DMisc.dRandInt(i + 1);
+					int tmp = order[orderP + i];
+					order[orderP + i] = order[orderP + swapi];
+					order[orderP + swapi] = tmp;
+				}
+				int tail_size = m - head_size;
+				final int tailP = orderP + head_size;
+				for (int j = 1; j < tail_size; j++) {
+					int swapj = DMisc.dRandInt(j + 1);
+					int tmp = order[tailP + j];
+					order[tailP + j] = order[tailP + swapj];
+					order[tailP + swapj] = tmp;
+				}
+			}
+			for (int i = orderP, end = orderP + m; i < end; i++) {
+				sum += sweep(order[i]);
+			}
+		}
+		return sum;
+	}
+}
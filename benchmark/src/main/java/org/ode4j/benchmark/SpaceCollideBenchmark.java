@@ -0,0 +1,90 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.benchmark.BenchmarkScenes.Scene;
+import org.ode4j.benchmark.BenchmarkScenes.SpaceType;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for <code>DSpace.collide()</code> with every space type.
+ * <p>
+ * The scene is settled for a number of steps during setup and then left
+ * unchanged, so each invocation measures broadphase plus narrowphase
+ * on the same configuration. Contact joints are removed after each call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SpaceCollideBenchmark {
+
+	@Param({"SIMPLE", "HASH", "SAP", "SAP_INCREMENTAL", "QUAD", "BVH"})
+	public SpaceType spaceType;
+
+	@Param({"500", "2000"})
+	public int num;
+
+	/** Number of quickSteps performed before measuring. */
+	private static final int SETTLE_STEPS = 50;
+
+	private Scene s;
+
+	@Setup
+	public void createScene() {
+		OdeHelper.initODE2(0);
+		s = BenchmarkScenes.spaceStress(spaceType, num);
+		for (int i = 0; i < SETTLE_STEPS; i++) {
+			s.simulate(0.05, true);
+		}
+	}
+
+	@TearDown
+	public void destroyScene() {
+		s.destroy();
+		OdeHelper.closeODE();
+	}
+
+	@Benchmark
+	public int collide() {
+		s.collide();
+		s.contactgroup.empty();
+		return s.contactCount;
+	}
+}
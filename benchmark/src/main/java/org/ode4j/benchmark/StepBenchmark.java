@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.benchmark.BenchmarkScenes.Scene;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for <code>DWorld.quickStep()</code> and <code>DWorld.step()</code>.
+ * <p>
+ * Each benchmark invocation performs one complete simulation step
+ * (collide, step, empty contact group). The scene is rebuilt before every
+ * iteration so that all iterations start from the same state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StepBenchmark {
+
+	/** Scene to simulate, see {@link BenchmarkScenes}. */
+	@Param({"boxstack", "crash", "spacestress"})
+	public String scene;
+
+	private Scene s;
+
+	@Setup(Level.Trial)
+	public void initOde() {
+		OdeHelper.initODE2(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeOde() {
+		OdeHelper.closeODE();
+	}
+
+	@Setup(Level.Iteration)
+	public void createScene() {
+		if ("boxstack".equals(scene)) {
+			s = BenchmarkScenes.boxStack(5, 8);
+		} else if ("crash".equals(scene)) {
+			s = BenchmarkScenes.crash();
+		} else if ("spacestress".equals(scene)) {
+			s = BenchmarkScenes.spaceStress(BenchmarkScenes.SpaceType.SAP, 500);
+		} else {
+			throw new IllegalArgumentException(scene);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void destroyScene() {
+		s.destroy();
+		s = null;
+	}
+
+	@Benchmark
+	public Scene quickStep() {
+		s.simulate(0.02, true);
+		return s;
+	}
+
+	@Benchmark
+	public Scene step() {
+		s.simulate(0.02, false);
+		return s;
+	}
+}
@@ -0,0 +1,169 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DCapsule;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DRay;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.DTriMesh;
+import org.ode4j.ode.DTriMeshData;
+import org.ode4j.ode.OdeConfig;
+import org.ode4j.ode.OdeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Small geoms against a static terrain mesh of 
+ * <code>2 * grid * grid</code> triangles, for the GIMPACT and the BVH
+ * trimesh backends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TrimeshBvhBenchmark {
+
+	private static final int MAX_CONTACTS = 16;
+	private static final int POSITIONS = 64;
+
+	@Param({"GIMPACT", "BVH"})
+	public OdeConfig.TRIMESH type;
+
+	@Param({"128", "256"})
+	public int grid;
+
+	private final DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+
+	private DTriMesh mesh;
+	private DSphere sphere;
+	private DBox box;
+	private DCapsule capsule;
+	private DRay ray;
+	private int frame;
+
+	@Setup
+	public void createGeoms() {
+		OdeHelper.initODE2(0);
+		OdeConfig.TRIMESH old = OdeConfig.getTrimeshType();
+		OdeConfig.setTrimeshType(type);
+		mesh = OdeHelper.createTriMesh(null, createTerrain(grid), null, null, null);
+		OdeConfig.setTrimeshType(old);
+		mesh.getAABB();
+		sphere = OdeHelper.createSphere(0.5);
+		box = OdeHelper.createBox(1, 0.7, 0.5);
+		capsule = OdeHelper.createCapsule(0.3, 1.2);
+		ray = OdeHelper.createRay(5);
+	}
+
+	@TearDown
+	public void destroyGeoms() {
+		for (DGeom g: new DGeom[] {mesh, sphere, box, capsule, ray}) {
+			g.destroy();
+		}
+		OdeHelper.closeODE();
+	}
+
+	/** Moves the geom to the next of a fixed set of positions. */
+	private void place(DGeom g, double z) {
+		int i = frame++ % POSITIONS;
+		g.setPosition((i * 37 % POSITIONS + 0.3) * grid / POSITIONS, 
+				(i * 11 % POSITIONS + 0.6) * grid / POSITIONS, z);
+		g.getAABB();
+	}
+
+	@Benchmark
+	public int sphere() {
+		place(sphere, 0.3);
+		return OdeHelper.collide(mesh, sphere, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int box() {
+		place(box, 0.2);
+		return OdeHelper.collide(mesh, box, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int capsule() {
+		place(capsule, 0.2);
+		return OdeHelper.collide(mesh, capsule, MAX_CONTACTS, contacts);
+	}
+
+	@Benchmark
+	public int ray() {
+		int i = frame++ % POSITIONS;
+		ray.set((i * 37 % POSITIONS + 0.3) * grid / POSITIONS, 
+				(i * 11 % POSITIONS + 0.6) * grid / POSITIONS, 2, 0.2, -0.1, -1);
+		ray.getAABB();
+		return OdeHelper.collide(mesh, ray, MAX_CONTACTS, contacts);
+	}
+
+	/**
+	 * A bumpy grid of unit cells at z~0.
+	 */
+	private static DTriMeshData createTerrain(int n) {
+		int nV = n + 1;
+		float[] vertices = new float[nV * nV * 3];
+		for (int y = 0; y < nV; y++) {
+			for (int x = 0; x < nV; x++) {
+				int pos = (x + y * nV) * 3;
+				vertices[pos] = x;
+				vertices[pos + 1] = y;
+				vertices[pos + 2] = (float) (0.3 * Math.sin(x * 0.7) * Math.cos(y * 0.5));
+			}
+		}
+		int[] indices = new int[n * n * 6];
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				int i0 = x + y * nV;
+				int pos = (x + y * n) * 6;
+				indices[pos] = i0;
+				indices[pos + 1] = i0 + 1;
+				indices[pos + 2] = i0 + 1 + nV;
+				indices[pos + 3] = i0;
+				indices[pos + 4] = i0 + 1 + nV;
+				indices[pos + 5] = i0 + nV;
+			}
+		}
+		DTriMeshData data = OdeHelper.createTriMeshData();
+		data.build(vertices, indices);
+		return data;
+	}
+}
@@ -0,0 +1,160 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.ode4j.ode.internal.DxQuickStepKernels;
+
+/**
+ * QuickStep row kernels based on the incubating Vector API.
+ * <p>
+ * A constraint row consists of two 6-element halves, one per body, which are 
+ * processed as three 2-lane vectors each. Wider vectors do not pay off: the 
+ * constraint forces of the two bodies of a row are not adjacent, and mixing 
+ * 4-lane and 2-lane vectors to cover 6 elements needs two reductions per 
+ * row, which made the kernels slower than the scalar ones. With 2 lanes a 
+ * whole row is summed up in one accumulator with a single reduction. 
+ * See <code>QuickStepKernelsBenchmark</code> in the benchmark module.
+ * <p>
+ * The JVM has to be started with <code>--add-modules jdk.incubator.vector</code>.
+ * Results differ from the default kernels only by rounding, because the 
+ * products are summed in a different order.
+ * 
+ * @see DxQuickStepKernels
+ */
+public class VectorQuickStepKernels extends DxQuickStepKernels {
+
+	private static final VectorSpecies<Double> S2 = DoubleVector.SPECIES_128;
+
+	/**
+	 * @throws UnsupportedOperationException if the platform does not support 
+	 * 128 bit vectors.
+	 */
+	public VectorQuickStepKernels() {
+		if (DoubleVector.SPECIES_PREFERRED.vectorBitSize() < S2.vectorBitSize()) {
+			throw new UnsupportedOperationException("128 bit vectors are not supported, " + 
+					"preferred size is " + DoubleVector.SPECIES_PREFERRED.vectorBitSize());
+		}
+	}
+
+	/**
+	 * Installs these kernels for all worlds.
+	 * @see DxQuickStepKernels#set(DxQuickStepKernels)
+	 */
+	public static void install() {
+		DxQuickStepKernels.set(new VectorQuickStepKernels());
+	}
+
+	@Override
+	public String getName() {
+		return "vector";
+	}
+
+	@Override
+	public void scaleRows(final int m, double[] J, final int[] jb, 
+			final double[] iMJ, final int iMJP, double[] b, final double[] cfm, 
+			final double sor_w, double[] Ad, final int AdP)
+	{
+		int iMJ_ofs = iMJP;
+		int J_ofs = 0;
+		for (int i=0; i<m; iMJ_ofs +=12, J_ofs +=12, i++ ) {
+			double sum;
+			if (jb[i*2+1] != -1) {
+				sum = dot12(J, J_ofs, iMJ, iMJ_ofs, iMJ_ofs+6);
+			} else {
+				sum = dot6(J, J_ofs, iMJ, iMJ_ofs);
+			}
+			double Ad_i = sor_w / (sum + cfm[i]);
+			for (int j=0; j<12; j+=2) {
+				DoubleVector.fromArray(S2, J, J_ofs+j).mul(Ad_i).intoArray(J, J_ofs+j);
+			}
+			b[i] *= Ad_i;
+			// scale Ad by CFM
+			Ad[AdP+i] = Ad_i * cfm[i];
+		}
+	}
+
+	@Override
+	public double subtractRow(double x, final double[] J, final int J_ofs, 
+			final double[] fc, final int fc_ofs1, final int fc_ofs2)
+	{
+		// no vector variables across the branch, C2 may box them at the merge
+		if (fc_ofs2 == -1) {
+			return x - dot6(J, J_ofs, fc, fc_ofs1);
+		}
+		return x - dot12(J, J_ofs, fc, fc_ofs1, fc_ofs2);
+	}
+
+	@Override
+	public void addRow(final double delta, final double[] iMJ, final int iMJ_ofs, 
+			double[] fc, final int fc_ofs1, final int fc_ofs2)
+	{
+		addScaled6(fc, fc_ofs1, iMJ, iMJ_ofs, delta);
+		if (fc_ofs2 != -1) {
+			addScaled6(fc, fc_ofs2, iMJ, iMJ_ofs+6, delta);
+		}
+	}
+
+	/**
+	 * @return a[0..5] * b[0..5]
+	 */
+	private static double dot6(final double[] a, final int a_ofs, 
+			final double[] b, final int b_ofs) 
+	{
+		return DoubleVector.fromArray(S2, a, a_ofs).mul(DoubleVector.fromArray(S2, b, b_ofs))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+2).mul(DoubleVector.fromArray(S2, b, b_ofs+2)))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+4).mul(DoubleVector.fromArray(S2, b, b_ofs+4)))
+				.reduceLanes(VectorOperators.ADD);
+	}
+
+	/**
+	 * @return a[0..11] * (b1[0..5], b2[0..5])
+	 */
+	private static double dot12(final double[] a, final int a_ofs, 
+			final double[] b, final int b_ofs1, final int b_ofs2) 
+	{
+		return DoubleVector.fromArray(S2, a, a_ofs).mul(DoubleVector.fromArray(S2, b, b_ofs1))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+2).mul(DoubleVector.fromArray(S2, b, b_ofs1+2)))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+4).mul(DoubleVector.fromArray(S2, b, b_ofs1+4)))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+6).mul(DoubleVector.fromArray(S2, b, b_ofs2)))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+8).mul(DoubleVector.fromArray(S2, b, b_ofs2+2)))
+				.add(DoubleVector.fromArray(S2, a, a_ofs+10).mul(DoubleVector.fromArray(S2, b, b_ofs2+4)))
+				.reduceLanes(VectorOperators.ADD);
+	}
+
+	/**
+	 * a[0..5] += s * b[0..5]
+	 */
+	private static void addScaled6(double[] a, final int a_ofs, 
+			final double[] b, final int b_ofs, final double s) 
+	{
+		for (int j=0; j<6; j+=2) {
+			DoubleVector.fromArray(S2, a, a_ofs+j)
+					.add(DoubleVector.fromArray(S2, b, b_ofs+j).mul(s))
+					.intoArray(a, a_ofs+j);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.vector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeConstants;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.DxQuickStepKernels;
+
+/**
+ * The Vector API kernels must compute the same as the default kernels, 
+ * except for rounding.
+ */
+public class VectorQuickStepKernelsTest {
+
+	private static final double EPS = 1e-12;
+
+	private final DxQuickStepKernels scalar = new DxQuickStepKernels();
+	private final DxQuickStepKernels vector = new VectorQuickStepKernels();
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@After
+	public void after() {
+		DxQuickStepKernels.set((DxQuickStepKernels)null);
+	}
+
+	private static double[] random(Random r, int n) {
+		double[] a = new double[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = r.nextDouble() * 2 - 1;
+		}
+		return a;
+	}
+
+	@Test
+	public void testRowKernels() {
+		Random r = new Random(0);
+		final int m = 50, nb = 10;
+		double[] J = random(r, m * 12);
+		double[] iMJ = random(r, m * 12 + 5);
+		double[] fc = random(r, nb * 6);
+		for (int i = 0; i < m; i++) {
+			int fc_ofs1 = 6 * r.nextInt(nb);
+			int fc_ofs2 = (i % 3 == 0) ? -1 : 6 * r.nextInt(nb);
+			assertEquals(scalar.subtractRow(0.5, J, i * 12, fc, fc_ofs1, fc_ofs2),
+					vector.subtractRow(0.5, J, i * 12, fc, fc_ofs1, fc_ofs2), EPS);
+
+			double[] fcS = fc.clone();
+			double[] fcV = fc.clone();
+			scalar.addRow(0.3, iMJ, 5 + i * 12, fcS, fc_ofs1, fc_ofs2);
+			vector.addRow(0.3, iMJ, 5 + i * 12, fcV, fc_ofs1, fc_ofs2);
+			assertArrayEquals(fcS, fcV, EPS);
+		}
+	}
+
+	@Test
+	public void testScaleRows() {
+		Random r = new Random(1);
+		final int m = 50;
+		int[] jb = new int[m * 2];
+		for (int i = 0; i < m; i++) {
+			jb[i * 2] = 0;
+			jb[i * 2 + 1] = (i % 3 == 0) ? -1 : 1;
+		}
+		double[] J = random(r, m * 12);
+		double[] iMJ = random(r, m * 12 + 3);
+		double[] b = random(r, m);
+		double[] cfm = new double[m];
+		for (int i = 0; i < m; i++) {
+			// keep the diagonal away from 0
+			cfm[i] = 10 + r.nextDouble();
+		}
+		double[] JV = J.clone(), bV = b.clone();
+		double[] Ad = new double[m + 2], AdV = new double[m + 2];
+		scalar.scaleRows(m, J, jb, iMJ, 3, b, cfm, 1.3, Ad, 2);
+		vector.scaleRows(m, JV, jb, iMJ, 3, bV, cfm, 1.3, AdV, 2);
+		assertArrayEquals(J, JV, EPS);
+		assertArrayEquals(b, bV, EPS);
+		assertArrayEquals(Ad, AdV, EPS);
+	}
+
+	/**
+	 * A pyramid of boxes simulated with both kernels.
+	 */
+	@Test
+	public void testQuickStep() {
+		DVector3C[] expected = simulate(null);
+		DVector3C[] actual = simulate(vector);
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < 3; j++) {
+				assertEquals(expected[i].get(j), actual[i].get(j), 1e-6);
+			}
+		}
+	}
+
+	private static DVector3C[] simulate(DxQuickStepKernels kernels) {
+		DxQuickStepKernels.set(kernels);
+		DMisc.dRandSetSeed(0);
+		final DWorld world = OdeHelper.createWorld();
+		final DSpace space = OdeHelper.createHashSpace();
+		final DJointGroup contactGroup = OdeHelper.createJointGroup();
+		world.setGravity(0, 0, -9.81);
+		world.setQuickStepNumIterations(20);
+		world.setContactSurfaceLayer(0.001);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+		DMass m = OdeHelper.createMass();
+		m.setBox(1, 1, 1, 1);
+		final int levels = 5;
+		DBody[] bodies = new DBody[levels * (levels + 1) / 2];
+		int n = 0;
+		for (int z = 0; z < levels; z++) {
+			for (int x = 0; x < levels - z; x++) {
+				DBody b = OdeHelper.createBody(world);
+				b.setMass(m);
+				b.setPosition(x * 1.01 + z * 0.5, 0, 0.5 + z);
+				OdeHelper.createBox(space, 1, 1, 1).setBody(b);
+				bodies[n++] = b;
+			}
+		}
+		DNearCallback cb = new DNearCallback() {
+			@Override
+			public void call(Object data, DGeom o1, DGeom o2) {
+				DContactBuffer contacts = new DContactBuffer(4);
+				int nc = OdeHelper.collide(o1, o2, contacts.size(), contacts.getGeomBuffer());
+				for (int i = 0; i < nc; i++) {
+					DContact c = contacts.get(i);
+					c.surface.mode = OdeConstants.dContactApprox1;
+					c.surface.mu = 0.8;
+					DJoint j = OdeHelper.createContactJoint(world, contactGroup, c);
+					j.attach(o1.getBody(), o2.getBody());
+				}
+			}
+		};
+		for (int s = 0; s < 50; s++) {
+			space.collide(null, cb);
+			world.quickStep(0.01);
+			contactGroup.empty();
+		}
+		DVector3C[] pos = new DVector3C[bodies.length];
+		for (int i = 0; i < bodies.length; i++) {
+			pos[i] = bodies[i].getPosition().clone();
+		}
+		contactGroup.destroy();
+		space.destroy();
+		world.destroy();
+		return pos;
+	}
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+import org.ode4j.math.DVector3C;
+
+/**
+ * Dynamic bounding volume hierarchy space.
+ * <p>
+ * The geoms are stored in a binary AABB tree without fixed bounds. Each geom 
+ * gets a fat AABB, which is its AABB enlarged by a margin. A geom that moves 
+ * within its fat AABB does not change the tree, otherwise it is re-inserted 
+ * and the AABBs of its ancestors are refitted. The tree is kept balanced 
+ * with rotations. Geoms with infinite AABBs (e.g. planes) are kept outside 
+ * the tree.
+ * <p>
+ * <tt>collide2()</tt> with a ray traverses only the tree nodes whose AABBs 
+ * are hit by the ray.
+ */
+public interface DBvhSpace extends DSpace {
+
+	/**
+	 * Callback for the queries of the BVH space.
+	 */
+	public interface DBvhQueryCallback {
+		/**
+		 * @param data The user data object, as passed to the query.
+		 * @param geom A geom that matches the query.
+		 */
+		void call(Object data, DGeom geom);
+	}
+
+	/**
+	 * Sets the margin by which the AABBs in the tree are enlarged. A larger 
+	 * margin means fewer updates of the tree for moving geoms, but more AABB 
+	 * overlaps to check. The new margin is used for geoms that are inserted 
+	 * or re-inserted after the call. The default is 0.1.
+	 * @param margin The margin, must not be negative
+	 */
+	void setMargin(double margin);
+
+	/**
+	 * @return The margin of the AABBs in the tree.
+	 * @see #setMargin(double)
+	 */
+	double getMargin();
+
+	/**
+	 * Reports all enabled geoms whose AABB overlaps the given AABB. 
+	 * @param aabb The AABB to check
+	 * @param data User data passed to the callback
+	 * @param callback The callback
+	 */
+	void queryAABB(DAABBC aabb, Object data, DBvhQueryCallback callback);
+
+	/**
+	 * Reports all enabled geoms whose AABB is hit by the given ray. 
+	 * @param start Start of the ray
+	 * @param dir Direction of the ray, does not need to be normalized
+	 * @param length Length of the ray, in multiples of <tt>dir</tt>
+	 * @param data User data passed to the callback
+	 * @param callback The callback
+	 */
+	void queryRay(DVector3C start, DVector3C dir, double length, Object data, 
+			DBvhQueryCallback callback);
+}
@@ -0,0 +1,223 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+import java.util.Arrays;
+
+import org.ode4j.math.DVector3;
+
+
+/**
+ * A growable list of contact points stored as a structure of arrays.
+ * <p>
+ * This is filled by {@link DSpace#collideContacts(int, DContactBatch)} 
+ * and turned into contact joints with 
+ * {@link DJointGroup#createContactJoints(DWorld, DContactBatch, DContact.DSurfaceParameters)}.
+ * Unlike {@link DContactGeomBuffer}, there is no object per contact. The 
+ * batch can be reused, {@link #clear()} keeps the arrays.
+ * <p>
+ * Contact <tt>i</tt> is stored at <tt>getPositions()[3*i..3*i+2]</tt>, 
+ * <tt>getNormals()[3*i..3*i+2]</tt>, <tt>getDepths()[i]</tt> and so on. The 
+ * arrays may be longer than {@link #size()} and are replaced when the batch 
+ * grows.
+ */
+public final class DContactBatch {
+
+	private int count;
+	private double[] pos;
+	private double[] normal;
+	private double[] depth;
+	private DGeom[] g1;
+	private DGeom[] g2;
+	private int[] side1;
+	private int[] side2;
+
+	public DContactBatch() {
+		this(64);
+	}
+
+	public DContactBatch(int capacity) {
+		capacity = Math.max(capacity, 1);
+		pos = new double[3*capacity];
+		normal = new double[3*capacity];
+		depth = new double[capacity];
+		g1 = new DGeom[capacity];
+		g2 = new DGeom[capacity];
+		side1 = new int[capacity];
+		side2 = new int[capacity];
+	}
+
+	/**
+	 * @return The number of contacts.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Remove all contacts. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(g1, 0, count, null);
+		Arrays.fill(g2, 0, count, null);
+		count = 0;
+	}
+
+	/**
+	 * Grow the arrays to hold at least <tt>capacity</tt> contacts.
+	 * @param capacity Minimum number of contacts
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= depth.length) {
+			return;
+		}
+		capacity = Math.max(capacity, depth.length*2);
+		pos = Arrays.copyOf(pos, 3*capacity);
+		normal = Arrays.copyOf(normal, 3*capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		g1 = Arrays.copyOf(g1, capacity);
+		g2 = Arrays.copyOf(g2, capacity);
+		side1 = Arrays.copyOf(side1, capacity);
+		side2 = Arrays.copyOf(side2, capacity);
+	}
+
+	/**
+	 * Append a contact.
+	 * @param c The contact to copy
+	 */
+	public void add(DContactGeom c) {
+		ensureCapacity(count+1);
+		final int i = count++;
+		pos[3*i] = c.pos.get0();
+		pos[3*i+1] = c.pos.get1();
+		pos[3*i+2] = c.pos.get2();
+		normal[3*i] = c.normal.get0();
+		normal[3*i+1] = c.normal.get1();
+		normal[3*i+2] = c.normal.get2();
+		depth[i] = c.depth;
+		g1[i] = c.g1;
+		g2[i] = c.g2;
+		side1[i] = c.side1;
+		side2[i] = c.side2;
+	}
+
+	/**
+	 * Append the first <tt>n</tt> contacts of a buffer.
+	 * @param contacts The contacts to copy
+	 * @param n Number of contacts
+	 */
+	public void addAll(DContactGeomBuffer contacts, int n) {
+		ensureCapacity(count+n);
+		for (int i = 0; i < n; i++) {
+			add(contacts.get(i));
+		}
+	}
+
+	/**
+	 * Append all contacts of another batch.
+	 * @param b The contacts to copy
+	 */
+	public void addAll(DContactBatch b) {
+		ensureCapacity(count+b.count);
+		System.arraycopy(b.pos, 0, pos, 3*count, 3*b.count);
+		System.arraycopy(b.normal, 0, normal, 3*count, 3*b.count);
+		System.arraycopy(b.depth, 0, depth, count, b.count);
+		System.arraycopy(b.g1, 0, g1, count, b.count);
+		System.arraycopy(b.g2, 0, g2, count, b.count);
+		System.arraycopy(b.side1, 0, side1, count, b.count);
+		System.arraycopy(b.side2, 0, side2, count, b.count);
+		count += b.count;
+	}
+
+	/**
+	 * Copy contact <tt>i</tt> into a contact object.
+	 * @param i Index of the contact
+	 * @param c Receives the contact
+	 */
+	public void get(int i, DContactGeom c) {
+		checkIndex(i);
+		c.pos.set(pos[3*i], pos[3*i+1], pos[3*i+2]);
+		c.normal.set(normal[3*i], normal[3*i+1], normal[3*i+2]);
+		c.depth = depth[i];
+		c.g1 = g1[i];
+		c.g2 = g2[i];
+		c.side1 = side1[i];
+		c.side2 = side2[i];
+	}
+
+	public void getPosition(int i, DVector3 result) {
+		checkIndex(i);
+		result.set(pos[3*i], pos[3*i+1], pos[3*i+2]);
+	}
+
+	public void getNormal(int i, DVector3 result) {
+		checkIndex(i);
+		result.set(normal[3*i], normal[3*i+1], normal[3*i+2]);
+	}
+
+	public double getDepth(int i) {
+		checkIndex(i);
+		return depth[i];
+	}
+
+	public DGeom getGeom1(int i) {
+		checkIndex(i);
+		return g1[i];
+	}
+
+	public DGeom getGeom2(int i) {
+		checkIndex(i);
+		return g2[i];
+	}
+
+	public int getSide1(int i) {
+		checkIndex(i);
+		return side1[i];
+	}
+
+	public int getSide2(int i) {
+		checkIndex(i);
+		return side2[i];
+	}
+
+	/** @return Contact positions, 3 per contact. */
+	public double[] getPositions() {
+		return pos;
+	}
+
+	/** @return Contact normals, 3 per contact. */
+	public double[] getNormals() {
+		return normal;
+	}
+
+	/** @return Penetration depths. */
+	public double[] getDepths() {
+		return depth;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Index=" + i + "; size=" + count);
+		}
+	}
+}
@@ -50,6 +50,25 @@ public class DContactBuffer implements Iterable<DContact> {
     public void set(int i, DContact c) {
         buf.set(i, c);
     }
+
+    /**
+     * @return The number of contacts in this buffer.
+     */
+    public int size() {
+        return buf.size();
+    }
+
+    /**
+     * Appends new contacts until the buffer holds at least <tt>size</tt> 
+     * contacts. Existing contacts are not modified.
+     * @param size Minimum number of contacts
+     */
+    public void ensureCapacity(int size) {
+        buf.ensureCapacity(size);
+        for (int i = buf.size(); i < size; i++) {
+            buf.add(new DContact());
+        }
+    }
     
 	public DContactGeomBuffer getGeomBuffer() {
 		return new DContactGeomBuffer(this);
@@ -64,7 +64,8 @@ public interface DGeom {
 	public static final int   dHashSpaceClass = 11;
 	public static final int   dSweepAndPruneSpaceClass = 12;
 	public static final int   dQuadTreeSpaceClass = 13;
-	public static final int   dLastSpaceClass = dQuadTreeSpaceClass; //13
+	public static final int   dBvhSpaceClass = 14;
+	public static final int   dLastSpaceClass = dBvhSpaceClass; //14
 
 	/** 
 	 * ID of the first user defined class. 
@@ -73,7 +74,7 @@ public interface DGeom {
 	 * based on <tt>dFirstUserClass</tt>, for example: 
 	 * <tt>int myCLassID = dFirstUserClass + x;</tt>, where (x >= 1). 
 	 */
-	public static final int   dFirstUserClass = 14;
+	public static final int   dFirstUserClass = 15;
 	public static final int   dLastUserClass = dFirstUserClass + dMaxUserClasses - 1;
 	public static final int   dGeomNumClasses = dLastUserClass + 1; 
 	//	};
@@ -110,6 +111,7 @@ public interface DGeom {
 	 *  <li> dSimpleSpaceClass </li>
 	 *  <li> dHashSpaceClass </li>
 	 *  <li> dQuadTreeSpaceClass </li>
+	 *  <li> dBvhSpaceClass </li>
 	 *  <li> dFirstUserClass </li>
 	 *  <li> dLastUserClass </li>
 	 * <p>
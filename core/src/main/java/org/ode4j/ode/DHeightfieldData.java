@@ -24,6 +24,9 @@
  *************************************************************************/
 package org.ode4j.ode;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
 
 public interface DHeightfieldData {
@@ -87,6 +90,10 @@ public interface DHeightfieldData {
 	 * <p> The minimum and maximum values are used to compute the AABB
 	 * for the heightfield which is used for early rejection of collisions.
 	 * A close fit will yield a more efficient collision check.
+	 * <p>
+	 * Heightfields built from sample arrays keep a min/max pyramid of 
+	 * the samples to skip terrain cells that cannot touch a geom. If the
+	 * samples have changed, this call also rebuilds the pyramid.
 	 *
 	 * @param minHeight The new minimum height value. Scale, offset and thickness is then applied.
 	 * @param maxHeight The new maximum height value. Scale and offset is then applied.
@@ -306,4 +313,40 @@ public interface DHeightfieldData {
 			final double scale, final double offset, 
 			final double thickness, final boolean bWrap );
 
+	/**
+	 * Configures a dHeightfieldData to read height data from a tiled file.
+	 * <p>
+	 * The file is written by {@link OdeHelper#writeHeightfieldTiles}. Tiles 
+	 * are memory mapped when a collision first needs them, so only the 
+	 * recently used part of a large terrain is in memory and building is 
+	 * fast. The sample counts and the height bounds are read from the file.
+	 * <p>
+	 * The file stays open until the data is destroyed or built again.
+	 *
+	 * @param file The tiled height file.
+	 * @param maxCachedTiles Number of tiles that may be mapped at a time,
+	 * the least recently used ones are dropped. At least one.
+	 *
+	 * @param width Specifies the total 'width' of the heightfield along
+	 * the geom's local x axis.
+	 * @param depth Specifies the total 'depth' of the heightfield along
+	 * the geom's local z axis.
+	 *
+	 * @param scale A uniform scale applied to all raw height data.
+	 * @param offset An offset applied to the scaled height data.
+	 *
+	 * @param thickness A value subtracted from the lowest height
+	 * value which in effect adds an additional cuboid to the base of the
+	 * heightfield. Note that the thickness is not affected by the scale or 
+	 * offset parameters.
+	 *
+	 * @param bWrap If non-zero the heightfield will infinitely tile in both
+	 * directions along the local x and z axes.
+	 * @throws IOException if the file cannot be read or is not a tiled 
+	 * height file
+	 */
+	void buildTiled( File file, int maxCachedTiles,
+			double width, double depth,
+			double scale, double offset, double thickness, boolean bWrap ) throws IOException;
+
 }
@@ -24,6 +24,8 @@
  *************************************************************************/
 package org.ode4j.ode;
 
+import org.ode4j.ode.DContact.DSurfaceParameters;
+
 
 /**
  * From odecpp.h.
@@ -46,4 +48,21 @@ public interface DJointGroup {
 	 */
 	void destroy();
 
+	/**
+	 * Create a contact joint for every contact in a batch and attach it to 
+	 * the bodies of the two geoms. Contacts between two geoms without bodies 
+	 * are skipped.
+	 * <p>
+	 * The <tt>DContact</tt> objects of these joints are owned by the group 
+	 * and recycled when the group is emptied.
+	 * 
+	 * @param world The world of the joints
+	 * @param contacts The contacts, usually from 
+	 * {@link DSpace#collideContacts(int, DContactBatch)}
+	 * @param surface Surface parameters, copied into every contact
+	 * @return The number of joints created
+	 */
+	int createContactJoints(DWorld world, DContactBatch contacts, 
+			DSurfaceParameters surface);
+
 }
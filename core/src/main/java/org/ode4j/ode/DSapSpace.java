@@ -57,4 +57,27 @@ public interface DSapSpace extends DSpace {
 			return _code;
 		}
 	}
+
+	/**
+	 * Enables or disables the incremental mode. 
+	 * <p>
+	 * By default the space sorts all geoms on every collide() call. In 
+	 * incremental mode it keeps sorted endpoint arrays for all three axes 
+	 * and the set of overlapping pairs between calls. Only the endpoints of 
+	 * geoms that moved (or were added or removed) are re-sorted, with an 
+	 * insertion sort on the mostly sorted arrays, and the pairs are updated 
+	 * when endpoints pass each other. This is much faster for spaces with many 
+	 * geoms that hardly move. The order in which the pairs are passed to the 
+	 * callback differs from the default mode. Geoms with infinite AABBs are 
+	 * only paired with geoms whose AABBs they overlap, while the default mode 
+	 * pairs them with all other geoms.
+	 * @param incremental Whether to use the incremental mode
+	 */
+	void setIncremental(boolean incremental);
+
+	/**
+	 * @return Whether the space is in incremental mode.
+	 * @see #setIncremental(boolean)
+	 */
+	boolean isIncremental();
 }
@@ -24,6 +24,8 @@
  *************************************************************************/
 package org.ode4j.ode;
 
+import java.util.concurrent.Executor;
+
 
 /**
  * collision space.
@@ -49,6 +51,110 @@ public interface DSpace extends DGeom {
 
 	/** This is equivalent to OdeHelper.spaceCollide(...) */
 	void collide (Object data, DNearCallback callback);
+
+	/**
+	 * Callback for the contact merging variant of 
+	 * {@link DSpace#collideParallel(Object, DParallelNearCallback, int, DContactBuffer, Executor, int)}.
+	 * <p>
+	 * This is called concurrently from several threads and must therefore 
+	 * be thread-safe. It must not modify any space, body or joint.
+	 */
+	public interface DParallelNearCallback {
+		/**
+		 * Perform narrow phase collision of a potentially intersecting pair.
+		 * Typically this calls <tt>OdeHelper.collide(o1, o2, contacts.size(),
+		 * contacts.getGeomBuffer())</tt> and fills in the surface parameters.
+		 * @param data User data
+		 * @param o1 First geom, never a space
+		 * @param o2 Second geom, never a space
+		 * @param contacts Per-thread scratch buffer, the contents are only 
+		 * valid for the current call 
+		 * @return The number of contacts written to the start of 
+		 * <tt>contacts</tt>. 
+		 */
+		int call (Object data, DGeom o1, DGeom o2, DContactBuffer contacts);
+	}
+
+	/**
+	 * Parallel variant of {@link #collide(Object, DNearCallback)}.
+	 * <p>
+	 * The potentially intersecting pairs are gathered on the calling thread 
+	 * first. Pairs that involve a sub-space are expanded with 
+	 * <tt>OdeHelper.spaceCollide2()</tt>, and every enabled sub-space is 
+	 * collided internally once, so <tt>callback</tt> only ever receives 
+	 * non-space geoms.
+	 * The pairs are then split into chunks that are passed to 
+	 * <tt>callback</tt> concurrently by <tt>threadCount</tt> threads, 
+	 * one of which is the calling thread. This method returns once all pairs 
+	 * have been processed.
+	 * <p>
+	 * The callback must be thread-safe. The space is locked while this 
+	 * method runs.
+	 * 
+	 * @param data User data passed to the callback
+	 * @param callback Thread-safe near callback
+	 * @param executor Executor that runs the additional threads
+	 * @param threadCount Total number of threads, including the caller. 
+	 * With 1 all pairs are processed on the calling thread.
+	 */
+	void collideParallel (Object data, DNearCallback callback, 
+			Executor executor, int threadCount);
+
+	/**
+	 * Parallel variant of {@link #collide(Object, DNearCallback)} that 
+	 * merges the contacts found by the threads.
+	 * <p>
+	 * Pairs are gathered and distributed as in 
+	 * {@link #collideParallel(Object, DNearCallback, Executor, int)}. Every 
+	 * thread writes its contacts into its own buffer, and these buffers are 
+	 * merged into <tt>contacts</tt> once all threads have finished. The 
+	 * merged contacts are in the same order as a serial run would produce 
+	 * them, so joints can be created from them on the calling thread 
+	 * deterministically.
+	 * 
+	 * @param data User data passed to the callback
+	 * @param callback Thread-safe near callback
+	 * @param maxContacts Maximum number of contacts per pair, this is the 
+	 * size of the scratch buffer passed to the callback
+	 * @param contacts Receives the merged contacts, it is grown as needed
+	 * @param executor Executor that runs the additional threads
+	 * @param threadCount Total number of threads, including the caller
+	 * @return The number of contacts written to the start of <tt>contacts</tt>
+	 */
+	int collideParallel (Object data, DParallelNearCallback callback, 
+			int maxContacts, DContactBuffer contacts, 
+			Executor executor, int threadCount);
+
+	/**
+	 * Run broadphase and narrow phase and append all contacts to a batch, 
+	 * without any near callback.
+	 * <p>
+	 * This is equivalent to a near callback that calls 
+	 * <tt>OdeHelper.collide(o1, o2, maxContacts, ...)</tt> for every pair, 
+	 * with pairs that involve sub-spaces expanded as described in 
+	 * {@link #collideParallel(Object, DNearCallback, Executor, int)}.
+	 * The contacts can be turned into joints with 
+	 * {@link DJointGroup#createContactJoints(DWorld, DContactBatch, DContact.DSurfaceParameters)}.
+	 * 
+	 * @param maxContacts Maximum number of contacts per pair
+	 * @param contacts Receives the contacts, existing contacts are kept
+	 * @return The number of contacts appended
+	 */
+	int collideContacts (int maxContacts, DContactBatch contacts);
+
+	/**
+	 * Multi-threaded variant of {@link #collideContacts(int, DContactBatch)}.
+	 * Every thread collides its pairs into its own batch, the batches are 
+	 * appended to <tt>contacts</tt> in the same order as a serial run.
+	 * 
+	 * @param maxContacts Maximum number of contacts per pair
+	 * @param contacts Receives the contacts, existing contacts are kept
+	 * @param executor Executor that runs the additional threads
+	 * @param threadCount Total number of threads, including the caller
+	 * @return The number of contacts appended
+	 */
+	int collideContacts (int maxContacts, DContactBatch contacts, 
+			Executor executor, int threadCount);
 	
 	
 	/**
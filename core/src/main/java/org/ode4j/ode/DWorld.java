@@ -24,6 +24,9 @@
  *************************************************************************/
 package org.ode4j.ode;
 
+import java.nio.DoubleBuffer;
+import java.util.concurrent.Executor;
+
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.threading.DThreadingImplementation;
@@ -202,7 +205,6 @@ public interface DWorld {
 	 * @param count Thread count limit value for island stepping
 	 * @see #getStepIslandsProcessingMaxThreadCount()
 	 */
-	@Deprecated
 	void setStepIslandsProcessingMaxThreadCount(int count);
 	
 	/**
@@ -215,7 +217,6 @@ public interface DWorld {
 	 * @return Current thread count limit value for island stepping
 	 * @see #setStepIslandsProcessingMaxThreadCount(int)
 	 */
-	@Deprecated
 	int getStepIslandsProcessingMaxThreadCount();
 
 	/**
@@ -339,11 +340,64 @@ public interface DWorld {
 	 * @param w The world to change threading implementation for.
 	 * @param functions_info Pointer to threading functions structure
 	 * @param threading_impl ID of threading implementation object
-	 * @deprecated This is not supported by ode4j.
+	 * @see OdeHelper#allocateMultiThreaded()
+	 * @see #setStepExecutor(Executor, int)
 	 */
 	void setStepThreadingImplementation(final DThreadingFunctionsInfo functions_info, 
 			DThreadingImplementation threading_impl);
 
+	/**
+	 * Use an executor for [quick]stepping the world.
+	 *
+	 * <p>Island stepping and stepper stages are posted to the executor given,
+	 * e.g. a {@code ForkJoinPool}, a virtual thread executor or a fixed thread pool.
+	 * Every world may use its own executor, so that worlds stepped in parallel 
+	 * do not contend on a shared queue. The stepping thread participates in the 
+	 * processing while waiting for the step to finish.
+	 *
+	 * <p>The number of islands stepped in parallel is the minimum of 
+	 * {@code threadCount}, the island count and the limit set with 
+	 * {@link #setStepIslandsProcessingMaxThreadCount(int)}.
+	 *
+	 * <p>The executor is not shut down by the world.
+	 * 
+	 * @param executor The executor to use or {@code null} to revert to the default
+	 * implementation, which processes all calls in the stepping thread (caller-runs)
+	 * @param threadCount Number of threads the stepping may be distributed to or 
+	 * 0 to use the number of available processors
+	 */
+	void setStepExecutor(Executor executor, int threadCount);
+
+	/**
+	 * Enable or disable zero-garbage stepping.
+	 *
+	 * <p>By default the steppers allocate their temporary arrays and call
+	 * contexts anew for every island in every step and leave them to the
+	 * garbage collector. With zero-garbage stepping the world keeps them
+	 * in its working memory and reuses them, so that once the working memory
+	 * has grown to the size of the largest islands, {@link #quickStep(double)}
+	 * and {@link #step(double)} do not allocate any memory on the Java heap
+	 * with the default (self-threaded) threading implementation.
+	 * This covers the steppers themselves and ball and hinge joints without
+	 * limits or motors, other joint types may still allocate small
+	 * temporaries while their constraint rows are computed.
+	 *
+	 * <p>The working memory is only released by {@link #cleanupWorkingMemory()},
+	 * or by disabling zero-garbage stepping again.
+	 * If worlds share working memory, they should use the same setting.
+	 *
+	 * @param enabled {@code true} to reuse the per-step objects, the default
+	 * is {@code false}
+	 * @see #useSharedWorkingMemory(DWorld)
+	 */
+	void setZeroGarbageStepping(boolean enabled);
+
+	/**
+	 * @return Whether zero-garbage stepping is enabled.
+	 * @see #setZeroGarbageStepping(boolean)
+	 */
+	boolean isZeroGarbageStepping();
+
 	/**
 	 * Step the world.
 	 *
@@ -454,6 +508,267 @@ public interface DWorld {
 	 */
 	double getQuickStepW();
 
+
+	/**
+	 * Enable warm starting of the QuickStep solver.
+	 * <p>
+	 * The solver then starts from the constraint forces of the previous step, 
+	 * scaled by <tt>factor</tt>, instead of from zero. This usually allows 
+	 * far fewer iterations for resting contacts such as stacks. 
+	 * <p>
+	 * Persistent joints keep their forces themselves. Contact joints are 
+	 * usually recreated every step, so their normal forces are kept in a 
+	 * contact cache of the world. A new contact takes over the normal force 
+	 * of a contact of the previous step that has the same geoms (in the same 
+	 * order), the same <tt>side1</tt>/<tt>side2</tt> features and lies within 
+	 * the tolerance distance, see {@link #setQuickStepWarmStartTolerance(double)}.
+	 * Contact friction is not warm started.
+	 * 
+	 * @param factor The default is 0, which disables warm starting. Around 
+	 * 0.9 works well, with 1 the solver may start to jitter.
+	 */
+	void setQuickStepWarmStartFactor(double factor);
+
+
+	/**
+	 * @return the warm starting factor, 0 if warm starting is disabled
+	 * @see #setQuickStepWarmStartFactor(double)
+	 */
+	double getQuickStepWarmStartFactor();
+
+
+	/**
+	 * Set how far a contact may move between two steps and still be matched 
+	 * with its predecessor in the contact cache. The distance is measured in 
+	 * the frame of the body of the first geom.
+	 * 
+	 * @param distance The default is 0.05.
+	 * @see #setQuickStepWarmStartFactor(double)
+	 */
+	void setQuickStepWarmStartTolerance(double distance);
+
+
+	/**
+	 * @return the contact matching distance of the warm starting cache
+	 * @see #setQuickStepWarmStartTolerance(double)
+	 */
+	double getQuickStepWarmStartTolerance();
+
+
+	/**
+	 * Let the QuickStep solver stop early once an island has converged.
+	 * <p>
+	 * Every few iterations (see {@link #setQuickStepToleranceCheckInterval(int)})
+	 * the solver compares the largest change of a constraint force in that 
+	 * iteration with the largest constraint force of the island. If the 
+	 * ratio is at most <tt>tolerance</tt>, the island is finished. Quiet 
+	 * islands then need only a few iterations, while heavily loaded islands 
+	 * still get up to {@link #getQuickStepNumIterations()} iterations.
+	 * 
+	 * @param tolerance The default is 0, which always runs all iterations. 
+	 * Values around 0.001 to 0.01 are reasonable.
+	 * @see #getQuickStepIslandIterations(int)
+	 */
+	void setQuickStepTolerance(double tolerance);
+
+
+	/**
+	 * @return the relative convergence tolerance, 0 if disabled
+	 * @see #setQuickStepTolerance(double)
+	 */
+	double getQuickStepTolerance();
+
+
+	/**
+	 * Set the number of iterations between two convergence checks. 
+	 * The check costs little, but is not free. 
+	 * 
+	 * @param interval The default is 4.
+	 * @see #setQuickStepTolerance(double)
+	 */
+	void setQuickStepToleranceCheckInterval(int interval);
+
+
+	/**
+	 * @return the number of iterations between two convergence checks
+	 * @see #setQuickStepToleranceCheckInterval(int)
+	 */
+	int getQuickStepToleranceCheckInterval();
+
+
+	/**
+	 * Iterative methods of the QuickStep solver.
+	 * @see DWorld#setQuickStepSolver(QuickStepSolver)
+	 */
+	public enum QuickStepSolver {
+		/** 
+		 * Successive over-relaxation (projected Gauss-Seidel), the default. 
+		 */
+		SOR,
+		/** 
+		 * Conjugate gradient method with Jacobi preconditioner. It only 
+		 * handles equality constraints, so it is only used for islands 
+		 * without bounded rows, e.g. chains of ball, hinge or fixed joints 
+		 * without limits, motors and contacts. Other islands are solved with 
+		 * SOR. One CG iteration costs about two SOR iterations, but converges 
+		 * much faster on long chains.
+		 */
+		CG,
+		/** 
+		 * SOR with Nesterov momentum on the constraint forces. The momentum 
+		 * is reset whenever an iteration changes the forces more than the 
+		 * previous one. This helps islands that are dominated by equality 
+		 * constraints but also have bounded rows, e.g. ragdolls with joint 
+		 * limits. 
+		 */
+		ACCELERATED_PGS
+	}
+
+
+	/**
+	 * Select the iterative method of the QuickStep solver. All methods 
+	 * perform at most {@link #getQuickStepNumIterations()} iterations and 
+	 * support early exit (see {@link #setQuickStepTolerance(double)}) and 
+	 * warm starting. The parallel solver for large islands (see 
+	 * {@link #setQuickStepParallelThreshold(int)}) is only used with SOR.
+	 * @param solver The default is {@link QuickStepSolver#SOR}.
+	 */
+	void setQuickStepSolver(QuickStepSolver solver);
+
+
+	/**
+	 * @return the iterative method of the QuickStep solver
+	 * @see #setQuickStepSolver(QuickStepSolver)
+	 */
+	QuickStepSolver getQuickStepSolver();
+
+
+	/**
+	 * Factorizations of the matrix of the unbounded constraint rows in 
+	 * {@link DWorld#step(double)}.
+	 * @see DWorld#setStepFactorization(StepFactorization)
+	 */
+	public enum StepFactorization {
+		/** 
+		 * The unblocked L*D*L' factorization of ODE, the default. 
+		 */
+		DENSE,
+		/** 
+		 * L*D*L' factorization in blocks of 32 columns, which keeps the 
+		 * data in the cache. About 5 to 10 percent faster for islands with 
+		 * several hundred unbounded rows, slower for small islands. 
+		 */
+		BLOCKED,
+		/** 
+		 * L*D*L' factorization that skips the leading zeros of every row. 
+		 * Rows of joints that do not share a body are not coupled, so this 
+		 * is much faster if the joints are ordered along the joint graph, 
+		 * e.g. for chains and ragdolls that were created link by link. 
+		 * For densely coupled rows it is about two times slower than 
+		 * {@link #DENSE}.
+		 */
+		ENVELOPE,
+		/** 
+		 * Islands that only have unbounded rows and whose joints do not 
+		 * form a loop, e.g. robots and ragdolls without joint limits and 
+		 * motors, are solved without the matrix of the LCP solver, in time 
+		 * and memory linear in the number of joints. Joints attached to the 
+		 * static environment do not count as loops. Other islands are 
+		 * solved like with {@link #DENSE}.
+		 */
+		TREE
+	}
+
+
+	/**
+	 * Select the factorization that {@link #step(double)} uses for the 
+	 * constraint rows without bounds (e.g. ball, hinge or fixed joints 
+	 * without limits and motors). All methods compute the same result up 
+	 * to rounding errors. Bounded rows are still added one by one by the 
+	 * LCP solver. {@link #quickStep(double)} is not affected.
+	 * @param factorization The default is {@link StepFactorization#DENSE}.
+	 */
+	void setStepFactorization(StepFactorization factorization);
+
+
+	/**
+	 * @return the factorization of {@link #step(double)}
+	 * @see #setStepFactorization(StepFactorization)
+	 */
+	StepFactorization getStepFactorization();
+
+
+	/**
+	 * Solve large islands with all stepping threads.
+	 * <p>
+	 * Normally every island is solved by a single thread. Islands with at 
+	 * least <tt>rows</tt> constraint rows are instead solved by a variant of 
+	 * the SOR method that colors the joints so that no two joints of a color 
+	 * share a body. The joints of a color are then solved in parallel by the 
+	 * threads of the stepping threading implementation (see 
+	 * {@link #setStepThreadingImplementation}), one color after the other.
+	 * <p>
+	 * The result does not depend on the number of threads, but it differs 
+	 * from the result of the sequential solver, because the rows are solved 
+	 * in a different order. Every color costs a synchronization of the 
+	 * threads, so this only pays off for islands with thousands of rows.
+	 * 
+	 * @param rows The default is 0, which disables the parallel solver.
+	 */
+	void setQuickStepParallelThreshold(int rows);
+
+
+	/**
+	 * @return the minimum number of rows of an island for the parallel 
+	 * solver, 0 if disabled
+	 * @see #setQuickStepParallelThreshold(int)
+	 */
+	int getQuickStepParallelThreshold();
+
+
+	/**
+	 * @return the number of islands solved by the last call to 
+	 * {@link #quickStep(double)}
+	 */
+	int getQuickStepIslandCount();
+
+
+	/**
+	 * Islands are numbered in the order in which the world has found them, 
+	 * not in the order in which they have been solved. This order is the same 
+	 * for every step as long as the bodies, the joints and whether they are 
+	 * enabled do not change.
+	 * 
+	 * @param island index in [0, {@link #getQuickStepIslandCount()})
+	 * @return the number of bodies of the island
+	 */
+	int getQuickStepIslandBodyCount(int island);
+
+
+	/**
+	 * @param island index in [0, {@link #getQuickStepIslandCount()})
+	 * @return the number of constraint rows of the island
+	 * @see #getQuickStepIslandBodyCount(int)
+	 */
+	int getQuickStepIslandRowCount(int island);
+
+
+	/**
+	 * @param island index in [0, {@link #getQuickStepIslandCount()})
+	 * @return the number of solver iterations used by the island in the 
+	 * last QuickStep, 0 for islands without constraints
+	 * @see #setQuickStepTolerance(double)
+	 */
+	int getQuickStepIslandIterations(int island);
+
+
+	/**
+	 * @param island index in [0, {@link #getQuickStepIslandCount()})
+	 * @return the relative change of the constraint forces in the last 
+	 * checked iteration of the island (see {@link #setQuickStepTolerance(double)})
+	 */
+	double getQuickStepIslandResidual(int island);
+
 	
 	/**
 	 * Set auto disable linear threshold for newly created bodies.
@@ -702,4 +1017,137 @@ public interface DWorld {
 	 * @see DBody#setMaxAngularSpeed(double)
 	 */
 	void setMaxAngularSpeed (double max_speed);
+
+
+	/**
+	 * Number of doubles per body in the bulk state methods, e.g. 
+	 * {@link #getBodyStates(DoubleBuffer)}: position (3), quaternion 
+	 * (4, w first), linear velocity (3) and angular velocity (3).
+	 */
+	int BODY_STATE_SIZE = 13;
+
+
+	/**
+	 * @return the number of bodies in the world
+	 */
+	int getBodyCount();
+
+
+	/**
+	 * Copy the bodies of the world in the order of the bulk state methods
+	 * for all bodies. The order changes when bodies are created or 
+	 * destroyed.
+	 * @param bodies At least {@link #getBodyCount()} elements.
+	 * @return the number of bodies
+	 */
+	int getBodies(DBody[] bodies);
+
+
+	/**
+	 * Copy the state of all bodies in the order of {@link #getBodies(DBody[])},
+	 * {@link #BODY_STATE_SIZE} doubles per body, in a single pass over the 
+	 * bodies.
+	 * @param states Receives the states at its position, which is advanced.
+	 * @return the number of bodies
+	 */
+	int getBodyStates(DoubleBuffer states);
+
+
+	/**
+	 * @param states Receives the states starting at <tt>offset</tt>.
+	 * @param offset index of the first value
+	 * @return the number of bodies
+	 * @see #getBodyStates(DoubleBuffer)
+	 */
+	int getBodyStates(double[] states, int offset);
+
+
+	/**
+	 * Copy the state of the given bodies of this world.
+	 * @param bodies The bodies, in the order of the states.
+	 * @param states Receives the states at its position, which is advanced.
+	 * @see #getBodyStates(DoubleBuffer)
+	 */
+	void getBodyStates(DBody[] bodies, DoubleBuffer states);
+
+
+	/**
+	 * Set the state of all bodies in the order of {@link #getBodies(DBody[])}.
+	 * Quaternions are normalized, geoms of the bodies are updated.
+	 * @param states {@link #BODY_STATE_SIZE} doubles per body, read from its 
+	 * position, which is advanced.
+	 * @see #getBodyStates(DoubleBuffer)
+	 */
+	void setBodyStates(DoubleBuffer states);
+
+
+	/**
+	 * @param states The states starting at <tt>offset</tt>.
+	 * @param offset index of the first value
+	 * @see #setBodyStates(DoubleBuffer)
+	 */
+	void setBodyStates(double[] states, int offset);
+
+
+	/**
+	 * Set the state of the given bodies of this world.
+	 * @param bodies The bodies, in the order of the states.
+	 * @param states The states, read from its position, which is advanced.
+	 * @see #setBodyStates(DoubleBuffer)
+	 */
+	void setBodyStates(DBody[] bodies, DoubleBuffer states);
+
+
+	/**
+	 * Track which bodies changed, so that only those have to be exported 
+	 * after a step (see {@link #drainDirtyBodies(DBody[], DoubleBuffer)}).
+	 * <p>
+	 * A body becomes dirty when it is created, when its position, 
+	 * rotation or velocity is set (including {@link #setBodyStates}), and 
+	 * when a step moves or turns it more than the threshold (see 
+	 * {@link #setDirtyBodyThreshold(double, double)}) since it was last 
+	 * drained. Disabled bodies are not stepped and stay clean. Destroyed 
+	 * bodies are removed from the set.
+	 * <p>
+	 * Enabling marks all bodies as dirty. Tracking costs a comparison per 
+	 * stepped body.
+	 * @param enabled The default is false.
+	 */
+	void setDirtyBodyTracking(boolean enabled);
+
+
+	/**
+	 * @return whether changed bodies are tracked
+	 * @see #setDirtyBodyTracking(boolean)
+	 */
+	boolean getDirtyBodyTracking();
+
+
+	/**
+	 * Set how far a step has to move a body before it becomes dirty.
+	 * @param distance Distance of the position. The default is 0.
+	 * @param angle Rotation angle in radians. The default is 0.
+	 * @see #setDirtyBodyTracking(boolean)
+	 */
+	void setDirtyBodyThreshold(double distance, double angle);
+
+
+	/**
+	 * @return the number of dirty bodies, 0 if not tracked
+	 * @see #setDirtyBodyTracking(boolean)
+	 */
+	int getDirtyBodyCount();
+
+
+	/**
+	 * Move dirty bodies to an array and mark them as clean. Their current
+	 * pose becomes the reference for the thresholds. Bodies that do not fit
+	 * into the array stay dirty.
+	 * @param bodies Receives the dirty bodies.
+	 * @param states If not null, receives the states of the bodies (see 
+	 * {@link #getBodyStates(DBody[], DoubleBuffer)}), its position is advanced.
+	 * @return the number of bodies, 0 if not tracked
+	 * @see #setDirtyBodyTracking(boolean)
+	 */
+	int drainDirtyBodies(DBody[] bodies, DoubleBuffer states);
 }
@@ -50,13 +50,19 @@ public class OdeConfig {
 	
 	public static enum TRIMESH {
 		DISABLED,
-		GIMPACT;
+		GIMPACT,
+		/** 
+		 * GIMPACT colliders, but box and ray queries and trimesh-trimesh 
+		 * pruning use an AABB tree instead of testing every triangle. 
+		 * The tree is built once per trimesh data and refitted when a 
+		 * trimesh moves. Best for large meshes, e.g. static levels.
+		 */
+		BVH;
 	}
 	
 	
-	/** Do not use directly.
-	 * TZ: For now the only option: DISABLED. */
-	public static final TRIMESH dTRIMESH_TYPE = TRIMESH.GIMPACT;
+	/** See {@link #getTrimeshType()} and {@link #setTrimeshType(TRIMESH)}. */
+	private static volatile TRIMESH dTRIMESH_TYPE = TRIMESH.GIMPACT;
 	
 	/**
 	 * @return Whether double precision is used.
@@ -72,6 +78,24 @@ public class OdeConfig {
 		return dTRIMESH_TYPE != TRIMESH.DISABLED;
 	}
 	
+	/**
+	 * @return The trimesh implementation used for new trimesh data.
+	 */
+	public static TRIMESH getTrimeshType() {
+		return dTRIMESH_TYPE;
+	}
+	
+	/**
+	 * Select the trimesh implementation. This affects only trimesh data 
+	 * created afterwards, trimeshes use the implementation of their data.
+	 * GIMPACT and BVH data can be mixed, DISABLED can not be mixed with 
+	 * the others.
+	 * @param type trimesh implementation
+	 */
+	public static void setTrimeshType(TRIMESH type) {
+		dTRIMESH_TYPE = type;
+	}
+	
 	/**
 	 * @return Whether LIBCCD colliders are is enabled.
 	 */
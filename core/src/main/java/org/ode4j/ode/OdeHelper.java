@@ -25,14 +25,17 @@
 package org.ode4j.ode;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
 import org.ode4j.ode.DTriMesh.DTriArrayCallback;
 import org.ode4j.ode.DTriMesh.DTriCallback;
 import org.ode4j.ode.DTriMesh.DTriRayCallback;
+import org.ode4j.ode.internal.DxBVHSpace;
 import org.ode4j.ode.internal.DxBody;
 import org.ode4j.ode.internal.DxBox;
 import org.ode4j.ode.internal.DxCapsule;
@@ -500,6 +503,23 @@ public abstract class OdeHelper {
 		return DxQuadTreeSpace.dQuadTreeSpaceCreate((DxSpace) space, 
 				Center, Extents, Depth);
 	}
+	/**
+	 * Creates a dynamic AABB tree space, which has no fixed bounds.
+	 * @return BVH space
+	 * @see DBvhSpace
+	 */
+	public static DBvhSpace createBvhSpace () {
+		return DxBVHSpace.dBvhSpaceCreate(null);
+	}
+	/**
+	 * Creates a dynamic AABB tree space, which has no fixed bounds.
+	 * @param space The parent space, or <tt>null</tt>
+	 * @return BVH space
+	 * @see DBvhSpace
+	 */
+	public static DBvhSpace createBvhSpace (DSpace space) {
+		return DxBVHSpace.dBvhSpaceCreate((DxSpace) space);
+	}
 
 	/**
 	 * Create a box geom with the provided side lengths.
@@ -906,6 +926,29 @@ public abstract class OdeHelper {
 	}
 
 
+	/**
+	 * Writes heights to a tiled file for {@link DHeightfieldData#buildTiled}.
+	 * <p>
+	 * The samples are requested tile by tile and stored as floats, so 
+	 * terrains larger than the heap can be converted.
+	 *
+	 * @param file The file to write, it is overwritten.
+	 * @param heights Returns the raw height of each sample.
+	 * @param userData Passed to <code>heights</code>.
+	 * @param widthSamples Number of samples along x, at least two.
+	 * @param depthSamples Number of samples along z, at least two.
+	 * @param tileSize Samples per tile side, a power of two up to 16384.
+	 * Tiles of 64 to 256 samples are a good start.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeHeightfieldTiles( File file, 
+			DHeightfieldGetHeight heights, Object userData,
+			int widthSamples, int depthSamples, int tileSize ) throws IOException {
+		DxHeightfieldData.dGeomHeightfieldDataWriteTiled(file, heights, userData, 
+				widthSamples, depthSamples, tileSize);
+	}
+
+
 	/**
 	 * Trimesh class
 	 * Construction. Callbacks are optional.
@@ -1042,7 +1085,6 @@ public abstract class OdeHelper {
 	 * @see DThreadingImplementation#dExternalThreadingServeMultiThreadedImplementation
 	 * @see DThreadingImplementation#free()
 	 */
-	@Deprecated
 	public static DThreadingImplementation allocateMultiThreaded() {
 		return DxThreadingImplementation.dThreadingAllocateMultiThreadedImplementation();
 	}
@@ -1051,28 +1093,17 @@ public abstract class OdeHelper {
 	 * Creates an instance of built-in thread pool object that can be used to serve
 	 * multi-threaded threading implementations.
 	 *
-	 * The threads allocated inherit priority of caller thread. Their affinity is not
-	 * explicitly adjusted and gets the value the system assigns by default. Threads 
-	 * have their stack memory fully committed immediately on start. On POSIX platforms 
-	 * threads are started with all the possible signals blocked. Threads execute 
-	 * calls to {@code dAllocateODEDataForThread} with {@code ode_data_allocate_flags} 
-	 * on initialization.
-	 *
-	 * On POSIX platforms this function must be called with signals masked 
-	 * or other measures must be taken to prevent reception of signals by calling thread 
-	 * for the duration of the call.
+	 * The threads allocated are daemon threads and inherit priority of caller thread.
 	 * 
 	 * @param thread_count Number of threads to start in pool
 	 * @param stack_size Size of stack to be used for every thread or 0 for system default value
-//	 * @param ode_data_allocate_flags Flags to be passed to {@code dAllocateODEDataForThread} on 
-//	 * behalf of each thread
-	 * @return the allocated object or NULL on failure
+	 * @param reserved Reserved, pass {@code null}
+	 * @return the allocated object
 	 *
 	 * @see OdeHelper#allocateMultiThreaded()
 	 * @see DThreadingImplementation#shutdownProcessing()
 	 * @see DThreadingThreadPool#freeThreadPool()
 	 */
-	@Deprecated
 	public static DThreadingThreadPool allocateThreadPool(int thread_count, int stack_size, 
 			//int ode_data_allocate_flags, 
 			Object[][] reserved) {
@@ -0,0 +1,287 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.dRecip;
+
+/**
+ * L*D*L' factorizations for the large unbounded block of the Dantzig LCP 
+ * solver, as alternatives to {@link FastLDLT}. 
+ * <p>
+ * The matrix layout is the same as in {@link Matrix#dFactorLDLT}: A is 
+ * stored by rows with leading dimension <tt>nskip</tt>, only the lower 
+ * triangle is referenced, L is written into the strict lower triangle and
+ * the reciprocal diagonal of D into <tt>d</tt>. 
+ * <p>
+ * {@link #dFactorLDLT(double[], double[], int, int, double[])} works on column 
+ * blocks of {@link #BLOCK} columns (right-looking). Each block is factored, 
+ * the rows below it are solved against it, and the remaining matrix is 
+ * updated tile by tile, so the data of an update stays in the L1 cache. 
+ * FastLDLT instead walks through all previous rows for every new row, 
+ * which leaves the cache for more than a few hundred rows. 
+ * <p>
+ * {@link #dFactorLDLTEnvelope(double[], double[], int, int, int[])} skips 
+ * the leading zeros of every row. Two constraint rows are only coupled if
+ * their joints share a body, and L has no entries left of the first 
+ * non-zero of a row of A, so for chains and other sparse joint graphs most 
+ * of the work of the dense factorization is multiplication with zero.
+ */
+final class BlockedLDLT {
+
+	/** Columns per block, one tile of two blocks of rows fits into 16KB. */
+	static final int BLOCK = 32;
+
+	private BlockedLDLT() {}
+
+	/**
+	 * @return size of the <tt>tmpbuf</tt> of {@link #dFactorLDLT}
+	 */
+	static int dEstimateFactorLDLTTmpbufSize(int n) {
+		return n * BLOCK;
+	}
+
+	/**
+	 * Blocked factorization of A into L*D*L'.
+	 * @param tmpbuf Scratch of at least 
+	 * {@link #dEstimateFactorLDLTTmpbufSize(int)} elements.
+	 */
+	static void dFactorLDLT(double[] A, double[] d, int n, int nskip, 
+			double[] tmpbuf) {
+		for (int k = 0; k < n; k += BLOCK) {
+			final int kend = Math.min(k + BLOCK, n);
+			factorDiagonalBlock(A, d, k, kend, nskip);
+			if (kend == n) {
+				break;
+			}
+			// rows below the block: solve L_kk * D_kk * l' = a' for W = L*D,
+			// then copy W into tmpbuf (rows of BLOCK elements) and scale to L
+			for (int i = kend; i < n; i++) {
+				final int ri = i * nskip;
+				final int ti = (i - kend) * BLOCK - k;
+				for (int j = k; j < kend; j++) {
+					final int rj = j * nskip;
+					double s = A[ri + j];
+					for (int p = k; p < j; p++) {
+						s -= tmpbuf[ti + p] * A[rj + p];
+					}
+					tmpbuf[ti + j] = s;
+					A[ri + j] = s * d[j];
+				}
+			}
+			updateTrailing(A, tmpbuf, k, kend, n, nskip);
+		}
+	}
+
+	/**
+	 * Unblocked factorization of the diagonal block of the columns 
+	 * <tt>k..kend-1</tt>, which already contains the updates of all 
+	 * previous blocks.
+	 */
+	private static void factorDiagonalBlock(double[] A, double[] d, 
+			int k, int kend, int nskip) {
+		for (int i = k; i < kend; i++) {
+			final int ri = i * nskip;
+			for (int j = k; j < i; j++) {
+				final int rj = j * nskip;
+				double s = A[ri + j];
+				for (int p = k; p < j; p++) {
+					s -= A[ri + p] * A[rj + p];
+				}
+				A[ri + j] = s;
+			}
+			double s = A[ri + i];
+			for (int p = k; p < i; p++) {
+				final double w = A[ri + p];
+				final double l = w * d[p];
+				A[ri + p] = l;
+				s -= w * l;
+			}
+			d[i] = dRecip(s);
+		}
+	}
+
+	/**
+	 * A(i,j) -= sum_p L(i,p) * W(j,p) for all kend <= j <= i < n and 
+	 * k <= p < kend, in tiles of BLOCK x BLOCK and 2 x 2 elements. 
+	 * W is in <tt>W</tt>, one row of BLOCK elements for every row from 
+	 * <tt>kend</tt> on.
+	 */
+	private static void updateTrailing(double[] A, final double[] W, 
+			int k, int kend, int n, int nskip) {
+		final int kb = kend - k;
+		for (int ib = kend; ib < n; ib += BLOCK) {
+			final int iend = Math.min(ib + BLOCK, n);
+			for (int jb = kend; jb <= ib; jb += BLOCK) {
+				final int jend = Math.min(jb + BLOCK, n);
+				int i = ib;
+				for (; i + 1 < iend; i += 2) {
+					final int ri0 = i * nskip + k;
+					final int ri1 = ri0 + nskip;
+					// j <= i for both rows
+					final int jlast = Math.min(jend, i + 1);
+					int j = jb;
+					for (; j + 3 < jlast; j += 4) {
+						final int tj0 = (j - kend) * BLOCK;
+						final int tj1 = tj0 + BLOCK;
+						final int tj2 = tj1 + BLOCK;
+						final int tj3 = tj2 + BLOCK;
+						double s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+						double s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+						for (int p = 0; p < kb; p++) {
+							final double l0 = A[ri0 + p], l1 = A[ri1 + p];
+							final double w0 = W[tj0 + p], w1 = W[tj1 + p];
+							final double w2 = W[tj2 + p], w3 = W[tj3 + p];
+							s00 += l0 * w0;
+							s01 += l0 * w1;
+							s02 += l0 * w2;
+							s03 += l0 * w3;
+							s10 += l1 * w0;
+							s11 += l1 * w1;
+							s12 += l1 * w2;
+							s13 += l1 * w3;
+						}
+						final int r0 = ri0 - k + j, r1 = ri1 - k + j;
+						A[r0] -= s00;
+						A[r0 + 1] -= s01;
+						A[r0 + 2] -= s02;
+						A[r0 + 3] -= s03;
+						A[r1] -= s10;
+						A[r1 + 1] -= s11;
+						A[r1 + 2] -= s12;
+						A[r1 + 3] -= s13;
+					}
+					if (j + 1 < jlast) {
+						final int tj0 = (j - kend) * BLOCK;
+						final int tj1 = tj0 + BLOCK;
+						double s00 = 0, s01 = 0, s10 = 0, s11 = 0;
+						for (int p = 0; p < kb; p++) {
+							final double l0 = A[ri0 + p], l1 = A[ri1 + p];
+							final double w0 = W[tj0 + p], w1 = W[tj1 + p];
+							s00 += l0 * w0;
+							s01 += l0 * w1;
+							s10 += l1 * w0;
+							s11 += l1 * w1;
+						}
+						A[ri0 - k + j] -= s00;
+						A[ri0 - k + j + 1] -= s01;
+						A[ri1 - k + j] -= s10;
+						A[ri1 - k + j + 1] -= s11;
+						j += 2;
+					}
+					if (j < jlast) {
+						final int tj = (j - kend) * BLOCK;
+						double s0 = 0, s1 = 0;
+						for (int p = 0; p < kb; p++) {
+							final double w = W[tj + p];
+							s0 += A[ri0 + p] * w;
+							s1 += A[ri1 + p] * w;
+						}
+						A[ri0 - k + j] -= s0;
+						A[ri1 - k + j] -= s1;
+					}
+					if (i + 1 >= jb && i + 1 < jend) {
+						// diagonal element of the second row
+						final int tj = (i + 1 - kend) * BLOCK;
+						double s = 0;
+						for (int p = 0; p < kb; p++) {
+							s += A[ri1 + p] * W[tj + p];
+						}
+						A[ri1 - k + i + 1] -= s;
+					}
+				}
+				if (i < iend) {
+					final int ri = i * nskip + k;
+					final int jlast = Math.min(jend, i + 1);
+					for (int j = jb; j < jlast; j++) {
+						final int tj = (j - kend) * BLOCK;
+						double s = 0;
+						for (int p = 0; p < kb; p++) {
+							s += A[ri + p] * W[tj + p];
+						}
+						A[ri - k + j] -= s;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Factorization of A into L*D*L' that skips the leading zeros of the 
+	 * rows of A.
+	 * @param first Receives the column of the first non-zero of each row 
+	 * of L, for {@link #dSolveLDLTEnvelope}. Length at least <tt>n</tt>.
+	 */
+	static void dFactorLDLTEnvelope(double[] A, double[] d, int n, int nskip, 
+			int[] first) {
+		for (int i = 0; i < n; i++) {
+			final int ri = i * nskip;
+			int f = 0;
+			while (f < i && A[ri + f] == 0) {
+				f++;
+			}
+			first[i] = f;
+			for (int j = f; j < i; j++) {
+				final int rj = j * nskip;
+				double s = A[ri + j];
+				for (int p = Math.max(f, first[j]); p < j; p++) {
+					s -= A[ri + p] * A[rj + p];
+				}
+				A[ri + j] = s;
+			}
+			double s = A[ri + i];
+			for (int p = f; p < i; p++) {
+				final double w = A[ri + p];
+				final double l = w * d[p];
+				A[ri + p] = l;
+				s -= w * l;
+			}
+			d[i] = dRecip(s);
+		}
+	}
+
+	/**
+	 * Solve L*D*L'*x=b for a factorization of 
+	 * {@link #dFactorLDLTEnvelope}, x overwrites b.
+	 */
+	static void dSolveLDLTEnvelope(final double[] L, final double[] d, 
+			double[] b, int n, int nskip, final int[] first) {
+		for (int i = 0; i < n; i++) {
+			final int ri = i * nskip;
+			double s = b[i];
+			for (int p = first[i]; p < i; p++) {
+				s -= L[ri + p] * b[p];
+			}
+			b[i] = s;
+		}
+		for (int i = 0; i < n; i++) {
+			b[i] *= d[i];
+		}
+		for (int i = n - 1; i > 0; i--) {
+			final int ri = i * nskip;
+			final double bi = b[i];
+			for (int p = first[i]; p < i; p++) {
+				b[p] -= L[ri + p] * bi;
+			}
+		}
+	}
+}
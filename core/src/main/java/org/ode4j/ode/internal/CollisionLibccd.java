@@ -82,6 +82,8 @@ public class CollisionLibccd {
 	private static class ccd_convex_t extends ccd_obj_t {
 		//ccd_obj_t o;
 		DxConvex convex;
+		/** Support vertex of the previous query of this pair, start of the next one. */
+		int last;
 	};
 	//typedef struct _ccd_convex_t ccd_convex_t;
 
@@ -167,6 +169,7 @@ public class CollisionLibccd {
 	{
 		ccdGeomToObj(g, c);
 		c.convex = g;
+		c.last = g.getSupportHint();
 	}
 
 
@@ -269,26 +272,19 @@ public class CollisionLibccd {
 		@Override
 		public void run(Object obj, ccd_vec3_t _dir, ccd_vec3_t v) {
 			final ccd_convex_t c = (ccd_convex_t )obj;
-			final ccd_vec3_t dir = new ccd_vec3_t(), p = new ccd_vec3_t();
-			double maxdot, dot;
-			int i;
+			final ccd_vec3_t dir = new ccd_vec3_t();
 			double []curp;
 
 			ccdVec3Copy(dir, _dir);
 			ccdQuatRotVec(dir, c.rot_inv);
 
-			maxdot = -CCD_REAL_MAX;
+			// MPR asks for many support points with slowly changing
+			// directions, hill-climbing from the previous one is cheap.
+			int i = c.convex.supportVertex(ccdVec3X(dir), ccdVec3Y(dir), ccdVec3Z(dir), c.last);
+			c.last = i;
+			c.convex.setSupportHint(i);
 			curp = c.convex.getPoints();
-			int curpI = 0;
-			for (i = 0; i < c.convex.getPointcount(); i++, curpI += 3){
-				ccdVec3Set(p, curp[curpI+0], curp[curpI+1], curp[curpI+2]);
-				dot = ccdVec3Dot(dir, p);
-				if (dot > maxdot){
-					ccdVec3Copy(v, p);
-					maxdot = dot;
-				}
-			}
-
+			ccdVec3Set(v, curp[i*3+0], curp[i*3+1], curp[i*3+2]);
 
 			// transform support vertex
 			ccdQuatRotVec(v, c.rot);
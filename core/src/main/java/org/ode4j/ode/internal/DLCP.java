@@ -49,8 +49,8 @@ import static org.ode4j.ode.internal.cpp4j.Cstring.memmove;
 
 import org.ode4j.math.DMatrixN;
 import org.ode4j.ode.DStopwatch;
+import org.ode4j.ode.DWorld.StepFactorization;
 import org.ode4j.ode.OdeConfig;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
 
 
@@ -267,8 +267,8 @@ public class DLCP {
 
 //#ifdef dLCP_FAST
 
-    private final int m_n;
-    private final int m_nskip;
+    private int m_n;
+    private int m_nskip;
     private int m_nub;
     private int m_nC, m_nN;              // size of each index set
 	//  ATYPE A;				// A rows
@@ -283,6 +283,9 @@ public class DLCP {
 	private double[] m_Dell,m_ell,m_tmp;
 	private boolean[] m_state;
 	private int[] m_findex, m_p, m_C;
+	private StepFactorization m_factorization;
+	private double[] m_ldlttmp;				// for StepFactorization.BLOCKED
+	private int[] m_first;					// for StepFactorization.ENVELOPE
 
 	private final int AROWp(int i) { return i*m_nskip; };
 	protected final double AROW(int i, int j) { return m_A[i*m_nskip+j]; };
@@ -327,14 +330,21 @@ public class DLCP {
 	//		    dReal *_lo, dReal *_hi, dReal *_L, dReal *_d,
 	//		    dReal *_Dell, dReal *_ell, dReal *_tmp,
 	//		    int *_state, int *_findex, int *_p, int *_C, dReal **Arows)
-	DLCP (int _n, int _nskip, int _nub, double []_Adata, double[] _x, double[] _b, double[] _w,
+	/**
+	 * The constructor of the C++ version, separated so that an instance can be 
+	 * reused by following steps.
+	 */
+	void Initialize (int _n, int _nskip, int _nub, double []_Adata, double[] _x, double[] _b, double[] _w,
 			double[] _lo, double[] _hi, double[] _L, double[] _d,
 			double[] _Dell, double[] _ell, double[] _tmp,
-			boolean []_state, int []_findex, int []_p, int []_C, double[][]Arows)
+			boolean []_state, int []_findex, int []_p, int []_C, double[][]Arows,
+			StepFactorization _factorization, double[] _ldlttmp, int[] _first)
 			{
 	    m_n = _n;
 	    m_nskip = _nskip;
 	    m_nub = _nub;
+	    m_nC = 0;
+	    m_nN = 0;
 	    if (ROWPTRS) {//# ifdef ROWPTRS
 	        //m_A(Arows),
 	        throw new UnsupportedOperationException();
@@ -355,6 +365,9 @@ public class DLCP {
 	    m_findex = _findex;
 	    m_p = _p;
 	    m_C = _C;
+	    m_factorization = _factorization;
+	    m_ldlttmp = _ldlttmp;
+	    m_first = _first;
 
 	    Matrix.dSetZero (m_x, m_n);
 
@@ -426,9 +439,8 @@ public class DLCP {
 		            memcpy(m_L, Lrow, m_A, AROWp(j), j+1);
 		        }
 		    }
-		    dFactorLDLT (m_L,m_d,nub,m_nskip);
 		    memcpy (m_x,m_b,nub);//*sizeof(dReal));
-		    dSolveLDLT (m_L,m_d,m_x,nub,m_nskip);
+		    factorAndSolveLDLT (m_factorization,m_L,m_d,m_x,nub,m_nskip,m_ldlttmp,m_first);
 		    dSetZero (m_w,nub);
 		    {
 		        int[] C = m_C;
@@ -551,7 +563,7 @@ public class DLCP {
 	}
 
 
-	void transfer_i_from_C_to_N (int i, BlockPointer tmpbuf)
+	void transfer_i_from_C_to_N (int i, double[] tmpbuf)
 	{
 	    {
 	        int[] C = m_C;
@@ -726,9 +738,58 @@ public class DLCP {
 	//***************************************************************************
 	// an optimized Dantzig LCP driver routine for the lo-hi LCP problem.
 
+	private static DLCP ObtainLCP(DxWorldProcessMemArena memarena)
+	{
+		Object solverObjects = memarena.GetSolverObjects();
+		if (solverObjects instanceof DLCP) {
+			return (DLCP) solverObjects;
+		}
+		DLCP lcp = new DLCP();
+		memarena.SetSolverObjects(lcp);
+		return lcp;
+	}
+
+	/**
+	 * Factorize A into L*D*L' with the given method and solve L*D*L'*x=b,
+	 * x overwrites b.
+	 * @param tmpbuf scratch for {@link StepFactorization#BLOCKED}, see 
+	 * {@link BlockedLDLT#dEstimateFactorLDLTTmpbufSize(int)}
+	 * @param first scratch of size n for {@link StepFactorization#ENVELOPE}
+	 */
+	private static void factorAndSolveLDLT (StepFactorization factorization,
+			double[] A, double[] d, double[] b, int n, int nskip, 
+			double[] tmpbuf, int[] first)
+	{
+		switch (factorization) {
+		case BLOCKED:
+			BlockedLDLT.dFactorLDLT (A,d,n,nskip,tmpbuf);
+			dSolveLDLT (A,d,b,n,nskip);
+			break;
+		case ENVELOPE:
+			BlockedLDLT.dFactorLDLTEnvelope (A,d,n,nskip,first);
+			BlockedLDLT.dSolveLDLTEnvelope (A,d,b,n,nskip,first);
+			break;
+		default:
+			dFactorLDLT (A,d,n,nskip);
+			dSolveLDLT (A,d,b,n,nskip);
+		}
+	}
+
 	static void dSolveLCP (DxWorldProcessMemArena memarena,
 	        int n, double[] A, double[] x, double[] b,
 			double[] outer_w, int nub, double[] lo, double[] hi, int []findex)
+	{
+		dSolveLCP (memarena,n,A,x,b,outer_w,nub,lo,hi,findex,StepFactorization.DENSE);
+	}
+
+	/**
+	 * @param factorization method for the initial factorization of the
+	 * unbounded variables
+	 */
+	static void dSolveLCP (DxWorldProcessMemArena memarena,
+	        int n, double[] A, double[] x, double[] b,
+			double[] outer_w, int nub, double[] lo, double[] hi, int []findex,
+			StepFactorization factorization)
 	{
 		//	  dAASSERT (n>0 && A && x && b && w && lo && hi && nub >= 0 && nub <= n);
 		dAASSERT (n>0 && nub >= 0 && nub <= n);
@@ -747,8 +808,11 @@ public class DLCP {
 		    dSetZero (d);//, n);
 
 		    int nskip = dPAD(n);
-			Matrix.dFactorLDLT (A,d,n,nskip);		// use w for d
-			Matrix.dSolveLDLT (A,d,b,n,nskip);
+		    double[] ldlttmp = factorization == StepFactorization.BLOCKED ? 
+		            memarena.AllocateArrayDReal(BlockedLDLT.dEstimateFactorLDLTTmpbufSize(n)) : null;
+		    int[] first = factorization == StepFactorization.ENVELOPE ? 
+		            memarena.AllocateArrayInt(n) : null;
+			factorAndSolveLDLT (factorization,A,d,b,n,nskip,ldlttmp,first);		// use w for d
 			memcpy (x,b,n);//*sizeof(dReal));
 
 			return;
@@ -768,13 +832,22 @@ public class DLCP {
 		}
 		int[] p = memarena.AllocateArrayInt(n);//ALLOCA (int,p,n*sizeof(int));
 		int[] C = memarena.AllocateArrayInt(n);//ALLOCA (int,C,n*sizeof(int));
+		double[] ldlttmp = factorization == StepFactorization.BLOCKED ? 
+		        memarena.AllocateArrayDReal(BlockedLDLT.dEstimateFactorLDLTTmpbufSize(n)) : null;
+		int[] first = factorization == StepFactorization.ENVELOPE ? 
+		        memarena.AllocateArrayInt(n) : null;
 
 		// for i in N, state[i] is 0 if x(i)==lo(i) or 1 if x(i)==hi(i)
 		boolean[]state = memarena.AllocateArrayBool(n);//ALLOCA (int,state,n*sizeof(int));
+		// for transfer_i_from_C_to_N(), nC is at most n
+		double[] transfertmp = memarena.AllocateArrayDReal(
+		        estimate_transfer_i_from_C_to_N_mem_req(n, nskip) / 8 /* sizeof(dReal) */);
 
 		// create LCP object. note that tmp is set to delta_w to save space, this
 		// optimization relies on knowledge of how tmp is used, so be careful!
-		DLCP lcp = new DLCP(n,nskip,nub,A,x,b,w,lo,hi,L,d,Dell,ell,delta_w,state,findex,p,C,Arows);
+		DLCP lcp = ObtainLCP(memarena);
+		lcp.Initialize(n,nskip,nub,A,x,b,w,lo,hi,L,d,Dell,ell,delta_w,state,findex,p,C,Arows,
+		        factorization,ldlttmp,first);
 		int adj_nub = lcp.getNub();
 
 		// loop over all indexes adj_nub..n-1. for index i, if x(i),w(i) satisfy the
@@ -974,7 +1047,6 @@ public class DLCP {
 			        lcp.pN_plusequals_s_times_qN (w, s, delta_w);
 			        w[i] += s * delta_w[i];
 
-			        BlockPointer tmpbuf;
 			        // switch indexes between sets if necessary
 			        switch (cmd) {
 			        case 1:     // done
@@ -998,14 +1070,12 @@ public class DLCP {
 			        case 5:     // keep going
 			          x[si] = lo[si];
 			          state[si] = false;
-			          tmpbuf = memarena.PeekBufferRemainder();
-			          lcp.transfer_i_from_C_to_N (si, tmpbuf);
+			          lcp.transfer_i_from_C_to_N (si, transfertmp);
 			          break;
 			        case 6:     // keep going
 			          x[si] = hi[si];
 			          state[si] = true;
-			          tmpbuf = memarena.PeekBufferRemainder();
-			          lcp.transfer_i_from_C_to_N (si, tmpbuf);
+			          lcp.transfer_i_from_C_to_N (si, transfertmp);
 			          break;
 			        }
 
@@ -1130,7 +1200,7 @@ public class DLCP {
 
         double total_time = 0;
         for (int count=0; count < 1000; count++) {
-            BlockPointer saveInner = arena.BEGIN_STATE_SAVE(); 
+            int saveInner = arena.BEGIN_STATE_SAVE(); 
             {
 
             // form (A,b) = a random positive definite LCP problem
@@ -0,0 +1,776 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ode4j.math.DMatrix3C;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DBvhSpace;
+
+
+/**
+ * Dynamic AABB tree space, see {@link DBvhSpace}.
+ * <p>
+ * The tree is stored in primitive arrays indexed by node. Leaves store a 
+ * geom and its fat AABB, inner nodes always have two children and the union 
+ * of the AABBs of their children. Insertion picks the sibling with the lowest 
+ * surface area cost and the tree is balanced with AVL-like rotations, see 
+ * <tt>b2DynamicTree</tt> in Box2D by Erin Catto.
+ */
+public class DxBVHSpace extends DxSpace implements DBvhSpace {
+
+	private static final int NULL_NODE = -1;
+	/** Leaf index of geoms that are in infGeoms. */
+	private static final int INF_NODE = -2;
+
+	private double margin = 0.1;
+
+	// geoms that have to be updated in the tree, may contain removed geoms
+	private final List<DxGeom> dirtyList = new ArrayList<DxGeom>();
+	// geoms with infinite AABBs, these are not in the tree
+	private final List<DxGeom> infGeoms = new ArrayList<DxGeom>();
+
+	// The tree. Node bounds are stored as min0,min1,min2,max0,max1,max2. 
+	// Free nodes have height -1 and are linked through child1.
+	private int root = NULL_NODE;
+	private double[] bounds = new double[16*6];
+	private int[] parent = new int[16];
+	private int[] child1 = new int[16];
+	private int[] child2 = new int[16];
+	private int[] height = new int[16];
+	private DxGeom[] leafGeom = new DxGeom[16];
+	private int nodeCapacity = 0;
+	private int freeList = NULL_NODE;
+
+	// traversal stack
+	private int[] stack = new int[64];
+
+	public static DxBVHSpace dBvhSpaceCreate( DxSpace space ) {
+		return new DxBVHSpace( space );
+	}
+
+	private DxBVHSpace( DxSpace space )
+	{
+		super(space);
+		type = dBvhSpaceClass;
+	}
+
+	@Override
+	public void setMargin(double margin) {
+		dUASSERT(margin >= 0, "margin must not be negative");
+		this.margin = margin;
+	}
+
+	@Override
+	public double getMargin() {
+		return margin;
+	}
+
+	@Override
+	void add( DxGeom g )
+	{
+		CHECK_NOT_LOCKED (this);
+		super.add(g);
+		g._bvhLeafEx = NULL_NODE;
+		dirtyList.add(g);
+	}
+
+	@Override
+	void remove( DxGeom g )
+	{
+		CHECK_NOT_LOCKED(this);
+		dUASSERT(g.parent_space == this,"object is not in this space");
+		int leaf = g._bvhLeafEx;
+		if (leaf >= 0) {
+			removeLeaf(leaf);
+			freeNode(leaf);
+		} else if (leaf == INF_NODE) {
+			infGeoms.remove(g);
+		}
+		g._bvhLeafEx = NULL_NODE;
+		super.remove(g);
+	}
+
+	@Override
+	void dirty( DxGeom g )
+	{
+		// The geom stays at its place in _geoms, the tree is updated by 
+		// cleanGeoms().
+		dirtyList.add(g);
+	}
+
+	@Override
+	public void cleanGeoms()
+	{
+		int dirtySize = dirtyList.size();
+		if (dirtySize == 0) {
+			return;
+		}
+		lock_count++;
+		for (int i = 0; i < dirtySize; i++) {
+			DxGeom g = dirtyList.get(i);
+			// skip removed geoms and duplicates
+			if (g.parent_space != this || !g.hasFlagDirty()) {
+				continue;
+			}
+			if (g instanceof DxSpace) {
+				((DxSpace)g).cleanGeoms();
+			}
+			g.recomputeAABB();
+			g.unsetFlagDirtyAndBad();
+			update(g);
+		}
+		dirtyList.clear();
+		lock_count--;
+	}
+
+	/**
+	 * Moves the geom between the tree and infGeoms and re-inserts it if it 
+	 * left its fat AABB.
+	 */
+	private void update( DxGeom g )
+	{
+		DAABB aabb = g._aabb;
+		int leaf = g._bvhLeafEx;
+		if (isInfinite(aabb)) {
+			if (leaf >= 0) {
+				removeLeaf(leaf);
+				freeNode(leaf);
+			}
+			if (leaf != INF_NODE) {
+				infGeoms.add(g);
+				g._bvhLeafEx = INF_NODE;
+			}
+			return;
+		}
+		if (leaf == INF_NODE) {
+			infGeoms.remove(g);
+			leaf = NULL_NODE;
+		}
+		if (leaf >= 0) {
+			if (fits(leaf, aabb)) {
+				return;
+			}
+			removeLeaf(leaf);
+		} else {
+			leaf = allocateNode();
+			leafGeom[leaf] = g;
+			g._bvhLeafEx = leaf;
+		}
+		final int o = leaf*6;
+		for (int a = 0; a < 3; a++) {
+			bounds[o + a] = aabb.getMin(a) - margin;
+			bounds[o + 3 + a] = aabb.getMax(a) + margin;
+		}
+		insertLeaf(leaf);
+	}
+
+	private static boolean isInfinite( DAABB aabb )
+	{
+		for (int a = 0; a < 3; a++) {
+			if (aabb.getMin(a) == -dInfinity || aabb.getMax(a) == dInfinity) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether the fat AABB of the leaf contains the AABB and is not 
+	 * much larger, e.g. after the geom was resized.
+	 */
+	private boolean fits( int leaf, DAABB aabb )
+	{
+		final double[] b = bounds;
+		final int o = leaf*6;
+		final double slack = 4*margin;
+		for (int a = 0; a < 3; a++) {
+			double min = aabb.getMin(a);
+			double max = aabb.getMax(a);
+			if (b[o + a] > min || b[o + 3 + a] < max 
+					|| min - b[o + a] > slack || b[o + 3 + a] - max > slack) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void collide( Object data, DNearCallback callback )
+	{
+		dAASSERT (callback);
+
+		lock_count++;
+		cleanGeoms();
+
+		if (root != NULL_NODE) {
+			collideTree(data, callback);
+		}
+
+		final int infSize = infGeoms.size();
+		for (int i = 0; i < infSize; i++) {
+			DxGeom g1 = infGeoms.get(i);
+			if (!GEOM_ENABLED(g1)) {
+				continue;
+			}
+			for (int j = i+1; j < infSize; j++) {
+				DxGeom g2 = infGeoms.get(j);
+				if (GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			}
+			collideAABB(g1._aabb, g1, data, callback);
+		}
+
+		lock_count--;
+	}
+
+	/**
+	 * Finds all overlapping pairs of leaves by traversing the tree with 
+	 * itself. The stack holds pairs of nodes, a pair of a node with itself 
+	 * stands for the pairs within the subtree of that node.
+	 */
+	private void collideTree( Object data, DNearCallback callback )
+	{
+		int sp = 0;
+		stack[sp++] = root;
+		stack[sp++] = root;
+		while (sp > 0) {
+			final int b = stack[--sp];
+			final int a = stack[--sp];
+			if (a == b) {
+				if (child1[a] == NULL_NODE) {
+					continue;
+				}
+				sp = push(sp, child1[a], child1[a]);
+				sp = push(sp, child2[a], child2[a]);
+				sp = push(sp, child1[a], child2[a]);
+				continue;
+			}
+			if (!overlaps(a, b)) {
+				continue;
+			}
+			final boolean leafA = child1[a] == NULL_NODE;
+			final boolean leafB = child1[b] == NULL_NODE;
+			if (leafA && leafB) {
+				DxGeom g1 = leafGeom[a];
+				DxGeom g2 = leafGeom[b];
+				if (GEOM_ENABLED(g1) && GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			} else if (leafB || (!leafA && height[a] >= height[b])) {
+				sp = push(sp, child1[a], b);
+				sp = push(sp, child2[a], b);
+			} else {
+				sp = push(sp, a, child1[b]);
+				sp = push(sp, a, child2[b]);
+			}
+		}
+	}
+
+	private int push( int sp, int a, int b )
+	{
+		if (sp + 2 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length*2);
+		}
+		stack[sp] = a;
+		stack[sp+1] = b;
+		return sp + 2;
+	}
+
+	private boolean overlaps( int n1, int n2 )
+	{
+		final double[] b = bounds;
+		final int o1 = n1*6;
+		final int o2 = n2*6;
+		for (int a = 0; a < 3; a++) {
+			if (b[o1 + a] > b[o2 + 3 + a] || b[o2 + a] > b[o1 + 3 + a]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean overlaps( int node, DAABBC aabb )
+	{
+		final double[] b = bounds;
+		final int o = node*6;
+		for (int a = 0; a < 3; a++) {
+			if (b[o + a] > aabb.getMax(a) || aabb.getMin(a) > b[o + 3 + a]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collides all enabled geoms in the tree whose fat AABB overlaps the AABB 
+	 * with the geom.
+	 */
+	private void collideAABB( DAABBC aabb, DxGeom geom, Object data, DNearCallback callback )
+	{
+		if (root == NULL_NODE) {
+			return;
+		}
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			final int n = stack[--sp];
+			if (!overlaps(n, aabb)) {
+				continue;
+			}
+			if (child1[n] == NULL_NODE) {
+				DxGeom g = leafGeom[n];
+				if (GEOM_ENABLED(g)) {
+					collideAABBs(g, geom, data, callback);
+				}
+			} else {
+				sp = push(sp, child1[n], child2[n]);
+			}
+		}
+	}
+
+	@Override
+	void collide2( Object data, DxGeom geom, DNearCallback callback )
+	{
+		dAASSERT (geom!=null && callback!=null);
+
+		lock_count++;
+		cleanGeoms();
+		geom.recomputeAABB();
+
+		if (geom instanceof DxRay) {
+			DxRay ray = (DxRay) geom;
+			DVector3C pos = ray.final_posr().pos();
+			DMatrix3C R = ray.final_posr().R();
+			collideRay(pos.get0(), pos.get1(), pos.get2(), 
+					R.get02(), R.get12(), R.get22(), ray.getLength(), 
+					geom, data, callback, null);
+		} else {
+			collideAABB(geom._aabb, geom, data, callback);
+		}
+
+		for (int i = 0; i < infGeoms.size(); i++) {
+			DxGeom g = infGeoms.get(i);
+			if (GEOM_ENABLED(g)) {
+				collideAABBs(g, geom, data, callback);
+			}
+		}
+
+		lock_count--;
+	}
+
+	/**
+	 * Traverses the nodes whose AABBs are hit by the ray. For each enabled 
+	 * leaf either the near callback is called with (leaf geom, geom) or, 
+	 * if <tt>query</tt> is not <tt>null</tt>, the query callback is called 
+	 * if the ray hits the actual AABB of the leaf geom.
+	 */
+	private void collideRay( double px, double py, double pz, 
+			double dx, double dy, double dz, double length, 
+			DxGeom geom, Object data, DNearCallback callback, DBvhQueryCallback query )
+	{
+		if (root == NULL_NODE) {
+			return;
+		}
+		final double ix = 1.0 / dx;
+		final double iy = 1.0 / dy;
+		final double iz = 1.0 / dz;
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			final int n = stack[--sp];
+			final int o = n*6;
+			if (!rayHits(px, py, pz, ix, iy, iz, length, 
+					bounds[o], bounds[o+1], bounds[o+2], bounds[o+3], bounds[o+4], bounds[o+5])) {
+				continue;
+			}
+			if (child1[n] == NULL_NODE) {
+				DxGeom g = leafGeom[n];
+				if (!GEOM_ENABLED(g)) {
+					continue;
+				}
+				if (query == null) {
+					collideAABBs(g, geom, data, callback);
+				} else {
+					DAABB a = g._aabb;
+					if (rayHits(px, py, pz, ix, iy, iz, length, a.getMin0(), a.getMin1(), 
+							a.getMin2(), a.getMax0(), a.getMax1(), a.getMax2())) {
+						query.call(data, g);
+					}
+				}
+			} else {
+				sp = push(sp, child1[n], child2[n]);
+			}
+		}
+	}
+
+	/**
+	 * Slab test of the ray segment against an AABB, using the inverse 
+	 * direction. 
+	 */
+	private static boolean rayHits( double px, double py, double pz, 
+			double ix, double iy, double iz, double length, 
+			double min0, double min1, double min2, double max0, double max1, double max2 )
+	{
+		double tmin = 0;
+		double tmax = length;
+		if (Double.isInfinite(ix)) {
+			if (px < min0 || px > max0) return false;
+		} else {
+			double t1 = (min0 - px) * ix;
+			double t2 = (max0 - px) * ix;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		}
+		if (Double.isInfinite(iy)) {
+			if (py < min1 || py > max1) return false;
+		} else {
+			double t1 = (min1 - py) * iy;
+			double t2 = (max1 - py) * iy;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		}
+		if (Double.isInfinite(iz)) {
+			if (pz < min2 || pz > max2) return false;
+		} else {
+			double t1 = (min2 - pz) * iz;
+			double t2 = (max2 - pz) * iz;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		}
+		return tmin <= tmax;
+	}
+
+	@Override
+	public void queryAABB( DAABBC aabb, Object data, DBvhQueryCallback callback )
+	{
+		dAASSERT (aabb!=null && callback!=null);
+		lock_count++;
+		cleanGeoms();
+		if (root != NULL_NODE) {
+			int sp = 0;
+			stack[sp++] = root;
+			while (sp > 0) {
+				final int n = stack[--sp];
+				if (!overlaps(n, aabb)) {
+					continue;
+				}
+				if (child1[n] == NULL_NODE) {
+					DxGeom g = leafGeom[n];
+					if (GEOM_ENABLED(g) && !g._aabb.isDisjoint(aabb)) {
+						callback.call(data, g);
+					}
+				} else {
+					sp = push(sp, child1[n], child2[n]);
+				}
+			}
+		}
+		for (int i = 0; i < infGeoms.size(); i++) {
+			DxGeom g = infGeoms.get(i);
+			if (GEOM_ENABLED(g) && !g._aabb.isDisjoint(aabb)) {
+				callback.call(data, g);
+			}
+		}
+		lock_count--;
+	}
+
+	@Override
+	public void queryRay( DVector3C start, DVector3C dir, double length, 
+			Object data, DBvhQueryCallback callback )
+	{
+		dAASSERT (start!=null && dir!=null && callback!=null);
+		lock_count++;
+		cleanGeoms();
+		final double px = start.get0(), py = start.get1(), pz = start.get2();
+		final double dx = dir.get0(), dy = dir.get1(), dz = dir.get2();
+		collideRay(px, py, pz, dx, dy, dz, length, null, data, null, callback);
+		for (int i = 0; i < infGeoms.size(); i++) {
+			DxGeom g = infGeoms.get(i);
+			DAABB a = g._aabb;
+			if (GEOM_ENABLED(g) && rayHits(px, py, pz, 1.0/dx, 1.0/dy, 1.0/dz, length, 
+					a.getMin0(), a.getMin1(), a.getMin2(), a.getMax0(), a.getMax1(), a.getMax2())) {
+				callback.call(data, g);
+			}
+		}
+		lock_count--;
+	}
+
+	//==============================================================================
+	// Tree
+	//==============================================================================
+
+	private int allocateNode()
+	{
+		if (freeList == NULL_NODE) {
+			int cap = nodeCapacity;
+			if (cap == parent.length) {
+				int newCap = cap*2;
+				bounds = Arrays.copyOf(bounds, newCap*6);
+				parent = Arrays.copyOf(parent, newCap);
+				child1 = Arrays.copyOf(child1, newCap);
+				child2 = Arrays.copyOf(child2, newCap);
+				height = Arrays.copyOf(height, newCap);
+				leafGeom = Arrays.copyOf(leafGeom, newCap);
+			}
+			nodeCapacity++;
+			freeNode(cap);
+		}
+		int n = freeList;
+		freeList = child1[n];
+		parent[n] = NULL_NODE;
+		child1[n] = NULL_NODE;
+		child2[n] = NULL_NODE;
+		height[n] = 0;
+		return n;
+	}
+
+	private void freeNode( int n )
+	{
+		leafGeom[n] = null;
+		height[n] = -1;
+		child1[n] = freeList;
+		freeList = n;
+	}
+
+	/** Surface area of the union of the two nodes, or of one node if n1 == n2. */
+	private double unionArea( int n1, int n2 )
+	{
+		final double[] b = bounds;
+		final int o1 = n1*6;
+		final int o2 = n2*6;
+		double x = Math.max(b[o1+3], b[o2+3]) - Math.min(b[o1], b[o2]);
+		double y = Math.max(b[o1+4], b[o2+4]) - Math.min(b[o1+1], b[o2+1]);
+		double z = Math.max(b[o1+5], b[o2+5]) - Math.min(b[o1+2], b[o2+2]);
+		return 2 * (x*y + y*z + z*x);
+	}
+
+	private void setUnion( int n, int n1, int n2 )
+	{
+		final double[] b = bounds;
+		final int o = n*6;
+		final int o1 = n1*6;
+		final int o2 = n2*6;
+		for (int a = 0; a < 3; a++) {
+			b[o + a] = Math.min(b[o1 + a], b[o2 + a]);
+			b[o + 3 + a] = Math.max(b[o1 + 3 + a], b[o2 + 3 + a]);
+		}
+	}
+
+	private void insertLeaf( int leaf )
+	{
+		if (root == NULL_NODE) {
+			root = leaf;
+			parent[leaf] = NULL_NODE;
+			return;
+		}
+
+		// find the best sibling
+		int index = root;
+		while (child1[index] != NULL_NODE) {
+			final int c1 = child1[index];
+			final int c2 = child2[index];
+
+			final double area = unionArea(index, index);
+			final double combinedArea = unionArea(index, leaf);
+
+			// cost of creating a new parent for this node and the new leaf
+			final double cost = 2 * combinedArea;
+			// minimum cost of pushing the leaf further down the tree
+			final double inheritanceCost = 2 * (combinedArea - area);
+
+			final double cost1 = descendCost(c1, leaf) + inheritanceCost;
+			final double cost2 = descendCost(c2, leaf) + inheritanceCost;
+
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		final int sibling = index;
+
+		// create a new parent
+		final int oldParent = parent[sibling];
+		final int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		setUnion(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		if (oldParent != NULL_NODE) {
+			if (child1[oldParent] == sibling) {
+				child1[oldParent] = newParent;
+			} else {
+				child2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+
+		refit(parent[leaf]);
+	}
+
+	private double descendCost( int child, int leaf )
+	{
+		if (child1[child] == NULL_NODE) {
+			return unionArea(child, leaf);
+		}
+		return unionArea(child, leaf) - unionArea(child, child);
+	}
+
+	/**
+	 * Removes the leaf from the tree, the node itself is not freed.
+	 */
+	private void removeLeaf( int leaf )
+	{
+		if (leaf == root) {
+			root = NULL_NODE;
+			return;
+		}
+		final int p = parent[leaf];
+		final int grandParent = parent[p];
+		final int sibling = child1[p] == leaf ? child2[p] : child1[p];
+		if (grandParent != NULL_NODE) {
+			if (child1[grandParent] == p) {
+				child1[grandParent] = sibling;
+			} else {
+				child2[grandParent] = sibling;
+			}
+			parent[sibling] = grandParent;
+			freeNode(p);
+			refit(grandParent);
+		} else {
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(p);
+		}
+		parent[leaf] = NULL_NODE;
+	}
+
+	/**
+	 * Balances and refits the AABBs and heights from the node up to the root.
+	 */
+	private void refit( int index )
+	{
+		while (index != NULL_NODE) {
+			index = balance(index);
+			final int c1 = child1[index];
+			final int c2 = child2[index];
+			height[index] = 1 + Math.max(height[c1], height[c2]);
+			setUnion(index, c1, c2);
+			index = parent[index];
+		}
+	}
+
+	/**
+	 * Performs a left or right rotation if node A is imbalanced.
+	 * @return the new root of the subtree
+	 */
+	private int balance( int iA )
+	{
+		if (child1[iA] == NULL_NODE || height[iA] < 2) {
+			return iA;
+		}
+		final int iB = child1[iA];
+		final int iC = child2[iA];
+		final int diff = height[iC] - height[iB];
+
+		if (diff > 1) {
+			// rotate C up
+			final int iF = child1[iC];
+			final int iG = child2[iC];
+			child1[iC] = iA;
+			parent[iC] = parent[iA];
+			parent[iA] = iC;
+			replaceChild(parent[iC], iA, iC);
+			if (height[iF] > height[iG]) {
+				child2[iC] = iF;
+				child2[iA] = iG;
+				parent[iG] = iA;
+				setUnion(iA, iB, iG);
+				setUnion(iC, iA, iF);
+				height[iA] = 1 + Math.max(height[iB], height[iG]);
+				height[iC] = 1 + Math.max(height[iA], height[iF]);
+			} else {
+				child2[iC] = iG;
+				child2[iA] = iF;
+				parent[iF] = iA;
+				setUnion(iA, iB, iF);
+				setUnion(iC, iA, iG);
+				height[iA] = 1 + Math.max(height[iB], height[iF]);
+				height[iC] = 1 + Math.max(height[iA], height[iG]);
+			}
+			return iC;
+		}
+
+		if (diff < -1) {
+			// rotate B up
+			final int iD = child1[iB];
+			final int iE = child2[iB];
+			child1[iB] = iA;
+			parent[iB] = parent[iA];
+			parent[iA] = iB;
+			replaceChild(parent[iB], iA, iB);
+			if (height[iD] > height[iE]) {
+				child2[iB] = iD;
+				child1[iA] = iE;
+				parent[iE] = iA;
+				setUnion(iA, iC, iE);
+				setUnion(iB, iA, iD);
+				height[iA] = 1 + Math.max(height[iC], height[iE]);
+				height[iB] = 1 + Math.max(height[iA], height[iD]);
+			} else {
+				child2[iB] = iE;
+				child1[iA] = iD;
+				parent[iD] = iA;
+				setUnion(iA, iC, iD);
+				setUnion(iB, iA, iE);
+				height[iA] = 1 + Math.max(height[iC], height[iD]);
+				height[iB] = 1 + Math.max(height[iA], height[iE]);
+			}
+			return iB;
+		}
+
+		return iA;
+	}
+
+	private void replaceChild( int p, int oldChild, int newChild )
+	{
+		if (p == NULL_NODE) {
+			root = newChild;
+		} else if (child1[p] == oldChild) {
+			child1[p] = newChild;
+		} else {
+			child2[p] = newChild;
+		}
+	}
+}
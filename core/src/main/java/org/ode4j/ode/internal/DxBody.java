@@ -47,6 +47,8 @@ import static org.ode4j.ode.internal.Rotation.dQMultiply0;
 import static org.ode4j.ode.internal.Rotation.dQfromR;
 import static org.ode4j.ode.internal.Rotation.dRfromQ;
 
+import java.nio.DoubleBuffer;
+
 import org.ode4j.math.DMatrix3;
 import org.ode4j.math.DMatrix3C;
 import org.ode4j.math.DQuaternion;
@@ -58,6 +60,7 @@ import org.ode4j.ode.DGeom;
 import org.ode4j.ode.DJoint;
 import org.ode4j.ode.DMass;
 import org.ode4j.ode.DMassC;
+import org.ode4j.ode.DWorld;
 import org.ode4j.ode.internal.Objects_H.DxPosR;
 import org.ode4j.ode.internal.Objects_H.DxPosRC;
 import org.ode4j.ode.internal.Objects_H.dxAutoDisable;
@@ -105,6 +108,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 	public final Ref<DxJointNode> firstjoint = new Ref<DxJointNode>();	// list of attached joints
 	//unsigned
 	int flags;			// some dxBodyFlagXXX flags
+	int dirty_index = -1; // index in the dirty body set of the world, if any
 	//  public dGeom geom;			// first collision geom associated with body
 	public DxGeom geom;			// first collision geom associated with body
 	DxMass mass;			// mass parameters about POR
@@ -182,6 +186,8 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		//addObjectToList (b,(dObject **) &w.firstbody);
 		addObjectToList(b, w.firstbody);
 		w.nb++;
+		if (w.dirty_bodies != null)
+			w.dirty_bodies.add(b);
 
 		// set auto-disable parameters
 		b.average_avel_buffer = b.average_lvel_buffer = null; // no buffer at beginning
@@ -232,6 +238,8 @@ public class DxBody extends DObject implements DBody, Cloneable {
 			n.joint.removeJointReferencesFromAttachedBodies ();
 			n = next;
 		}
+		if (world.dirty_bodies != null)
+			world.dirty_bodies.remove(this);
 		removeObjectFromList ();
 		world.nb--;
 
@@ -273,6 +281,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		// notify all attached geoms that this body has moved
 		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ())
 			geom2.dGeomMoved ();
+		dBodyMarkDirty ();
 	}
 
 	//TZ
@@ -283,6 +292,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		// notify all attached geoms that this body has moved
 		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ())
 			geom2.dGeomMoved ();
+		dBodyMarkDirty ();
 	}
 
 
@@ -299,6 +309,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ()) {
 			geom2.dGeomMoved ();
 		}
+		dBodyMarkDirty ();
 	}
 
 
@@ -318,26 +329,31 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		// notify all attached geoms that this body has moved
 		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ())
 			geom2.dGeomMoved ();
+		dBodyMarkDirty ();
 	}
 
 
 	public void dBodySetLinearVel  (double x, double y, double z)
 	{
 		lvel.set(x, y, z);
+		dBodyMarkDirty ();
 	}
 	public void dBodySetLinearVel  (DVector3C xyz)
 	{
 		lvel.set(xyz);
+		dBodyMarkDirty ();
 	}
 
 
 	public void dBodySetAngularVel (double x, double y, double z)
 	{
 		avel.set(x, y, z);
+		dBodyMarkDirty ();
 	}
 	public void dBodySetAngularVel (DVector3C xyz)
 	{
 		avel.set(xyz);
+		dBodyMarkDirty ();
 	}
 
 
@@ -972,6 +988,91 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		max_angular_speed = max_speed;
 	}
 
+	private void dBodyMarkDirty ()
+	{
+		if (world.dirty_bodies != null)
+			world.dirty_bodies.mark(dirty_index);
+	}
+
+
+	/**
+	 * Writes position, quaternion, linear and angular velocity.
+	 * @see DWorld#BODY_STATE_SIZE
+	 */
+	void dBodyGetState (DoubleBuffer s)
+	{
+		if (s.hasArray()) {
+			final int p = s.position();
+			dBodyGetState(s.array(), s.arrayOffset() + p);
+			s.position(p + DWorld.BODY_STATE_SIZE);
+			return;
+		}
+		final DVector3 pos = _posr.pos;
+		s.put(pos.get0()).put(pos.get1()).put(pos.get2());
+		s.put(_q.get0()).put(_q.get1()).put(_q.get2()).put(_q.get3());
+		s.put(lvel.get0()).put(lvel.get1()).put(lvel.get2());
+		s.put(avel.get0()).put(avel.get1()).put(avel.get2());
+	}
+
+
+	/**
+	 * Writes the state to <tt>s</tt>, starting at <tt>i</tt>.
+	 * @see #dBodyGetState(DoubleBuffer)
+	 */
+	void dBodyGetState (double[] s, int i)
+	{
+		final DVector3 pos = _posr.pos;
+		s[i] = pos.get0(); s[i+1] = pos.get1(); s[i+2] = pos.get2();
+		s[i+3] = _q.get0(); s[i+4] = _q.get1(); s[i+5] = _q.get2(); s[i+6] = _q.get3();
+		s[i+7] = lvel.get0(); s[i+8] = lvel.get1(); s[i+9] = lvel.get2();
+		s[i+10] = avel.get0(); s[i+11] = avel.get1(); s[i+12] = avel.get2();
+	}
+
+
+	/**
+	 * Reads the state written by {@link #dBodyGetState(DoubleBuffer)}.
+	 */
+	void dBodySetState (DoubleBuffer s)
+	{
+		if (s.hasArray()) {
+			final int p = s.position();
+			dBodySetState(s.array(), s.arrayOffset() + p);
+			s.position(p + DWorld.BODY_STATE_SIZE);
+			return;
+		}
+		_posr.pos.set(s.get(), s.get(), s.get());
+		_q.set(s.get(), s.get(), s.get(), s.get());
+		lvel.set(s.get(), s.get(), s.get());
+		avel.set(s.get(), s.get(), s.get());
+		dBodyStateChanged ();
+	}
+
+
+	/**
+	 * Reads the state written by {@link #dBodyGetState(double[], int)}.
+	 */
+	void dBodySetState (double[] s, int i)
+	{
+		_posr.pos.set(s[i], s[i+1], s[i+2]);
+		_q.set(s[i+3], s[i+4], s[i+5], s[i+6]);
+		lvel.set(s[i+7], s[i+8], s[i+9]);
+		avel.set(s[i+10], s[i+11], s[i+12]);
+		dBodyStateChanged ();
+	}
+
+
+	private void dBodyStateChanged ()
+	{
+		dNormalize4 (_q);
+		dRfromQ(_posr.Rw(), _q);
+
+		// notify all attached geoms that this body has moved
+		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ())
+			geom2.dGeomMoved ();
+		dBodyMarkDirty ();
+	}
+
+
 	//	void dBodySetMovedCallback(dxBody b, void (*callback)(dxBody))
 	public void dBodySetMovedCallback(BodyMoveCallBack callback)
 	{
@@ -1026,7 +1127,20 @@ public class DxBody extends DObject implements DBody, Cloneable {
 	// given a body b, apply its linear and angular rotation over the time
 	// interval h, thereby adjusting its position and orientation.
 
-	void dxStepBody (double h)
+	/**
+	 * Temporaries of {@link DxBody#dxStepBody(double, dxStepBodyTemporaries)}, 
+	 * the steppers keep one set per stepper arena.
+	 */
+	static final class dxStepBodyTemporaries
+	{
+		final DVector3 irv = new DVector3();
+		final DVector3 frv = new DVector3();
+		final DQuaternion q = new DQuaternion();
+		final DQuaternion q2 = new DQuaternion();
+		final DQuaternion dq = new DQuaternion();
+	}
+
+	void dxStepBody (double h, dxStepBodyTemporaries temporaries)
 	{
 		// cap the angular velocity
 		if ((flags & dxBodyMaxAngularSpeed) != 0) {
@@ -1044,13 +1158,13 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		_posr.pos.eqSum(_posr.pos(), lvel, h);
 
 		if ((flags & dxBodyFlagFiniteRotation) != 0) {
-			DVector3 irv = new DVector3();	// infitesimal rotation vector
-			DQuaternion q = new DQuaternion();	// quaternion for finite rotation
+			DVector3 irv = temporaries.irv;	// infitesimal rotation vector
+			DQuaternion q = temporaries.q;	// quaternion for finite rotation
 
 			if ((flags & dxBodyFlagFiniteRotationAxis) != 0) {
 				// split the angular velocity vector into a component along the finite
 				// rotation axis, and a component orthogonal to it.
-				DVector3 frv = new DVector3();		// finite rotation vector
+				DVector3 frv = temporaries.frv;		// finite rotation vector
 				double k = dCalcVectorDot3 (finite_rot_axis,avel);
 				//				frv.v[0] = finite_rot_axis.v[0] * k;
 				//				frv.v[1] = finite_rot_axis.v[1] * k;
@@ -1087,14 +1201,14 @@ public class DxBody extends DObject implements DBody, Cloneable {
 			}
 
 			// do the finite rotation
-			DQuaternion q2 = new DQuaternion();
+			DQuaternion q2 = temporaries.q2;
 			dQMultiply0 (q2,q,_q);
 			//for (j=0; j<4; j++) _q.v[j] = q2.v[j];
 			_q.set(q2);
 
 			// do the infitesimal rotation if required
 			if ((flags & dxBodyFlagFiniteRotationAxis) != 0) {
-				DQuaternion dq = new DQuaternion();
+				DQuaternion dq = temporaries.dq;
 				dDQfromW (dq,irv,_q);
 				//for (j=0; j<4; j++) _q.v[j] += h * dq[j];
 				_q.sum( _q, dq, h);
@@ -1102,7 +1216,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		}
 		else {
 			// the normal way - do an infitesimal rotation
-			DQuaternion dq = new DQuaternion();
+			DQuaternion dq = temporaries.dq;
 			dDQfromW (dq,avel,_q);
 			//for (j=0; j<4; j++) _q.v[j] += h * dq[j];
 			_q.sum( _q, dq, h);
@@ -1114,8 +1228,6 @@ public class DxBody extends DObject implements DBody, Cloneable {
 
 
 		// notify all attached geoms that this body has moved
-		for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ())
-			geom2.dGeomMoved ();
 	    DxWorldProcessContext world_process_context = world.UnsafeGetWorldProcessingContext(); 
 	    for (DxGeom geom2 = geom; geom2 != null; geom2 = geom2.dGeomGetBodyNext ()) {
 	        world_process_context.LockForStepbodySerialization();
@@ -1127,6 +1239,10 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		if (moved_callback != null)
 			moved_callback.run(this);
 
+		final DxDirtyBodySet dirty_bodies = world.dirty_bodies;
+		if (dirty_bodies != null)
+			dirty_bodies.stepped(this);
+
 
 		// damping
 		if ((flags & dxBodyLinearDamping)!=0) {
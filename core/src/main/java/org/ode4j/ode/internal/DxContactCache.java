@@ -0,0 +1,210 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import java.util.Arrays;
+
+import org.ode4j.math.DMatrix3C;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.internal.joints.DxJoint;
+import org.ode4j.ode.internal.joints.DxJointContact;
+
+
+/**
+ * Keeps the normal lambda of contact joints from one QuickStep to the next, 
+ * for warm starting.
+ * <p>
+ * Contact joints are usually destroyed after every step, so unlike other 
+ * joints they cannot carry their lambda over themselves. At the end of a 
+ * step the normal lambda of every contact joint is stored here, keyed by the 
+ * geom pair and the contact features (side1, side2). Entries with the same 
+ * key are chained, the contact position is stored in the frame of the first 
+ * body of the joint. Before the next step every contact joint takes over 
+ * the lambda of the closest unused entry with its key that lies within the 
+ * tolerance.
+ * <p>
+ * The friction rows start from zero. Their directions are recomputed from 
+ * the normal every step, and warm starting them made box stacks sway.
+ * <p>
+ * All arrays are kept and only grow. This is only accessed from the 
+ * stepping thread, outside of the island processing.
+ */
+final class DxContactCache {
+
+	private static final int NONE = -1;
+
+	private int count;
+	private DGeom[] g1 = new DGeom[0];
+	private DGeom[] g2 = new DGeom[0];
+	private int[] side1 = new int[0];
+	private int[] side2 = new int[0];
+	/** contact position in the frame of the first body, 3 per entry */
+	private double[] local = new double[0];
+	/** lambda of the normal row */
+	private double[] lambda = new double[0];
+	/** next entry with the same hash */
+	private int[] next = new int[0];
+	/** step in which an entry was taken over by a joint */
+	private int[] used = new int[0];
+	private int[] heads = new int[0];
+	private int step = 1;
+
+	private final double[] tmp = new double[3];
+
+
+	/**
+	 * Copy the cached lambda into the contact joints of the world.
+	 */
+	void load(DxWorld world, double tolerance) {
+		if (count == 0) {
+			return;
+		}
+		step++;
+		final double tol2 = tolerance * tolerance;
+		for (DxJoint j = world.firstjoint.get(); j != null; j = (DxJoint) j.getNext()) {
+			if (!(j instanceof DxJointContact) || j.node[0].body == null) {
+				continue;
+			}
+			final DContactGeom c = ((DxJointContact) j).contact.geom;
+			toLocal(j, c.pos, tmp);
+			int best = NONE;
+			double bestDist2 = tol2;
+			for (int e = heads[slot(c)]; e != NONE; e = next[e]) {
+				if (g1[e] != c.g1 || g2[e] != c.g2 || side1[e] != c.side1 
+						|| side2[e] != c.side2 || used[e] == step) {
+					continue;
+				}
+				double dx = local[3*e] - tmp[0];
+				double dy = local[3*e+1] - tmp[1];
+				double dz = local[3*e+2] - tmp[2];
+				double d2 = dx*dx + dy*dy + dz*dz;
+				if (d2 <= bestDist2) {
+					bestDist2 = d2;
+					best = e;
+				}
+			}
+			if (best != NONE) {
+				used[best] = step;
+				j.lambda[0] = lambda[best];
+				for (int k = 1; k < j.lambda.length; k++) {
+					j.lambda[k] = 0;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Replace the contents of the cache with the contact joints of the world.
+	 */
+	void store(DxWorld world) {
+		clear();
+		for (DxJoint j = world.firstjoint.get(); j != null; j = (DxJoint) j.getNext()) {
+			if (j instanceof DxJointContact && j.node[0].body != null) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		ensureCapacity(count);
+		Arrays.fill(heads, NONE);
+		int e = 0;
+		for (DxJoint j = world.firstjoint.get(); j != null; j = (DxJoint) j.getNext()) {
+			if (!(j instanceof DxJointContact) || j.node[0].body == null) {
+				continue;
+			}
+			final DContactGeom c = ((DxJointContact) j).contact.geom;
+			g1[e] = c.g1;
+			g2[e] = c.g2;
+			side1[e] = c.side1;
+			side2[e] = c.side2;
+			toLocal(j, c.pos, tmp);
+			local[3*e] = tmp[0];
+			local[3*e+1] = tmp[1];
+			local[3*e+2] = tmp[2];
+			lambda[e] = j.lambda[0];
+			used[e] = 0;
+			int s = slot(c);
+			next[e] = heads[s];
+			heads[s] = e;
+			e++;
+		}
+	}
+
+
+	void clear() {
+		Arrays.fill(g1, 0, count, null);
+		Arrays.fill(g2, 0, count, null);
+		count = 0;
+	}
+
+
+	int size() {
+		return count;
+	}
+
+
+	private void ensureCapacity(int n) {
+		if (g1.length < n) {
+			int cap = Math.max(n, g1.length*2);
+			g1 = new DGeom[cap];
+			g2 = new DGeom[cap];
+			side1 = new int[cap];
+			side2 = new int[cap];
+			local = new double[3*cap];
+			lambda = new double[cap];
+			next = new int[cap];
+			used = new int[cap];
+		}
+		// load factor <= 0.5
+		int h = Math.max(16, Integer.highestOneBit(n*2-1)*2);
+		if (heads.length < h) {
+			heads = new int[h];
+		}
+	}
+
+
+	private int slot(DContactGeom c) {
+		int h = System.identityHashCode(c.g1) * 0x9E3779B1 
+				+ System.identityHashCode(c.g2) * 0x85EBCA6B
+				+ c.side1 * 0xC2B2AE35 + c.side2;
+		h ^= h >>> 16;
+		return h & (heads.length - 1);
+	}
+
+
+	private static void toLocal(DxJoint j, DVector3C pos, double[] out) {
+		final DxBody b = j.node[0].body;
+		final DMatrix3C R = b._posr.R();
+		final double dx = pos.get0() - b._posr.pos.get0();
+		final double dy = pos.get1() - b._posr.pos.get1();
+		final double dz = pos.get2() - b._posr.pos.get2();
+		// R^T * d
+		out[0] = R.get00()*dx + R.get10()*dy + R.get20()*dz;
+		out[1] = R.get01()*dx + R.get11()*dy + R.get21()*dz;
+		out[2] = R.get02()*dx + R.get12()*dy + R.get22()*dz;
+	}
+}
@@ -41,6 +41,9 @@ import static org.ode4j.ode.internal.cpp4j.Cmath.fabs;
 import static org.ode4j.ode.internal.cpp4j.Cstdio.fprintf;
 import static org.ode4j.ode.internal.cpp4j.Cstdio.stdout;
 
+import java.util.Arrays;
+
+import org.ode4j.math.DMatrix3C;
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DColliderFn;
@@ -113,6 +116,31 @@ public class DxConvex extends DxGeom implements DConvex {
 	//edge* edges;
 	private Edge[] edges;
 
+	/**
+	 * Vertex adjacency of the convex hull in compressed row form, the
+	 * neighbours of point <code>i</code> are
+	 * <code>adjacency[adjacencyStart[i]..adjacencyStart[i+1]-1]</code>.
+	 * Built together with the edges, used for hill-climbing support queries.
+	 */
+	private int[] adjacencyStart;
+	private int[] adjacency;
+
+	/**
+	 * Below this number of points the plain linear scan is at least as fast
+	 * as hill-climbing.
+	 */
+	private static final int HILL_CLIMBING_MIN_POINTS = 16;
+
+	/**
+	 * Support vertices of the last queries, used as start points of the next
+	 * hill-climbing query. Consecutive queries of a colliding pair (and of
+	 * consecutive steps) have similar directions, so the climb usually takes
+	 * only a few steps. Races between threads are harmless, every value is a
+	 * valid start point.
+	 */
+	private int supportHint, antiSupportHint;
+	private final int[] aabbHints = new int[6];
+
 	/** 
 	 * A Support mapping function for convex shapes.
 	 * @param dir [IN] direction to find the Support Point for
@@ -122,14 +150,58 @@ public class DxConvex extends DxGeom implements DConvex {
 	private int SupportIndex(DVector3 dir)
 	{
 		DVector3 rdir = new DVector3();
-		//unsigned 
-		int index=0;
 		dMultiply1_331 (rdir,final_posr().R(),dir);
-		double max = dCalcVectorDot3(points,0,rdir);
-		double tmp;
-		for (int i = 1; i < pointcount; ++i)
+		int index = supportVertex(rdir.get0(), rdir.get1(), rdir.get2(), supportHint);
+		supportHint = index;
+		return index;
+	}
+
+	/**
+	 * Finds the support vertex for a direction given in body coordinates.
+	 * Climbs the vertex adjacency graph from <code>start</code> towards
+	 * neighbours with a larger projection; on a convex hull every local
+	 * maximum is a global one. Small convexes are scanned linearly.
+	 * @param dx x of the direction in body coordinates
+	 * @param dy y of the direction in body coordinates
+	 * @param dz z of the direction in body coordinates
+	 * @param start the first vertex to look at, usually the previous result
+	 * @return the index of the support vertex.
+	 */
+	int supportVertex(double dx, double dy, double dz, int start)
+	{
+		final double[] p = points;
+		if (pointcount < HILL_CLIMBING_MIN_POINTS || adjacencyStart == null) {
+			return supportVertexLinear(dx, dy, dz);
+		}
+		int index = (start >= 0 && start < pointcount) ? start : 0;
+		if (adjacencyStart[index] == adjacencyStart[index+1]) {
+			// not part of any polygon, no way to climb from here
+			return supportVertexLinear(dx, dy, dz);
+		}
+		double max = p[index*3]*dx + p[index*3+1]*dy + p[index*3+2]*dz;
+		int current;
+		do {
+			current = index;
+			for (int k = adjacencyStart[current], end = adjacencyStart[current+1]; k < end; k++) {
+				int n = adjacency[k];
+				double tmp = p[n*3]*dx + p[n*3+1]*dy + p[n*3+2]*dz;
+				if (tmp > max) {
+					index = n;
+					max = tmp;
+				}
+			}
+		} while (index != current);
+		return index;
+	}
+
+	private int supportVertexLinear(double dx, double dy, double dz)
+	{
+		final double[] p = points;
+		int index = 0;
+		double max = p[0]*dx + p[1]*dy + p[2]*dz;
+		for (int i = 1, i3 = 3; i < pointcount; ++i, i3 += 3)
 		{
-			tmp = dCalcVectorDot3(points,(i*3),rdir);
+			double tmp = p[i3]*dx + p[i3+1]*dy + p[i3+2]*dz;
 			if (tmp > max)
 			{
 				index=i;
@@ -273,36 +345,28 @@ public class DxConvex extends DxGeom implements DConvex {
 	@Override
 	void computeAABB()
 	{
-		// this can, and should be optimized
-		DVector3 point = new DVector3();
-		dMultiply0_331 (point, final_posr().R(), points,0);
-//		_aabb.v[0] = point.v[0]+_final_posr.pos.v[0];
-//		_aabb.v[1] = point.v[0]+_final_posr.pos.v[0];
-//		_aabb.v[2] = point.v[1]+_final_posr.pos.v[1];
-//		_aabb.v[3] = point.v[1]+_final_posr.pos.v[1];
-//		_aabb.v[4] = point.v[2]+_final_posr.pos.v[2];
-//		_aabb.v[5] = point.v[2]+_final_posr.pos.v[2];
-		_aabb.setMin( final_posr().pos() );
-		_aabb.setMax( final_posr().pos() );
-		_aabb.shiftPos( point );
-		for(int i=3;i<(pointcount*3);i+=3)
-		{
-			dMultiply0_331 (point, final_posr().R(), points,i);
-//			_aabb.v[0] = dMIN(_aabb.v[0],point.v[0]+_final_posr.pos.v[0]);
-//			_aabb.v[1] = dMAX(_aabb.v[1],point.v[0]+_final_posr.pos.v[0]);
-//			_aabb.v[2] = dMIN(_aabb.v[2],point.v[1]+_final_posr.pos.v[1]);
-//			_aabb.v[3] = dMAX(_aabb.v[3],point.v[1]+_final_posr.pos.v[1]);
-//			_aabb.v[4] = dMIN(_aabb.v[4],point.v[2]+_final_posr.pos.v[2]);
-//			_aabb.v[5] = dMAX(_aabb.v[5],point.v[2]+_final_posr.pos.v[2]);
-			DVector3 tmp = new DVector3();
-			tmp.eqSum( point, final_posr().pos() );
-			_aabb.expand( tmp );
-		}
+		// The extent along a world axis is the projection of the support
+		// vertex for the corresponding row of R.
+		DMatrix3C R = final_posr().R();
+		DVector3C pos = final_posr().pos();
+		_aabb.set( pos.get0() - maxProjection(-R.get00(), -R.get01(), -R.get02(), 0),
+				pos.get0() + maxProjection(R.get00(), R.get01(), R.get02(), 1),
+				pos.get1() - maxProjection(-R.get10(), -R.get11(), -R.get12(), 2),
+				pos.get1() + maxProjection(R.get10(), R.get11(), R.get12(), 3),
+				pos.get2() - maxProjection(-R.get20(), -R.get21(), -R.get22(), 4),
+				pos.get2() + maxProjection(R.get20(), R.get21(), R.get22(), 5));
+	}
+
+	private double maxProjection(double dx, double dy, double dz, int hint)
+	{
+		int i = supportVertex(dx, dy, dz, aabbHints[hint]);
+		aabbHints[hint] = i;
+		return points[i*3]*dx + points[i*3+1]*dy + points[i*3+2]*dz;
 	}
 
 	/** 
-	 * Populates the edges set, should be called only once whenever
-	 * the polygon array gets updated.
+	 * Populates the edges set and the vertex adjacency, should be called
+	 * only once whenever the polygon array gets updated.
 	 */
 	void FillEdges()
 	{
@@ -310,47 +374,63 @@ public class DxConvex extends DxGeom implements DConvex {
 		int points_in_polyPos = 0;
 		//int[] index=polygons+1;
 		int indexPos = 1; 
-		if (edges!=null) edges = null;//delete[] edges;
+		int total = 0;
+		for( int i=0;i<planecount;++i)
+		{
+			total += polygons[points_in_polyPos];
+			points_in_polyPos+= polygons[points_in_polyPos]+1;
+		}
+		// Edges are keyed as (first << 32 | second) in an open addressing
+		// set, which drops the duplicates of edges shared by two polygons
+		// and keeps the order in which they are first found.
+		int capacity = 4;
+		while (capacity < 2*total) capacity <<= 1;
+		long[] set = new long[capacity];
+		Arrays.fill(set, -1L);
 		edgecount = 0;
-		Edge e = new Edge();
-		boolean isinset;
+		edges = new Edge[total];
+		int[] degree = new int[pointcount];
+		points_in_polyPos = 0;
 		for( int i=0;i<planecount;++i)
 		{
-			for( int j=0;j<polygons[points_in_polyPos];++j)
+			int count = polygons[points_in_polyPos];
+			for( int j=0;j<count;++j)
 			{
-//				e.first = dMIN(index[j],index[(j+1)%*points_in_poly]);
-//				e.second = dMAX(index[j],index[(j+1)%*points_in_poly]);
-				e.first = dMIN(polygons[indexPos + j],polygons[indexPos + (j+1)%polygons[points_in_polyPos]]);
-				e.second = dMAX(polygons[indexPos + j],polygons[indexPos + (j+1)%polygons[points_in_polyPos]]);
-				isinset=false;
-				for( int k=0;k<edgecount;++k)
-				{
-					if((edges[k].first==e.first)&&(edges[k].second==e.second))
-					{
-						isinset=true;
-						break;
-					}
-				}
-				if(!isinset)
-				{
-					Edge[] tmp = new Edge[edgecount+1];				
-					if(edgecount!=0)
-					{
-//						memcpy(tmp,edges,(edgecount)*sizeof(edge));
-//						delete[] edges;
-						for (int ii=0; ii<edges.length; ii++) tmp[ii] = edges[ii];
-					}
-					tmp[edgecount] = new Edge();
-					tmp[edgecount].first=e.first;
-					tmp[edgecount].second=e.second;
-					edges = tmp;
-					++edgecount;
-				}
+				int first = dMIN(polygons[indexPos + j],polygons[indexPos + (j+1)%count]);
+				int second = dMAX(polygons[indexPos + j],polygons[indexPos + (j+1)%count]);
+				long key = ((long)first << 32) | second;
+				int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & (capacity-1);
+				while (set[slot] != -1L && set[slot] != key) slot = (slot+1) & (capacity-1);
+				if (set[slot] == key) continue;
+				set[slot] = key;
+				Edge e = new Edge();
+				e.first = first;
+				e.second = second;
+				edges[edgecount++] = e;
+				degree[first]++;
+				degree[second]++;
 			}
 			//points_in_poly+=(*points_in_poly+1);
-			points_in_polyPos+= polygons[points_in_polyPos]+1;
+			points_in_polyPos+= count+1;
 			indexPos=points_in_polyPos+1;//index=points_in_poly+1;
 		}
+		if (edgecount < edges.length) edges = Arrays.copyOf(edges, edgecount);
+
+		adjacencyStart = new int[pointcount+1];
+		for (int i = 0; i < pointcount; i++)
+		{
+			adjacencyStart[i+1] = adjacencyStart[i] + degree[i];
+		}
+		adjacency = new int[adjacencyStart[pointcount]];
+		int[] fill = degree;
+		System.arraycopy(adjacencyStart, 0, fill, 0, pointcount);
+		for (int k = 0; k < edgecount; k++)
+		{
+			adjacency[fill[edges[k].first]++] = edges[k].second;
+			adjacency[fill[edges[k].second]++] = edges[k].first;
+		}
+		supportHint = antiSupportHint = 0;
+		Arrays.fill(aabbHints, 0);
 	}
 	//#if 0
 	//dxConvex::BSPNode* dxConvex::CreateNode(std::vector<Arc> Arcs,std::vector<Polygon> Polygons)
@@ -432,6 +512,7 @@ public class DxConvex extends DxGeom implements DConvex {
 		this.points = points;
 		this.pointcount = pointcount;
 		this.polygons=polygons;
+		FillEdges();
 	}
 
 	//****************************************************************************
@@ -1115,9 +1196,24 @@ public class DxConvex extends DxGeom implements DConvex {
 	//inline void ComputeInterval(dxConvex& cvx,dVector4 axis,dReal& min,dReal& max)
 	private static void ComputeInterval(DxConvex cvx,DVector3 axis, double axisD, RefDouble min, RefDouble max)
 	{
-		/* TODO: Use Support points here */
 		DVector3 point=new DVector3();
 		double value;
+		if (cvx.pointcount >= HILL_CLIMBING_MIN_POINTS)
+		{
+			// Only the support vertices for axis and -axis matter.
+			dMultiply1_331(point, cvx.final_posr().R(), axis);
+			int imax = cvx.supportVertex(point.get0(), point.get1(), point.get2(), cvx.supportHint);
+			int imin = cvx.supportVertex(-point.get0(), -point.get1(), -point.get2(), cvx.antiSupportHint);
+			cvx.supportHint = imax;
+			cvx.antiSupportHint = imin;
+			dMultiply0_331(point, cvx.final_posr().R(), cvx.points, imax*3);
+			point.add(cvx.final_posr().pos());
+			max.set(dCalcVectorDot3(point,axis)-axisD);
+			dMultiply0_331(point, cvx.final_posr().R(), cvx.points, imin*3);
+			point.add(cvx.final_posr().pos());
+			min.set(dCalcVectorDot3(point,axis)-axisD);
+			return;
+		}
 		//fprintf(stdout,"Compute Interval Axis %f,%f,%f\n",axis[0],axis[1],axis[2]);
 		dMultiply0_331(point, cvx.final_posr().R(), cvx.points,0);
 		//fprintf(stdout,"initial point %f,%f,%f\n",point[0],point[1],point[2]);
@@ -2087,4 +2183,12 @@ Helper struct
 	public int getPointcount() {
 		return pointcount;
 	}
+
+	int getSupportHint() {
+		return supportHint;
+	}
+
+	void setSupportHint(int index) {
+		supportHint = index;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ode4j.math.DQuaternion;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DBody;
+
+
+/**
+ * Bodies of a world that changed since they were last drained.
+ * <p>
+ * Each body has an index into a bit set. Bodies are marked by their 
+ * setters and by the steppers, which may run concurrently, so bits are 
+ * set atomically. Creating, destroying and draining happen between steps.
+ * <p>
+ * The pose of each body at its last drain is kept in a packed array. 
+ * Stepping marks a body if it moved or turned more than the thresholds 
+ * since then.
+ */
+final class DxDirtyBodySet {
+
+	private static final int POSE_SIZE = 7; // position, quaternion
+
+	private AtomicLongArray words = new AtomicLongArray(1);
+	private DxBody[] bodies = new DxBody[64];
+	private double[] poses = new double[64 * POSE_SIZE];
+	private int[] freeIndices = new int[16];
+	private int numFree = 0;
+	private int numIndices = 0;
+
+	private double maxDistanceSq = 0;
+	private double minCosHalfAngle = 1;
+
+	DxDirtyBodySet(DxBody firstbody) {
+		for (DxBody b = firstbody; b != null; b = (DxBody) b.getNext()) {
+			add(b);
+		}
+	}
+
+	void setThreshold(double distance, double angle) {
+		maxDistanceSq = distance * distance;
+		minCosHalfAngle = Math.cos(Math.min(angle, Math.PI) * 0.5);
+	}
+
+	/** Adds a new body, it is dirty. */
+	void add(DxBody b) {
+		final int index;
+		if (numFree > 0) {
+			index = freeIndices[--numFree];
+		} else {
+			index = numIndices++;
+			if (index == bodies.length) {
+				bodies = Arrays.copyOf(bodies, index * 2);
+				poses = Arrays.copyOf(poses, index * 2 * POSE_SIZE);
+			}
+			if ((index >>> 6) == words.length()) {
+				AtomicLongArray w = new AtomicLongArray(words.length() * 2);
+				for (int i = 0; i < words.length(); i++) {
+					w.set(i, words.get(i));
+				}
+				words = w;
+			}
+		}
+		b.dirty_index = index;
+		bodies[index] = b;
+		savePose(b);
+		mark(index);
+	}
+
+	void remove(DxBody b) {
+		final int index = b.dirty_index;
+		clear(index);
+		bodies[index] = null;
+		b.dirty_index = -1;
+		if (numFree == freeIndices.length) {
+			freeIndices = Arrays.copyOf(freeIndices, numFree * 2);
+		}
+		freeIndices[numFree++] = index;
+	}
+
+	void mark(int index) {
+		final int w = index >>> 6;
+		final long bit = 1L << index;
+		long old;
+		do {
+			old = words.get(w);
+			if ((old & bit) != 0) {
+				return;
+			}
+		} while (!words.compareAndSet(w, old, old | bit));
+	}
+
+	private void clear(int index) {
+		final int w = index >>> 6;
+		words.set(w, words.get(w) & ~(1L << index));
+	}
+
+	/** Marks a stepped body if it moved or turned enough. */
+	void stepped(DxBody b) {
+		final int index = b.dirty_index;
+		if ((words.get(index >>> 6) & (1L << index)) != 0) {
+			return;
+		}
+		final int p = index * POSE_SIZE;
+		final DVector3 pos = b._posr.pos;
+		final double dx = pos.get0() - poses[p];
+		final double dy = pos.get1() - poses[p + 1];
+		final double dz = pos.get2() - poses[p + 2];
+		final DQuaternion q = b._q;
+		final double dot = q.get0() * poses[p + 3] + q.get1() * poses[p + 4] 
+				+ q.get2() * poses[p + 5] + q.get3() * poses[p + 6];
+		if (dx * dx + dy * dy + dz * dz > maxDistanceSq || Math.abs(dot) < minCosHalfAngle) {
+			mark(index);
+		}
+	}
+
+	private void savePose(DxBody b) {
+		final int p = b.dirty_index * POSE_SIZE;
+		final DVector3 pos = b._posr.pos;
+		poses[p] = pos.get0();
+		poses[p + 1] = pos.get1();
+		poses[p + 2] = pos.get2();
+		final DQuaternion q = b._q;
+		poses[p + 3] = q.get0();
+		poses[p + 4] = q.get1();
+		poses[p + 5] = q.get2();
+		poses[p + 6] = q.get3();
+	}
+
+	int size() {
+		int n = 0;
+		for (int i = 0; i < words.length(); i++) {
+			n += Long.bitCount(words.get(i));
+		}
+		return n;
+	}
+
+	/**
+	 * Moves up to <tt>out.length</tt> dirty bodies to <tt>out</tt>, ordered
+	 * by index, and writes their states if <tt>states</tt> is not null.
+	 * @return the number of bodies
+	 */
+	int drain(DBody[] out, DoubleBuffer states) {
+		int n = 0;
+		for (int w = 0; w < words.length() && n < out.length; w++) {
+			long word = words.get(w);
+			if (word == 0) {
+				continue;
+			}
+			long remaining = word;
+			while (remaining != 0 && n < out.length) {
+				final long bit = Long.lowestOneBit(remaining);
+				remaining &= ~bit;
+				final DxBody b = bodies[(w << 6) + Long.numberOfTrailingZeros(bit)];
+				savePose(b);
+				if (states != null) {
+					b.dBodyGetState(states);
+				}
+				out[n++] = b;
+			}
+			words.set(w, remaining);
+		}
+		return n;
+	}
+}
@@ -172,6 +172,9 @@ public abstract class DxGeom extends DBase implements DGeom {
 	DxSpace parent_space;// the space this geom is contained in, 0 if none
 	int _sapIdxDirtyEx; // TZ: Used by SAP-Space.
 	int _sapIdxGeomEx; // TZ: Used by SAP-Space.
+	int _sapIdxEndpointsEx = -1; // Used by SAP-Space in incremental mode.
+	int _bvhLeafEx = -1; // Used by BVH-Space.
+	int _hashIdxEx = -1; // Used by Hash-Space.
 	Block _qtIdxEx; // TZ: Used by QuadTree-Space.
 	
 	//double[] aabb = new double[6];	// cached AABB for this space
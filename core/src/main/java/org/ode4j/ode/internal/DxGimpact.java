@@ -36,6 +36,7 @@ import org.ode4j.ode.DGeom;
 import org.ode4j.ode.DSphere;
 import org.ode4j.ode.DTriMesh;
 import org.ode4j.ode.DTriMeshData;
+import org.ode4j.ode.internal.gimpact.GimBvh;
 import org.ode4j.ode.internal.gimpact.GimGeometry;
 import org.ode4j.ode.internal.gimpact.GimTrimesh;
 import org.ode4j.ode.internal.gimpact.GimGeometry.mat4f;
@@ -276,6 +277,10 @@ public class DxGimpact extends DxTriMesh {
 					false,					// copy indices?
 					true				// transformed reply
 			);
+			GimBvh bvh = _Data.getBvh();
+			if (bvh != null) {
+				this.m_collision_trimesh.gim_trimesh_set_bvh(bvh);
+			}
 		}
 	}
 
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import org.ode4j.math.DVector4;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
+import org.ode4j.ode.internal.gimpact.GimBvh;
 
 /**
  *
@@ -45,9 +46,19 @@ public class DxGimpactData extends DxTriMeshData {
 //	int m_TriangleCount;
 //	int m_TriStride;
 //	boolean m_single;
+	/** Whether trimeshes with this data use an AABB tree, see OdeConfig.TRIMESH.BVH. */
+	private final boolean m_useBvh;
+	/** Tree topology shared by all trimeshes with this data, built on demand. */
+	private GimBvh m_bvh;
 
     DxGimpactData()//dxTriMeshData()
 	{
+		this(false);
+	}
+
+    DxGimpactData(boolean useBvh)
+	{
+		m_useBvh = useBvh;
 		m_Vertices=null;
 //		m_VertexStride = 12;
 //		m_VertexCount = 0;
@@ -66,6 +77,17 @@ public class DxGimpactData extends DxTriMeshData {
     	return m_Indices;
     }
 
+    /**
+     * @return The AABB tree over the triangles, or null if this data does 
+     * not use one or is too small.
+     */
+    GimBvh getBvh() {
+    	if (m_useBvh && m_bvh == null && m_Indices != null) {
+    		m_bvh = GimBvh.gim_bvh_build(m_Vertices, m_Indices);
+    	}
+    	return m_bvh;
+    }
+
 //    void Build(const void* Vertices, int VertexStride, int VertexCount,
 //	       const void* Indices, int IndexCount, int TriStride,
 //	       const void* Normals,
@@ -116,6 +138,7 @@ public class DxGimpactData extends DxTriMeshData {
  		dIASSERT(Indices!=null);
  		m_Vertices = Vertices;
  		m_Indices = Indices;
+ 		m_bvh = null;
  		//TODO remove?
  		//check();
   	}
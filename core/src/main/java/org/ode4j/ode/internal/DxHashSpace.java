@@ -25,16 +25,21 @@
 package org.ode4j.ode.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.ode4j.ode.DAABB;
 import org.ode4j.ode.DHashSpace;
-import org.ode4j.ode.internal.cpp4j.java.RefInt;
 
 import static org.ode4j.ode.OdeMath.*;
-import static org.ode4j.ode.internal.cpp4j.C_All.*;
 
 /**
  * From collision_space.cpp
+ * <p>
+ * The Java version keeps the hash table between calls. Each geom has a box 
+ * index into primitive arrays that store its level and discretized bounds. 
+ * The cells of all boxes are kept in an open addressing multimap keyed by 
+ * (level,x,y,z), which is only updated for geoms that moved to other cells.
  */
 public class DxHashSpace extends DxSpace implements DHashSpace {
 	//****************************************************************************
@@ -46,37 +51,11 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	//	#endif
 	private static final int MAXINT = Integer.MAX_VALUE;
 
-
-	// prime[i] is the largest prime smaller than 2^i
-	//	#define NUM_PRIMES 31
-	//	static const long int prime[NUM_PRIMES] = {1L,2L,3L,7L,13L,31L,61L,127L,251L,509L,
-	//	  1021L,2039L,4093L,8191L,16381L,32749L,65521L,131071L,262139L,
-	//	  524287L,1048573L,2097143L,4194301L,8388593L,16777213L,33554393L,
-	//	  67108859L,134217689L,268435399L,536870909L,1073741789L};
-	private static final int NUM_PRIMES = 31;
-	private static final int[] prime =  {1,2,3,7,13,31,61,127,251,509,
-		1021,2039,4093,8191,16381,32749,65521,131071,262139,
-		524287,1048573,2097143,4194301,8388593,16777213,33554393,
-		67108859,134217689,268435399,536870909,1073741789};
-
-
-	// an axis aligned bounding box in the hash table
-	private static class dxAABB {
-		int level;		// the level this is stored in (cell size = 2^level)
-		//TODO do not initialise?
-		int[] dbounds = new int[6];	// AABB bounds, discretized to cell size
-		DxGeom geom;		// corresponding geometry object (AABB stored here)
-		int index;		// index of this AABB, starting from 0
-	}
-
-
-	// a hash table node that represents an AABB that intersects a particular cell
-	// at a particular level
-	private static class Node {
-		Node next;		// next node in hash table collision list, 0 if none
-		int x,y,z;		// cell position in space, discretized to cell size
-		dxAABB aabb;		// axis aligned bounding box that intersects this cell
-	};
+	/** Level of boxes that are too big for the hash table. */
+	private static final int BIG_LEVEL = MAXINT;
+	private static final int EMPTY = -1;
+	/** Ints per cell entry: box, level, x, y, z. */
+	private static final int CELL_SIZE = 5;
 
 
 	// return the `level' of an AABB. the AABB will be put into cells at this
@@ -107,27 +86,20 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		if (q2 > q) q = q2;
 
 		// find level such that 0.5 * 2^level < q <= 2^level
-		RefInt level = new RefInt();
-		frexp (q,level);	// q = (0.5 .. 1.0) * 2^level (definition of frexp)
-		return level.i;
+		// (same as frexp(), q = (0.5 .. 1.0) * 2^level)
+		return Math.getExponent(q) + 1;
 	}
-	// find a virtual memory address for a cell at the given level and x,y,z
-	// position.
-	// @@@ currently this is not very sophisticated, e.g. the scaling
-	// factors could be better designed to avoid collisions, and they should
-	// probably depend on the hash table physical size.
-
-	//	static unsigned long getVirtualAddress (int level, int x, int y, int z)
-	private static int getVirtualAddress (int level, int x, int y, int z)
+
+	/**
+	 * Spatial hash of a cell at the given level and x,y,z position.
+	 */
+	private static int cellHash (int level, int x, int y, int z)
 	{
-		int r = level*1000 + x*100 + y*10 + z;
-		//TODO remove check ?!?
-		if (r>=Integer.MAX_VALUE) {
-		    throw new IllegalArgumentException("level: " + level + " x=" + x + 
-		            " y=" + y + " z="+ z);
-		}
-		return Math.abs(r);
-		//return level*1000 + x*100 + y*10 + z;
+		int h = level * 0x27D4EB2F;
+		h = (h ^ x) * 0x9E3779B1;
+		h = (h ^ y) * 0x85EBCA77;
+		h = (h ^ z) * 0xC2B2AE3D;
+		return h ^ (h >>> 16);
 	}
 
 	//****************************************************************************
@@ -137,6 +109,27 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	private int global_minlevel;	// smallest hash table level to put AABBs in
 	private int global_maxlevel;	// objects that need a level larger than this will be
 	// put in a "big objects" list instead of a hash table
+	private boolean levelsChanged = false;
+
+	// geoms that have to be updated in the table, may contain removed geoms
+	private final List<DxGeom> dirtyList = new ArrayList<DxGeom>();
+
+	// boxes, indexed by DxGeom._hashIdxEx
+	private DxGeom[] boxGeom = new DxGeom[16];
+	private int[] boxLevel = new int[16];	// the level this is stored in (cell size = 2^level)
+	private int[] boxBounds = new int[16*6];	// AABB bounds, discretized to cell size
+	private int boxCount = 0;
+	private int[] freeBoxes = new int[16];
+	private int freeBoxCount = 0;
+
+	// cells as (box, level, x, y, z), box is EMPTY for free slots
+	private int[] cells = newCells(64);
+	private int cellCount = 0;
+
+	// scratch for collide()
+	private int[] stamp = new int[16];
+	private int stampId = 0;
+	private int[] bigBoxes = new int[16];
 
 	//	  dxHashSpace (dSpace _space);
 	//	  void setLevels (int minlevel, int maxlevel);
@@ -162,6 +155,7 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		dAASSERT (minlevel <= maxlevel);
 		global_minlevel = minlevel;
 		global_maxlevel = maxlevel;
+		levelsChanged = true;
 	}
 
 
@@ -178,31 +172,150 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	}
 
 
+	@Override
+	void add (DxGeom g)
+	{
+		CHECK_NOT_LOCKED (this);
+		super.add(g);
+		g._hashIdxEx = EMPTY;
+		dirtyList.add(g);
+	}
+
+
+	@Override
+	void remove (DxGeom g)
+	{
+		CHECK_NOT_LOCKED (this);
+		dUASSERT(g.parent_space == this,"object is not in this space");
+		int b = g._hashIdxEx;
+		if (b != EMPTY) {
+			if (boxLevel[b] != BIG_LEVEL) {
+				removeCells(b);
+			}
+			boxGeom[b] = null;
+			if (freeBoxCount == freeBoxes.length) {
+				freeBoxes = Arrays.copyOf(freeBoxes, freeBoxCount*2);
+			}
+			freeBoxes[freeBoxCount++] = b;
+			g._hashIdxEx = EMPTY;
+		}
+		super.remove(g);
+	}
+
+
+	@Override
+	void dirty (DxGeom g)
+	{
+		// The geom stays at its place in _geoms, the table is updated by 
+		// cleanGeoms().
+		dirtyList.add(g);
+	}
+
+
 	@Override
 	public void cleanGeoms()
 	{
 		// compute the AABBs of all dirty geoms, and clear the dirty flags
+		if (dirtyList.isEmpty() && !levelsChanged) {
+			return;
+		}
 		lock_count++;
-		//for (dxGeom g=_first; (g!= null) && (g.gflags & GEOM_DIRTY) != 0;
-		//g=g.getNext()) {
-		for (DxGeom g: _geoms) {
-			//if ((g._gflags & GEOM_DIRTY)==0) break;
-			if (!g.hasFlagDirty()) break;
+		for (int i = 0; i < dirtyList.size(); i++) {
+			DxGeom g = dirtyList.get(i);
+			// skip removed geoms and duplicates
+			if (g.parent_space != this || !g.hasFlagDirty()) {
+				continue;
+			}
 			if (g instanceof DxSpace) {
 				((DxSpace)g).cleanGeoms();
 			}
 			g.recomputeAABB();
 			//g._gflags &= (~(GEOM_DIRTY|GEOM_AABB_BAD));
 			g.unsetFlagDirtyAndBad();
+			update(g);
+		}
+		dirtyList.clear();
+		if (levelsChanged) {
+			levelsChanged = false;
+			for (DxGeom g: _geoms) {
+				update(g);
+			}
 		}
 		lock_count--;
 	}
 
+
+	/**
+	 * Computes the level and discretized bounds of the geom and moves its 
+	 * cells if they changed.
+	 */
+	private void update (DxGeom g)
+	{
+		int b = g._hashIdxEx;
+		if (b == EMPTY) {
+			b = allocateBox();
+			boxGeom[b] = g;
+			boxLevel[b] = BIG_LEVEL;
+			g._hashIdxEx = b;
+		}
+
+		// compute level, but prevent cells from getting too small
+		int level = findLevel (g._aabb);
+		if (level < global_minlevel) level = global_minlevel;
+		if (level > global_maxlevel) {
+			// aabb is too big, it goes to the big boxes
+			if (boxLevel[b] != BIG_LEVEL) {
+				removeCells(b);
+				boxLevel[b] = BIG_LEVEL;
+			}
+			return;
+		}
+
+		// cellsize = 2^level
+		double cellsize = Math.scalb (1.0,level);
+		// discretize AABB position to cell size
+		final int o = b*6;
+		boolean changed = boxLevel[b] != level;
+		for (int i=0; i < 3; i++) {
+			int min = (int)Math.floor (g._aabb.getMin(i)/cellsize);
+			int max = (int)Math.floor (g._aabb.getMax(i)/cellsize);
+			changed |= boxBounds[o+2*i] != min || boxBounds[o+2*i+1] != max;
+		}
+		if (!changed) {
+			return;
+		}
+		if (boxLevel[b] != BIG_LEVEL) {
+			removeCells(b);
+		}
+		boxLevel[b] = level;
+		for (int i=0; i < 3; i++) {
+			boxBounds[o+2*i] = (int)Math.floor (g._aabb.getMin(i)/cellsize);
+			boxBounds[o+2*i+1] = (int)Math.floor (g._aabb.getMax(i)/cellsize);
+		}
+		insertCells(b);
+	}
+
+
+	private int allocateBox ()
+	{
+		if (freeBoxCount > 0) {
+			return freeBoxes[--freeBoxCount];
+		}
+		if (boxCount == boxGeom.length) {
+			int cap = boxCount*2;
+			boxGeom = Arrays.copyOf(boxGeom, cap);
+			boxLevel = Arrays.copyOf(boxLevel, cap);
+			boxBounds = Arrays.copyOf(boxBounds, cap*6);
+			freeBoxes = Arrays.copyOf(freeBoxes, cap);
+		}
+		return boxCount++;
+	}
+
+
 	@Override
 	public void collide (Object data, DNearCallback callback)
 	{
 		dAASSERT(callback);
-		//dxGeom geom; //*
 		int i,maxlevel;
 
 		// 0 or 1 geoms can't collide with anything
@@ -211,137 +324,54 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		lock_count++;
 		cleanGeoms();
 
-		// create a list of auxiliary information for all geom axis aligned bounding
-		// boxes. set the level for all AABBs. put AABBs larger than the space's
-		// global_maxlevel in the big_boxes list, check everything else against
-		// that list at the end. for AABBs that are not too big, record the maximum
-		// level that we need.
-
-		ArrayList<dxAABB> hash_boxes = new ArrayList<dxAABB>();	// list of AABBs in hash table
-		ArrayList<dxAABB> big_boxes = new ArrayList<dxAABB>();	// list of AABBs too big for hash table
+		// find the maximum level that we need and collect the enabled boxes
+		// that are too big for the hash table, check everything else against
+		// that list at the end.
 		maxlevel = global_minlevel - 1;
-		//for (geom = _first; geom != null; geom=geom.getNext()) {
-		for (DxGeom geom: _geoms) {
-			if (!GEOM_ENABLED(geom)){
+		int bigCount = 0;
+		for (int b = 0; b < boxCount; b++) {
+			DxGeom geom = boxGeom[b];
+			if (geom == null || !GEOM_ENABLED(geom)) {
 				continue;
 			}
-			dxAABB aabb = new dxAABB(); //(dxAABB) ALLOCA (sizeof(dxAABB));
-			aabb.geom = geom;
-			// compute level, but prevent cells from getting too small
-			int level = findLevel (geom._aabb);
-			if (level < global_minlevel) level = global_minlevel;
-			if (level <= global_maxlevel) {
-				aabb.level = level;
-				if (level > maxlevel) maxlevel = level;
-				// cellsize = 2^level
-				double cellsize = ldexp (1.0,level);
-				// discretize AABB position to cell size
-				for (i=0; i < 3; i++) {
-					aabb.dbounds[2*i] = (int)Math.floor (geom._aabb.getMin(i)/cellsize);
-					aabb.dbounds[2*i+1] = (int)Math.floor (geom._aabb.getMax(i)/cellsize);
+			int level = boxLevel[b];
+			if (level == BIG_LEVEL) {
+				if (bigCount == bigBoxes.length) {
+					bigBoxes = Arrays.copyOf(bigBoxes, bigCount*2);
 				}
-				// set AABB index
-				aabb.index = hash_boxes.size();
-	            // aabb goes in main list
-	            hash_boxes.add(aabb);
+				bigBoxes[bigCount++] = b;
+			} else if (level > maxlevel) {
+				maxlevel = level;
 			}
-			else {
-				// aabb is too big, put it in the big_boxes list. we don't care about
-				// setting level, dbounds, index, or the maxlevel
-				big_boxes.add(aabb);
-			}
-		}
-
-	    int n = hash_boxes.size(); // number of AABBs in main list
-
-		// for `n' objects, an n*n array of bits is used to record if those objects
-		// have been intersection-tested against each other yet. this array can
-		// grow large with high n, but oh well...
-		int tested_rowsize = (n+7) >> 3;	// number of bytes needed for n bits
-		//std::vector<unsigned char> tested(n * tested_rowsize);
-		int[] tested = new int[n * tested_rowsize];
-
-		// create a hash table to store all AABBs. each AABB may take up to 8 cells.
-		// we use chaining to resolve collisions, but we use a relatively large table
-		// to reduce the chance of collisions.
-
-		// compute hash table size sz to be a prime > 8*n
-		for (i=0; i<NUM_PRIMES; i++) {
-			if (prime[i] >= (8*n)) break;
 		}
-		if (i >= NUM_PRIMES) 
-			i = NUM_PRIMES-1;	// probably pointless
-		int sz = prime[i];
-
-		// allocate and initialize hash table node pointers
-		//std::vector<Node*> table(sz);
-		Node[] table = new Node[sz];
-
-		// add each AABB to the hash table (may need to add it to up to 8 cells)
-		//TODO use proper List here!
-		//for (aabb=first_aabb; aabb != null; aabb=aabb.next) {
-		for (dxAABB aabb: hash_boxes) {
-			int[] dbounds = aabb.dbounds;
-			for (int xi = dbounds[0]; xi <= dbounds[1]; xi++) {
-				for (int yi = dbounds[2]; yi <= dbounds[3]; yi++) {
-					for (int zi = dbounds[4]; zi <= dbounds[5]; zi++) {
-						// get the hash index  TODO TZ: cast to int
-						int hi = getVirtualAddress (aabb.level,xi,yi,zi) % sz;
-						// add a new node to the hash table
-						Node node = new Node();//(Node) ALLOCA (sizeof (Node));
-						node.x = xi;
-						node.y = yi;
-						node.z = zi;
-						node.aabb = aabb;
-						node.next = table[hi];
-						table[hi] = node;
-					}
-				}
-			}
+		if (stamp.length < boxCount) {
+			stamp = new int[boxGeom.length];
+			stampId = 0;
 		}
 
-		// now that all AABBs are loaded into the hash table, we do the actual
-		// collision detection. for all AABBs, check for other AABBs in the
-		// same cells for collisions, and then check for other AABBs in all
-		// intersecting higher level cells.
+		// for all AABBs, check for other AABBs in the same cells for 
+		// collisions, and then check for other AABBs in all intersecting 
+		// higher level cells. pairs of AABBs on the same level are only 
+		// checked from the AABB with the lower index. a pair can share several 
+		// cells, the stamps make sure that it is checked only once per AABB.
 
-		int[] db = new int[6];			// discrete bounds at current level
-		for (dxAABB aabb: hash_boxes) {
-			// we are searching for collisions with aabb
-			for (i=0; i<6; i++) db[i] = aabb.dbounds[i];
-			for (int level = aabb.level; level <= maxlevel; level++) {
+		final int[] db = new int[6];			// discrete bounds at current level
+		for (int a = 0; a < boxCount; a++) {
+			DxGeom geom = boxGeom[a];
+			if (geom == null || !GEOM_ENABLED(geom) || boxLevel[a] == BIG_LEVEL) {
+				continue;
+			}
+			if (++stampId == 0) {
+				Arrays.fill(stamp, 0);
+				stampId = 1;
+			}
+			final int alevel = boxLevel[a];
+			for (i=0; i<6; i++) db[i] = boxBounds[a*6+i];
+			for (int level = alevel; level <= maxlevel; level++) {
 				for (int xi = db[0]; xi <= db[1]; xi++) {
 					for (int yi = db[2]; yi <= db[3]; yi++) {
 						for (int zi = db[4]; zi <= db[5]; zi++) {
-							// get the hash index
-							//int TZ long 
-							int hi = getVirtualAddress (level,xi,yi,zi) % sz;
-							// search all nodes at this index
-							for (Node node = table[hi]; node != null; node=node.next) {
-								// node points to an AABB that may intersect aabb
-								if (node.aabb == aabb) 
-									continue;
-								if (node.aabb.level == level &&
-										node.x == xi && node.y == yi && node.z == zi) {
-									// see if aabb and node->aabb have already been tested
-									// against each other
-									//TZ unsigned char mask;
-									int mask;
-									if (aabb.index <= node.aabb.index) {
-										i = (aabb.index * tested_rowsize)+(node.aabb.index >> 3);
-										mask = 1 << (node.aabb.index & 7);
-									}
-									else {
-										i = (node.aabb.index * tested_rowsize)+(aabb.index >> 3);
-										mask = 1 << (aabb.index & 7);
-									}
-									dIASSERT (i >= 0 && i < (tested_rowsize*n));
-									if ((tested[i] & mask)==0) {
-										collideAABBs (aabb.geom,node.aabb.geom,data,callback);
-									}
-									tested[i] |= mask;
-								}
-							}
+							collideCell(a, alevel, level, xi, yi, zi, data, callback);
 						}
 					}
 				}
@@ -354,31 +384,156 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		// every AABB in the normal list must now be intersected against every
 		// AABB in the big_boxes list. so let's hope there are not too many objects
 		// in the big_boxes list.
-		for (dxAABB aabb: hash_boxes) {
-			for (dxAABB aabb2: big_boxes) {
-				collideAABBs (aabb.geom,aabb2.geom,data,callback);
+		if (bigCount > 0) {
+			for (int a = 0; a < boxCount; a++) {
+				DxGeom geom = boxGeom[a];
+				if (geom == null || !GEOM_ENABLED(geom) || boxLevel[a] == BIG_LEVEL) {
+					continue;
+				}
+				for (int j = 0; j < bigCount; j++) {
+					collideAABBs (geom,boxGeom[bigBoxes[j]],data,callback);
+				}
 			}
 		}
 
 		// intersected all AABBs in the big_boxes list together
-		for (dxAABB aabb: big_boxes) {
-			for (dxAABB aabb2: big_boxes) {
-				collideAABBs (aabb.geom,aabb2.geom,data,callback);
+		for (int j = 0; j < bigCount; j++) {
+			for (int k = j+1; k < bigCount; k++) {
+				collideAABBs (boxGeom[bigBoxes[j]],boxGeom[bigBoxes[k]],data,callback);
 			}
 		}
 
-		//(TZ): Not necessary in Java
-//	    // deallocate table
-//	    for (int ii=0; ii<table.length; ++i)
-//	        for (Node node = table[ii]; node != null;) {
-//	            Node next = node.next;
-//	            delete node;
-//	            node = next;
-//	        }
-
 		lock_count--;
 	}
 
+
+	/**
+	 * Collides box a with all boxes in the given cell that have not been 
+	 * checked against a yet.
+	 */
+	private void collideCell (int a, int alevel, int level, int x, int y, int z, 
+			Object data, DNearCallback callback)
+	{
+		final int[] c = cells;
+		final int mask = c.length/CELL_SIZE - 1;
+		int slot = cellHash(level, x, y, z) & mask;
+		int o;
+		while (c[o = slot*CELL_SIZE] != EMPTY) {
+			final int b = c[o];
+			if (c[o+1] == level && c[o+2] == x && c[o+3] == y && c[o+4] == z 
+					&& b != a && (level != alevel || b > a) && stamp[b] != stampId) {
+				stamp[b] = stampId;
+				DxGeom g = boxGeom[b];
+				if (GEOM_ENABLED(g)) {
+					collideAABBs (boxGeom[a],g,data,callback);
+				}
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+
+	//****************************************************************************
+	// cell table
+
+	private static int[] newCells (int capacity)
+	{
+		int[] c = new int[capacity*CELL_SIZE];
+		for (int i = 0; i < c.length; i += CELL_SIZE) {
+			c[i] = EMPTY;
+		}
+		return c;
+	}
+
+
+	private void insertCells (int b)
+	{
+		final int o = b*6;
+		final int level = boxLevel[b];
+		for (int xi = boxBounds[o]; xi <= boxBounds[o+1]; xi++) {
+			for (int yi = boxBounds[o+2]; yi <= boxBounds[o+3]; yi++) {
+				for (int zi = boxBounds[o+4]; zi <= boxBounds[o+5]; zi++) {
+					insertCell(b, level, xi, yi, zi);
+				}
+			}
+		}
+	}
+
+
+	private void insertCell (int b, int level, int x, int y, int z)
+	{
+		if ((cellCount+1)*2*CELL_SIZE > cells.length) {
+			int[] old = cells;
+			cells = newCells(old.length/CELL_SIZE*2);
+			cellCount = 0;
+			for (int i = 0; i < old.length; i += CELL_SIZE) {
+				if (old[i] != EMPTY) {
+					insertCell(old[i], old[i+1], old[i+2], old[i+3], old[i+4]);
+				}
+			}
+		}
+		final int[] c = cells;
+		final int mask = c.length/CELL_SIZE - 1;
+		int slot = cellHash(level, x, y, z) & mask;
+		while (c[slot*CELL_SIZE] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		int o = slot*CELL_SIZE;
+		c[o] = b;
+		c[o+1] = level;
+		c[o+2] = x;
+		c[o+3] = y;
+		c[o+4] = z;
+		cellCount++;
+	}
+
+
+	private void removeCells (int b)
+	{
+		final int o = b*6;
+		final int level = boxLevel[b];
+		for (int xi = boxBounds[o]; xi <= boxBounds[o+1]; xi++) {
+			for (int yi = boxBounds[o+2]; yi <= boxBounds[o+3]; yi++) {
+				for (int zi = boxBounds[o+4]; zi <= boxBounds[o+5]; zi++) {
+					removeCell(b, level, xi, yi, zi);
+				}
+			}
+		}
+	}
+
+
+	private void removeCell (int b, int level, int x, int y, int z)
+	{
+		final int[] c = cells;
+		final int mask = c.length/CELL_SIZE - 1;
+		int i = cellHash(level, x, y, z) & mask;
+		while (c[i*CELL_SIZE] != b || c[i*CELL_SIZE+1] != level || c[i*CELL_SIZE+2] != x 
+				|| c[i*CELL_SIZE+3] != y || c[i*CELL_SIZE+4] != z) {
+			if (c[i*CELL_SIZE] == EMPTY) {
+				dIASSERT(false);
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		// shift following entries back to keep the probe sequences intact
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			final int oj = j*CELL_SIZE;
+			if (c[oj] == EMPTY) {
+				break;
+			}
+			final int h = cellHash(c[oj+1], c[oj+2], c[oj+3], c[oj+4]) & mask;
+			if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+				System.arraycopy(c, oj, c, i*CELL_SIZE, CELL_SIZE);
+				i = j;
+			}
+		}
+		c[i*CELL_SIZE] = EMPTY;
+		cellCount--;
+	}
+
+
 	@Override
 	void collide2 (Object data, DxGeom geom,
 			DNearCallback callback)
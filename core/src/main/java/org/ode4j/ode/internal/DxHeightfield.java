@@ -35,6 +35,7 @@ import static org.ode4j.ode.internal.Common.dFloor;
 import static org.ode4j.ode.internal.Common.dIASSERT;
 
 import org.ode4j.math.DMatrix3;
+import org.ode4j.math.DMatrix3C;
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABB;
@@ -173,19 +174,23 @@ public class DxHeightfield extends DxAbstractHeightfield {
 	//		HeightFieldVertex   *tempHeightInstances;
 	//	    size_t              tempHeightBufferSizeX;
 	//	    size_t              tempHeightBufferSizeZ;
-	//private HeightFieldPlane[]    tempPlaneBuffer;
-	private ObjArray<HeightFieldPlane>[]  tempPlaneBuffer;
-	private HeightFieldPlane[]    tempPlaneInstances;
-	private int              tempPlaneBufferSize;
-
-	private HeightFieldTriangle[] tempTriangleBuffer;
-	private int              tempTriangleBufferSize;
+	/**
+	 * Scratch buffers of dCollideHeightfieldZone(). They are confined to the
+	 * calling thread, so several threads may collide against the same 
+	 * heightfield at the same time.
+	 */
+	private static final ThreadLocal<HeightfieldScratch> SCRATCH = new ThreadLocal<HeightfieldScratch>() {
+		@Override
+		protected HeightfieldScratch initialValue() {
+			return new HeightfieldScratch();
+		}
+	};
 
-	//private HeightFieldVertex[]  tempHeightBuffer;
-	private ObjArray<HeightFieldVertex>[]  tempHeightBuffer;
-	private HeightFieldVertex[]   tempHeightInstances;
-	private int              tempHeightBufferSizeX;
-	private int              tempHeightBufferSizeZ;
+	// Larger buffers are released after the query that needed them, so a 
+	// single large object does not pin memory for the lifetime of a thread.
+	private static final int TEMP_HEIGHT_BUFFER_MAX_RETAINED_CELLS = 64 * 64;
+	private static final int TEMP_TRIANGLE_BUFFER_MAX_RETAINED_ELEMENTS = 2 * 64 * 64;
+	private static final int TEMP_PLANE_BUFFER_MAX_RETAINED_ELEMENTS = 2 * 64 * 64;
 
 
 
@@ -202,15 +207,6 @@ public class DxHeightfield extends DxAbstractHeightfield {
 		//	    tempHeightBufferSizeX(0),
 		//	    tempHeightBufferSizeZ(0)
 		super( space, bPlaceable );
-		tempPlaneBuffer = null;
-		tempPlaneInstances = null;
-		tempPlaneBufferSize = 0;
-		tempTriangleBuffer = null;
-		tempTriangleBufferSize = 0;
-		tempHeightBuffer = null;
-		tempHeightInstances = null;
-		tempHeightBufferSizeX = 0;
-		tempHeightBufferSizeZ = 0;
 
 		type = dHeightfieldClass;
 		m_p_data = data;
@@ -361,86 +357,476 @@ public class DxHeightfield extends DxAbstractHeightfield {
 	@Override
 	public void DESTRUCTOR()
 	{
-		resetTriangleBuffer();
-		resetPlaneBuffer();
-		resetHeightBuffer();
 		super.DESTRUCTOR();
 	}
 
-	private void allocateTriangleBuffer(int numTri)
+	/**
+	 * Per-thread buffers and geoms of dCollideHeightfieldZone(). The buffers 
+	 * grow on demand and are reused by later queries.
+	 */
+	private static final class HeightfieldScratch
 	{
-		int alignedNumTri = AlignBufferSize(numTri, TEMP_TRIANGLE_BUFFER_ELEMENT_COUNT_ALIGNMENT);
-		tempTriangleBufferSize = alignedNumTri;
-		tempTriangleBuffer = new HeightFieldTriangle[alignedNumTri];
-		for (int i = 0; i < tempTriangleBuffer.length; i++) tempTriangleBuffer[i] = new HeightFieldTriangle();
+		//private HeightFieldPlane[]    tempPlaneBuffer;
+		private ObjArray<HeightFieldPlane>[]  tempPlaneBuffer;
+		private HeightFieldPlane[]    tempPlaneInstances;
+		private int              tempPlaneBufferSize;
+
+		private HeightFieldTriangle[] tempTriangleBuffer;
+		private int              tempTriangleBufferSize;
+
+		//private HeightFieldVertex[]  tempHeightBuffer;
+		private ObjArray<HeightFieldVertex>[]  tempHeightBuffer;
+		private HeightFieldVertex[]   tempHeightInstances;
+		private int              tempHeightBufferSizeX;
+		private int              tempHeightBufferSizeZ;
+
+		// Plane and ray for the triangle tests, they are set before each use.
+		private final DxPlane plane = new DxPlane(null,0,0,0,0);
+		private final DxRay ray = new DxRay(null, 1);
+		// contacts of the plane and ray tests
+		private final DContactGeomBuffer contacts = new DContactGeomBuffer(HEIGHTFIELDMAXCONTACTPERCELL);
+
+		// skipped level 0 pyramid blocks of the current zone
+		private boolean[] blockSkipBuffer = new boolean[16];
+		private final RayQuery rayQuery = new RayQuery();
+
+		private boolean inUse;
+
+		private boolean[] allocateBlockSkipBuffer(int numBlocks)
+		{
+			if (blockSkipBuffer.length < numBlocks)
+				blockSkipBuffer = new boolean[numBlocks];
+			return blockSkipBuffer;
+		}
+
+		private void allocateTriangleBuffer(int numTri)
+		{
+			int alignedNumTri = AlignBufferSize(numTri, TEMP_TRIANGLE_BUFFER_ELEMENT_COUNT_ALIGNMENT);
+			tempTriangleBufferSize = alignedNumTri;
+			tempTriangleBuffer = new HeightFieldTriangle[alignedNumTri];
+			for (int i = 0; i < tempTriangleBuffer.length; i++) tempTriangleBuffer[i] = new HeightFieldTriangle();
+		}
+
+		private void resetTriangleBuffer()
+		{
+			//delete[] tempTriangleBuffer;
+			tempTriangleBuffer = null;
+			tempTriangleBufferSize = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void allocatePlaneBuffer(int numTri)
+		{
+			int alignedNumTri = AlignBufferSize(numTri, TEMP_PLANE_BUFFER_ELEMENT_COUNT_ALIGNMENT);
+			tempPlaneBufferSize = alignedNumTri;
+			//tempPlaneBuffer = new HeightFieldPlane [alignedNumTri];
+			tempPlaneBuffer = new ObjArray[alignedNumTri];
+			tempPlaneInstances = new HeightFieldPlane[alignedNumTri];
+			for (int indexTri = 0; indexTri != alignedNumTri; indexTri++)
+				tempPlaneInstances[indexTri] = new HeightFieldPlane();
+
+			//HeightFieldPlane ptrPlaneMatrix = tempPlaneInstances;
+			for (int indexTri = 0; indexTri != alignedNumTri; indexTri++)
+			{
+				//tempPlaneBuffer[indexTri] = tempPlaneInstances[indexTri];//ptrPlaneMatrix;
+				//ptrPlaneMatrix += 1;
+				tempPlaneBuffer[indexTri] = new ObjArray<HeightFieldPlane>(tempPlaneInstances, indexTri);//ptrPlaneMatrix;
+			}
+		}
+
+		private void resetPlaneBuffer()
+		{
+			//		delete[] tempPlaneInstances;
+			//		delete[] tempPlaneBuffer;
+			tempPlaneInstances = null;
+			tempPlaneBuffer = null;
+			tempPlaneBufferSize = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void allocateHeightBuffer(int numX, int numZ)
+		{
+			int alignedNumX = AlignBufferSize(numX, TEMP_HEIGHT_BUFFER_ELEMENT_COUNT_ALIGNMENT_X);
+			int alignedNumZ = AlignBufferSize(numZ, TEMP_HEIGHT_BUFFER_ELEMENT_COUNT_ALIGNMENT_Z);
+			tempHeightBufferSizeX = alignedNumX;
+			tempHeightBufferSizeZ = alignedNumZ;
+			//tempHeightBuffer = new HeightFieldVertex *[alignedNumX];
+			tempHeightBuffer = new ObjArray[alignedNumX];
+			int numCells = alignedNumX * alignedNumZ;
+			tempHeightInstances = new HeightFieldVertex [numCells];
+			for (int i = 0; i < tempHeightInstances.length; i++) {
+				tempHeightInstances[i] = new HeightFieldVertex();
+			}
+
+			//HeightFieldVertex *ptrHeightMatrix = tempHeightInstances;
+			for (int indexX = 0; indexX != alignedNumX; indexX++)
+			{
+				//			tempHeightBuffer[indexX] = ptrHeightMatrix;
+				//			ptrHeightMatrix += alignedNumZ;
+				//tempHeightBuffer[indexX] = tempHeightInstances[indexX];
+				tempHeightBuffer[indexX] = new ObjArray<HeightFieldVertex>(tempHeightInstances, indexX*alignedNumZ);
+			}
+		}
+
+		private void resetHeightBuffer()
+		{
+			//delete[] tempHeightInstances;
+			//delete[] tempHeightBuffer;
+			tempHeightInstances = null;
+			tempHeightBuffer = null;
+			tempHeightBufferSizeX = 0;
+			tempHeightBufferSizeZ = 0;
+		}
+
+		private void sortPlanes(final int numPlanes)
+		{
+			boolean has_swapped = true;
+			do
+			{
+				has_swapped = false;//reset flag
+				for (int i = 0; i < numPlanes - 1; i++)
+				{
+					//if they are in the wrong order
+					if (DescendingPlaneSort(tempPlaneBuffer[i].at0(), tempPlaneBuffer[i + 1].at0()))
+					{
+						//exchange them
+						//HeightFieldPlane * tempPlane = tempPlaneBuffer[i];
+						ObjArray<HeightFieldPlane> tempPlane = tempPlaneBuffer[i];
+						tempPlaneBuffer[i] = tempPlaneBuffer[i + 1];
+						tempPlaneBuffer[i + 1] = tempPlane;
+
+						//we have swapped at least once, list may not be sorted yet
+						has_swapped = true;
+					}
+				}
+			}    //if no swaps were made during this pass, the list has been sorted
+			while (has_swapped);
+		}
+
+		/**
+		 * Releases buffers that grew beyond the retained sizes.
+		 */
+		private void trim()
+		{
+			if (tempHeightBufferSizeX * tempHeightBufferSizeZ > TEMP_HEIGHT_BUFFER_MAX_RETAINED_CELLS)
+				resetHeightBuffer();
+			if (tempTriangleBufferSize > TEMP_TRIANGLE_BUFFER_MAX_RETAINED_ELEMENTS)
+				resetTriangleBuffer();
+			if (tempPlaneBufferSize > TEMP_PLANE_BUFFER_MAX_RETAINED_ELEMENTS)
+				resetPlaneBuffer();
+			if (blockSkipBuffer.length > TEMP_HEIGHT_BUFFER_MAX_RETAINED_CELLS)
+				blockSkipBuffer = new boolean[16];
+			rayQuery.clear();
+		}
 	}
 
-	private void resetTriangleBuffer()
+	private static boolean isCellSkipped(final boolean[] blockSkip, final int x, final int z,
+			final int blockMinX, final int blockMinZ, final int numBlocksX)
 	{
-		//delete[] tempTriangleBuffer;
-		tempTriangleBuffer = null;
-		//TODO set size == 0? TZ
+		return blockSkip[(x >> HeightfieldPyramid.BLOCK_SHIFT) - blockMinX
+		                 + ((z >> HeightfieldPyramid.BLOCK_SHIFT) - blockMinZ) * numBlocksX];
 	}
 
-	@SuppressWarnings("unchecked")
-    private void allocatePlaneBuffer(int numTri)
+	/**
+	 * @return true if sample (x, z) is a corner of a cell of the zone 
+	 * that is not skipped 
+	 */
+	private static boolean isSampleNeeded(final boolean[] blockSkip, final int x, final int z,
+			final int minX, final int maxX, final int minZ, final int maxZ,
+			final int blockMinX, final int blockMinZ, final int numBlocksX)
 	{
-		int alignedNumTri = AlignBufferSize(numTri, TEMP_PLANE_BUFFER_ELEMENT_COUNT_ALIGNMENT);
-		tempPlaneBufferSize = alignedNumTri;
-		//tempPlaneBuffer = new HeightFieldPlane [alignedNumTri];
-		tempPlaneBuffer = new ObjArray[alignedNumTri];
-		tempPlaneInstances = new HeightFieldPlane[alignedNumTri];
-		for (int indexTri = 0; indexTri != alignedNumTri; indexTri++)
-			tempPlaneInstances[indexTri] = new HeightFieldPlane();
-
-		//HeightFieldPlane ptrPlaneMatrix = tempPlaneInstances;
-		for (int indexTri = 0; indexTri != alignedNumTri; indexTri++)
+		for (int cx = Math.max(x - 1, minX); cx <= Math.min(x, maxX - 1); cx++)
 		{
-			//tempPlaneBuffer[indexTri] = tempPlaneInstances[indexTri];//ptrPlaneMatrix;
-			//ptrPlaneMatrix += 1;
-			tempPlaneBuffer[indexTri] = new ObjArray<HeightFieldPlane>(tempPlaneInstances, indexTri);//ptrPlaneMatrix;
+			for (int cz = Math.max(z - 1, minZ); cz <= Math.min(z, maxZ - 1); cz++)
+			{
+				if (!isCellSkipped(blockSkip, cx, cz, blockMinX, blockMinZ, numBlocksX))
+					return true;
+			}
 		}
+		return false;
 	}
 
-	private void resetPlaneBuffer()
+	/**
+	 * Ray against the triangles of a heightfield with a min/max pyramid.
+	 * <p>
+	 * The pyramid is traversed front to back and only the cells whose 
+	 * blocks are crossed by the ray are intersected. The nearest hits are 
+	 * returned, sorted by distance. A ray totally under the zone gets the 
+	 * single upward contact of dCollideHeightfieldZone(). The ray must be 
+	 * in heightfield space.
+	 */
+	private static final class RayQuery
 	{
-		//		delete[] tempPlaneInstances;
-		//		delete[] tempPlaneBuffer;
-		tempPlaneInstances = null;
-		tempPlaneBuffer = null;
-	}
+		// relative distance below which hits on shared edges are merged
+		private static final double HIT_MERGE_TOLERANCE = 1e-9;
+
+		private DxHeightfieldData data;
+		private HeightfieldPyramid pyramid;
+		private DContactGeomBuffer contacts;
+		private int skip;
+		private int maxContacts;
+		private int numContacts;
+
+		private double px, py, pz;
+		private double dx, dy, dz;
+		private double length;
+
+		// result of clip()
+		private double tEnter, tExit;
+
+		int collide(final DxHeightfieldData data, final HeightfieldPyramid pyramid, final DxRay ray,
+				final int minX, final int maxX, final int minZ, final int maxZ,
+				final int maxContacts, final DContactGeomBuffer contacts, final int skip)
+		{
+			final DVector3C pos = ray.final_posr().pos();
+			final DMatrix3C R = ray.final_posr().R();
+			this.data = data;
+			this.pyramid = pyramid;
+			this.contacts = contacts;
+			this.skip = skip;
+			this.maxContacts = maxContacts;
+			numContacts = 0;
+			px = pos.get0(); py = pos.get1(); pz = pos.get2();
+			dx = R.get02(); dy = R.get12(); dz = R.get22();
+			length = ray.getLength();
+
+			final double maxO2Height = ray._aabb.getMax1();
+			if (isUnder(minX, maxX, minZ, maxZ, maxO2Height - dEpsilon))
+			{
+				// totally under heightfield
+				double minY = dInfinity;
+				for (int x = minX; x <= maxX; x++)
+				{
+					for (int z = minZ; z <= maxZ; z++)
+					{
+						minY = dMIN(minY, data.GetHeight(x, z));
+					}
+				}
+				final DContactGeom contact = contacts.get(0);
+				contact.pos.set(px, minY, pz);
+				contact.normal.set(0, -1, 0);
+				contact.depth = minY - maxO2Height;
+				contact.side1 = -1;
+				contact.side2 = -1;
+				clear();
+				return 1;
+			}
 
-	@SuppressWarnings("unchecked")
-    private void allocateHeightBuffer(int numX, int numZ)
-	{
-		int alignedNumX = AlignBufferSize(numX, TEMP_HEIGHT_BUFFER_ELEMENT_COUNT_ALIGNMENT_X);
-		int alignedNumZ = AlignBufferSize(numZ, TEMP_HEIGHT_BUFFER_ELEMENT_COUNT_ALIGNMENT_Z);
-		tempHeightBufferSizeX = alignedNumX;
-		tempHeightBufferSizeZ = alignedNumZ;
-		//tempHeightBuffer = new HeightFieldVertex *[alignedNumX];
-		tempHeightBuffer = new ObjArray[alignedNumX];
-		int numCells = alignedNumX * alignedNumZ;
-		tempHeightInstances = new HeightFieldVertex [numCells];
-		for (int i = 0; i < tempHeightInstances.length; i++) {
-			tempHeightInstances[i] = new HeightFieldVertex();
+			final int top = pyramid.getLevelCount() - 1;
+			for (int bz = 0; bz < pyramid.getDepth(top); bz++)
+			{
+				for (int bx = 0; bx < pyramid.getWidth(top); bx++)
+				{
+					visit(top, bx, bz);
+				}
+			}
+			final int n = numContacts;
+			clear();
+			return n;
 		}
 
-		//HeightFieldVertex *ptrHeightMatrix = tempHeightInstances;
-		for (int indexX = 0; indexX != alignedNumX; indexX++)
+		void clear()
 		{
-			//			tempHeightBuffer[indexX] = ptrHeightMatrix;
-			//			ptrHeightMatrix += alignedNumZ;
-			//tempHeightBuffer[indexX] = tempHeightInstances[indexX];
-			tempHeightBuffer[indexX] = new ObjArray<HeightFieldVertex>(tempHeightInstances, indexX*alignedNumZ);
+			data = null;
+			pyramid = null;
+			contacts = null;
 		}
-	}
 
-	void resetHeightBuffer()
-	{
-		//delete[] tempHeightInstances;
-		//delete[] tempHeightBuffer;
-		tempHeightInstances = null;
-		tempHeightBuffer = null;
+		/**
+		 * @return true if all samples of the zone are above the threshold,
+		 * samples are only read in blocks whose bounds don't decide it
+		 */
+		private boolean isUnder(final int minX, final int maxX, final int minZ, final int maxZ,
+				final double threshold)
+		{
+			final int lastX = pyramid.getWidth(0) - 1;
+			final int lastZ = pyramid.getDepth(0) - 1;
+			final int bx1 = Math.min(maxX >> HeightfieldPyramid.BLOCK_SHIFT, lastX);
+			final int bz1 = Math.min(maxZ >> HeightfieldPyramid.BLOCK_SHIFT, lastZ);
+			for (int bz = Math.min(minZ >> HeightfieldPyramid.BLOCK_SHIFT, lastZ); bz <= bz1; bz++)
+			{
+				for (int bx = Math.min(minX >> HeightfieldPyramid.BLOCK_SHIFT, lastX); bx <= bx1; bx++)
+				{
+					if (pyramid.getMin(0, bx, bz) > threshold)
+						continue;
+					final int x0 = Math.max(minX, bx << HeightfieldPyramid.BLOCK_SHIFT);
+					final int x1 = Math.min(maxX, (bx + 1) << HeightfieldPyramid.BLOCK_SHIFT);
+					final int z0 = Math.max(minZ, bz << HeightfieldPyramid.BLOCK_SHIFT);
+					final int z1 = Math.min(maxZ, (bz + 1) << HeightfieldPyramid.BLOCK_SHIFT);
+					for (int x = x0; x <= x1; x++)
+					{
+						for (int z = z0; z <= z1; z++)
+						{
+							if (data.GetHeight(x, z) <= threshold)
+								return false;
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		private void visit(final int level, final int bx, final int bz)
+		{
+			final int size = HeightfieldPyramid.BLOCK << level;
+			final int x0 = bx * size;
+			final int z0 = bz * size;
+			final int x1 = Math.min(x0 + size, pyramid.getCellsX());
+			final int z1 = Math.min(z0 + size, pyramid.getCellsZ());
+			if (x0 >= x1 || z0 >= z1)
+				return;
+			if (!clip(x0 * data.m_fSampleWidth, x1 * data.m_fSampleWidth,
+					pyramid.getMin(level, bx, bz), pyramid.getMax(level, bx, bz),
+					z0 * data.m_fSampleDepth, z1 * data.m_fSampleDepth))
+				return;
+			if (numContacts == maxContacts && tEnter > contacts.get((maxContacts - 1) * skip).depth)
+				return;
+
+			if (level == 0)
+			{
+				for (int x = x0; x < x1; x++)
+				{
+					for (int z = z0; z < z1; z++)
+					{
+						collideCell(x, z);
+					}
+				}
+				return;
+			}
+
+			// children nearest to the ray origin first
+			final int fx = dx < 0 ? 1 : 0;
+			final int fz = dz < 0 ? 1 : 0;
+			for (int i = 0; i < 2; i++)
+			{
+				for (int j = 0; j < 2; j++)
+				{
+					final int cx = 2 * bx + (i ^ fx);
+					final int cz = 2 * bz + (j ^ fz);
+					if (cx < pyramid.getWidth(level - 1) && cz < pyramid.getDepth(level - 1))
+						visit(level - 1, cx, cz);
+				}
+			}
+		}
+
+		/**
+		 * Clips the ray segment against an axis aligned box.
+		 * @return false if the segment misses the box
+		 */
+		private boolean clip(final double minX, final double maxX, final double minY, final double maxY,
+				final double minZ, final double maxZ)
+		{
+			tEnter = 0;
+			tExit = length;
+			return clipSlab(px, dx, minX, maxX) && clipSlab(py, dy, minY, maxY) 
+					&& clipSlab(pz, dz, minZ, maxZ);
+		}
+
+		private boolean clipSlab(final double p, final double d, final double min, final double max)
+		{
+			if (d == 0)
+				return p >= min && p <= max;
+			final double inv = 1.0 / d;
+			double t0 = (min - p) * inv;
+			double t1 = (max - p) * inv;
+			if (t0 > t1)
+			{
+				final double t = t0; t0 = t1; t1 = t;
+			}
+			if (t0 > tEnter) tEnter = t0;
+			if (t1 < tExit) tExit = t1;
+			return tEnter <= tExit;
+		}
+
+		private void collideCell(final int x, final int z)
+		{
+			final double sw = data.m_fSampleWidth;
+			final double sd = data.m_fSampleDepth;
+			final double hA = data.GetHeight(x, z);
+			final double hB = data.GetHeight(x + 1, z);
+			final double hC = data.GetHeight(x, z + 1);
+			final double hD = data.GetHeight(x + 1, z + 1);
+			if (!clip(x * sw, (x + 1) * sw, dMIN(dMIN(hA, hB), dMIN(hC, hD)),
+					dMAX(dMAX(hA, hB), dMAX(hC, hD)), z * sd, (z + 1) * sd))
+				return;
+
+			final double xA = x * sw, xB = (x + 1) * sw;
+			final double zA = z * sd, zC = (z + 1) * sd;
+			// same triangles as dCollideHeightfieldZone(): up (A, B, C) and down (D, B, C)
+			double t = intersectTriangle(xA, hA, zA, xB, hB, zA, xA, hC, zC);
+			if (t >= 0)
+				addHit(t, -sd * (hB - hA), sd * sw, -sw * (hC - hA));
+			t = intersectTriangle(xB, hD, zC, xB, hB, zA, xA, hC, zC);
+			if (t >= 0)
+				addHit(t, sd * (hC - hD), sd * sw, sw * (hB - hD));
+		}
+
+		/**
+		 * Two sided Moeller-Trumbore test.
+		 * @return distance along the ray or -1 for no hit
+		 */
+		private double intersectTriangle(final double x0, final double y0, final double z0,
+				final double x1, final double y1, final double z1,
+				final double x2, final double y2, final double z2)
+		{
+			final double e1x = x1 - x0, e1y = y1 - y0, e1z = z1 - z0;
+			final double e2x = x2 - x0, e2y = y2 - y0, e2z = z2 - z0;
+			final double qx = dy * e2z - dz * e2y;
+			final double qy = dz * e2x - dx * e2z;
+			final double qz = dx * e2y - dy * e2x;
+			final double det = e1x * qx + e1y * qy + e1z * qz;
+			if (det == 0)
+				return -1;
+			final double inv = 1.0 / det;
+			final double sx = px - x0, sy = py - y0, sz = pz - z0;
+			final double u = (sx * qx + sy * qy + sz * qz) * inv;
+			if (u < 0 || u > 1)
+				return -1;
+			final double rx = sy * e1z - sz * e1y;
+			final double ry = sz * e1x - sx * e1z;
+			final double rz = sx * e1y - sy * e1x;
+			final double v = (dx * rx + dy * ry + dz * rz) * inv;
+			if (v < 0 || u + v > 1)
+				return -1;
+			final double t = (e2x * rx + e2y * ry + e2z * rz) * inv;
+			return (t >= 0 && t <= length) ? t : -1;
+		}
+
+		/**
+		 * Inserts a hit into the sorted contacts, the farthest one is dropped
+		 * if the buffer is full. (nx, ny, nz) is the upward triangle normal.
+		 */
+		private void addHit(final double t, final double nx, final double ny, final double nz)
+		{
+			int pos = numContacts;
+			while (pos > 0 && contacts.get((pos - 1) * skip).depth > t)
+				pos--;
+			final double tolerance = HIT_MERGE_TOLERANCE * (1 + t);
+			if ((pos > 0 && t - contacts.get((pos - 1) * skip).depth <= tolerance)
+					|| (pos < numContacts && contacts.get(pos * skip).depth - t <= tolerance))
+				return; // edge shared by two triangles
+			if (pos == maxContacts)
+				return;
+
+			final int last = numContacts < maxContacts ? numContacts++ : maxContacts - 1;
+			for (int i = last; i > pos; i--)
+			{
+				final DContactGeom dst = contacts.get(i * skip);
+				final DContactGeom src = contacts.get((i - 1) * skip);
+				dst.pos.set(src.pos);
+				dst.normal.set(src.normal);
+				dst.depth = src.depth;
+				dst.side1 = src.side1;
+				dst.side2 = src.side2;
+			}
+			final DContactGeom contact = contacts.get(pos * skip);
+			contact.pos.set(px + t * dx, py + t * dy, pz + t * dz);
+			final double invLength = 1.0 / Math.sqrt(nx * nx + ny * ny + nz * nz);
+			contact.normal.set(-nx * invLength, -ny * invLength, -nz * invLength);
+			contact.depth = t;
+			contact.side1 = -1;
+			contact.side2 = -1;
+		}
 	}
 
 	//////// Heightfield geom interface ////////////////////////////////////////////////////
@@ -481,7 +867,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 	//typedef int HeightFieldVertexCoords[2];
 
-	class HeightFieldVertex
+	static class HeightFieldVertex
 	{
 		//	public:
 		HeightFieldVertex(){};
@@ -503,7 +889,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 //		HeightFieldVertex[]   vertices = new HeightFieldVertex[2];  //TODO v1/v1 (TZ)
 //	};
 
-	private class HeightFieldTriangle
+	private static class HeightFieldTriangle
 	{
 		//public:
 		HeightFieldTriangle(){};
@@ -525,7 +911,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 		boolean                state;
 	};
 
-	private class HeightFieldPlane
+	private static class HeightFieldPlane
 	{
 		void setMinMax()
 		{
@@ -608,36 +994,11 @@ public class DxHeightfield extends DxAbstractHeightfield {
 //		return ((A.maxAAAB - B.maxAAAB) > dEpsilon);
 //	}
 	//static inline boolean DescendingPlaneSort(final HeightFieldPlane * final A, final HeightFieldPlane * final B)
-	private boolean DescendingPlaneSort(final HeightFieldPlane A, final HeightFieldPlane B)
+	private static boolean DescendingPlaneSort(final HeightFieldPlane A, final HeightFieldPlane B)
 	{
 		return ((A.maxAAAB - B.maxAAAB) > dEpsilon);
 	}
 
-	void sortPlanes(final int numPlanes)
-	{
-		boolean has_swapped = true;
-		do
-		{
-			has_swapped = false;//reset flag
-			for (int i = 0; i < numPlanes - 1; i++)
-			{
-				//if they are in the wrong order
-				if (DescendingPlaneSort(tempPlaneBuffer[i].at0(), tempPlaneBuffer[i + 1].at0()))
-				{
-					//exchange them
-					//HeightFieldPlane * tempPlane = tempPlaneBuffer[i];
-					ObjArray<HeightFieldPlane> tempPlane = tempPlaneBuffer[i];
-					tempPlaneBuffer[i] = tempPlaneBuffer[i + 1];
-					tempPlaneBuffer[i + 1] = tempPlane;
-
-					//we have swapped at least once, list may not be sorted yet
-					has_swapped = true;
-				}
-			}
-		}    //if no swaps were made during this pass, the list has been sorted
-		while (has_swapped);
-	}
-
 	//TZ not used
 	//	static inline dReal DistancePointToLine(final dVector3 &_point,
 	//            final dVector3 &_pt0,
@@ -685,6 +1046,31 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			DxGeom o2, final int numMaxContactsPossible,
 			int flags, DContactGeomBuffer contacts,
 			int skip )
+	{
+		HeightfieldScratch scratch = SCRATCH.get();
+		if (scratch.inUse)
+		{
+			// nested query on the same thread
+			scratch = new HeightfieldScratch();
+		}
+		scratch.inUse = true;
+		try
+		{
+			return dCollideHeightfieldZone( scratch, minX, maxX, minZ, maxZ, o2, 
+					numMaxContactsPossible, flags, contacts, skip );
+		}
+		finally
+		{
+			scratch.inUse = false;
+			scratch.trim();
+		}
+	}
+
+	private int dCollideHeightfieldZone( final HeightfieldScratch scratch, 
+			final int minX, final int maxX, final int minZ, final int maxZ,
+			DxGeom o2, final int numMaxContactsPossible,
+			int flags, DContactGeomBuffer contacts,
+			int skip )
 	{
 		DContactGeom pContact = null;
 		int  x, z;
@@ -703,45 +1089,102 @@ public class DxHeightfield extends DxAbstractHeightfield {
 		// localize and final for faster access
 		final double cfSampleWidth = m_p_data.m_fSampleWidth;
 		final double cfSampleDepth = m_p_data.m_fSampleDepth;
+
+		final HeightfieldPyramid pyramid = m_p_data.getPyramid();
+		if (pyramid != null && o2.type == dRayClass)
 		{
-			if (tempHeightBufferSizeX < numX || tempHeightBufferSizeZ < numZ)
+			return scratch.rayQuery.collide(m_p_data, pyramid, (DxRay) o2, minX, maxX, minZ, maxZ,
+					numMaxContactsPossible, contacts, skip);
+		}
+
+		// Blocks of cells that are entirely below the geom produce no triangles,
+		// their samples are not needed. Flat geoms sample all cells to keep
+		// the 'totally under heightfield' test exact.
+		final int blockMinX = minX >> HeightfieldPyramid.BLOCK_SHIFT;
+		final int blockMinZ = minZ >> HeightfieldPyramid.BLOCK_SHIFT;
+		final int numBlocksX = ((maxX - 1) >> HeightfieldPyramid.BLOCK_SHIFT) - blockMinX + 1;
+		final int numBlocksZ = ((maxZ - 1) >> HeightfieldPyramid.BLOCK_SHIFT) - blockMinZ + 1;
+		boolean[] blockSkip = null;
+		if (pyramid != null && maxX > minX && maxZ > minZ && maxO2Height - minO2Height >= dEpsilon)
+		{
+			blockSkip = scratch.allocateBlockSkipBuffer(numBlocksX * numBlocksZ);
+			int numSkipped = 0;
+			for (int bz = 0; bz < numBlocksZ; bz++)
 			{
-				resetHeightBuffer();
-				allocateHeightBuffer(numX, numZ);
+				for (int bx = 0; bx < numBlocksX; bx++)
+				{
+					final boolean below = pyramid.getMax(0, blockMinX + bx, blockMinZ + bz) <= minO2Height;
+					blockSkip[bx + bz * numBlocksX] = below;
+					if (below)
+						numSkipped++;
+				}
+			}
+			if (numSkipped == numBlocksX * numBlocksZ)
+			{
+				//totally above heightfield
+				return 0;
+			}
+			if (numSkipped == 0)
+				blockSkip = null;
+		}
+
+		{
+			if (scratch.tempHeightBufferSizeX < numX || scratch.tempHeightBufferSizeZ < numZ)
+			{
+				scratch.resetHeightBuffer();
+				scratch.allocateHeightBuffer(numX, numZ);
 			}
 
 			double Xpos, Ypos;
 
-			for ( x = minX, x_local = 0; x_local < numX; x++, x_local++)
+			boolean resample;
+			do
 			{
-				Xpos = x * cfSampleWidth; // Always calculate pos via multiplication to avoid computational error accumulation during multiple additions
+				for ( x = minX, x_local = 0; x_local < numX; x++, x_local++)
+				{
+					Xpos = x * cfSampleWidth; // Always calculate pos via multiplication to avoid computational error accumulation during multiple additions
 
-				final double c_Xpos = Xpos;
-				//HeightFieldVertex HeightFieldRow = tempHeightBuffer[x_local];
-				//ObjArray<HeightFieldVertex> HeightFieldRow = new ObjArray<HeightFieldVertex>(tempHeightBuffer, x_local);
-				ObjArray<HeightFieldVertex> HeightFieldRow = tempHeightBuffer[x_local];
-				for ( z = minZ, z_local = 0; z_local < numZ; z++, z_local++)
+					final double c_Xpos = Xpos;
+					//HeightFieldVertex HeightFieldRow = tempHeightBuffer[x_local];
+					//ObjArray<HeightFieldVertex> HeightFieldRow = new ObjArray<HeightFieldVertex>(tempHeightBuffer, x_local);
+					ObjArray<HeightFieldVertex> HeightFieldRow = scratch.tempHeightBuffer[x_local];
+					for ( z = minZ, z_local = 0; z_local < numZ; z++, z_local++)
+					{
+						if (blockSkip != null && !isSampleNeeded(blockSkip, x, z, minX, maxX, minZ, maxZ, 
+								blockMinX, blockMinZ, numBlocksX))
+							continue;
+
+						Ypos = z * cfSampleDepth; // Always calculate pos via multiplication to avoid computational error accumulation during multiple additions
+
+						final double h = m_p_data.GetHeight(x, z);
+						//					HeightFieldRow.at(z_local).vertex[0] = c_Xpos;
+						//					HeightFieldRow.at(z_local).vertex[1] = h;
+						//					HeightFieldRow.at(z_local).vertex[2] = Ypos;
+						HeightFieldRow.at(z_local).vertex.set( c_Xpos, h, Ypos);
+						HeightFieldRow.at(z_local).coords0 = x;
+						HeightFieldRow.at(z_local).coords1 = z;
+
+						maxY = dMAX(maxY, h);
+						minY = dMIN(minY, h);
+					}
+				}
+				resample = blockSkip != null && maxY - minY < dEpsilon;
+				if (resample)
 				{
-					Ypos = z * cfSampleDepth; // Always calculate pos via multiplication to avoid computational error accumulation during multiple additions
-
-					final double h = m_p_data.GetHeight(x, z);
-					//					HeightFieldRow.at(z_local).vertex[0] = c_Xpos;
-					//					HeightFieldRow.at(z_local).vertex[1] = h;
-					//					HeightFieldRow.at(z_local).vertex[2] = Ypos;
-					HeightFieldRow.at(z_local).vertex.set( c_Xpos, h, Ypos);
-					HeightFieldRow.at(z_local).coords0 = x;
-					HeightFieldRow.at(z_local).coords1 = z;
-
-					maxY = dMAX(maxY, h);
-					minY = dMIN(minY, h);
+					// Possibly a single plane, sample the skipped cells as well
+					blockSkip = null;
+					maxY = - dInfinity;
+					minY = dInfinity;
 				}
 			}
+			while (resample);
 			if (minO2Height - maxY > -dEpsilon )
 			{
 				//totally above heightfield
 				return 0;
 			}
-			if (minY - maxO2Height > -dEpsilon )
+			// (never with skipped blocks, they are below minO2Height)
+			if (blockSkip == null && minY - maxO2Height > -dEpsilon )
 			{
 				// totally under heightfield
 				//pContact = CONTACT(contact, 0);
@@ -847,7 +1290,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 		}
 
-		DxPlane myplane = new DxPlane(null,0,0,0,0);
+		DxPlane myplane = scratch.plane;
 		DxPlane sliding_plane = myplane;
 		//double[] triplane = new double[4];
 		DVector3 triplaneV = new DVector3();
@@ -959,14 +1402,14 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 		int numTerrainContacts = 0;
 		//dContactGeom *PlaneContact = m_p_data.m_contacts;
-		DContactGeomBuffer PlaneContact = m_p_data.m_contacts;
+		DContactGeomBuffer PlaneContact = scratch.contacts;
 
 		//final unsigned 
 		final int numTriMax = (maxX - minX) * (maxZ - minZ) * 2;
-		if (tempTriangleBufferSize < numTriMax)
+		if (scratch.tempTriangleBufferSize < numTriMax)
 		{
-			resetTriangleBuffer();
-			allocateTriangleBuffer(numTriMax);
+			scratch.resetTriangleBuffer();
+			scratch.allocateTriangleBuffer(numTriMax);
 		}
 
 		// Sorting triangle/plane  resulting from heightfield zone
@@ -1034,8 +1477,8 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			//			HeightFieldVertex HeightFieldNextRow  = tempHeightBuffer[x_local + 1];
 //			int posHeightFieldRow      = x_local;
 //			int posHeightFieldNextRow  = x_local + 1;
-			ObjArray<HeightFieldVertex> HeightFieldRow      = tempHeightBuffer[x_local];
-			ObjArray<HeightFieldVertex> HeightFieldNextRow  = tempHeightBuffer[x_local + 1];
+			ObjArray<HeightFieldVertex> HeightFieldRow      = scratch.tempHeightBuffer[x_local];
+			ObjArray<HeightFieldVertex> HeightFieldNextRow  = scratch.tempHeightBuffer[x_local + 1];
 
 			// First A
 	        //C = &HeightFieldRow    [0];
@@ -1058,6 +1501,10 @@ public class DxHeightfield extends DxAbstractHeightfield {
 				C = HeightFieldRow.at(z_local + 1);//  [z_local + 1];
 				D = HeightFieldNextRow.at(z_local + 1);//[z_local + 1];
 
+				if (blockSkip != null && isCellSkipped(blockSkip, minX + x_local, minZ + z_local, 
+						blockMinX, blockMinZ, numBlocksX))
+					continue;
+
 				final double AHeight = A.vertex.get1();
 				final double BHeight = B.vertex.get1();
 				final double CHeight = C.vertex.get1();
@@ -1075,7 +1522,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 				if (isACollide || isBCollide || isCCollide)
 				{
-					HeightFieldTriangle CurrTriUp = tempTriangleBuffer[numTri++];// final ?? TZ
+					HeightFieldTriangle CurrTriUp = scratch.tempTriangleBuffer[numTri++];// final ?? TZ
 
 					CurrTriUp.state = false;
 
@@ -1091,7 +1538,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 				if (isBCollide || isCCollide || isDCollide)
 				{
-					HeightFieldTriangle CurrTriDown = tempTriangleBuffer[numTri++];//final ?? TZ
+					HeightFieldTriangle CurrTriDown = scratch.tempTriangleBuffer[numTri++];//final ?? TZ
 
 					CurrTriDown.state = false;
 					// changing point order here implies to change it in isOnHeightField
@@ -1137,7 +1584,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			//compute all triangles normals.
 			for (int k = 0; k < numTri; k++)
 			{
-				HeightFieldTriangle itTriangle = tempTriangleBuffer[k];  // final? TZ
+				HeightFieldTriangle itTriangle = scratch.tempTriangleBuffer[k];  // final? TZ
 
 				// define 2 edges and a point that will define collision plane
 				//dVector3Subtract(itTriangle.vertices[2].vertex, itTriangle.vertices[0].vertex, Edge1);
@@ -1170,22 +1617,22 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			}
 
 			// group by Triangles by Planes sharing shame plane definition
-			if (tempPlaneBufferSize  < numTri)
+			if (scratch.tempPlaneBufferSize  < numTri)
 			{
-				resetPlaneBuffer();
-				allocatePlaneBuffer(numTri);
+				scratch.resetPlaneBuffer();
+				scratch.allocatePlaneBuffer(numTri);
 			}
 			//unsigned 
 			int numPlanes = 0;
 			for (int k = 0; k < numTri; k++)
 			{
-				HeightFieldTriangle tri_base = tempTriangleBuffer[k];  // final ? TZ
+				HeightFieldTriangle tri_base = scratch.tempTriangleBuffer[k];  // final ? TZ
 
 				if (tri_base.state == true)
 					continue;// already tested or added to plane list.
 
 				//HeightFieldPlane * const currPlane = tempPlaneBuffer[numPlanes];
-				HeightFieldPlane currPlane = tempPlaneBuffer[numPlanes].at0();// final ? TZ
+				HeightFieldPlane currPlane = scratch.tempPlaneBuffer[numPlanes].at0();// final ? TZ
 				currPlane.resetTriangleListSize(numTri - k);
 				currPlane.addTriangle(tri_base);
 				// saves normal for collision check (planes, triangles, vertices and edges.)
@@ -1202,7 +1649,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 				for (int m = k + 1; m < numTri; m++)
 				{
 
-					HeightFieldTriangle tri_test = tempTriangleBuffer[m];  // final? TZ
+					HeightFieldTriangle tri_test = scratch.tempTriangleBuffer[m];  // final? TZ
 					if (tri_test.state == true)
 						continue;// already tested or added to plane list.
 
@@ -1228,7 +1675,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 
 			// sort planes
 			if (isContactNumPointsLimited)
-				sortPlanes(numPlanes);
+				scratch.sortPlanes(numPlanes);
 
 			int numMaxContactsPerPlane;
 			int planeTestFlags;
@@ -1256,7 +1703,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			for (int k = 0; k < numPlanes; k++)
 			{
 	            //HeightFieldPlane * const itPlane = tempPlaneBuffer[k];
-				HeightFieldPlane itPlane = tempPlaneBuffer[k].at0();//final TZ
+				HeightFieldPlane itPlane = scratch.tempPlaneBuffer[k].at0();//final TZ
 
 				//set Geom
 				dGeomPlaneSetNoNormalize (sliding_plane,  itPlane.planeDefV, itPlane.planeDefD);
@@ -1328,7 +1775,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 		// pass2: VS triangle vertices
 		if (needFurtherPasses)
 		{
-			DxRay tempRay = new DxRay(null, 1);
+			DxRay tempRay = scratch.ray;
 			double depth = 0;
 			boolean vertexCollided;
 
@@ -1341,7 +1788,7 @@ public class DxHeightfield extends DxAbstractHeightfield {
 			for (int k = 0; k < numTri; k++)
 			{
 				//final HeightFieldTriangle * final itTriangle = &tempTriangleBuffer[k];
-				HeightFieldTriangle itTriangle = tempTriangleBuffer[k];  // final ? TZ
+				HeightFieldTriangle itTriangle = scratch.tempTriangleBuffer[k];  // final ? TZ
 				if (itTriangle.state == true)
 					continue;// plane triangle did already collide.
 
@@ -24,10 +24,11 @@
  *************************************************************************/
 package org.ode4j.ode.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 import org.ode4j.math.DVector3C;
-import org.ode4j.ode.DContactGeomBuffer;
 import org.ode4j.ode.DHeightfieldData;
 import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
 import org.ode4j.ode.internal.DxHeightfield.HeightFieldVertex;
@@ -69,7 +70,7 @@ public class DxHeightfieldData implements DHeightfieldData {
 	int m_nDepthSamples;       // Vertex count on Z axis edge (number of samples)
 	boolean m_bCopyHeightData;     // Do we own the sample data?
 	boolean m_bWrapMode;           // Heightfield wrapping mode (0=finite, 1=infinite)
-	int m_nGetHeightMode;      // GetHeight mode ( 0=callback, 1=byte, 2=short, 3=float )
+	int m_nGetHeightMode;      // GetHeight mode ( 0=callback, 1=byte, 2=short, 3=float, 4=double, 5=tiled file )
 
 	//    const void* m_pHeightData; // Sample data array
 	//    void* m_pUserData;         // Callback user data
@@ -77,12 +78,13 @@ public class DxHeightfieldData implements DHeightfieldData {
 	Object m_pUserData;         // Callback user data
 
 	//dContactGeom[]            m_contacts = new dContactGeom[HEIGHTFIELDMAXCONTACTPERCELL];
-	DContactGeomBuffer            m_contacts = new DContactGeomBuffer(DxHeightfield.HEIGHTFIELDMAXCONTACTPERCELL);
 
 	//dHeightfieldGetHeight* m_pGetHeightCallback;		// Callback pointer.
 	/** TODO uses CPP-API! */
 	DHeightfieldGetHeight m_pGetHeightCallback;		// Callback pointer.
 
+	private volatile HeightfieldPyramid m_pyramid;	// Min/max pyramid, built on first use
+
 	//    dxHeightfieldData();
 	//    ~dxHeightfieldData();
 	//
@@ -181,6 +183,45 @@ public class DxHeightfieldData implements DHeightfieldData {
 
 		// finite or repeated terrain?
 		m_bWrapMode = bWrapMode;
+
+		m_pyramid = null;
+		closeTiles();
+	}
+
+	private void closeTiles()
+	{
+		if (m_nGetHeightMode == 5)
+		{
+			((HeightfieldTiles) m_pHeightData).close();
+			m_pHeightData = null;
+			m_nGetHeightMode = 0;
+		}
+	}
+
+
+	/**
+	 * Returns the min/max pyramid of the heights, building it on first use.
+	 * Heights from a callback may change at any time, wrapped data has 
+	 * no borders and tiled data would have to be read completely, these 
+	 * have no pyramid.
+	 * @return the pyramid or <code>null</code>
+	 */
+	HeightfieldPyramid getPyramid()
+	{
+		HeightfieldPyramid pyramid = m_pyramid;
+		if (pyramid == null && m_nGetHeightMode != 0 && m_nGetHeightMode != 5 && !m_bWrapMode)
+		{
+			synchronized (this)
+			{
+				pyramid = m_pyramid;
+				if (pyramid == null)
+				{
+					pyramid = new HeightfieldPyramid(this);
+					m_pyramid = pyramid;
+				}
+			}
+		}
+		return pyramid;
 	}
 
 
@@ -266,6 +307,12 @@ public class DxHeightfieldData implements DHeightfieldData {
 
 			break;
 
+			// tiled file, bounds from the header
+		case 5:
+			m_fMinHeight = ((HeightfieldTiles) m_pHeightData).getMinHeight();
+			m_fMaxHeight = ((HeightfieldTiles) m_pHeightData).getMaxHeight();
+			break;
+
 		}
 
 		// scale and offset
@@ -401,6 +448,11 @@ public class DxHeightfieldData implements DHeightfieldData {
 			data_double = (double[])m_pHeightData;
 			h = data_double[x+(z * m_nWidthSamples)];
 			break;
+
+			// tiled file
+		case 5:
+			h = ((HeightfieldTiles) m_pHeightData).getHeight(x, z);
+			break;
 		}
 
 		return (h * m_fScale) + m_fOffset;
@@ -449,6 +501,7 @@ public class DxHeightfieldData implements DHeightfieldData {
 	//dxHeightfieldData::~dxHeightfieldData()
 	void DESTRUCTOR()
 	{
+		closeTiles();
 		//TZ: Nothing to do here...
 //		byte[] data_byte;
 //		short[] data_short;
@@ -698,12 +751,42 @@ public class DxHeightfieldData implements DHeightfieldData {
 
 
 
+	void dGeomHeightfieldDataBuildTiled( 
+			File file, int maxCachedTiles,
+			double width, double depth,
+			double scale, double offset, double thickness, boolean bWrap ) throws IOException
+	{
+		dIASSERT( file!=null );
+
+		HeightfieldTiles tiles = new HeightfieldTiles(file, maxCachedTiles);
+
+		// set info
+		SetData( tiles.getWidthSamples(), tiles.getDepthSamples(), width, depth, scale, offset, thickness, bWrap );
+		m_nGetHeightMode = 5;
+		m_bCopyHeightData = false;
+		m_pHeightData = tiles;
+
+		// Find height bounds
+		ComputeHeightBounds();
+	}
+
+
+	public static void dGeomHeightfieldDataWriteTiled( 
+			File file, DHeightfieldGetHeight heights, Object userData,
+			int widthSamples, int depthSamples, int tileSize ) throws IOException
+	{
+		HeightfieldTiles.write(file, heights, userData, widthSamples, depthSamples, tileSize);
+	}
+
+
 //	void dGeomHeightfieldDataSetBounds( dxHeightfieldData d, double minHeight, double maxHeight )
 	public void dGeomHeightfieldDataSetBounds( double minHeight, double maxHeight )
 	{
 		//dUASSERT(d, "Argument not Heightfield data");
 		m_fMinHeight = ( minHeight * m_fScale ) + m_fOffset - m_fThickness;
 		m_fMaxHeight = ( maxHeight * m_fScale ) + m_fOffset;
+		// the data may have changed
+		m_pyramid = null;
 	}
 
 
@@ -761,6 +844,13 @@ public class DxHeightfieldData implements DHeightfieldData {
 				width, depth, widthSamples, depthSamples, scale, offset, thickness, bWrap);
 	}
 
+	@Override
+	public void buildTiled(File file, int maxCachedTiles, double width, double depth,
+			double scale, double offset, double thickness, boolean bWrap) throws IOException {
+		dGeomHeightfieldDataBuildTiled( file, maxCachedTiles, 
+				width, depth, scale, offset, thickness, bWrap);
+	}
+
 	@Override
 	public void build(double[] pHeightData, boolean bCopyHeightData, double width,
 			double depth, int widthSamples, int depthSamples, double scale,
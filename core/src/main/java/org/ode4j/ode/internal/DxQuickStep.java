@@ -46,22 +46,20 @@ import static org.ode4j.ode.internal.Timer.dTimerReport;
 import static org.ode4j.ode.internal.Timer.dTimerStart;
 import static org.ode4j.ode.internal.cpp4j.Cstdio.stdout;
 
-import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ode4j.math.DMatrix3;
 import org.ode4j.math.DVector3;
 import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DWorld.QuickStepSolver;
 import org.ode4j.ode.internal.Objects_H.dxQuickStepParameters;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
+import org.ode4j.ode.internal.cpp4j.java.RefDouble;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext;
+import org.ode4j.ode.internal.processmem.DxUtil;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dmaxcallcountestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper_fn_t;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.internal.processmem.DxWorldProcessIslandsInfo.dmemestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
 import org.ode4j.ode.threading.ThreadingUtils;
@@ -76,16 +74,6 @@ import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 public class DxQuickStep extends AbstractStepper implements dstepper_fn_t,
 dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
-	//TODO evaluate this
-	/**
-	 * Experimental improvement to reduce GC, see issue #36
-	 */
-	public static boolean REUSE_OBJECTS = false;
-	
-	public static final int THREADS = 4;
-	static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(
-			THREADS, THREADS, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
-
 	//TZ where is this defined???
     private static final boolean CHECK_VELOCITY_OBEYS_CONSTRAINT = false;
     
@@ -131,6 +119,11 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	 */
 	private static final boolean RANDOMLY_REORDER_CONSTRAINTS = true;
 
+	/** for the parallel SOR method: 
+	 * number of joints that a thread takes at once from the joints of a color.
+	 */
+	private static final int SOR_JOINT_CHUNK = 16;
+
 	//****************************************************************************
 	// special matrix multipliers
 
@@ -231,16 +224,19 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	private static class dxQuickStepperStage1CallContext implements CallContext
 	{
 		void Initialize(DxStepperProcessingCallContext stepperCallContext, 
-				BlockPointer stageMemArenaState, double[] invI, DJointWithInfo1[] jointinfos)
+				dxQuickStepperObjects objects, 
+				int stageMemArenaState, double[] invI, DJointWithInfo1[] jointinfos)
 		{
 			m_stepperCallContext = stepperCallContext;
+			m_objects = objects;
 			m_stageMemArenaState = stageMemArenaState; 
 			m_invI = invI;
 			m_jointinfos = jointinfos;
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
-		BlockPointer                       m_stageMemArenaState;
+		dxQuickStepperObjects              m_objects;
+		int                       m_stageMemArenaState;
 		double[]                           m_invI;
 		DJointWithInfo1[]                 m_jointinfos;
 		final dxQuickStepperStage0Outputs     m_stage0Outputs = new dxQuickStepperStage0Outputs();
@@ -253,9 +249,9 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		{
 			m_stepperCallContext = stepperCallContext;
 			m_invI = invI;
-			//m_tagsTaken = 0;
-			//m_gravityTaken = 0;
-			//m_inertiaBodyIndex = 0;
+			m_tagsTaken.set(0);
+			m_gravityTaken.set(0);
+			m_inertiaBodyIndex.set(0);
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
@@ -264,6 +260,13 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		final AtomicInteger                     m_gravityTaken = new AtomicInteger();
 		//unsigned int                    volatile m_inertiaBodyIndex;
 		final AtomicInteger                    m_inertiaBodyIndex = new AtomicInteger();
+		// Temporaries of the inertia computation, Stage0-Bodies is executed by a single call
+		final DMatrix3                         m_tmp = new DMatrix3();
+		final DMatrix3                         m_I = new DMatrix3();
+		final DMatrix3                         m_Itild = new DMatrix3();
+		final DMatrix3                         m_itInv = new DMatrix3();
+		final DVector3                         m_L = new DVector3();
+		final DVector3                         m_tau0 = new DVector3();
 	}
 
 	private static class dxQuickStepperStage0JointsCallContext implements CallContext
@@ -334,37 +337,119 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	private static class dxQuickStepperStage3CallContext implements CallContext
 	{
 		void Initialize(DxStepperProcessingCallContext callContext, 
+				dxQuickStepperObjects objects, 
 				dxQuickStepperLocalContext localContext, 
-				BlockPointer stage1MemArenaState)
+				int stage1MemArenaState)
 		{
 			m_stepperCallContext = callContext;
+			m_objects = objects;
 			m_localContext = localContext;
 			m_stage1MemArenaState = stage1MemArenaState;
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
+		dxQuickStepperObjects          m_objects;
 		dxQuickStepperLocalContext   m_localContext;
-		BlockPointer                            m_stage1MemArenaState;
+		int                            m_stage1MemArenaState;
+	};
+
+	/**
+	 * State of the colored parallel SOR of an island, see SOR_LCP_Parallel().
+	 */
+	private static class dxQuickStepperSORCallContext implements CallContext
+	{
+		void Initialize(DxStepperProcessingCallContext callContext, 
+				dxQuickStepperObjects objects, 
+				dxQuickStepperLocalContext localContext, 
+				double[] lambda, double[] cforce, int lcpState, int threadCount)
+		{
+			m_stepperCallContext = callContext;
+			m_objects = objects;
+			m_localContext = localContext;
+			m_lambda = lambda;
+			m_cforce = cforce;
+			m_lcpState = lcpState;
+			m_threadCount = threadCount;
+
+			int nj = localContext.m_nj;
+			int nb = callContext.m_islandBodiesCount();
+			if (m_pending.length < nj) {
+				m_pending = new int[nj];
+				m_colorJoints = new int[nj];
+				m_colorStart = new int[nj + 1];
+			}
+			if (m_bodyColor.length < nb) {
+				m_bodyColor = new int[nb];
+			}
+			if (m_maxDelta.length < threadCount) {
+				m_maxDelta = new double[threadCount];
+				m_maxLambda = new double[threadCount];
+			}
+			dSetZero(m_maxDelta, threadCount);
+			dSetZero(m_maxLambda, threadCount);
+
+			dxQuickStepParameters qs = callContext.m_world().qs;
+			m_iteration = 0;
+			m_color = 0;
+			m_check = qs.num_iterations == 1 || 
+					(qs.tolerance > 0 && qs.tolerance_check_interval <= 1);
+			m_residual = 0;
+		}
+
+		DxStepperProcessingCallContext m_stepperCallContext;
+		dxQuickStepperObjects          m_objects;
+		dxQuickStepperLocalContext     m_localContext;
+		double[]                       m_lambda;
+		double[]                       m_cforce;
+		int                            m_lcpState;
+		int                            m_threadCount;
+
+		double[]                       m_iMJ;
+		int                            m_iMJP;
+		double[]                       m_Ad;
+		int                            m_AdP;
+
+		// joints sorted by color, the joints of color c start at m_colorStart[c]
+		int                            m_colorCount;
+		int[]                          m_colorJoints = new int[0];
+		int[]                          m_colorStart = new int[0];
+		int[]                          m_pending = new int[0];
+		int[]                          m_bodyColor = new int[0];
+
+		// current sweep
+		int                            m_iteration;
+		int                            m_color;
+		boolean                        m_check;
+		final AtomicInteger            m_jointChunk = new AtomicInteger();
+		// convergence check, per call instance
+		double[]                       m_maxDelta = new double[0];
+		double[]                       m_maxLambda = new double[0];
+		double                         m_residual;
+
+		final Ref<DCallReleasee>       m_stage3bReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee>       m_sweepSyncReleasee = new Ref<DCallReleasee>();
 	};
 
 	private static class dxQuickStepperStage2CallContext implements CallContext
 	{
 		void Initialize(DxStepperProcessingCallContext callContext, 
 				dxQuickStepperLocalContext localContext, 
-				double[] rhs_tmp)
+				double[] rhs_tmp, DxJoint.Info2Descr[] Jinfos)
 		{
 			m_stepperCallContext = callContext;
 			m_localContext = localContext;
 			m_rhs_tmp = rhs_tmp;
-			//m_ji_J = 0;
-			//m_ji_jb = 0;
-			//m_bi = 0;
-			//m_Jrhsi = 0;
+			m_Jinfos = Jinfos;
+			m_ji_J.set(0);
+			m_ji_jb.set(0);
+			m_bi.set(0);
+			m_Jrhsi.set(0);
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
 		dxQuickStepperLocalContext   m_localContext;
 		double[]                           m_rhs_tmp;
+		DxJoint.Info2Descr[]               m_Jinfos; // one per Stage2a call
 //		volatile unsigned int           m_ji_J;
 //		volatile unsigned int           m_ji_jb;
 //		volatile unsigned int           m_bi;
@@ -375,6 +460,69 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		final AtomicInteger           m_Jrhsi = new AtomicInteger();
 	};
 
+	/**
+	 * The call contexts and other objects that C++ allocates from the stepper arena. 
+	 * They are kept with the arena if it is recycling (zero-garbage stepping), 
+	 * islands are stepped one after the other on an arena so they can share them.
+	 */
+	private static class dxQuickStepperObjects
+	{
+		final dxQuickStepperStage1CallContext m_stage1CallContext = new dxQuickStepperStage1CallContext();
+		final dxQuickStepperStage0BodiesCallContext m_stage0BodiesCallContext = new dxQuickStepperStage0BodiesCallContext();
+		final dxQuickStepperStage0JointsCallContext m_stage0JointsCallContext = new dxQuickStepperStage0JointsCallContext();
+		final dxQuickStepperLocalContext m_localContext = new dxQuickStepperLocalContext();
+		final dxQuickStepperStage3CallContext m_stage3CallContext = new dxQuickStepperStage3CallContext();
+		final dxQuickStepperStage2CallContext m_stage2CallContext = new dxQuickStepperStage2CallContext();
+		final dxQuickStepperSORCallContext m_sorCallContext = new dxQuickStepperSORCallContext();
+		final Ref<DCallReleasee> m_stage3CallReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee> m_stage2bSyncReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee> m_stage2aSyncReleasee = new Ref<DCallReleasee>();
+		final DxBody.dxStepBodyTemporaries m_stepBodyTemporaries = new DxBody.dxStepBodyTemporaries();
+		private DJointWithInfo1[] m_jointinfos = new DJointWithInfo1[0];
+		final RefDouble m_lcpResidual = new RefDouble();
+		private DxJoint.Info2Descr[] m_Jinfos = new DxJoint.Info2Descr[0];
+
+		DJointWithInfo1[] AllocateJointInfos(int nj)
+		{
+			if (m_jointinfos.length < nj) {
+				m_jointinfos = GrowArray(m_jointinfos, new DJointWithInfo1[nj]);
+				for (int i = 0; i < nj; i++) {
+					if (m_jointinfos[i] == null) m_jointinfos[i] = new DJointWithInfo1();
+				}
+			}
+			return m_jointinfos;
+		}
+
+
+		DxJoint.Info2Descr[] AllocateInfo2Descrs(int count)
+		{
+			if (m_Jinfos.length < count) {
+				m_Jinfos = GrowArray(m_Jinfos, new DxJoint.Info2Descr[count]);
+				for (int i = 0; i < count; i++) {
+					if (m_Jinfos[i] == null) m_Jinfos[i] = new DxJoint.Info2Descr();
+				}
+			}
+			return m_Jinfos;
+		}
+
+		private static <T> T[] GrowArray(T[] oldArray, T[] newArray)
+		{
+			System.arraycopy(oldArray, 0, newArray, 0, oldArray.length);
+			return newArray;
+		}
+	}
+
+	private static dxQuickStepperObjects ObtainStepperObjects(DxWorldProcessMemArena memarena)
+	{
+		Object objects = memarena.GetStepperObjects();
+		if (objects instanceof dxQuickStepperObjects) {
+			return (dxQuickStepperObjects) objects;
+		}
+		dxQuickStepperObjects newObjects = new dxQuickStepperObjects();
+		memarena.SetStepperObjects(newObjects);
+		return newObjects;
+	}
+
 	//static int dxQuickStepIsland_Stage2a_Callback(void *callContext, dcallindex_t callInstanceIndex, dCallReleaseeID callThisReleasee);
 	//static int dxQuickStepIsland_Stage2aSync_Callback(void *callContext, dcallindex_t callInstanceIndex, dCallReleaseeID callThisReleasee);
 	//static int dxQuickStepIsland_Stage2b_Callback(void *callContext, dcallindex_t callInstanceIndex, dCallReleaseeID callThisReleasee);
@@ -400,10 +548,10 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	//static void compute_invM_JT (int m, dRealMutablePtr J, dRealMutablePtr iMJ, int *jb,
 	//	dxBody * const *body, dRealPtr invI)
 	private static void compute_invM_JT (final int m, final double[] J, final double[] iMJ, 
-	        final int[]jb,
+	        final int iMJP, final int[]jb,
 			final DxBody[]bodyP, final int bodyOfs, final double[] invI)
 	{
-		int iMJ_ofs = 0;//TZ
+		int iMJ_ofs = iMJP;//TZ
 		int J_ofs = 0;//TZ
 		for (int i=0; i<m; J_ofs +=12, iMJ_ofs += 12, i++) {
 			int b1 = jb[i*2];
@@ -451,6 +599,29 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //	}
 	//#endif
 
+	/**
+	 * compute out = inv(M)*J'*in, used to initialise fc for warm starting.
+	 */
+	private static void multiply_invM_JT (int m, int nb, double[] iMJ, int iMJP, 
+			int[] jb, double[] in, double[] out)
+	{
+		dSetZero (out,6*nb);
+		int iMJ_ofs = iMJP;
+		for (int i=0; i<m; i++) {
+			int b1 = jb[i*2];
+			int b2 = jb[i*2+1];
+			final double in_i = in[i];
+			int out_ofs = b1*6;
+			for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs] * in_i;
+			iMJ_ofs +=6;
+			if (b2 != -1) {
+				out_ofs = b2*6;
+				for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs] * in_i;
+			}
+			iMJ_ofs +=6;
+		}
+	}
+
 	/** 
 	 * compute out = J*in. 
 	 * (TZ) Calculates the sum of each row 'm' in 'J', using only tagged bodies, and 
@@ -523,6 +694,56 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //	}
 	//#endif
 
+	/**
+	 * compute out = J*in.
+	 * @param in double[nb*6]
+	 * @param out double[m], starting at outP
+	 */
+	private static void multiply_J (int m, final double[] J, final int[] jb,
+			final double[] in, double[] out, int outP)
+	{
+		int J_ofs = 0;
+		for (int i=0; i<m; J_ofs += 12, i++) {
+			int b1 = jb[i*2];
+			int b2 = jb[i*2+1];
+			double sum = 0;
+			int in_ofs = b1*6;
+			for (int j=0; j<6; j++) sum += J[j + J_ofs] * in[j + in_ofs];
+			if (b2 != -1) {
+				in_ofs = b2*6;
+				for (int j=0; j<6; j++) sum += J[j + J_ofs + 6] * in[j + in_ofs];
+			}
+			out[outP + i] = sum;
+		}
+	}
+
+	/**
+	 * compute out = (J*inv(M)*J' + cfm)*in.
+	 * use z as an nb*6 temporary.
+	 */
+	private static void multiply_J_invM_JT (int m, int nb, final double[] J, 
+			final double[] iMJ, final int iMJP, final int[] jb, final double[] cfm, 
+			double[] z, final double[] in, final int inP, double[] out, final int outP)
+	{
+		dSetZero (z,6*nb);
+		int iMJ_ofs = iMJP;
+		for (int i=0; i<m; iMJ_ofs += 12, i++) {
+			int b1 = jb[i*2];
+			int b2 = jb[i*2+1];
+			final double in_i = in[inP + i];
+			int z_ofs = b1*6;
+			for (int j=0; j<6; j++) z[j + z_ofs] += iMJ[j + iMJ_ofs] * in_i;
+			if (b2 != -1) {
+				z_ofs = b2*6;
+				for (int j=0; j<6; j++) z[j + z_ofs] += iMJ[j + iMJ_ofs + 6] * in_i;
+			}
+		}
+		multiply_J (m,J,jb,z,out,outP);
+
+		// add cfm
+		for (int i=0; i<m; i++) out[outP + i] += cfm[i] * in[inP + i];
+	}
+
 	//***************************************************************************
 	// conjugate gradient method with jacobi preconditioner
 	// THIS IS EXPERIMENTAL CODE that doesn't work too well, so it is ifdefed out.
@@ -632,6 +853,142 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	//
 	//#endif
 
+	// TZ: CG_LCP is used by QuickStepSolver.CG, but only for islands where 
+	// all rows are unbounded, see IsUnbounded().
+
+	/**
+	 * @return whether all rows are equality constraints, i.e. they have no 
+	 * limits and no friction index. Only then the LCP is a linear system 
+	 * that CG_LCP can solve.
+	 */
+	private static boolean IsUnbounded (final int m, final double[] lo, 
+			final double[] hi, final int[] findex)
+	{
+		for (int i=0; i<m; i++) {
+			if (findex[i] != -1 || lo[i] != -dInfinity || hi[i] != dInfinity) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Conjugate gradient method with Jacobi preconditioner for islands 
+	 * without bounded rows. Like SOR_LCP this returns lambda and 
+	 * fc = inv(M)*J'*lambda.
+	 * @return the number of iterations
+	 */
+	private static int CG_LCP (DxWorldProcessMemArena memarena,
+			final int m, final int nb, double[] J, int[] jb, final DxBody []bodyP,
+			final int bodyOfs, final double[] invI, double[] lambda, double[] fc, 
+			final double[] b, final double[] cfm, dxQuickStepParameters qs, 
+			RefDouble residual)
+	{
+		final int num_iterations = qs.num_iterations;
+
+		// precompute iMJ = inv(M)*J'
+		double[] iMJ = memarena.AllocateSlabDReal (m*12);
+		final int iMJP = memarena.SlabOffset();
+		compute_invM_JT (m,J,iMJ,iMJP,jb,bodyP,bodyOfs,invI);
+
+		double last_rho = 0;
+		double[] r = memarena.AllocateSlabDReal (m);
+		final int rP = memarena.SlabOffset();
+		double[] z = memarena.AllocateSlabDReal (m);
+		final int zP = memarena.SlabOffset();
+		double[] p = memarena.AllocateSlabDReal (m);
+		final int pP = memarena.SlabOffset();
+		double[] q = memarena.AllocateSlabDReal (m);
+		final int qP = memarena.SlabOffset();
+
+		// precompute 1 / diagonals of A
+		double[] Ad = memarena.AllocateSlabDReal (m);
+		final int AdP = memarena.SlabOffset();
+		int iMJ_ofs = iMJP;
+		int J_ofs = 0;
+		for (int i=0; i<m; iMJ_ofs += 12, J_ofs += 12, i++) {
+			double sum = 0;
+			for (int j=0; j<6; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];
+			if (jb[i*2+1] != -1) {
+				for (int j=6; j<12; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];
+			}
+			Ad[AdP+i] = 1.0 / (sum + cfm[i]);
+		}
+
+		if (qs.warm_start_factor > 0) {
+			// compute residual r = b - A*lambda
+			multiply_J_invM_JT (m,nb,J,iMJ,iMJP,jb,cfm,fc,lambda,0,r,rP);
+			for (int k=0; k<m; k++) r[rP+k] = b[k] - r[rP+k];
+		} else {
+			dSetZero (lambda,m);
+			System.arraycopy(b, 0, r, rP, m);	// residual r = b - A*lambda
+		}
+
+		// convergence is checked like in SOR_LCP, on the change of lambda
+		final double tolerance = qs.tolerance;
+		final int check_interval = qs.tolerance_check_interval > 0 ? qs.tolerance_check_interval : 1;
+		residual.set(0);
+		int iteration;
+		for (iteration=0; iteration < num_iterations; iteration++) {
+			double rho = 0;	// rho = r'*z
+			for (int i=0; i<m; i++) {
+				z[zP+i] = r[rP+i]*Ad[AdP+i];	// z = inv(M)*r
+				rho += r[rP+i]*z[zP+i];
+			}
+
+			// we must check for convergence, otherwise rho will go to 0 if
+			// we get an exact solution, which will introduce NaNs into the equations.
+			if (!(rho > 0)) {
+				residual.set(0);
+				break;
+			}
+
+			if (iteration==0) {
+				System.arraycopy(z, zP, p, pP, m);	// p = z
+			}
+			else {
+				final double beta = rho/last_rho;	// p = z + (rho/last_rho)*p
+				for (int i=0; i<m; i++) p[pP+i] = z[zP+i] + beta*p[pP+i];
+			}
+
+			// compute q = (J*inv(M)*J')*p
+			multiply_J_invM_JT (m,nb,J,iMJ,iMJP,jb,cfm,fc,p,pP,q,qP);
+
+			double pq = 0;
+			for (int i=0; i<m; i++) pq += p[pP+i]*q[qP+i];
+			if (!(pq > 0)) {
+				// A is not positive definite in the direction of p (no CFM)
+				break;
+			}
+			final double alpha = rho/pq;	// alpha = rho/(p'*q)
+			double max_delta = 0, max_lambda = 0;
+			for (int i=0; i<m; i++) {
+				final double delta = alpha*p[pP+i];
+				lambda[i] += delta;	// lambda = lambda + alpha*p
+				r[rP+i] -= alpha*q[qP+i];	// r = r - alpha*q
+				double abs_delta = dFabs(delta);
+				if (abs_delta > max_delta) max_delta = abs_delta;
+				double abs_lambda = dFabs(lambda[i]);
+				if (abs_lambda > max_lambda) max_lambda = abs_lambda;
+			}
+			last_rho = rho;
+
+			final boolean check = iteration + 1 == num_iterations ||
+					(tolerance > 0 && (iteration + 1) % check_interval == 0);
+			if (check) {
+				residual.set(max_lambda > 0 ? max_delta / max_lambda : 0);
+				if (max_delta <= tolerance * max_lambda) {
+					iteration++;
+					break;
+				}
+			}
+		}
+
+		// compute fc = inv(M)*J'*lambda
+		multiply_invM_JT (m,nb,iMJ,iMJP,jb,lambda,fc);
+		return iteration;
+	}
+
 	//***************************************************************************
 	// SOR-LCP method
 
@@ -646,11 +1003,14 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	// b, lo and hi are modified on exit
 
 
-	private static class IndexError {
+	// TZ: the IndexError structs of ODE are replaced by a permutation of the
+	// row indices in an int slab of the arena, error and findex were only
+	// used by REORDER_CONSTRAINTS.
+//	private static class IndexError {
 //		double error;		// error to sort on
 //		int findex;
-		int index;		// row index
-	}
+//		int index;		// row index
+//	}
 
 
 	//#ifdef REORDER_CONSTRAINTS
@@ -694,94 +1054,49 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	//		dRealPtr invI, dRealMutablePtr lambda, dRealMutablePtr fc, dRealMutablePtr b,
 	//		dRealMutablePtr lo, dRealMutablePtr hi, dRealPtr cfm, int *findex,
 	//		dxQuickStepParameters *qs)
-	private static void SOR_LCP (DxWorldProcessMemArena memarena,
+	/**
+	 * @param residual receives max|delta lambda| / max|lambda| of the last
+	 * checked iteration
+	 * @return the number of iterations performed, this is less than
+	 * qs.num_iterations if qs.tolerance has been reached earlier
+	 */
+	private static int SOR_LCP (DxWorldProcessMemArena memarena, 
 	        final int m, final int nb, double[] J, int[] jb, final DxBody []bodyP,
 	        final int bodyOfs,
 			final double[] invI, double[] lambda, double[] fc, double[] b,
 			final double[] lo, final double[] hi, final double[] cfm, final int []findex,
-			dxQuickStepParameters qs)
+			dxQuickStepParameters qs, RefDouble residual)
 	{
-		//TZ not defined
-//		if (WARM_STARTING) {//#ifdef WARM_STARTING
-//			// for warm starting, this seems to be necessary to prevent
-//			// jerkiness in motor-driven joints. i have no idea why this works.
-//			for (int i=0; i<m; i++) lambda[i] *= 0.9;
-//		} else { //#else
-			dSetZero (lambda,m);
-//		}//#endif
-
 		// precompute iMJ = inv(M)*J'
 		//double[] iMJ = new double[m*12];//dRealAllocaArray (iMJ,m*12);
-		double[] iMJ = memarena.AllocateArrayDReal (m*12);
-		compute_invM_JT (m,J,iMJ,jb,bodyP,bodyOfs,invI);
+		double[] iMJ = memarena.AllocateSlabDReal (m*12);
+		final int iMJP = memarena.SlabOffset();
+        double[] Ad = memarena.AllocateSlabDReal (m);
+        final int AdP = memarena.SlabOffset();
+        SOR_LCP_Prepare (m,nb,J,jb,bodyP,bodyOfs,invI,lambda,fc,b,cfm,qs,iMJ,iMJP,Ad,AdP);
 
-		// compute fc=(inv(M)*J')*lambda. we will incrementally maintain fc
-		// as we change lambda.
-		//not defined:
-//		if (WARM_STARTING) {//TZ #ifdef WARM_STARTING
-//			throw new UnsupportedOperationException();
-//			//multiply_invM_JT (m,nb,iMJ,jb,lambda,fc);
-//		} else {//#else
-		//TODO (TZ) should not be necessary (is created just before given to this method)
-			dSetZero (fc,nb*6);
-//		}//#endif
-
-        double[] Ad = memarena.AllocateArrayDReal (m);
-        {
-            final double sor_w = qs.w;      // SOR over-relaxation parameter
-            // precompute 1 / diagonals of A
-            int iMJ_ofs = 0;//final double[] iMJ_ptr = iMJ;
-            int J_ofs = 0;//double[] J_ptr = J;
-            for (int i=0; i<m; iMJ_ofs +=12, J_ofs +=12, i++ ) {
-                double sum = 0;
-                for (int j=0; j<6; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];//iMJ_ptr[j] * J_ptr[j];
-                if (jb[i*2+1] != -1) {
-                    for (int j=6; j<12; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];//iMJ_ptr[j] * J_ptr[j];
-                }
-                Ad[i] = sor_w / (sum + cfm[i]);
-            }
-        }
-
-        {
-            // NOTE: This may seem unnecessary but it's indeed an optimization 
-            // to move multiplication by Ad[i] and cfm[i] out of iteration loop.
-            
-            // scale J and b by Ad
-            int J_ofs = 0;//J_ptr = J;
-            for (int i=0; i<m; J_ofs += 12, i++) {
-                double Ad_i = Ad[i];
-                for (int j=0; j<12; j++) {
-                    J[J_ofs+j] *= Ad_i;//J_ptr[0] *= Ad[i];
-                }
-                b[i] *= Ad_i;
-
-                // scale Ad by CFM. N.B. this should be done last since it is used above
-                Ad[i] = Ad_i * cfm[i];
-            }
-        }
-        
 		// order to solve constraint rows in
 		//IndexError *order = (IndexError*) ALLOCA (m*sizeof(IndexError));
-		IndexError[] order = new IndexError[m];
-		for (int iii=0; iii<m; iii++) order[iii] = new IndexError();
+		final int[] order = memarena.AllocateSlabInt (m);
+		final int orderP = memarena.SlabOffset();
 		int head_size = 0;
 
 		if (!REORDER_CONSTRAINTS) {//TZ #ifndef REORDER_CONSTRAINTS
 		    // make sure constraints with findex < 0 come first.
 		    //IndexError *orderhead = order, *ordertail = order + (m - 1);
-		    int orderhead = 0, ordertail = m-1;
+		    int orderhead = orderP, ordertail = orderP + m-1;
 
 		    // Fill the array from both ends
 		    for (int i=0; i<m; i++) {
 		        if (findex[i] == -1) {
-		            order[orderhead].index = i; // Place them at the front
+		            order[orderhead] = i; // Place them at the front
 		            ++orderhead;
 		        } else {
-		            order[ordertail].index = i; // Place them at the end
+		            order[ordertail] = i; // Place them at the end
 		            --ordertail;
 		        }
 		    }
-	        head_size = orderhead;// - order;
+	        head_size = orderhead - orderP;
 		    dIASSERT (orderhead-ordertail==1);
 		} //#endif
 
@@ -792,8 +1107,33 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		} //#endif
 		
 		
+		// QuickStepSolver.ACCELERATED_PGS: the result of the previous 
+		// iteration and the (extrapolated) lambda this iteration started with
+		final boolean accelerate = qs.solver == QuickStepSolver.ACCELERATED_PGS;
+		double[] prev_lambda = null, start_lambda = null;
+		int prev_lambdaP = 0, start_lambdaP = 0;
+		if (accelerate) {
+			prev_lambda = memarena.AllocateSlabDReal (m);
+			prev_lambdaP = memarena.SlabOffset();
+			System.arraycopy(lambda, 0, prev_lambda, prev_lambdaP, m);
+			start_lambda = memarena.AllocateSlabDReal (m);
+			start_lambdaP = memarena.SlabOffset();
+			System.arraycopy(lambda, 0, start_lambda, start_lambdaP, m);
+		}
+		int momentum = 0;
+
+		final DxQuickStepKernels kernels = DxQuickStepKernels.get();
 		final int num_iterations = qs.num_iterations;
-		for (int iteration=0; iteration < num_iterations; iteration++) {
+		// convergence is checked every tolerance_check_interval iterations
+		// (and after the last one, to report the residual)
+		final double tolerance = qs.tolerance;
+		final int check_interval = qs.tolerance_check_interval > 0 ? qs.tolerance_check_interval : 1;
+		residual.set(0);
+		int iteration;
+		for (iteration=0; iteration < num_iterations; iteration++) {
+			final boolean check = iteration + 1 == num_iterations ||
+					(tolerance > 0 && (iteration + 1) % check_interval == 0);
+			double max_delta = 0, max_lambda = 0;
 
 			//TODO commented out for now because it's 'false'
 			if (REORDER_CONSTRAINTS) {//#ifdef REORDER_CONSTRAINTS
@@ -816,11 +1156,11 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //					// get solved last. use the absolute (not relative) error.
 //					for (int i=0; i<m; i++) {
 //						double v1 = dFabs (lambda[i]);
-//						double v2 = dFabs (last_lambda[i]);
+//						double v2 = dFabs (prev_lambda[i]);
 //						double max = (v1 > v2) ? v1 : v2;
 //						if (max > 0) {
-//							//@@@ relative error: order[i].error = dFabs(lambda[i]-last_lambda[i])/max;
-//							order[i].error = dFabs(lambda[i]-last_lambda[i]);
+//							//@@@ relative error: order[i].error = dFabs(lambda[i]-prev_lambda[i])/max;
+//							order[i].error = dFabs(lambda[i]-prev_lambda[i]);
 //						}
 //						else {
 //							order[i].error = dInfinity;
@@ -843,16 +1183,17 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				if ((iteration & 7) == 0) {
 					for (int i=1; i<head_size; i++) {
 					    int swapi = dRandInt(i+1);
-                        IndexError tmp = order[i];
-						order[i] = order[swapi];
-						order[swapi] = tmp;
+					    int tmp = order[orderP + i];
+					    order[orderP + i] = order[orderP + swapi];
+					    order[orderP + swapi] = tmp;
 					}
 		            int tail_size = m - head_size;
+		            final int tailP = orderP + head_size;
 		            for (int j=1; j<tail_size; j++) {
 		                int swapj = dRandInt(j+1);
-		                IndexError tmp = order[head_size + j];
-		                order[head_size + j] = order[head_size + swapj];
-		                order[head_size + swapj] = tmp;
+		                int tmp = order[tailP + j];
+		                order[tailP + j] = order[tailP + swapj];
+		                order[tailP + swapj] = tmp;
 		            }
 				}
 			}//#endif
@@ -862,7 +1203,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				//     linearizing access to those arrays. hmmm, this does not seem
 				//     like a win, but we should think carefully about our memory
 				//     access pattern.
-				int index = order[i].index;
+				int index = order[orderP + i];
 
 				int fc_ofs1;//dReal *fc_ptr1;
 				int fc_ofs2;//dReal *fc_ptr2;
@@ -879,27 +1220,13 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				double old_lambda = lambda[index];
 
 				{
-				    delta = b[index] - old_lambda*Ad[index];
+				    delta = b[index] - old_lambda*Ad[AdP+index];
 
 				    //dRealPtr J_ptr = J + index*12;
 				    final int J_ofs = index*12;
-				    // @@@ potential optimization: SIMD-ize this and the b2 >= 0 case
-				    //delta -=fc_ptr1[0] * J_ptr[0] + fc_ptr1[1] * J_ptr[1] +
-				    delta -=fc[fc_ofs1] * J[J_ofs] + fc[fc_ofs1+1] * J[J_ofs+1] +
-				    //fc_ptr1[2] * J_ptr[2] + fc_ptr1[3] * J_ptr[3] +
-				    fc[fc_ofs1+2] * J[J_ofs+2] + fc[fc_ofs1+3] * J[J_ofs+3] +
-				    //fc_ptr1[4] * J_ptr[4] + fc_ptr1[5] * J_ptr[5];
-				    fc[fc_ofs1+4] * J[J_ofs+4] + fc[fc_ofs1+5] * J[J_ofs+5];
 				    // @@@ potential optimization: handle 1-body constraints in a separate
 				    //     loop to avoid the cost of test & jump?
-				    if (fc_ofs2 != NULL) {
-				        //delta -=fc_ptr2[0] * J_ptr[6] + fc_ptr2[1] * J_ptr[7] +
-				        delta -=fc[fc_ofs2+0] * J[J_ofs+6] + fc[fc_ofs2+1] * J[J_ofs+7] +
-				        //fc_ptr2[2] * J_ptr[8] + fc_ptr2[3] * J_ptr[9] +
-				        fc[fc_ofs2+2] * J[J_ofs+8] + fc[fc_ofs2+3] * J[J_ofs+9] +
-				        //fc_ptr2[4] * J_ptr[10] + fc_ptr2[5] * J_ptr[11];
-				        fc[fc_ofs2+4] * J[J_ofs+10] + fc[fc_ofs2+5] * J[J_ofs+11];
-				    }
+				    delta = kernels.subtractRow (delta, J, J_ofs, fc, fc_ofs1, fc_ofs2);
 				}
 
 				{
@@ -937,67 +1264,397 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				    }
 				}
 
+				if (check) {
+				    double abs_delta = dFabs(delta);
+				    if (abs_delta > max_delta) max_delta = abs_delta;
+				    double abs_lambda = dFabs(lambda[index]);
+				    if (abs_lambda > max_lambda) max_lambda = abs_lambda;
+				}
+
 				//@@@ a trick that may or may not help
 				//dReal ramp = (1-((dReal)(iteration+1)/(dReal)num_iterations));
 				//delta *= ramp;
 
 				{
-				    final int iMJ_ofs = 0+index*12; //dRealPtr iMJ_ptr = iMJ + (size_t)index*12;
+				    final int iMJ_ofs = iMJP+index*12; //dRealPtr iMJ_ptr = iMJ + (size_t)index*12;
     				// update fc.
-    				// @@@ potential optimization: SIMD for this and the b2 >= 0 case
-				    fc[fc_ofs1 + 0] += delta * iMJ[iMJ_ofs + 0];//fc_ptr[0] += delta * iMJ_ptr[0];
-    				fc[fc_ofs1 + 1] += delta * iMJ[iMJ_ofs + 1];//fc_ptr[1] += delta * iMJ_ptr[1];
-    				fc[fc_ofs1 + 2] += delta * iMJ[iMJ_ofs + 2];//fc_ptr[2] += delta * iMJ_ptr[2];
-    				fc[fc_ofs1 + 3] += delta * iMJ[iMJ_ofs + 3];//fc_ptr[3] += delta * iMJ_ptr[3];
-    				fc[fc_ofs1 + 4] += delta * iMJ[iMJ_ofs + 4];//fc_ptr[4] += delta * iMJ_ptr[4];
-    				fc[fc_ofs1 + 5] += delta * iMJ[iMJ_ofs + 5];//fc_ptr[5] += delta * iMJ_ptr[5];
-    				// @@@ potential optimization: handle 1-body constraints in a separate
-    				//     loop to avoid the cost of test & jump?
-    				if (fc_ofs2 != NULL) {
-    					fc[fc_ofs2 + 0] += delta * iMJ[iMJ_ofs + 6];//fc_ptr[0] += delta * iMJ_ptr[6];
-    					fc[fc_ofs2 + 1] += delta * iMJ[iMJ_ofs + 7];//fc_ptr[1] += delta * iMJ_ptr[7];
-    					fc[fc_ofs2 + 2] += delta * iMJ[iMJ_ofs + 8];//fc_ptr[2] += delta * iMJ_ptr[8];
-    					fc[fc_ofs2 + 3] += delta * iMJ[iMJ_ofs + 9];//fc_ptr[3] += delta * iMJ_ptr[9];
-    					fc[fc_ofs2 + 4] += delta * iMJ[iMJ_ofs + 10];//fc_ptr[4] += delta * iMJ_ptr[10];
-    					fc[fc_ofs2 + 5] += delta * iMJ[iMJ_ofs + 11];//fc_ptr[5] += delta * iMJ_ptr[11];
-    				}
+    				kernels.addRow (delta, iMJ, iMJ_ofs, fc, fc_ofs1, fc_ofs2);
+				}
+			}
+
+			if (check) {
+				residual.set(max_lambda > 0 ? max_delta / max_lambda : 0);
+				if (max_delta <= tolerance * max_lambda) {
+					// includes the case where all lambda are 0 (and stay 0)
+					return iteration + 1;
+				}
+			}
+
+			if (accelerate && iteration + 1 < num_iterations) {
+				// Nesterov momentum: extrapolate lambda along the change 
+				// since the previous iteration by (k-1)/(k+2). Restart if the 
+				// SOR sweep itself moved lambda against that change.
+				double progress = 0;
+				for (int i=0; i<m; i++) {
+					progress += (lambda[i] - start_lambda[start_lambdaP + i]) * 
+							(lambda[i] - prev_lambda[prev_lambdaP + i]);
+				}
+				if (progress < 0) {
+					momentum = 0;
+				}
+				final double beta = (double)momentum / (momentum + 3);
+				momentum++;
+				// in solving order, so that friction limits use the 
+				// extrapolated normal forces
+				for (int i=0; i<m; i++) {
+					final int index = order[orderP + i];
+					final double l = lambda[index];
+					double y = l + beta * (l - prev_lambda[prev_lambdaP + index]);
+					double hi_act, lo_act;
+					if (findex[index] != -1) {
+						hi_act = dFabs (hi[index] * lambda[findex[index]]);
+						lo_act = -hi_act;
+					} else {
+						hi_act = hi[index];
+						lo_act = lo[index];
+					}
+					if (y < lo_act) {
+						y = lo_act;
+					} else if (y > hi_act) {
+						y = hi_act;
+					}
+					prev_lambda[prev_lambdaP + index] = l;
+					start_lambda[start_lambdaP + index] = y;
+					final double delta = y - l;
+					if (delta != 0) {
+						lambda[index] = y;
+						final int b2 = jb[index*2+1];
+						kernels.addRow (delta, iMJ, iMJP+index*12, fc, 6*jb[index*2], 
+								(b2 != -1) ? 6*b2 : -1);
+					}
 				}
 			}
 		}
+		return iteration;
 	}
 
-	
-	private double[] buf_invI = new double[100];
-	private double[] ensureSize_invI(int size) {
-		if (buf_invI.length < size || !REUSE_OBJECTS) {
-			buf_invI = new double[size];
+	/**
+	 * Initializes lambda and fc for SOR_LCP, computes iMJ = inv(M)*J' and 
+	 * Ad and scales J and b by Ad.
+	 */
+	private static void SOR_LCP_Prepare (final int m, final int nb, double[] J, int[] jb, 
+			final DxBody []bodyP, final int bodyOfs,
+			final double[] invI, double[] lambda, double[] fc, double[] b,
+			final double[] cfm, dxQuickStepParameters qs, 
+			double[] iMJ, final int iMJP, double[] Ad, final int AdP)
+	{
+		// with warm starting, lambda has been loaded (and scaled by 
+		// qs.warm_start_factor) by the caller
+		final boolean warmStart = qs.warm_start_factor > 0;
+		//TZ not defined
+//		if (WARM_STARTING) {//#ifdef WARM_STARTING
+//			// for warm starting, this seems to be necessary to prevent
+//			// jerkiness in motor-driven joints. i have no idea why this works.
+//			for (int i=0; i<m; i++) lambda[i] *= 0.9;
+//		} else { //#else
+		if (!warmStart) {
+			dSetZero (lambda,m);
+		}
+//		}//#endif
+
+		compute_invM_JT (m,J,iMJ,iMJP,jb,bodyP,bodyOfs,invI);
+
+		// compute fc=(inv(M)*J')*lambda. we will incrementally maintain fc
+		// as we change lambda.
+		//not defined:
+//		if (WARM_STARTING) {//TZ #ifdef WARM_STARTING
+//			throw new UnsupportedOperationException();
+//			//multiply_invM_JT (m,nb,iMJ,jb,lambda,fc);
+//		} else {//#else
+		if (warmStart) {
+			multiply_invM_JT (m,nb,iMJ,iMJP,jb,lambda,fc);
 		} else {
-			Arrays.fill(buf_invI, 0);
+		//TODO (TZ) should not be necessary (is created just before given to this method)
+			dSetZero (fc,nb*6);
 		}
-		return buf_invI;
+//		}//#endif
+
+        // precompute 1 / diagonals of A and scale J and b by Ad.
+        // NOTE: This may seem unnecessary but it's indeed an optimization 
+        // to move multiplication by Ad[i] and cfm[i] out of iteration loop.
+        final double sor_w = qs.w;      // SOR over-relaxation parameter
+        DxQuickStepKernels.get().scaleRows (m,J,jb,iMJ,iMJP,b,cfm,sor_w,Ad,AdP);
 	}
-	private DJointWithInfo1[] buf_jointinfos = new DJointWithInfo1[0];
-	private DJointWithInfo1[] ensureSize_jointinfos(int size) {
-		if (buf_jointinfos.length < size || !REUSE_OBJECTS) {
-			//TODO we could partially copy the old array...
-			buf_jointinfos = new DJointWithInfo1[size];
-			for (int i = 0; i < size; i++) {
-				buf_jointinfos[i] = new DJointWithInfo1();
+
+	/**
+	 * Colors the joints of an island so that no two joints of the same color 
+	 * share a body. The rows of one color can then be solved concurrently. 
+	 * The greedy coloring only depends on the joint order, so it is the same 
+	 * for every thread count.
+	 * @return the number of colors
+	 */
+	private static int ColorJoints (final int nj, final int nb, final int[] mindex, 
+			final int[] jb, dxQuickStepperSORCallContext sor)
+	{
+		final int[] pending = sor.m_pending;
+		final int[] colorJoints = sor.m_colorJoints;
+		final int[] colorStart = sor.m_colorStart;
+		final int[] bodyColor = sor.m_bodyColor;
+		for (int i = 0; i < nb; i++) bodyColor[i] = -1;
+		for (int i = 0; i < nj; i++) pending[i] = i;
+
+		int pendingCount = nj;
+		int colored = 0;
+		int color = 0;
+		while (pendingCount > 0) {
+			colorStart[color] = colored;
+			int kept = 0;
+			for (int p = 0; p < pendingCount; p++) {
+				int ji = pending[p];
+				int row = mindex[ji * 2];
+				int b1 = jb[row * 2];
+				int b2 = jb[row * 2 + 1];
+				if (bodyColor[b1] != color && (b2 == -1 || bodyColor[b2] != color)) {
+					bodyColor[b1] = color;
+					if (b2 != -1) bodyColor[b2] = color;
+					colorJoints[colored++] = ji;
+				} else {
+					pending[kept++] = ji;
+				}
 			}
+			pendingCount = kept;
+			color++;
+		}
+		colorStart[color] = colored;
+		return color;
+	}
+
+	/**
+	 * Performs the SOR update of one constraint row, like the inner loop of 
+	 * SOR_LCP.
+	 * @return the change of lambda[index]
+	 */
+	private static double SOR_LCP_Row (final DxQuickStepKernels kernels, 
+			final int index, final double[] J, final int[] jb, 
+			final double[] iMJ, final int iMJP, final double[] Ad, final int AdP,
+			double[] lambda, double[] fc, final double[] b, 
+			final double[] lo, final double[] hi, final int[] findex)
+	{
+		final int fc_ofs1 = 6*jb[index*2];
+		final int b2 = jb[index*2+1];
+		final int fc_ofs2 = (b2 != -1) ? 6*b2 : -1;
+		final double old_lambda = lambda[index];
+
+		double delta = b[index] - old_lambda*Ad[AdP+index];
+		delta = kernels.subtractRow(delta, J, index*12, fc, fc_ofs1, fc_ofs2);
+
+		double hi_act, lo_act;
+		if (findex[index] != -1) {
+			hi_act = dFabs (hi[index] * lambda[findex[index]]);
+			lo_act = -hi_act;
 		} else {
-			//Obviously this doesn't reset all objects, only the
-			//ones that are likely to be needed.
-			for (int i = 0; i < size; i++) {
-				DJointWithInfo1 j = buf_jointinfos[i];
-				if (j != null) {
-					j.joint = null;
-					j.info.m = 0;
-					j.info.nub = 0;
+			hi_act = hi[index];
+			lo_act = lo[index];
+		}
+		double new_lambda = old_lambda + delta;
+		if (new_lambda < lo_act) {
+			delta = lo_act-old_lambda;
+			lambda[index] = lo_act;
+		}
+		else if (new_lambda > hi_act) {
+			delta = hi_act-old_lambda;
+			lambda[index] = hi_act;
+		}
+		else {
+			lambda[index] = new_lambda;
+		}
+
+		kernels.addRow(delta, iMJ, iMJP+index*12, fc, fc_ofs1, fc_ofs2);
+		return delta;
+	}
+
+	/**
+	 * Starts the colored parallel SOR of an island. This is called by 
+	 * Stage3 instead of SOR_LCP. Every color of every iteration is swept by 
+	 * a group of threaded calls, the following sync call posts the next 
+	 * sweep. Stage3b, which finishes the island, waits for the last sync call.
+	 */
+	private static void SOR_LCP_Parallel (dxQuickStepperSORCallContext sor, 
+			DCallReleasee stage3Releasee)
+	{
+		final DxStepperProcessingCallContext callContext = sor.m_stepperCallContext;
+		final dxQuickStepperLocalContext localContext = sor.m_localContext;
+		final DxWorldProcessMemArena memarena = callContext.m_stepperArena();
+		final DxWorld world = callContext.m_world();
+		final int m = localContext.m_m;
+		final int nb = callContext.m_islandBodiesCount();
+
+		sor.m_iMJ = memarena.AllocateSlabDReal (m*12);
+		sor.m_iMJP = memarena.SlabOffset();
+		sor.m_Ad = memarena.AllocateSlabDReal (m);
+		sor.m_AdP = memarena.SlabOffset();
+		SOR_LCP_Prepare (m, nb, localContext.m_J, localContext.m_jb, 
+				callContext.m_islandBodiesStartA(), callContext.m_islandBodiesStartOfs(), 
+				localContext.m_invI, sor.m_lambda, sor.m_cforce, localContext.m_rhs, 
+				localContext.m_cfm, world.qs, sor.m_iMJ, sor.m_iMJP, sor.m_Ad, sor.m_AdP);
+		sor.m_colorCount = ColorJoints (localContext.m_nj, nb, localContext.m_mindex, 
+				localContext.m_jb, sor);
+
+		world.threading().AlterThreadedCallDependenciesCount(stage3Releasee, 1);
+		world.threading().PostThreadedCall(null, sor.m_stage3bReleasee, 1, stage3Releasee, 
+				null, dxQuickStepIsland_Stage3b_Callback, sor, 0, "QuickStepIsland Stage3b");
+		PostSORSweep(sor);
+	}
+
+	private static void PostSORSweep (dxQuickStepperSORCallContext sor)
+	{
+		final DxWorld world = sor.m_stepperCallContext.m_world();
+		final int allowedThreads = sor.m_threadCount;
+		sor.m_jointChunk.set(0);
+		world.threading().PostThreadedCall(null, sor.m_sweepSyncReleasee, allowedThreads, 
+				sor.m_stage3bReleasee.get(), null, dxQuickStepIsland_SORSweepSync_Callback, 
+				sor, 0, "QuickStepIsland SOR Sweep Sync");
+		world.threading().PostThreadedCallsGroup(null, allowedThreads, sor.m_sweepSyncReleasee.get(), 
+				dxQuickStepIsland_SORSweep_Callback, sor, "QuickStepIsland SOR Sweep");
+	}
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_SORSweep_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sor = (dxQuickStepperSORCallContext)_sorCallContext;
+			dxQuickStepIsland_SORSweep(sor, callInstanceIndex);
+			return true;
+		}
+	};
+
+	private static 
+	void dxQuickStepIsland_SORSweep(dxQuickStepperSORCallContext sor, int callInstanceIndex)
+	{
+		final dxQuickStepperLocalContext localContext = sor.m_localContext;
+		final int[] mindex = localContext.m_mindex;
+		final int[] findex = localContext.m_findex;
+		final double[] J = localContext.m_J;
+		final int[] jb = localContext.m_jb;
+		final double[] rhs = localContext.m_rhs;
+		final double[] lo = localContext.m_lo;
+		final double[] hi = localContext.m_hi;
+		final double[] lambda = sor.m_lambda;
+		final double[] fc = sor.m_cforce;
+		final double[] iMJ = sor.m_iMJ;
+		final int iMJP = sor.m_iMJP;
+		final double[] Ad = sor.m_Ad;
+		final int AdP = sor.m_AdP;
+		final int[] colorJoints = sor.m_colorJoints;
+		final int colorBegin = sor.m_colorStart[sor.m_color];
+		final int colorSize = sor.m_colorStart[sor.m_color + 1] - colorBegin;
+		final int chunkCount = (colorSize + SOR_JOINT_CHUNK - 1) / SOR_JOINT_CHUNK;
+		final boolean check = sor.m_check;
+		final DxQuickStepKernels kernels = DxQuickStepKernels.get();
+
+		double max_delta = 0, max_lambda = 0;
+		int chunk;
+		while ((chunk = ThreadingUtils.ThrsafeIncrementIntUpToLimit(sor.m_jointChunk, chunkCount)) != chunkCount) {
+			final int begin = colorBegin + chunk * SOR_JOINT_CHUNK;
+			final int end = colorBegin + Math.min(colorSize, (chunk + 1) * SOR_JOINT_CHUNK);
+			for (int c = begin; c < end; c++) {
+				// the rows of a joint are solved in their order, so contact 
+				// friction rows follow the normal row they depend on
+				final int ji = colorJoints[c];
+				final int rowEnd = mindex[ji * 2 + 2];
+				for (int index = mindex[ji * 2]; index < rowEnd; index++) {
+					double delta = SOR_LCP_Row(kernels, index, J, jb, iMJ, iMJP, Ad, AdP, 
+							lambda, fc, rhs, lo, hi, findex);
+					if (check) {
+						double abs_delta = dFabs(delta);
+						if (abs_delta > max_delta) max_delta = abs_delta;
+						double abs_lambda = dFabs(lambda[index]);
+						if (abs_lambda > max_lambda) max_lambda = abs_lambda;
+					}
 				}
 			}
 		}
-		return buf_jointinfos;
+		if (check) {
+			if (max_delta > sor.m_maxDelta[callInstanceIndex]) sor.m_maxDelta[callInstanceIndex] = max_delta;
+			if (max_lambda > sor.m_maxLambda[callInstanceIndex]) sor.m_maxLambda[callInstanceIndex] = max_lambda;
+		}
 	}
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_SORSweepSync_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callInstanceIndex; // unused
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sor = (dxQuickStepperSORCallContext)_sorCallContext;
+			if (dxQuickStepIsland_SORSweepSync(sor)) {
+				// the next sweep releases Stage3b instead of this call
+				DxWorld world = sor.m_stepperCallContext.m_world();
+				world.threading().AlterThreadedCallDependenciesCount(sor.m_stage3bReleasee.get(), 1);
+				PostSORSweep(sor);
+			}
+			return true;
+		}
+	};
+
+	/**
+	 * Advances to the next color, or the next iteration, after a sweep.
+	 * @return false if the solver is finished
+	 */
+	private static 
+	boolean dxQuickStepIsland_SORSweepSync(dxQuickStepperSORCallContext sor)
+	{
+		if (++sor.m_color < sor.m_colorCount) {
+			return true;
+		}
+		sor.m_color = 0;
+		final dxQuickStepParameters qs = sor.m_stepperCallContext.m_world().qs;
+		final int iteration = sor.m_iteration++;
+		if (sor.m_check) {
+			double max_delta = 0, max_lambda = 0;
+			for (int i = 0; i < sor.m_threadCount; i++) {
+				if (sor.m_maxDelta[i] > max_delta) max_delta = sor.m_maxDelta[i];
+				if (sor.m_maxLambda[i] > max_lambda) max_lambda = sor.m_maxLambda[i];
+				sor.m_maxDelta[i] = 0;
+				sor.m_maxLambda[i] = 0;
+			}
+			sor.m_residual = max_lambda > 0 ? max_delta / max_lambda : 0;
+			if (max_delta <= qs.tolerance * max_lambda) {
+				return false;
+			}
+		}
+		if (sor.m_iteration == qs.num_iterations) {
+			return false;
+		}
+		// same convergence check schedule as in SOR_LCP
+		final int check_interval = qs.tolerance_check_interval > 0 ? qs.tolerance_check_interval : 1;
+		sor.m_check = iteration + 2 == qs.num_iterations ||
+				(qs.tolerance > 0 && (iteration + 2) % check_interval == 0);
+		return true;
+	}
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_Stage3b_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callInstanceIndex; // unused
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sor = (dxQuickStepperSORCallContext)_sorCallContext;
+			final DxStepperProcessingCallContext callContext = sor.m_stepperCallContext;
+			final dxQuickStepperLocalContext localContext = sor.m_localContext;
+			callContext.m_stepperArena().END_STATE_SAVE(sor.m_lcpState);
+			callContext.m_world().qsStats.set(callContext.m_islandIndex(), 
+					callContext.m_islandBodiesCount(), localContext.m_m, sor.m_iteration, sor.m_residual);
+			dxQuickStepIsland_Stage3b(callContext, sor.m_objects, localContext, 
+					sor.m_lambda, sor.m_cforce);
+			return true;
+		}
+	};
+
 	
 	/*extern */
 	private void dxQuickStepIsland(DxStepperProcessingCallContext callContext)
@@ -1009,13 +1666,12 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	    int nb = callContext.m_islandBodiesCount();
 	    int _nj = callContext.m_islandJointsCount();
 
-	    //double[] invI = memarena.AllocateArrayDReal(nb*3*4);//new double[3*4*nb];//dRealAllocaArray (invI,3*4*nb);
-	    double[] invI = ensureSize_invI(nb*3*4);
+	    final dxQuickStepperObjects objects = ObtainStepperObjects(memarena);
+
+	    double[] invI = memarena.AllocateArrayDReal(nb*3*4);//new double[3*4*nb];//dRealAllocaArray (invI,3*4*nb);
 	    
 	    //dJointWithInfo1[] const jointinfos = memarena.AllocateArray<dJointWithInfo1>(_nj);
-	    memarena.dummy();
-	    //DJointWithInfo1[] jointinfos = new DJointWithInfo1[_nj];
-	    DJointWithInfo1[] jointinfos = ensureSize_jointinfos(_nj);	    
+	    DJointWithInfo1[] jointinfos = objects.AllocateJointInfos(_nj);
 	    //TODO this is done in dxQuickStepIsland_Stage0_Joints()
 //	    for (int i = 0; i < jointinfos.length; i++) {
 //	    	jointinfos[i] = new DJointWithInfo1();
@@ -1024,20 +1680,17 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	    final int allowedThreads = callContext.m_stepperAllowedThreads();
 	    dIASSERT(allowedThreads != 0);
 
-	    BlockPointer stagesMemArenaState = memarena.SaveState();
+	    int stagesMemArenaState = memarena.SaveState();
 
-	    memarena.dummy();
-	    final dxQuickStepperStage1CallContext stage1CallContext = new dxQuickStepperStage1CallContext(); 
+	    final dxQuickStepperStage1CallContext stage1CallContext = objects.m_stage1CallContext; 
 	    		//(dxQuickStepperStage1CallContext )memarena.AllocateBlock(sizeof(dxQuickStepperStage1CallContext));
-	    stage1CallContext.Initialize(callContext, stagesMemArenaState, invI, jointinfos);
+	    stage1CallContext.Initialize(callContext, objects, stagesMemArenaState, invI, jointinfos);
 
-	    memarena.dummy();
-	    final dxQuickStepperStage0BodiesCallContext stage0BodiesCallContext = new dxQuickStepperStage0BodiesCallContext(); 
+	    final dxQuickStepperStage0BodiesCallContext stage0BodiesCallContext = objects.m_stage0BodiesCallContext; 
 	    		//(dxQuickStepperStage0BodiesCallContext)memarena.AllocateBlock(sizeof(dxQuickStepperStage0BodiesCallContext));
 	    stage0BodiesCallContext.Initialize(callContext, invI);
 
-	    memarena.dummy();
-	    final dxQuickStepperStage0JointsCallContext stage0JointsCallContext = new dxQuickStepperStage0JointsCallContext(); 
+	    final dxQuickStepperStage0JointsCallContext stage0JointsCallContext = objects.m_stage0JointsCallContext; 
 	    		//(dxQuickStepperStage0JointsCallContext)memarena.AllocateBlock(sizeof(dxQuickStepperStage0JointsCallContext));
 	    stage0JointsCallContext.Initialize(callContext, jointinfos, stage1CallContext.m_stage0Outputs);
 
@@ -1165,7 +1818,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
 	        for (int i = 0; i != nb; invIrowP += 12, ++i) {
 	            if (i == bodyIndex) {
-	                DMatrix3 tmp = new DMatrix3();
+	                DMatrix3 tmp = callContext.m_tmp;
 	                DxBody b = bodyP[bodyOfs+i];
 
 	                // compute inverse inertia tensor in global frame
@@ -1175,7 +1828,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                // Don't apply gyroscopic torques to bodies
 	                // if not flagged or the body is kinematic
 	                if (b.isFlagsGyroscopic() && (b.invMass>0)) {
-	                    DMatrix3 I = new DMatrix3();
+	                    DMatrix3 I = callContext.m_I;
 	                    // compute inertia tensor in global frame
 	                    dMultiply2_333 (tmp,b.mass._I,b.posr().R());
 	                    dMultiply0_333 (I,b.posr().R(),tmp);
@@ -1189,7 +1842,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    //"Stabilizing Gyroscopic Forces in Rigid Multibody Simulations"
 	                    // (LacoursiÃ¨re 2006)
 	                    double h = callContext.m_stepperCallContext.m_stepSize(); // Step size
-	                    DVector3 L = new DVector3(); // Compute angular momentum
+	                    DVector3 L = callContext.m_L; // Compute angular momentum
 	                    dMultiply0_331(L,I,b.avel);
 	                    
 	                    // Compute a new effective 'inertia tensor'
@@ -1199,7 +1852,8 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    // Itild may not be symmetric pos-definite, 
 	                    // but we can still use it to compute implicit
 	                    // gyroscopic torques.
-	                    DMatrix3 Itild= new DMatrix3();//{0};  
+	                    DMatrix3 Itild= callContext.m_Itild;//{0};  
+	                    Itild.setZero();
 	                    dSetCrossMatrixMinus(Itild,L);//,4);
 //	                    for (int ii=0;ii<12;++ii) {
 //	                      Itild[ii]=Itild[ii]*h+I[ii];
@@ -1211,7 +1865,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    // a sort of "torque"
 	                    L.scale(dRecip(h));//dScaleVector3(L,dRecip(h)); 
 	                    // Invert the pseudo-tensor
-	                    DMatrix3 itInv = new DMatrix3();
+	                    DMatrix3 itInv = callContext.m_itInv;
 	                    // This is a closed-form inversion.
 	                    // It's probably not numerically stable
 	                    // when dealing with small masses with
@@ -1233,7 +1887,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                        // to the old inertia matrix as explicit
 	                        // torques with a semi-implicit update
 	                        // step.
-	                        DVector3 tau0 = new DVector3();
+	                        DVector3 tau0 = callContext.m_tau0;
 	                        dMultiply0_331(tau0,Itild,L);
 	                        
 	                        // Add the gyro torques to the torque 
@@ -1321,6 +1975,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	void dxQuickStepIsland_Stage1(dxQuickStepperStage1CallContext stage1CallContext)
 	{
 		final DxStepperProcessingCallContext callContext = stage1CallContext.m_stepperCallContext;
+		final dxQuickStepperObjects objects = stage1CallContext.m_objects;
 		double[] invI = stage1CallContext.m_invI;
 		DJointWithInfo1[] jointinfos = stage1CallContext.m_jointinfos;
 		int nj = stage1CallContext.m_stage0Outputs.nj;
@@ -1347,9 +2002,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
 		// if there are constraints, compute the constraint force
 		if (m > 0) {
-			//mindex = memarena.AllocateArray<unsigned int>(2 * (size_t)(nj + 1));
-			memarena.dummy();
-			mindex = new int[2 * (nj + 1)];
+			mindex = memarena.AllocateArrayInt(2 * (nj + 1));
 			{
 				int mcurrO = 0;//mindex;
 				int moffs = 0, mfboffs = 0;
@@ -1372,70 +2025,59 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				}
 			}
 
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			findex = new int[m];//memarena.AllocateArray<int>(m);
-			J = new double[m*12];//memarena.AllocateArray<dReal>((size_t)m*12);
-			cfm = new double[m];//memarena.AllocateArray<dReal>(m);
-			lo = new double[m];//memarena.AllocateArray<dReal>(m);
-			hi = new double[m];//memarena.AllocateArray<dReal>(m);
-			jb = new int[m*2];//memarena.AllocateArray<int>((size_t)m*2);
-			rhs = new double[m];//memarena.AllocateArray<dReal>(m);
-			Jcopy = new double[mfb*12];//memarena.AllocateArray<dReal>((size_t)mfb*12);
+			findex = memarena.AllocateArrayInt(m);
+			J = memarena.AllocateArrayDReal(m*12);
+			cfm = memarena.AllocateArrayDReal(m);
+			lo = memarena.AllocateArrayDReal(m);
+			hi = memarena.AllocateArrayDReal(m);
+			jb = memarena.AllocateArrayInt(m*2);
+			rhs = memarena.AllocateArrayDReal(m);
+			Jcopy = memarena.AllocateArrayDReal(mfb*12);
 		}
 
-		memarena.dummy();
-		dxQuickStepperLocalContext localContext = new dxQuickStepperLocalContext(); 
+		dxQuickStepperLocalContext localContext = objects.m_localContext; 
 		//(dxQuickStepperLocalContext *)memarena.AllocateBlock(sizeof(dxQuickStepperLocalContext));
 		localContext.Initialize(invI, jointinfos, nj, m, mfb, mindex, findex, J, cfm, lo, hi, jb, rhs, Jcopy);
 
-		BlockPointer stage1MemarenaState = memarena.SaveState();
-		memarena.dummy();
-		dxQuickStepperStage3CallContext stage3CallContext = new dxQuickStepperStage3CallContext();
+		int stage1MemarenaState = memarena.SaveState();
+		dxQuickStepperStage3CallContext stage3CallContext = objects.m_stage3CallContext;
 		//(dxQuickStepperStage3CallContext*)memarena.AllocateBlock(sizeof(dxQuickStepperStage3CallContext));
-		stage3CallContext.Initialize(callContext, localContext, stage1MemarenaState);
+		stage3CallContext.Initialize(callContext, objects, localContext, stage1MemarenaState);
 
 		if (m > 0) {
 			// create a constraint equation right hand side vector `rhs', a constraint
 			// force mixing vector `cfm', and LCP low and high bound vectors, and an
 			// 'findex' vector.
 			//dReal *rhs_tmp = memarena.AllocateArray<dReal>((size_t)nb*6);
-			memarena.dummy();
-			double[] rhs_tmp = new double[nb*6];
-
-			memarena.dummy();
-			dxQuickStepperStage2CallContext stage2CallContext = new dxQuickStepperStage2CallContext(); 
-			//(dxQuickStepperStage2CallContext*)memarena.AllocateBlock(sizeof(dxQuickStepperStage2CallContext));
-			stage2CallContext.Initialize(callContext, localContext, rhs_tmp);
+			double[] rhs_tmp = memarena.AllocateArrayDReal(nb*6);
 
 			final int allowedThreads = callContext.m_stepperAllowedThreads();
 			dIASSERT(allowedThreads != 0);
 
+			dxQuickStepperStage2CallContext stage2CallContext = objects.m_stage2CallContext; 
+			//(dxQuickStepperStage2CallContext*)memarena.AllocateBlock(sizeof(dxQuickStepperStage2CallContext));
+			stage2CallContext.Initialize(callContext, localContext, rhs_tmp, 
+					objects.AllocateInfo2Descrs(allowedThreads));
+
 			if (allowedThreads == 1)
 			{
-				dxQuickStepIsland_Stage2a(stage2CallContext);
+				dxQuickStepIsland_Stage2a(stage2CallContext, 0);
 				dxQuickStepIsland_Stage2b(stage2CallContext);
 				dxQuickStepIsland_Stage2c(stage2CallContext);
-				dxQuickStepIsland_Stage3(stage3CallContext);
+				dxQuickStepIsland_Stage3(stage3CallContext, null);
 			}
 			else
 			{
-				final Ref<DCallReleasee> stage3CallReleasee = new Ref<DCallReleasee>();
+				final Ref<DCallReleasee> stage3CallReleasee = objects.m_stage3CallReleasee;
 				world.threading().PostThreadedCallForUnawareReleasee(null, stage3CallReleasee, 1, callContext.m_finalReleasee(), 
 						null, dxQuickStepIsland_Stage3_Callback, stage3CallContext, 0, "QuickStepIsland Stage3");
 
-				final Ref<DCallReleasee> stage2bSyncReleasee = new Ref<DCallReleasee>();
+				final Ref<DCallReleasee> stage2bSyncReleasee = objects.m_stage2bSyncReleasee;
 				world.threading().PostThreadedCall(
 						null, stage2bSyncReleasee, 1, stage3CallReleasee.get(), 
 						null, dxQuickStepIsland_Stage2bSync_Callback, stage2CallContext, 0, "QuickStepIsland Stage2b Sync");
 
-				final Ref<DCallReleasee> stage2aSyncReleasee = new Ref<DCallReleasee>();
+				final Ref<DCallReleasee> stage2aSyncReleasee = objects.m_stage2aSyncReleasee;
 				world.threading().PostThreadedCall(
 						null, stage2aSyncReleasee, allowedThreads, stage2bSyncReleasee.get(), 
 						null, dxQuickStepIsland_Stage2aSync_Callback, stage2CallContext, 0, "QuickStepIsland Stage2a Sync");
@@ -1445,7 +2087,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			}
 		}
 		else {
-			dxQuickStepIsland_Stage3(stage3CallContext);
+			dxQuickStepIsland_Stage3(stage3CallContext, null);
 		}
 	}
 
@@ -1455,16 +2097,15 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _stage2CallContext, 
 				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
 		{
-			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxQuickStepperStage2CallContext stage2CallContext = (dxQuickStepperStage2CallContext)_stage2CallContext;
-			dxQuickStepIsland_Stage2a(stage2CallContext);
+			dxQuickStepIsland_Stage2a(stage2CallContext, callInstanceIndex);
 			return true;
 		}
 	};
 
 	private static 
-	void dxQuickStepIsland_Stage2a(dxQuickStepperStage2CallContext stage2CallContext)
+	void dxQuickStepIsland_Stage2a(dxQuickStepperStage2CallContext stage2CallContext, int callInstanceIndex)
 	{
 	    final DxStepperProcessingCallContext callContext = stage2CallContext.m_stepperCallContext;
 	    final dxQuickStepperLocalContext localContext = stage2CallContext.m_localContext;
@@ -1499,7 +2140,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	        //
 	        final double worldERP = world.getERP();
 
-	        DxJoint.Info2Descr Jinfo = new DxJoint.Info2Descr();
+	        DxJoint.Info2Descr Jinfo = stage2CallContext.m_Jinfos[callInstanceIndex];
 	        Jinfo.setRowskip(12);
 	        Jinfo.setArrays(J, rhs, cfm, lo, hi, findex);
 		            
@@ -1721,17 +2362,22 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _stage3CallContext, int callInstanceIndex,
 				DCallReleasee callThisReleasee) {
 			//(void)callInstanceIndex; // unused
-			//(void)callThisReleasee; // unused
 			dxQuickStepperStage3CallContext stage3CallContext = (dxQuickStepperStage3CallContext)_stage3CallContext;
-			dxQuickStepIsland_Stage3(stage3CallContext);
+			dxQuickStepIsland_Stage3(stage3CallContext, callThisReleasee);
 			return true;
 		}
 	};
 
+	/**
+	 * @param stage3Releasee releasee of the threaded call, null if Stage3 is 
+	 * called directly. The parallel SOR is only used with a releasee.
+	 */
 	private static 
-	void dxQuickStepIsland_Stage3(dxQuickStepperStage3CallContext stage3CallContext)
+	void dxQuickStepIsland_Stage3(dxQuickStepperStage3CallContext stage3CallContext, 
+			DCallReleasee stage3Releasee)
 	{
 	    final DxStepperProcessingCallContext callContext = stage3CallContext.m_stepperCallContext;
+	    final dxQuickStepperObjects objects = stage3CallContext.m_objects;
 	    final dxQuickStepperLocalContext localContext = stage3CallContext.m_localContext;
 
 	    DxWorldProcessMemArena memarena = callContext.m_stepperArena();
@@ -1744,7 +2390,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	    int nj = localContext.m_nj;
 	    int m = localContext.m_m;
 	    int mfb = localContext.m_mfb;
-	    //const unsigned int *mindex = localContext->m_mindex;
+	    final int[] mindex = localContext.m_mindex;
 	    int[] findex = localContext.m_findex;
 	    double[] J = localContext.m_J;
 	    double[] cfm = localContext.m_cfm;
@@ -1775,13 +2421,45 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //	                lambdscurr += infom;
 //	            }
 //			}//#endif
+			final double warmStartFactor = world.qs.warm_start_factor;
+			if (warmStartFactor > 0) {
+				// contact joints have been loaded from the contact cache
+				for (int i = 0; i < nj; i++) {
+					final double[] jointLambda = jointinfos[i].joint.lambda;
+					final int ofsi = mindex[i * 2];
+					final int infom = mindex[i * 2 + 2] - ofsi;
+					for (int k = 0; k < infom; k++) {
+						lambda[ofsi + k] = warmStartFactor * jointLambda[k];
+					}
+				}
+			}
 
 			double[] cforce = memarena.AllocateArrayDReal(nb*6);
-			BlockPointer lcpstate = memarena.BEGIN_STATE_SAVE(); 
+			int lcpstate = memarena.BEGIN_STATE_SAVE(); 
+			final dxQuickStepParameters qs = world.qs;
+			final int allowedThreads = callContext.m_stepperAllowedThreads();
+			if (stage3Releasee != null && allowedThreads > 1 && qs.parallel_threshold > 0 
+					&& qs.solver == QuickStepSolver.SOR
+					&& m >= qs.parallel_threshold && qs.num_iterations > 0) {
+				// large island: solve it with all threads, Stage3b is 
+				// called after the last sweep
+				dxQuickStepperSORCallContext sor = objects.m_sorCallContext;
+				sor.Initialize(callContext, objects, localContext, lambda, cforce, 
+						lcpstate, allowedThreads);
+				SOR_LCP_Parallel(sor, stage3Releasee);
+				return;
+			}
 			{
 	            if (TIMING) dTimerNow ("solving LCP problem");
 	            // solve the LCP problem and get lambda and invM*constraint_force
-	            SOR_LCP (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,rhs,lo,hi,cfm,findex,world.qs);
+	            final RefDouble residual = objects.m_lcpResidual;
+	            int iterations;
+	            if (qs.solver == QuickStepSolver.CG && IsUnbounded (m,lo,hi,findex)) {
+	                iterations = CG_LCP (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,rhs,cfm,qs,residual);
+	            } else {
+	                iterations = SOR_LCP (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,rhs,lo,hi,cfm,findex,qs,residual);
+	            }
+	            world.qsStats.set(callContext.m_islandIndex(), nb, m, iterations, residual.get());
 			}
 			memarena.END_STATE_SAVE(lcpstate);
 			    
@@ -1798,6 +2476,40 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //			System.err.println("SOR_LCP findex=" + Arrays.toString(findex));
 //			System.err.println("SOR_LCP qs=" + world.qs.num_iterations + " w=" + world.qs.w);
 			
+			dxQuickStepIsland_Stage3b(callContext, objects, localContext, lambda, cforce);
+	    }
+	    else {
+	    	world.qsStats.set(callContext.m_islandIndex(), nb, 0, 0, 0);
+	    	dxQuickStepIsland_Stage3b(callContext, objects, localContext, null, null);
+	    }
+	}
+
+	/**
+	 * Applies the constraint forces and steps the bodies of an island.
+	 * @param lambda the solution of the LCP, null if the island has no constraints
+	 * @param cforce invM*constraint_force
+	 */
+	private static 
+	void dxQuickStepIsland_Stage3b(final DxStepperProcessingCallContext callContext, 
+			final dxQuickStepperObjects objects, 
+			final dxQuickStepperLocalContext localContext, 
+			double[] lambda, double[] cforce)
+	{
+	    double[] invI = localContext.m_invI;
+	    DJointWithInfo1[] jointinfos = localContext.m_jointinfos;
+	    int nj = localContext.m_nj;
+	    int m = localContext.m_m;
+	    int mfb = localContext.m_mfb;
+	    final int[] mindex = localContext.m_mindex;
+	    double[] Jcopy = localContext.m_Jcopy;
+
+	    DxWorld world = callContext.m_world();
+	    DxBody[] bodyA = callContext.m_islandBodiesStartA();
+	    int bodyOfs = callContext.m_islandBodiesStartOfs();
+	    int nb = callContext.m_islandBodiesCount();
+
+	    if (m > 0) {
+			final double warmStartFactor = world.qs.warm_start_factor;
 			//TZ not defined
 //			if (WARM_STARTING) {//#ifdef WARM_STARTING
 //		    {
@@ -1814,6 +2526,17 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //            }
 //		      }
 //				//#endif
+			if (warmStartFactor > 0) {
+				// save lambda for the next step, see DxContactCache for 
+				// contact joints
+				for (int i = 0; i < nj; i++) {
+					final double[] jointLambda = jointinfos[i].joint.lambda;
+					final int ofsi = mindex[i * 2];
+					final int infom = mindex[i * 2 + 2] - ofsi;
+					System.arraycopy(lambda, ofsi, jointLambda, 0, infom);
+					dSetZero(jointLambda, infom, jointLambda.length - infom);
+				}
+			}
 
 			// note that the SOR method overwrites rhs and J at this point, so
 			// they should not be used again.
@@ -1918,7 +2641,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
     		// (over the given timestep)
 		    if (TIMING) dTimerNow ("update position");
 		    for (int i=0; i<nb; i++) {
-		        bodyA[i+bodyOfs].dxStepBody (stepsize);
+		        bodyA[i+bodyOfs].dxStepBody (stepsize, objects.m_stepBodyTemporaries);
 		    }
 		}
 		
@@ -2054,7 +2777,15 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //	  }
 //
 //	  return res;
-	    return -1;
+	    // Only the arrays that come from the slabs of the arena are estimated.
+	    int m = 0;
+	    for (int i = 0; i < _nj; i++) {
+	        m += _joint[jointOfs + i].getSureMaxM();
+	    }
+	    int res = DxUtil.SIZEOF_DREAL * 12 * m; // for iMJ
+	    res += DxUtil.SIZEOF_DREAL * m; // for Ad
+	    res += DxUtil.SIZEOF_INT * m; // for order
+	    return res;
 	}
 
 	/*extern */
@@ -2063,7 +2794,8 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		//(void)activeThreadCount; // unused
 	    int result = 1 // dxQuickStepIsland itself
 	        + (2 * allowedThreadCount + 2) // (dxQuickStepIsland_Stage2a + dxQuickStepIsland_Stage2b) * allowedThreadCount + 2 * dxStepIsland_Stage2?_Sync
-	        + 1; // dxStepIsland_Stage3
+	        + 1 // dxStepIsland_Stage3
+	        + (allowedThreadCount + 3); // dxQuickStepIsland_SORSweep * allowedThreadCount + 2 * dxQuickStepIsland_SORSweepSync + dxQuickStepIsland_Stage3b
 	    return result;
 	}
 
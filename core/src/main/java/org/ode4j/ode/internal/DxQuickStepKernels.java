@@ -0,0 +1,182 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+
+/**
+ * Row kernels of the QuickStep SOR solver.
+ * <p>
+ * The solver stores one constraint row as 12 consecutive doubles: linear and 
+ * angular part for the first body, then linear and angular part for the 
+ * second body. The second half is unused if the row has only one body. 
+ * J, the scaled Jacobian, and iMJ = inv(M)*J' use this layout.
+ * <p>
+ * This class is the plain Java implementation. Other implementations, for 
+ * example the Vector API kernels of the <code>core-vector</code> module, can 
+ * be installed with {@link #set(DxQuickStepKernels)}. They may round 
+ * differently but must otherwise compute the same results.
+ */
+public class DxQuickStepKernels {
+
+	private static final DxQuickStepKernels SCALAR = new DxQuickStepKernels();
+	private static volatile DxQuickStepKernels kernels = SCALAR;
+
+	/**
+	 * @return The kernels used by QuickStep.
+	 */
+	public static DxQuickStepKernels get() {
+		return kernels;
+	}
+
+	/**
+	 * Installs the kernels used by QuickStep. This should not be called 
+	 * while a world is being stepped.
+	 * @param k The kernels, or <code>null</code> for the default kernels.
+	 */
+	public static void set(DxQuickStepKernels k) {
+		kernels = k != null ? k : SCALAR;
+	}
+
+	/**
+	 * Installs the kernels with the given class name. The class must be a 
+	 * subclass of DxQuickStepKernels with a public no-argument constructor.
+	 * This allows to select optional kernels without compile time dependency.
+	 * @param className The class name, or <code>null</code> for the default 
+	 * kernels.
+	 */
+	public static void set(String className) {
+		if (className == null) {
+			set((DxQuickStepKernels)null);
+			return;
+		}
+		try {
+			set(Class.forName(className).asSubclass(DxQuickStepKernels.class).newInstance());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Kernels not found: " + className, e);
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException("Kernels not available: " + className, e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Kernels not available: " + className, e);
+		}
+	}
+
+	/**
+	 * @return A short name of these kernels, e.g. for benchmark reports.
+	 */
+	public String getName() {
+		return "scalar";
+	}
+
+	/**
+	 * Computes the scaled diagonal of A = J*inv(M)*J' and scales the rows 
+	 * with it, this is done once per step before the SOR iterations. 
+	 * For each row i:
+	 * <pre>
+	 * Ad[i] = sor_w / (J[i]*iMJ[i]' + cfm[i])
+	 * J[i] *= Ad[i], b[i] *= Ad[i]
+	 * Ad[i] *= cfm[i]
+	 * </pre>
+	 * @param m number of rows
+	 * @param J Jacobian, starting at index 0
+	 * @param jb body indices, two per row, the second is -1 for one body
+	 * @param iMJ inv(M)*J', starting at iMJP
+	 * @param b right hand side, starting at index 0
+	 * @param cfm constraint force mixing, starting at index 0
+	 * @param Ad diagonal, starting at AdP
+	 */
+	public void scaleRows(final int m, double[] J, final int[] jb, 
+			final double[] iMJ, final int iMJP, double[] b, final double[] cfm, 
+			final double sor_w, double[] Ad, final int AdP)
+	{
+		int iMJ_ofs = iMJP;
+		int J_ofs = 0;
+		for (int i=0; i<m; iMJ_ofs +=12, J_ofs +=12, i++ ) {
+			double sum = 0;
+			for (int j=0; j<6; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];
+			if (jb[i*2+1] != -1) {
+				for (int j=6; j<12; j++) sum += iMJ[j+iMJ_ofs] * J[j+J_ofs];
+			}
+			double Ad_i = sor_w / (sum + cfm[i]);
+			for (int j=0; j<12; j++) {
+				J[J_ofs+j] *= Ad_i;
+			}
+			b[i] *= Ad_i;
+			// scale Ad by CFM
+			Ad[AdP+i] = Ad_i * cfm[i];
+		}
+	}
+
+	/**
+	 * Subtracts the product of a constraint row and the constraint forces of 
+	 * its bodies: <code>x - J[row]*(fc[b1],fc[b2])'</code>.
+	 * @param x value to subtract from
+	 * @param J the Jacobian
+	 * @param J_ofs start of the row in J
+	 * @param fc constraint forces, 6 per body
+	 * @param fc_ofs1 start of the forces of the first body
+	 * @param fc_ofs2 start of the forces of the second body, or -1
+	 * @return the difference
+	 */
+	public double subtractRow(double x, final double[] J, final int J_ofs, 
+			final double[] fc, final int fc_ofs1, final int fc_ofs2)
+	{
+		x -= fc[fc_ofs1] * J[J_ofs] + fc[fc_ofs1+1] * J[J_ofs+1] +
+		fc[fc_ofs1+2] * J[J_ofs+2] + fc[fc_ofs1+3] * J[J_ofs+3] +
+		fc[fc_ofs1+4] * J[J_ofs+4] + fc[fc_ofs1+5] * J[J_ofs+5];
+		if (fc_ofs2 != -1) {
+			x -= fc[fc_ofs2+0] * J[J_ofs+6] + fc[fc_ofs2+1] * J[J_ofs+7] +
+			fc[fc_ofs2+2] * J[J_ofs+8] + fc[fc_ofs2+3] * J[J_ofs+9] +
+			fc[fc_ofs2+4] * J[J_ofs+10] + fc[fc_ofs2+5] * J[J_ofs+11];
+		}
+		return x;
+	}
+
+	/**
+	 * Adds a scaled row of iMJ to the constraint forces of its bodies: 
+	 * <code>(fc[b1],fc[b2]) += delta * iMJ[row]</code>.
+	 * @param delta the scale factor
+	 * @param iMJ inv(M)*J'
+	 * @param iMJ_ofs start of the row in iMJ
+	 * @param fc constraint forces, 6 per body
+	 * @param fc_ofs1 start of the forces of the first body
+	 * @param fc_ofs2 start of the forces of the second body, or -1
+	 */
+	public void addRow(final double delta, final double[] iMJ, final int iMJ_ofs, 
+			double[] fc, final int fc_ofs1, final int fc_ofs2)
+	{
+		fc[fc_ofs1 + 0] += delta * iMJ[iMJ_ofs + 0];
+		fc[fc_ofs1 + 1] += delta * iMJ[iMJ_ofs + 1];
+		fc[fc_ofs1 + 2] += delta * iMJ[iMJ_ofs + 2];
+		fc[fc_ofs1 + 3] += delta * iMJ[iMJ_ofs + 3];
+		fc[fc_ofs1 + 4] += delta * iMJ[iMJ_ofs + 4];
+		fc[fc_ofs1 + 5] += delta * iMJ[iMJ_ofs + 5];
+		if (fc_ofs2 != -1) {
+			fc[fc_ofs2 + 0] += delta * iMJ[iMJ_ofs + 6];
+			fc[fc_ofs2 + 1] += delta * iMJ[iMJ_ofs + 7];
+			fc[fc_ofs2 + 2] += delta * iMJ[iMJ_ofs + 8];
+			fc[fc_ofs2 + 3] += delta * iMJ[iMJ_ofs + 9];
+			fc[fc_ofs2 + 4] += delta * iMJ[iMJ_ofs + 10];
+			fc[fc_ofs2 + 5] += delta * iMJ[iMJ_ofs + 11];
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.Arrays;
+
+
+/**
+ * Per-island solver statistics of the last QuickStep.
+ * <p>
+ * Islands may be solved concurrently, each one is recorded at its index 
+ * in the order in which the islands have been found. That order is the 
+ * same for every step of an unchanged world.
+ */
+final class DxQuickStepStats {
+
+	private int count = 0;
+	private int[] bodies = new int[16];
+	private int[] rows = new int[16];
+	private int[] iterations = new int[16];
+	private double[] residuals = new double[16];
+
+	synchronized void clear() {
+		count = 0;
+	}
+
+	synchronized void set(int island, int nb, int m, int iterationCount, double residual) {
+		if (island >= bodies.length) {
+			int n = Math.max(bodies.length * 2, island + 1);
+			bodies = Arrays.copyOf(bodies, n);
+			rows = Arrays.copyOf(rows, n);
+			iterations = Arrays.copyOf(iterations, n);
+			residuals = Arrays.copyOf(residuals, n);
+		}
+		bodies[island] = nb;
+		rows[island] = m;
+		iterations[island] = iterationCount;
+		residuals[island] = residual;
+		count = Math.max(count, island + 1);
+	}
+
+	synchronized int size() {
+		return count;
+	}
+
+	synchronized int getBodyCount(int island) {
+		checkIndex(island);
+		return bodies[island];
+	}
+
+	synchronized int getRowCount(int island) {
+		checkIndex(island);
+		return rows[island];
+	}
+
+	synchronized int getIterations(int island) {
+		checkIndex(island);
+		return iterations[island];
+	}
+
+	synchronized double getResidual(int island) {
+		checkIndex(island);
+		return residuals[island];
+	}
+
+	private void checkIndex(int island) {
+		dUASSERT(island >= 0 && island < count, "invalid island index");
+	}
+}
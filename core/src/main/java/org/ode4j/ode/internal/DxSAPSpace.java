@@ -27,6 +27,7 @@ package org.ode4j.ode.internal;
 import static org.ode4j.ode.internal.Common.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -47,6 +48,10 @@ import org.ode4j.ode.DSapSpace;
  *	have no temporal coherence, but are able to handle any movement
  *	velocities equally well.
  *
+ *  The incremental mode (see {@link DSapSpace#setIncremental(boolean)}) is 
+ *  "classical" SAP with persistent sorted endpoints on all three axes and 
+ *  a persistent set of overlapping pairs.
+ *
  *  2009-Apr-29
  *  Implementation has been modified for Java port. It now used merge-sort
  *  provided by Java. See doc of <tt>BoxPruning</tt>.
@@ -127,6 +132,22 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 	private int ax1id;
 	private int ax2id;
 
+	// Incremental mode, see setIncremental(). Each geom in the SAP structure
+	// has an id (stored in the geom) into the per-axis endpoint arrays.
+	private boolean incremental = false;
+	private boolean incNeedsSort = false;
+	private DxGeom[] incGeoms;
+	// min/max of the geoms along each axis, indexed by id*6 + axis*2 + isMax
+	private double[] incBounds;
+	private int incIdCount;
+	private int[] incFreeIds;
+	private int incFreeCount;
+	// ids of removed geoms, released after the next sort
+	private int[] incPendingIds;
+	private int incPendingCount;
+	private SapAxis[] incAxes;
+	private SapPairSet incPairs;
+
 	// pruning position array scratch pad
 	// NOTE: this is float not dReal because of the OPCODE radix sorter
 	//private dArray< Float > poslist;
@@ -244,6 +265,48 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 		super.DESTRUCTOR();
 	}
 
+	@Override
+	public void setIncremental(boolean incremental) {
+		CHECK_NOT_LOCKED(this);
+		if (incremental == this.incremental) {
+			return;
+		}
+		this.incremental = incremental;
+		if (incremental) {
+			incGeoms = new DxGeom[16];
+			incBounds = new double[16*6];
+			incIdCount = 0;
+			incFreeIds = new int[16];
+			incFreeCount = 0;
+			incPendingIds = new int[16];
+			incPendingCount = 0;
+			incAxes = new SapAxis[] { new SapAxis(), new SapAxis(), new SapAxis() };
+			incPairs = new SapPairSet();
+			// dirty geoms are added by cleanGeoms()
+			for (int i = 0; i < GeomList.size(); i++) {
+				incUpdate(GeomList.get(i));
+			}
+		} else {
+			for (int i = 0; i < incIdCount; i++) {
+				if (incGeoms[i] != null) {
+					incGeoms[i]._sapIdxEndpointsEx = GEOM_INVALID_IDX;
+				}
+			}
+			incGeoms = null;
+			incBounds = null;
+			incFreeIds = null;
+			incPendingIds = null;
+			incAxes = null;
+			incPairs = null;
+			incNeedsSort = false;
+		}
+	}
+
+	@Override
+	public boolean isIncremental() {
+		return incremental;
+	}
+
 	//dxGeom* dxSAPSpace::getGeom( int i )
 	@Override
 	public DxGeom getGeom( int i )
@@ -305,6 +368,9 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 			GEOM_SET_GEOM_IDX(g,GEOM_INVALID_IDX);
 			GeomList.remove( geomSize-1 );
 		}
+		if (incremental) {
+			incRemove(g);
+		}
 		
 		super.remove(g);
 	}
@@ -367,6 +433,9 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 			g.recomputeAABB();
 			//g._gflags &= (~(GEOM_DIRTY|GEOM_AABB_BAD));
 			g.unsetFlagDirtyAndBad();
+			if (incremental) {
+				incUpdate(g);
+			}
 			// remove from dirty list, add to geom list
 			GEOM_SET_DIRTY_IDX( g, GEOM_INVALID_IDX );
 			GEOM_SET_GEOM_IDX( g, geomSize + i );
@@ -384,6 +453,11 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 	{
 		dAASSERT (callback);
 
+		if (incremental) {
+			incCollide(data, callback);
+			return;
+		}
+
 		lock_count++;
 
 		cleanGeoms();
@@ -542,6 +616,332 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 		}
 	}
 
+	//==============================================================================
+	// Incremental SAP
+	//==============================================================================
+
+	/**
+	 * Collides the pairs of the persistent pair set. The geoms with infinite 
+	 * AABBs are part of the sorted endpoints like all other geoms.
+	 */
+	private void incCollide( Object data, DNearCallback callback )
+	{
+		lock_count++;
+
+		cleanGeoms();
+		dUASSERT( GeomList.size() == count, "geom counts messed up" );
+
+		if (incNeedsSort) {
+			incSort();
+		}
+
+		final long[] keys = incPairs.keys;
+		for (int i = 0; i < keys.length; i++) {
+			final long key = keys[i];
+			if (key == SapPairSet.EMPTY) {
+				continue;
+			}
+			DxGeom g1 = incGeoms[(int)(key >>> 32)];
+			DxGeom g2 = incGeoms[(int)key];
+			if ( GEOM_ENABLED(g1) && GEOM_ENABLED(g2) ) {
+				collideGeomsNoAABBs( g1, g2, data, callback );
+			}
+		}
+
+		lock_count--;
+	}
+
+	/**
+	 * Registers the geom (if necessary) and copies its AABB into the 
+	 * endpoint arrays. The arrays are sorted by the next collide().
+	 */
+	private void incUpdate( DxGeom g )
+	{
+		int id = g._sapIdxEndpointsEx;
+		if (id == GEOM_INVALID_IDX) {
+			id = incAllocId();
+			incGeoms[id] = g;
+			g._sapIdxEndpointsEx = id;
+		}
+		DAABB aabb = g._aabb;
+		for (int a = 0; a < 3; a++) {
+			double min = aabb.getMin(a);
+			double max = aabb.getMax(a);
+			incBounds[id*6 + a*2] = min;
+			incBounds[id*6 + a*2 + 1] = max;
+			incAxes[a].set(id, min, max);
+		}
+		incNeedsSort = true;
+	}
+
+	/**
+	 * Moves the endpoints of the geom behind all others. The next sort removes 
+	 * all its pairs, after that the id can be reused.
+	 */
+	private void incRemove( DxGeom g )
+	{
+		int id = g._sapIdxEndpointsEx;
+		if (id == GEOM_INVALID_IDX) {
+			// still in the dirty list
+			return;
+		}
+		for (int a = 0; a < 3; a++) {
+			incAxes[a].free(id);
+		}
+		incGeoms[id] = null;
+		g._sapIdxEndpointsEx = GEOM_INVALID_IDX;
+		if (incPendingCount == incPendingIds.length) {
+			incPendingIds = Arrays.copyOf(incPendingIds, incPendingCount*2);
+		}
+		incPendingIds[incPendingCount++] = id;
+		incNeedsSort = true;
+	}
+
+	private int incAllocId()
+	{
+		if (incFreeCount > 0) {
+			return incFreeIds[--incFreeCount];
+		}
+		int id = incIdCount++;
+		if (id == incGeoms.length) {
+			incGeoms = Arrays.copyOf(incGeoms, id*2);
+			incBounds = Arrays.copyOf(incBounds, id*2*6);
+			incFreeIds = Arrays.copyOf(incFreeIds, id*2);
+		}
+		for (int a = 0; a < 3; a++) {
+			incAxes[a].append(id);
+		}
+		return id;
+	}
+
+	private void incSort()
+	{
+		for (int a = 0; a < 3; a++) {
+			incAxes[a].sort(this);
+		}
+		// the removed geoms have no pairs left
+		for (int i = 0; i < incPendingCount; i++) {
+			incFreeIds[incFreeCount++] = incPendingIds[i];
+		}
+		incPendingCount = 0;
+		incNeedsSort = false;
+	}
+
+	/**
+	 * Called by the insertion sort when a min endpoint of one geom passes the 
+	 * max endpoint of another geom. 
+	 */
+	private void incBeginOverlap( int id0, int id1 )
+	{
+		final double[] b = incBounds;
+		final int o0 = id0*6;
+		final int o1 = id1*6;
+		for (int a = 0; a < 6; a += 2) {
+			if (b[o0 + a] > b[o1 + a + 1] || b[o1 + a] > b[o0 + a + 1]) {
+				return;
+			}
+		}
+		incPairs.add(SapPairSet.key(id0, id1));
+	}
+
+	/**
+	 * Called by the insertion sort when a max endpoint of one geom passes the 
+	 * min endpoint of another geom. 
+	 */
+	private void incEndOverlap( int id0, int id1 )
+	{
+		incPairs.remove(SapPairSet.key(id0, id1));
+	}
+
+	/**
+	 * Sorted endpoints along one axis. Each entry consists of the value and 
+	 * <tt>id&lt;&lt;2 | free&lt;&lt;1 | isMax</tt>. Entries are ordered by 
+	 * value, then by the lower two bits, so that min comes before max for 
+	 * equal values (touching AABBs overlap). The endpoints of removed or 
+	 * unused ids are +infinity and come last, ordered by id. This way a free 
+	 * id does not overlap any other id and can be reused by just setting its 
+	 * values.
+	 */
+	private static final class SapAxis {
+		private static final int MAX = 1;
+		private static final int FREE = 2;
+		private static final int FLAGS = MAX | FREE;
+
+		double[] value = new double[32];
+		int[] data = new int[32];
+		// index of each endpoint in value/data, indexed by id*2 + isMax
+		int[] pos = new int[32];
+		int size = 0;
+
+		void append(int id) {
+			if (size + 2 > value.length) {
+				value = Arrays.copyOf(value, size*2);
+				data = Arrays.copyOf(data, size*2);
+				pos = Arrays.copyOf(pos, size*2);
+			}
+			for (int m = 0; m < 2; m++) {
+				value[size] = dInfinity;
+				data[size] = (id << 2) | FREE | m;
+				pos[id*2 + m] = size;
+				size++;
+			}
+		}
+
+		void set(int id, double min, double max) {
+			int i = pos[id*2];
+			value[i] = min;
+			data[i] &= ~FREE;
+			i = pos[id*2 + 1];
+			value[i] = max;
+			data[i] &= ~FREE;
+		}
+
+		void free(int id) {
+			int i = pos[id*2];
+			value[i] = dInfinity;
+			data[i] |= FREE;
+			i = pos[id*2 + 1];
+			value[i] = dInfinity;
+			data[i] |= FREE;
+		}
+
+		/**
+		 * Insertion sort, which is O(n) for the mostly sorted arrays. Every 
+		 * swap of a min and a max endpoint of different geoms is reported 
+		 * to the space.
+		 */
+		void sort(DxSAPSpace space) {
+			final double[] value = this.value;
+			final int[] data = this.data;
+			final int[] pos = this.pos;
+			for (int i = 1; i < size; i++) {
+				final double v = value[i];
+				final int d = data[i];
+				if (!less(v, d, value[i-1], data[i-1])) {
+					continue;
+				}
+				final int id = d >>> 2;
+				int j = i - 1;
+				do {
+					final int pd = data[j];
+					final int pid = pd >>> 2;
+					if (pid != id) {
+						if ((d & FLAGS) == 0 && (pd & FLAGS) == MAX) {
+							space.incBeginOverlap(id, pid);
+						} else if ((d & MAX) != 0 && (pd & MAX) == 0) {
+							space.incEndOverlap(id, pid);
+						}
+					}
+					value[j+1] = value[j];
+					data[j+1] = pd;
+					pos[(pid << 1) | (pd & MAX)] = j+1;
+					j--;
+				} while (j >= 0 && less(v, d, value[j], data[j]));
+				value[j+1] = v;
+				data[j+1] = d;
+				pos[(id << 1) | (d & MAX)] = j+1;
+			}
+		}
+
+		private static boolean less(double v1, int d1, double v2, int d2) {
+			if (v1 != v2) {
+				return v1 < v2;
+			}
+			if ((d1 & d2 & FREE) != 0) {
+				return d1 < d2;
+			}
+			return (d1 & FLAGS) < (d2 & FLAGS);
+		}
+	}
+
+	/**
+	 * Set of overlapping pairs, stored as <tt>id0&lt;&lt;32 | id1</tt> with 
+	 * id0 &lt; id1 in an open addressing hash table with linear probing.
+	 */
+	private static final class SapPairSet {
+		static final long EMPTY = -1L;
+
+		long[] keys = newKeys(64);
+		private int size = 0;
+
+		static long key(int id0, int id1) {
+			return id0 < id1 ? ((long)id0 << 32) | id1 : ((long)id1 << 32) | id0;
+		}
+
+		private static long[] newKeys(int capacity) {
+			long[] k = new long[capacity];
+			Arrays.fill(k, EMPTY);
+			return k;
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+
+		void add(long key) {
+			if ((size + 1) * 2 > keys.length) {
+				rehash(keys.length * 2);
+			}
+			final long[] keys = this.keys;
+			final int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != EMPTY) {
+				if (keys[i] == key) {
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			size++;
+		}
+
+		void remove(long key) {
+			final long[] keys = this.keys;
+			final int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != key) {
+				if (keys[i] == EMPTY) {
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			removeAt(i);
+		}
+
+		private void removeAt(int i) {
+			final long[] keys = this.keys;
+			final int mask = keys.length - 1;
+			// shift following entries back to keep the probe sequences intact
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				final long k = keys[j];
+				if (k == EMPTY) {
+					break;
+				}
+				final int h = hash(k) & mask;
+				if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+					keys[i] = k;
+					i = j;
+				}
+			}
+			keys[i] = EMPTY;
+			size--;
+		}
+
+		private void rehash(int capacity) {
+			long[] old = keys;
+			keys = newKeys(capacity);
+			size = 0;
+			for (long k : old) {
+				if (k != EMPTY) {
+					add(k);
+				}
+			}
+		}
+	}
+
 	//Commented out, see above (TZ)
 //	/**
 //	 *	Complete box pruning.
@@ -26,8 +26,11 @@ package org.ode4j.ode.internal;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DContactBatch;
+import org.ode4j.ode.DContactBuffer;
 import org.ode4j.ode.DGeom;
 import org.ode4j.ode.DSpace;
 
@@ -88,6 +91,12 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 	// is locked.
 	int lock_count;
 
+	// number of geoms in this space that are spaces themselves
+	int subspace_count;
+
+	// created on first use of collideParallel()
+	private DxSpaceParallelCollider parallelCollider;
+
 	/**
 	 * Turn all dirty geoms into clean geoms by computing their AABBs and any
 	 * other space data structures that are required. this should clear the
@@ -458,6 +467,7 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 		geom.parent_space = this;
 		geom.spaceAdd (_first1, this, _geoms);
 		count++;
+		if (geom instanceof DxSpace) subspace_count++;
 
 		// enumerator has been invalidated
 		current_geom = null;
@@ -481,6 +491,7 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 		// remove
 		geom.spaceRemove(this, _geoms);
 		count--;
+		if (geom instanceof DxSpace) subspace_count--;
 
 		// safeguard
 		//geom._next = null;
@@ -535,6 +546,44 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 	public boolean query (DGeom x)
 	{ return dSpaceQuery ((DxGeom) x); }
 
+	@Override
+	public void collideParallel (Object data, DNearCallback callback, 
+			Executor executor, int threadCount)
+	{
+		if (parallelCollider == null) {
+			parallelCollider = new DxSpaceParallelCollider(this);
+		}
+		parallelCollider.collide(data, callback, executor, threadCount);
+	}
+
+	@Override
+	public int collideParallel (Object data, DParallelNearCallback callback, 
+			int maxContacts, DContactBuffer contacts, 
+			Executor executor, int threadCount)
+	{
+		if (parallelCollider == null) {
+			parallelCollider = new DxSpaceParallelCollider(this);
+		}
+		return parallelCollider.collide(data, callback, maxContacts, contacts, 
+				executor, threadCount);
+	}
+
+	@Override
+	public int collideContacts (int maxContacts, DContactBatch contacts)
+	{
+		return collideContacts(maxContacts, contacts, null, 1);
+	}
+
+	@Override
+	public int collideContacts (int maxContacts, DContactBatch contacts, 
+			Executor executor, int threadCount)
+	{
+		if (parallelCollider == null) {
+			parallelCollider = new DxSpaceParallelCollider(this);
+		}
+		return parallelCollider.collide(maxContacts, contacts, executor, threadCount);
+	}
+
 //	public int getNumGeoms()
 //	{ return dSpaceGetNumGeoms (id()); }
 //	public dGeom getGeom (int i)
@@ -0,0 +1,394 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBatch;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DSpace.DParallelNearCallback;
+
+
+/**
+ * Implementation of <tt>DSpace.collideParallel()</tt>.
+ * <p>
+ * The broadphase pairs are gathered serially into a flat array, then the
+ * array is cut into contiguous chunks that the worker threads claim one by
+ * one. Each chunk has its own contact buffer, so merging the chunks in order
+ * yields the contacts in the same order as a serial run. All arrays, 
+ * buffers and workers are kept between calls.
+ */
+final class DxSpaceParallelCollider {
+
+	/** More chunks than threads, to balance pairs of very different cost. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final DxSpace space;
+
+	// pairs stored as o1,o2
+	private DxGeom[] pairs = new DxGeom[64];
+	private int pairCount;
+
+	private DContactBuffer[] chunkContacts = new DContactBuffer[0];
+	private int[] chunkContactCount = new int[0];
+	// one scratch buffer per worker
+	private DContactBuffer[] scratch = new DContactBuffer[0];
+	private DContactGeomBuffer[] scratchGeoms = new DContactGeomBuffer[0];
+	private int scratchGeomsSize = 0;
+	private DContactBatch[] chunkBatches = new DContactBatch[0];
+
+	// state of the current run
+	private Object data;
+	private DNearCallback nearCallback;
+	private DParallelNearCallback contactCallback;
+	private DContactBatch batch;
+	private int maxContacts;
+	private int nChunks;
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	private Worker[] workers = new Worker[0];
+	// workers of the current run that have not finished yet, guarded by workers
+	private int pendingWorkers;
+
+	private final DNearCallback gatherCallback = new DNearCallback() {
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (o1 instanceof DxSpace || o2 instanceof DxSpace) {
+				// the interior of sub-spaces is handled by gatherSubSpaces()
+				DxSpace.dSpaceCollide2((DxGeom) o1, (DxGeom) o2, data, this);
+				return;
+			}
+			if (pairCount*2 == pairs.length) {
+				pairs = Arrays.copyOf(pairs, pairs.length*2);
+			}
+			pairs[pairCount*2] = (DxGeom) o1;
+			pairs[pairCount*2+1] = (DxGeom) o2;
+			pairCount++;
+		}
+	};
+
+
+	DxSpaceParallelCollider(DxSpace space) {
+		this.space = space;
+	}
+
+
+	void collide(Object data, DNearCallback callback, 
+			Executor executor, int threadCount) {
+		dAASSERT(callback);
+		nearCallback = callback;
+		try {
+			run(data, 0, executor, threadCount);
+		} finally {
+			nearCallback = null;
+		}
+	}
+
+
+	int collide(Object data, DParallelNearCallback callback, int maxContacts,
+			DContactBuffer contacts, Executor executor, int threadCount) {
+		dAASSERT(callback, contacts);
+		dUASSERT(maxContacts > 0, "maxContacts must be positive");
+		contactCallback = callback;
+		try {
+			run(data, maxContacts, executor, threadCount);
+			// merge the per-chunk buffers in chunk order
+			int total = 0;
+			for (int c = 0; c < nChunks; c++) {
+				total += chunkContactCount[c];
+			}
+			contacts.ensureCapacity(total);
+			int n = 0;
+			for (int c = 0; c < nChunks; c++) {
+				DContactBuffer src = chunkContacts[c];
+				for (int i = 0; i < chunkContactCount[c]; i++) {
+					swap(src, i, contacts, n++);
+				}
+			}
+			return total;
+		} finally {
+			contactCallback = null;
+		}
+	}
+
+
+	int collide(int maxContacts, DContactBatch contacts, 
+			Executor executor, int threadCount) {
+		dAASSERT(contacts);
+		dUASSERT(maxContacts > 0, "maxContacts must be positive");
+		batch = contacts;
+		try {
+			final int before = contacts.size();
+			run(null, maxContacts, executor, threadCount);
+			// a single chunk is written to the batch directly
+			if (nChunks > 1) {
+				for (int c = 0; c < nChunks; c++) {
+					contacts.addAll(chunkBatches[c]);
+					chunkBatches[c].clear();
+				}
+			}
+			return contacts.size() - before;
+		} finally {
+			batch = null;
+		}
+	}
+
+
+	private void run(Object data, int maxContacts, Executor executor, 
+			int threadCount) {
+		if (threadCount > 1) {
+			dAASSERT(executor);
+		}
+		space.lock_count++;
+		try {
+			pairCount = 0;
+			space.collide(data, gatherCallback);
+			gatherSubSpaces(space, data);
+
+			nChunks = threadCount <= 1 ? 1 : 
+				Math.min(pairCount, threadCount * CHUNKS_PER_THREAD);
+			if (nChunks == 0) {
+				return;
+			}
+			int nWorkers = Math.max(1, Math.min(threadCount, nChunks));
+			prepareBuffers(nWorkers, maxContacts);
+
+			this.data = data;
+			this.maxContacts = maxContacts;
+			nextChunk.set(0);
+			failure.set(null);
+			final Worker[] w = workers;
+			synchronized (w) {
+				pendingWorkers = nWorkers;
+			}
+			for (int i = 1; i < nWorkers; i++) {
+				try {
+					executor.execute(w[i]);
+				} catch (RejectedExecutionException e) {
+					// the remaining workers pick up the chunks
+					workerDone();
+				}
+			}
+			w[0].run();
+			awaitWorkers();
+
+			Throwable t = failure.get();
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t != null) {
+				throw new RuntimeException(t);
+			}
+		} finally {
+			Arrays.fill(pairs, 0, pairCount*2, null);
+			pairCount = 0;
+			this.data = null;
+			failure.set(null);
+			space.lock_count--;
+		}
+	}
+
+
+	/** Collide the interior of every enabled sub-space once. */
+	private void gatherSubSpaces(DxSpace parent, Object data) {
+		// spaces without sub-spaces are not walked
+		int remaining = parent.subspace_count;
+		for (int i = 0; remaining > 0 && i < parent.getNumGeoms(); i++) {
+			DxGeom g = (DxGeom) parent.getGeom(i);
+			if (g instanceof DxSpace) {
+				remaining--;
+				if (g.isEnabled()) {
+					DxSpace sub = (DxSpace) g;
+					sub.collide(data, gatherCallback);
+					gatherSubSpaces(sub, data);
+				}
+			}
+		}
+	}
+
+
+	private void prepareBuffers(int nWorkers, int maxContacts) {
+		if (workers.length < nWorkers) {
+			// the array is also the monitor of pendingWorkers, it is only 
+			// replaced while no worker runs
+			int old = workers.length;
+			workers = Arrays.copyOf(workers, nWorkers);
+			for (int w = old; w < nWorkers; w++) {
+				workers[w] = new Worker(w);
+			}
+		}
+		if (batch != null) {
+			if (chunkBatches.length < nChunks) {
+				int old = chunkBatches.length;
+				chunkBatches = Arrays.copyOf(chunkBatches, nChunks);
+				for (int c = old; c < nChunks; c++) {
+					chunkBatches[c] = new DContactBatch();
+				}
+			}
+			if (maxContacts > scratchGeomsSize) {
+				Arrays.fill(scratchGeoms, null);
+				scratchGeomsSize = maxContacts;
+			}
+			if (scratchGeoms.length < nWorkers) {
+				scratchGeoms = Arrays.copyOf(scratchGeoms, nWorkers);
+			}
+			for (int w = 0; w < nWorkers; w++) {
+				if (scratchGeoms[w] == null) {
+					scratchGeoms[w] = new DContactGeomBuffer(scratchGeomsSize);
+				}
+			}
+			return;
+		}
+		if (contactCallback == null) {
+			return;
+		}
+		if (chunkContacts.length < nChunks) {
+			int old = chunkContacts.length;
+			chunkContacts = Arrays.copyOf(chunkContacts, nChunks);
+			chunkContactCount = new int[nChunks];
+			for (int c = old; c < nChunks; c++) {
+				chunkContacts[c] = new DContactBuffer(0);
+			}
+		}
+		if (scratch.length < nWorkers) {
+			scratch = Arrays.copyOf(scratch, nWorkers);
+		}
+		for (int w = 0; w < nWorkers; w++) {
+			if (scratch[w] == null || scratch[w].size() != maxContacts) {
+				scratch[w] = new DContactBuffer(maxContacts);
+			}
+		}
+	}
+
+
+	private void workerDone() {
+		final Worker[] w = workers;
+		synchronized (w) {
+			if (--pendingWorkers == 0) {
+				w.notifyAll();
+			}
+		}
+	}
+
+
+	private void awaitWorkers() {
+		boolean interrupted = false;
+		final Worker[] w = workers;
+		synchronized (w) {
+			while (pendingWorkers > 0) {
+				try {
+					w.wait();
+				} catch (InterruptedException e) {
+					// the workers still use our buffers, so keep waiting
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private static void swap(DContactBuffer src, int i, DContactBuffer dst, int j) {
+		DContact tmp = dst.get(j);
+		dst.set(j, src.get(i));
+		src.set(i, tmp);
+	}
+
+
+	private void processChunk(int c, int worker) {
+		final int begin = (int) ((long) c * pairCount / nChunks);
+		final int end = (int) ((long) (c + 1) * pairCount / nChunks);
+		final DxGeom[] p = pairs;
+		if (batch != null) {
+			final DContactBatch out = nChunks == 1 ? batch : chunkBatches[c];
+			final DContactGeomBuffer s = scratchGeoms[worker];
+			for (int i = begin; i < end; i++) {
+				int n = DxGeom.dCollide(p[i*2], p[i*2+1], maxContacts, s, 1);
+				if (n > 0) {
+					out.addAll(s, n);
+				}
+			}
+			return;
+		}
+		if (contactCallback == null) {
+			for (int i = begin; i < end; i++) {
+				nearCallback.call(data, p[i*2], p[i*2+1]);
+			}
+			return;
+		}
+		final DContactBuffer s = scratch[worker];
+		final DContactBuffer out = chunkContacts[c];
+		int n = 0;
+		for (int i = begin; i < end; i++) {
+			int k = contactCallback.call(data, p[i*2], p[i*2+1], s);
+			if (k > s.size()) {
+				k = s.size();
+			}
+			if (k > 0) {
+				out.ensureCapacity(n + k);
+				for (int j = 0; j < k; j++) {
+					swap(s, j, out, n++);
+				}
+			}
+		}
+		chunkContactCount[c] = n;
+	}
+
+
+	private class Worker implements Runnable {
+		private final int worker;
+
+		Worker(int worker) {
+			this.worker = worker;
+		}
+
+		@Override
+		public void run() {
+			try {
+				int c;
+				while ((c = nextChunk.getAndIncrement()) < nChunks) {
+					processChunk(c, worker);
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+				// let the other workers stop early
+				nextChunk.set(nChunks);
+			} finally {
+				workerDone();
+			}
+		}
+	}
+}
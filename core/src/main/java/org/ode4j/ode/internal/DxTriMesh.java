@@ -27,6 +27,7 @@ package org.ode4j.ode.internal;
 import org.ode4j.math.DVector3;
 import org.ode4j.ode.DTriMesh;
 import org.ode4j.ode.OdeConfig;
+import org.ode4j.ode.OdeConfig.TRIMESH;
 
 public abstract class DxTriMesh extends DxGeom implements DTriMesh {
 
@@ -66,10 +67,12 @@ public abstract class DxTriMesh extends DxGeom implements DTriMesh {
 			DTriRayCallback RayCallback)
 	{
 		DxTriMesh Geom;
-		switch (OdeConfig.dTRIMESH_TYPE) {
+		TRIMESH type = OdeConfig.getTrimeshType();
+		switch (type) {
 		case DISABLED: Geom = new DxTriMeshDisabled(space, Data); break;
-		case GIMPACT: Geom = new DxGimpact(space, (DxGimpactData) Data); break;
-		default: throw new IllegalArgumentException(OdeConfig.dTRIMESH_TYPE.name());
+		case GIMPACT: 
+		case BVH: Geom = new DxGimpact(space, (DxGimpactData) Data); break;
+		default: throw new IllegalArgumentException(type.name());
 		}
 		Geom.Callback = Callback;
 		Geom.ArrayCallback = ArrayCallback;
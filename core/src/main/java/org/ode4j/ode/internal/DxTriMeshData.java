@@ -25,6 +25,7 @@
 package org.ode4j.ode.internal;
 
 import org.ode4j.ode.OdeConfig;
+import org.ode4j.ode.OdeConfig.TRIMESH;
 import org.ode4j.ode.DTriMeshData;
 
 public abstract class DxTriMeshData implements DTriMeshData {
@@ -49,10 +50,12 @@ public abstract class DxTriMeshData implements DTriMeshData {
     abstract void UpdateData();
 
     public static DTriMeshData dGeomTriMeshDataCreate() {
-		switch (OdeConfig.dTRIMESH_TYPE) {
+		TRIMESH type = OdeConfig.getTrimeshType();
+		switch (type) {
 		case DISABLED: return new DxTriMeshDisabled.dxTriMeshDisabledData();
 		case GIMPACT: return new DxGimpactData();
-		default: throw new IllegalArgumentException(OdeConfig.dTRIMESH_TYPE.name());
+		case BVH: return new DxGimpactData(true);
+		default: throw new IllegalArgumentException(type.name());
 		}
     }
 //	public abstract void dGeomTriMeshDataDestroy();
@@ -35,8 +35,12 @@ import static org.ode4j.ode.internal.ErrorHandler.dMessage;
 import static org.ode4j.ode.internal.Objects_H.g_world_default_threading_functions;
 import static org.ode4j.ode.internal.Objects_H.g_world_default_threading_impl;
 
+import java.nio.DoubleBuffer;
+import java.util.concurrent.Executor;
+
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBody;
 import org.ode4j.ode.DWorld;
 import org.ode4j.ode.internal.Objects_H.dxAutoDisable;
 import org.ode4j.ode.internal.Objects_H.dxContactParameters;
@@ -90,9 +94,26 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	dxAutoDisable adis;		// auto-disable parameters
 	int body_flags;               // flags for new bodies
     private int islands_max_threads; // maximum threads to allocate for island processing
+    private DThreadingImplementation executor_threading; // implementation allocated by setStepExecutor()
+    private boolean zero_garbage_stepping; // recycle the working memory contents, see dWorldSetZeroGarbageStepping()
+    // Per-step objects of dWorld[Quick]Step(), reused by all steps
+    private final DxWorldProcessIslandsInfo step_islandsinfo = new DxWorldProcessIslandsInfo();
+    private final DxIslandsProcessingCallContext step_callcontext = new DxIslandsProcessingCallContext();
+    private final RefInt step_summaryfault = new RefInt();
+    private final RefInt step_activethreadcount = new RefInt();
+    private final Ref<DCallReleasee> step_groupreleasee = new Ref<DCallReleasee>();
+    private final DVector3 step_average_lvel = new DVector3(), step_average_avel = new DVector3();
 	public DxStepWorkingMemory wmem; // Working memory object for dWorldStep/dWorldQuickStep
 
 	dxQuickStepParameters qs;
+	private StepFactorization step_factorization = StepFactorization.DENSE; // see dWorldSetStepFactorization()
+	// lambda of the contact joints of the last QuickStep, for warm starting
+	private final DxContactCache contactCache = new DxContactCache();
+	// per-island iterations and residuals of the last QuickStep
+	final DxQuickStepStats qsStats = new DxQuickStepStats();
+	// bodies changed since they were last drained, null if not tracked
+	DxDirtyBodySet dirty_bodies;
+	private double dirty_distance, dirty_angle; // see dWorldSetDirtyBodyThreshold()
 	public dxContactParameters contactp;
 	dxDampingParameters dampingp; // damping parameters
 	double max_angular_speed;      // limit the angular velocity to this magnitude
@@ -435,16 +456,51 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 			dUASSERT(functions_info == null && threading_impl == null, "Threading interface is not available");
 		} else {
 			AssignThreadingImpl(functions_info, threading_impl);
+			FreeExecutorThreading();
 		} 
 	}
 
+	void dWorldSetStepExecutor(Executor executor, int thread_count)
+	{
+		dUASSERT(thread_count >= 0, "thread count must be >= 0");
+
+		if (executor != null) {
+			DThreadingImplementation threading_impl = 
+					DxThreadingImplementation.dThreadingAllocateExecutorImplementation(executor, thread_count);
+			dWorldSetStepThreadingImplementation(
+					(DxThreadingFunctionsInfo) threading_impl.dThreadingImplementationGetFunctions(), 
+					threading_impl);
+			executor_threading = threading_impl;
+		} else {
+			dWorldSetStepThreadingImplementation(null, null);
+		}
+	}
+
+	void dWorldSetZeroGarbageStepping(boolean enabled)
+	{
+		zero_garbage_stepping = enabled;
+	}
+
+	public boolean dWorldGetZeroGarbageStepping()
+	{
+		return zero_garbage_stepping;
+	}
+
+	private void FreeExecutorThreading()
+	{
+		if (executor_threading != null) {
+			executor_threading.free();
+			executor_threading = null;
+		}
+	}
+
 	boolean dWorldStep (double stepsize)
 	{
 	    dUASSERT (stepsize > 0,"stepsize must be > 0");
 
 	    boolean result = false;
 
-	    DxWorldProcessIslandsInfo islandsinfo = new DxWorldProcessIslandsInfo();
+	    DxWorldProcessIslandsInfo islandsinfo = step_islandsinfo;
         if (DxWorldProcessContext.dxReallocateWorldProcessContext (this, islandsinfo, stepsize, 
         		Step.INSTANCE))//dxEstimateQuickStepMemoryRequirements))
         {
@@ -464,7 +520,13 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 	    boolean result = false;
 
-	    DxWorldProcessIslandsInfo islandsinfo = new DxWorldProcessIslandsInfo();
+	    qsStats.clear();
+	    final boolean warmStart = qs.warm_start_factor > 0;
+	    if (warmStart) {
+	    	contactCache.load(this, qs.warm_start_tolerance);
+	    }
+
+	    DxWorldProcessIslandsInfo islandsinfo = step_islandsinfo;
 	    if (DxWorldProcessContext.dxReallocateWorldProcessContext (this, islandsinfo, stepsize, 
 	            DxQuickStep.INSTANCE))//dxEstimateQuickStepMemoryRequirements))
 	    {
@@ -475,6 +537,10 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	        }
 	    }
 
+	    if (warmStart) {
+	    	contactCache.store(this);
+	    }
+
 	    return result;
 	}
 
@@ -636,6 +702,113 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 		dWorldSetAngularDamping(angular_scale);
 	}
 
+	private int dWorldGetBodies (DBody[] bodies)
+	{
+		dUASSERT (bodies.length >= nb, "array too small for all bodies");
+		int i = 0;
+		for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext())
+			bodies[i++] = b;
+		return i;
+	}
+
+
+	private int dWorldGetBodyStates (DoubleBuffer states)
+	{
+		dUASSERT (states.remaining() >= nb * BODY_STATE_SIZE, "buffer too small for all bodies");
+		int i = 0;
+		for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext(), i++)
+			b.dBodyGetState (states);
+		return i;
+	}
+
+
+	private int dWorldGetBodyStates (double[] states, int offset)
+	{
+		dUASSERT (offset >= 0 && states.length - offset >= nb * BODY_STATE_SIZE, "array too small for all bodies");
+		int i = 0;
+		for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext(), i++)
+			b.dBodyGetState (states, offset + i * BODY_STATE_SIZE);
+		return i;
+	}
+
+
+	private void dWorldGetBodyStates (DBody[] bodies, DoubleBuffer states)
+	{
+		dUASSERT (states.remaining() >= bodies.length * BODY_STATE_SIZE, "buffer too small for the bodies");
+		for (DBody body: bodies) {
+			DxBody b = (DxBody) body;
+			dUASSERT (b.world == this, "body is not in this world");
+			b.dBodyGetState (states);
+		}
+	}
+
+
+	private void dWorldSetBodyStates (DoubleBuffer states)
+	{
+		dUASSERT (states.remaining() >= nb * BODY_STATE_SIZE, "buffer too small for all bodies");
+		for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext())
+			b.dBodySetState (states);
+	}
+
+
+	private void dWorldSetBodyStates (double[] states, int offset)
+	{
+		dUASSERT (offset >= 0 && states.length - offset >= nb * BODY_STATE_SIZE, "array too small for all bodies");
+		int i = offset;
+		for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext(), i += BODY_STATE_SIZE)
+			b.dBodySetState (states, i);
+	}
+
+
+	private void dWorldSetBodyStates (DBody[] bodies, DoubleBuffer states)
+	{
+		dUASSERT (states.remaining() >= bodies.length * BODY_STATE_SIZE, "buffer too small for the bodies");
+		for (DBody body: bodies) {
+			DxBody b = (DxBody) body;
+			dUASSERT (b.world == this, "body is not in this world");
+			b.dBodySetState (states);
+		}
+	}
+
+
+	private void dWorldSetDirtyBodyTracking (boolean enabled)
+	{
+		if (!enabled)
+		{
+			for (DxBody b = firstbody.get(); b != null; b = (DxBody) b.getNext())
+				b.dirty_index = -1;
+			dirty_bodies = null;
+		}
+		else if (dirty_bodies == null)
+		{
+			DxDirtyBodySet set = new DxDirtyBodySet(firstbody.get());
+			set.setThreshold(dirty_distance, dirty_angle);
+			dirty_bodies = set;
+		}
+	}
+
+
+	private void dWorldSetDirtyBodyThreshold (double distance, double angle)
+	{
+		dUASSERT (distance >= 0 && angle >= 0, "thresholds must be >= 0");
+		dirty_distance = distance;
+		dirty_angle = angle;
+		if (dirty_bodies != null)
+			dirty_bodies.setThreshold(distance, angle);
+	}
+
+
+	private int dWorldDrainDirtyBodies (DBody[] bodies, DoubleBuffer states)
+	{
+		if (dirty_bodies == null)
+			return 0;
+		if (states != null)
+			dUASSERT (states.remaining() >= Math.min(bodies.length, dirty_bodies.size()) * BODY_STATE_SIZE, 
+					"buffer too small for the bodies");
+		return dirty_bodies.drain(bodies, states);
+	}
+
+
 	private double dWorldGetMaxAngularSpeed()
 	{
 		return max_angular_speed;
@@ -679,6 +852,58 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	}
 
 
+	private void dWorldSetQuickStepWarmStartFactor (double factor)
+	{
+		dUASSERT (factor >= 0, "factor must be >= 0");
+		qs.warm_start_factor = factor;
+		if (factor == 0) {
+			contactCache.clear();
+		}
+	}
+
+
+	private void dWorldSetQuickStepWarmStartTolerance (double distance)
+	{
+		dUASSERT (distance >= 0, "distance must be >= 0");
+		qs.warm_start_tolerance = distance;
+	}
+
+
+	private void dWorldSetQuickStepTolerance (double tolerance)
+	{
+		dUASSERT (tolerance >= 0, "tolerance must be >= 0");
+		qs.tolerance = tolerance;
+	}
+
+
+	private void dWorldSetQuickStepToleranceCheckInterval (int interval)
+	{
+		dUASSERT (interval > 0, "interval must be > 0");
+		qs.tolerance_check_interval = interval;
+	}
+
+
+	private void dWorldSetQuickStepParallelThreshold (int rows)
+	{
+		dUASSERT (rows >= 0, "rows must be >= 0");
+		qs.parallel_threshold = rows;
+	}
+
+
+	private void dWorldSetQuickStepSolver (QuickStepSolver solver)
+	{
+		dUASSERT (solver != null, "solver must not be null");
+		qs.solver = solver;
+	}
+
+
+	private void dWorldSetStepFactorization (StepFactorization factorization)
+	{
+		dUASSERT (factorization != null, "factorization must not be null");
+		step_factorization = factorization;
+	}
+
+
 //	void dWorldSetContactMaxCorrectingVel (dxWorld w, double vel)
 	public void dWorldSetContactMaxCorrectingVel (double vel)
 	{
@@ -754,7 +979,8 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	    //          res += sesize;
 	    //
 	    //          return res;
-	    return -1;
+	    // Only the island sizes come from the slabs of the arena.
+	    return nb * 2 * DxUtil.SIZEOF_INT;
 	}
 
 	
@@ -796,8 +1022,8 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	{
 		boolean result = false;
 
-		DxIslandsProcessingCallContext callContext = new DxIslandsProcessingCallContext(this, 
-				islandsInfo, stepSize, stepper);
+		DxIslandsProcessingCallContext callContext = step_callcontext;
+		callContext.Initialize(this, islandsInfo, stepSize, stepper);
 
 		do {
 			//DxStepWorkingMemory wmem = world.wmem;
@@ -806,15 +1032,21 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 			dIASSERT(context != null);
 			DCallWait pcwGroupCallWait = context.GetIslandsSteppingWait();
 
-			RefInt summaryFault = new RefInt();
+			RefInt summaryFault = step_summaryfault;
+			summaryFault.set(0);
 
-			RefInt activeThreadCount = new RefInt();
-			final int islandsAllowedThreadCount = GetThreadingIslandsMaxThreadsCount(activeThreadCount);
-			dIASSERT(islandsAllowedThreadCount != 0);
-			dIASSERT(activeThreadCount.get() >= islandsAllowedThreadCount);
+			RefInt activeThreadCount = step_activethreadcount;
+			final int islandsMaxThreadCount = GetThreadingIslandsMaxThreadsCount(activeThreadCount);
+			dIASSERT(islandsMaxThreadCount != 0);
+			dIASSERT(activeThreadCount.get() >= islandsMaxThreadCount);
 
-			// For now, set stepper allowed threads equal to island stepping threads
-			int stepperAllowedThreadCount = islandsAllowedThreadCount; 
+			// There is no use in more island stepping threads than there are islands
+			final int islandsCount = islandsInfo.GetIslandsCount();
+			final int islandsAllowedThreadCount = islandsCount != 0 && islandsCount < islandsMaxThreadCount 
+					? islandsCount : islandsMaxThreadCount;
+
+			// For now, set stepper allowed threads equal to island stepping threads limit
+			int stepperAllowedThreadCount = islandsMaxThreadCount; 
 
 			int simultaneousCallsCount = EstimateIslandProcessingSimultaneousCallsMaximumCount(
 					activeThreadCount.get(), islandsAllowedThreadCount, 
@@ -823,7 +1055,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 				break;
 			}
 
-			Ref<DCallReleasee> groupReleasee = new Ref<DCallReleasee>();
+			Ref<DCallReleasee> groupReleasee = step_groupreleasee;
 			// First post a group call with dependency count set to number of expected threads
 			threading().PostThreadedCall(summaryFault, groupReleasee, islandsAllowedThreadCount, null, 
 					pcwGroupCallWait, 
@@ -832,6 +1064,10 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 			callContext.AssignGroupReleasee(groupReleasee.get());
 			callContext.SetStepperAllowedThreads(stepperAllowedThreadCount);
+			if (islandsAllowedThreadCount > 1) {
+				// Dispatch the largest islands first to shorten the tail of the step
+				callContext.AssignLargestFirstIslandOrder();
+			}
 
 			// Summary fault flag may be omitted as any failures will automatically propagate to 
 			// dependent releasee (i.e. to groupReleasee)
@@ -916,7 +1152,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 				idle = true; // Initial assumption: IDLE
 
 				// the sample buffers are filled and ready for calculation
-				DVector3 average_lvel = new DVector3(), average_avel = new DVector3();
+				DVector3 average_lvel = step_average_lvel, average_avel = step_average_avel;
 
 				// Store first velocity samples
 //				average_lvel.v[0] = bb.average_lvel_buffer[0].v[0];
@@ -1020,6 +1256,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 			wmem.Release();
 			wmem = null;
 		}
+		FreeExecutorThreading();
 		super.DESTRUCTOR(); 
 	}
 
@@ -1088,12 +1325,18 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 	//private!
 	@Override
-	public DxThreadingFunctionsInfo RetrieveThreadingDefaultImpl(Ref<DThreadingImplementation> out_default_impl)
+	public DxThreadingFunctionsInfo RetrieveThreadingDefaultFunctions()
 	{
-	    out_default_impl.set( g_world_default_threading_impl );
 	    return (DxThreadingFunctionsInfo) g_world_default_threading_functions;
 	}
 
+	//private!
+	@Override
+	public DThreadingImplementation RetrieveThreadingDefaultImpl()
+	{
+	    return g_world_default_threading_impl;
+	}
+
 	public DxThreadingBase threading() {
 		return dxThreadingBase;
 	}
@@ -1141,6 +1384,63 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	@Override
 	public double getQuickStepW() 
 	{ return dWorldGetQuickStepW (); }
+	@Override
+	public void setQuickStepWarmStartFactor(double factor)
+	{ dWorldSetQuickStepWarmStartFactor (factor); }
+	@Override
+	public double getQuickStepWarmStartFactor()
+	{ return qs.warm_start_factor; }
+	@Override
+	public void setQuickStepWarmStartTolerance(double distance)
+	{ dWorldSetQuickStepWarmStartTolerance (distance); }
+	@Override
+	public double getQuickStepWarmStartTolerance()
+	{ return qs.warm_start_tolerance; }
+	@Override
+	public void setQuickStepTolerance(double tolerance)
+	{ dWorldSetQuickStepTolerance (tolerance); }
+	@Override
+	public double getQuickStepTolerance()
+	{ return qs.tolerance; }
+	@Override
+	public void setQuickStepToleranceCheckInterval(int interval)
+	{ dWorldSetQuickStepToleranceCheckInterval (interval); }
+	@Override
+	public int getQuickStepToleranceCheckInterval()
+	{ return qs.tolerance_check_interval; }
+	@Override
+	public void setQuickStepParallelThreshold(int rows)
+	{ dWorldSetQuickStepParallelThreshold (rows); }
+	@Override
+	public int getQuickStepParallelThreshold()
+	{ return qs.parallel_threshold; }
+	@Override
+	public void setQuickStepSolver(QuickStepSolver solver)
+	{ dWorldSetQuickStepSolver (solver); }
+	@Override
+	public QuickStepSolver getQuickStepSolver()
+	{ return qs.solver; }
+	@Override
+	public void setStepFactorization(StepFactorization factorization)
+	{ dWorldSetStepFactorization (factorization); }
+	@Override
+	public StepFactorization getStepFactorization()
+	{ return step_factorization; }
+	@Override
+	public int getQuickStepIslandCount()
+	{ return qsStats.size(); }
+	@Override
+	public int getQuickStepIslandBodyCount(int island)
+	{ return qsStats.getBodyCount(island); }
+	@Override
+	public int getQuickStepIslandRowCount(int island)
+	{ return qsStats.getRowCount(island); }
+	@Override
+	public int getQuickStepIslandIterations(int island)
+	{ return qsStats.getIterations(island); }
+	@Override
+	public double getQuickStepIslandResidual(int island)
+	{ return qsStats.getResidual(island); }
 
 	@Override
 	public void  setAutoDisableLinearThreshold (double threshold) 
@@ -1208,6 +1508,46 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	public void setMaxAngularSpeed(double max_speed)
 	{ dWorldSetMaxAngularSpeed(max_speed); }
 
+	@Override
+	public int getBodyCount()
+	{ return nb; }
+	@Override
+	public int getBodies(DBody[] bodies)
+	{ return dWorldGetBodies(bodies); }
+	@Override
+	public int getBodyStates(DoubleBuffer states)
+	{ return dWorldGetBodyStates(states); }
+	@Override
+	public int getBodyStates(double[] states, int offset)
+	{ return dWorldGetBodyStates(states, offset); }
+	@Override
+	public void getBodyStates(DBody[] bodies, DoubleBuffer states)
+	{ dWorldGetBodyStates(bodies, states); }
+	@Override
+	public void setBodyStates(DoubleBuffer states)
+	{ dWorldSetBodyStates(states); }
+	@Override
+	public void setBodyStates(double[] states, int offset)
+	{ dWorldSetBodyStates(states, offset); }
+	@Override
+	public void setBodyStates(DBody[] bodies, DoubleBuffer states)
+	{ dWorldSetBodyStates(bodies, states); }
+	@Override
+	public void setDirtyBodyTracking(boolean enabled)
+	{ dWorldSetDirtyBodyTracking(enabled); }
+	@Override
+	public boolean getDirtyBodyTracking()
+	{ return dirty_bodies != null; }
+	@Override
+	public void setDirtyBodyThreshold(double distance, double angle)
+	{ dWorldSetDirtyBodyThreshold(distance, angle); }
+	@Override
+	public int getDirtyBodyCount()
+	{ return dirty_bodies != null ? dirty_bodies.size() : 0; }
+	@Override
+	public int drainDirtyBodies(DBody[] bodies, DoubleBuffer states)
+	{ return dWorldDrainDirtyBodies(bodies, states); }
+
 	@Override
 	public void setContactSurfaceLayer(double depth)
 	{ dWorldSetContactSurfaceLayer (depth); }
@@ -1308,14 +1648,12 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 
 	@Override
-	@Deprecated
 	public void setStepIslandsProcessingMaxThreadCount(int count) {
 		dWorldSetStepIslandsProcessingMaxThreadCount(count);
 	}
 
 
 	@Override
-	@Deprecated
 	public int getStepIslandsProcessingMaxThreadCount() {
 		return dWorldGetStepIslandsProcessingMaxThreadCount();
 	}
@@ -1330,7 +1668,6 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 
 	@Override
-	@Deprecated
 	public void setStepThreadingImplementation(
 			DThreadingFunctionsInfo functions_info,
 			DThreadingImplementation threading_impl) {
@@ -1338,6 +1675,21 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 				(DxThreadingFunctionsInfo) functions_info, 
 				threading_impl);
 	}
+
+	@Override
+	public void setStepExecutor(Executor executor, int threadCount) {
+		dWorldSetStepExecutor(executor, threadCount);
+	}
+
+	@Override
+	public void setZeroGarbageStepping(boolean enabled) {
+		dWorldSetZeroGarbageStepping(enabled);
+	}
+
+	@Override
+	public boolean isZeroGarbageStepping() {
+		return dWorldGetZeroGarbageStepping();
+	}
 	
 	
 	//Moved from DWorld (TZ)
@@ -0,0 +1,174 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+/**
+ * Min/max pyramid over the cells of a finite heightfield.
+ * <p>
+ * Level 0 holds the height range of blocks of <code>BLOCK x BLOCK</code>
+ * cells, including the samples on their borders. Each further level merges
+ * 2x2 blocks of the level below, up to a single block for the whole
+ * heightfield. Block (bx, bz) of level l covers the cells
+ * <code>[bx, bx + 1) * (BLOCK &lt;&lt; l)</code> along x and the same along z.
+ * <p>
+ * The bounds are stored as floats rounded outwards, so they are
+ * conservative for the heights returned by
+ * {@link DxHeightfieldData#GetHeight(int, int)}.
+ */
+final class HeightfieldPyramid {
+
+	static final int BLOCK_SHIFT = 3;
+	static final int BLOCK = 1 << BLOCK_SHIFT;
+
+	private final int m_nCellsX;
+	private final int m_nCellsZ;
+	private final int[] m_width;
+	private final int[] m_depth;
+	private final float[][] m_min;
+	private final float[][] m_max;
+
+	HeightfieldPyramid(DxHeightfieldData d)
+	{
+		m_nCellsX = d.m_nWidthSamples - 1;
+		m_nCellsZ = d.m_nDepthSamples - 1;
+		int bw = (m_nCellsX + BLOCK - 1) >> BLOCK_SHIFT;
+		int bd = (m_nCellsZ + BLOCK - 1) >> BLOCK_SHIFT;
+		int levels = 1;
+		for (int w = bw, z = bd; w > 1 || z > 1; w = (w + 1) / 2, z = (z + 1) / 2) {
+			levels++;
+		}
+		m_width = new int[levels];
+		m_depth = new int[levels];
+		m_min = new float[levels][];
+		m_max = new float[levels][];
+
+		// level 0 from the samples
+		float[] min = new float[bw * bd];
+		float[] max = new float[bw * bd];
+		for (int bz = 0; bz < bd; bz++) {
+			final int z0 = bz << BLOCK_SHIFT;
+			final int z1 = Math.min(z0 + BLOCK, m_nCellsZ);
+			for (int bx = 0; bx < bw; bx++) {
+				final int x0 = bx << BLOCK_SHIFT;
+				final int x1 = Math.min(x0 + BLOCK, m_nCellsX);
+				double lo = Double.POSITIVE_INFINITY;
+				double hi = Double.NEGATIVE_INFINITY;
+				for (int z = z0; z <= z1; z++) {
+					for (int x = x0; x <= x1; x++) {
+						final double h = d.GetHeight(x, z);
+						if (h < lo) lo = h;
+						if (h > hi) hi = h;
+					}
+				}
+				min[bx + bz * bw] = roundDown(lo);
+				max[bx + bz * bw] = roundUp(hi);
+			}
+		}
+		m_width[0] = bw;
+		m_depth[0] = bd;
+		m_min[0] = min;
+		m_max[0] = max;
+
+		// merge 2x2 blocks
+		for (int level = 1; level < levels; level++) {
+			final int cw = bw, cd = bd;
+			final float[] cmin = min, cmax = max;
+			bw = (cw + 1) / 2;
+			bd = (cd + 1) / 2;
+			min = new float[bw * bd];
+			max = new float[bw * bd];
+			for (int bz = 0; bz < bd; bz++) {
+				for (int bx = 0; bx < bw; bx++) {
+					float lo = Float.POSITIVE_INFINITY;
+					float hi = Float.NEGATIVE_INFINITY;
+					for (int z = 2 * bz; z < Math.min(2 * bz + 2, cd); z++) {
+						for (int x = 2 * bx; x < Math.min(2 * bx + 2, cw); x++) {
+							lo = Math.min(lo, cmin[x + z * cw]);
+							hi = Math.max(hi, cmax[x + z * cw]);
+						}
+					}
+					min[bx + bz * bw] = lo;
+					max[bx + bz * bw] = hi;
+				}
+			}
+			m_width[level] = bw;
+			m_depth[level] = bd;
+			m_min[level] = min;
+			m_max[level] = max;
+		}
+	}
+
+	private static float roundDown(double v)
+	{
+		float f = (float) v;
+		return f > v ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+	}
+
+	private static float roundUp(double v)
+	{
+		float f = (float) v;
+		return f < v ? Math.nextUp(f) : f;
+	}
+
+	/** @return number of levels, the last one has a single block */
+	int getLevelCount()
+	{
+		return m_width.length;
+	}
+
+	/** @return number of blocks along x on the given level */
+	int getWidth(int level)
+	{
+		return m_width[level];
+	}
+
+	/** @return number of blocks along z on the given level */
+	int getDepth(int level)
+	{
+		return m_depth[level];
+	}
+
+	/** @return number of cells along x */
+	int getCellsX()
+	{
+		return m_nCellsX;
+	}
+
+	/** @return number of cells along z */
+	int getCellsZ()
+	{
+		return m_nCellsZ;
+	}
+
+	/** @return lower bound of the heights of block (bx, bz) */
+	float getMin(int level, int bx, int bz)
+	{
+		return m_min[level][bx + bz * m_width[level]];
+	}
+
+	/** @return upper bound of the heights of block (bx, bz) */
+	float getMax(int level, int bx, int bz)
+	{
+		return m_max[level][bx + bz * m_width[level]];
+	}
+}
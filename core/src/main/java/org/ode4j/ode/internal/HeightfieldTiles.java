@@ -0,0 +1,268 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
+
+/**
+ * Heightfield samples in a tiled file, mapped into memory tile by tile.
+ * <p>
+ * File layout (big endian): a header of <code>HEADER_SIZE</code> bytes
+ * <pre>
+ * int   MAGIC
+ * int   VERSION
+ * int   widthSamples
+ * int   depthSamples
+ * int   tileSize       (power of two, at most MAX_TILE_SIZE)
+ * int   reserved
+ * float minHeight      (of all samples)
+ * float maxHeight
+ * </pre>
+ * followed by the tiles in rows along x, each one <code>tileSize * tileSize</code>
+ * floats in rows along x. Tiles on the far borders are padded.
+ * <p>
+ * At most <code>maxTiles</code> tiles are mapped at a time. The least 
+ * recently used ones are dropped with the clock algorithm: each access 
+ * marks a tile as referenced, eviction skips and clears referenced tiles.
+ * Hits don't lock, loading and eviction are synchronized. The memory of a 
+ * dropped tile is released when its buffer is garbage collected.
+ */
+final class HeightfieldTiles {
+
+	static final int MAGIC = 0x4f444854; // "ODHT"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	/** Largest tile side, the bytes of a tile must fit into an int. */
+	static final int MAX_TILE_SIZE = 1 << 14;
+
+	private final RandomAccessFile m_file;
+	private final FileChannel m_channel;
+
+	private final int m_nWidthSamples;
+	private final int m_nDepthSamples;
+	private final int m_nTileShift;
+	private final int m_nTileMask;
+	private final int m_nTilesX;
+	private final float m_fMinHeight;
+	private final float m_fMaxHeight;
+
+	private final AtomicReferenceArray<FloatBuffer> m_tiles;
+	// clock reference bits, racy writes only delay an eviction
+	private final boolean[] m_referenced;
+	// mapped tile indices, in clock order
+	private final int[] m_clock;
+	private int m_nLoaded;
+	private int m_nHand;
+
+	HeightfieldTiles(File file, int maxTiles) throws IOException
+	{
+		if (maxTiles < 1)
+			throw new IllegalArgumentException("maxTiles = " + maxTiles);
+		m_file = new RandomAccessFile(file, "r");
+		try {
+			m_channel = m_file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining())
+			{
+				if (m_channel.read(header, header.position()) < 0)
+					throw new IOException("Truncated heightfield tile file: " + file);
+			}
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException("Not a heightfield tile file: " + file);
+			m_nWidthSamples = header.getInt();
+			m_nDepthSamples = header.getInt();
+			final int tileSize = header.getInt();
+			header.getInt();
+			m_fMinHeight = header.getFloat();
+			m_fMaxHeight = header.getFloat();
+			if (m_nWidthSamples < 2 || m_nDepthSamples < 2 
+					|| tileSize < 1 || Integer.bitCount(tileSize) != 1 || tileSize > MAX_TILE_SIZE)
+				throw new IOException("Invalid heightfield tile file header: " + file);
+			m_nTileShift = Integer.numberOfTrailingZeros(tileSize);
+			m_nTileMask = tileSize - 1;
+			m_nTilesX = ((m_nWidthSamples - 1) >> m_nTileShift) + 1;
+			final long numTiles = (long) m_nTilesX * (((m_nDepthSamples - 1) >> m_nTileShift) + 1);
+			if (numTiles > Integer.MAX_VALUE)
+				throw new IOException("Too many tiles: " + file);
+			if (m_channel.size() < HEADER_SIZE + numTiles * getTileBytes())
+				throw new IOException("Truncated heightfield tile file: " + file);
+			m_tiles = new AtomicReferenceArray<FloatBuffer>((int) numTiles);
+			m_referenced = new boolean[(int) numTiles];
+			m_clock = new int[(int) Math.min(maxTiles, numTiles)];
+		} catch (IOException e) {
+			m_file.close();
+			throw e;
+		} catch (RuntimeException e) {
+			m_file.close();
+			throw e;
+		}
+	}
+
+	private long getTileBytes()
+	{
+		return 4L << (2 * m_nTileShift);
+	}
+
+	int getWidthSamples()
+	{
+		return m_nWidthSamples;
+	}
+
+	int getDepthSamples()
+	{
+		return m_nDepthSamples;
+	}
+
+	float getMinHeight()
+	{
+		return m_fMinHeight;
+	}
+
+	float getMaxHeight()
+	{
+		return m_fMaxHeight;
+	}
+
+	/** @return raw sample (x, z), both in range */
+	float getHeight(final int x, final int z)
+	{
+		final int index = (x >> m_nTileShift) + (z >> m_nTileShift) * m_nTilesX;
+		FloatBuffer tile = m_tiles.get(index);
+		if (tile == null)
+			tile = load(index);
+		m_referenced[index] = true;
+		return tile.get((x & m_nTileMask) + ((z & m_nTileMask) << m_nTileShift));
+	}
+
+	private synchronized FloatBuffer load(final int index)
+	{
+		FloatBuffer tile = m_tiles.get(index);
+		if (tile != null)
+			return tile;
+
+		final int slot;
+		if (m_nLoaded < m_clock.length)
+		{
+			slot = m_nLoaded++;
+		}
+		else
+		{
+			while (m_referenced[m_clock[m_nHand]])
+			{
+				m_referenced[m_clock[m_nHand]] = false;
+				m_nHand = (m_nHand + 1) % m_clock.length;
+			}
+			slot = m_nHand;
+			m_tiles.set(m_clock[slot], null);
+			m_nHand = (m_nHand + 1) % m_clock.length;
+		}
+
+		try {
+			tile = m_channel.map(FileChannel.MapMode.READ_ONLY, 
+					HEADER_SIZE + index * getTileBytes(), getTileBytes()).asFloatBuffer();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot map heightfield tile " + index, e);
+		}
+		m_clock[slot] = index;
+		m_referenced[index] = false;
+		m_tiles.set(index, tile);
+		return tile;
+	}
+
+	/**
+	 * Closes the file. Tiles that are still mapped stay readable.
+	 */
+	void close()
+	{
+		try {
+			m_file.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes a tiled heightfield file. Samples are requested tile by tile.
+	 */
+	static void write(File file, DHeightfieldGetHeight heights, Object userData, 
+			int widthSamples, int depthSamples, int tileSize) throws IOException
+	{
+		if (widthSamples < 2 || depthSamples < 2)
+			throw new IllegalArgumentException("Need at least 2 samples per side");
+		if (tileSize < 1 || Integer.bitCount(tileSize) != 1 || tileSize > MAX_TILE_SIZE)
+			throw new IllegalArgumentException("tileSize must be a power of two up to " + MAX_TILE_SIZE + ": " + tileSize);
+		final int tilesX = (widthSamples + tileSize - 1) / tileSize;
+		final int tilesZ = (depthSamples + tileSize - 1) / tileSize;
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = out.getChannel();
+			channel.truncate(0);
+			ByteBuffer buf = ByteBuffer.allocate(tileSize * tileSize * 4);
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			long pos = HEADER_SIZE;
+			for (int tz = 0; tz < tilesZ; tz++)
+			{
+				for (int tx = 0; tx < tilesX; tx++)
+				{
+					buf.clear();
+					for (int z = tz * tileSize; z < (tz + 1) * tileSize; z++)
+					{
+						for (int x = tx * tileSize; x < (tx + 1) * tileSize; x++)
+						{
+							float h = 0;
+							if (x < widthSamples && z < depthSamples)
+							{
+								h = (float) heights.call(userData, x, z);
+								min = Math.min(min, h);
+								max = Math.max(max, h);
+							}
+							buf.putFloat(h);
+						}
+					}
+					buf.flip();
+					while (buf.hasRemaining())
+						pos += channel.write(buf, pos);
+				}
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(widthSamples).putInt(depthSamples)
+				.putInt(tileSize).putInt(0).putFloat(min).putFloat(max);
+			header.flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -34,7 +34,6 @@ import org.ode4j.math.DMatrix3C;
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 
 public class Matrix extends FastDot {
 
@@ -807,24 +806,32 @@ public class Matrix extends FastDot {
 	 * d has size n. d contains the reciprocal diagonal elements of D. - a has
 	 * size n. the result is written into L, except that the left column of L
 	 * and d[0] are not actually modified. see ldltaddTL.m for further comments.
+	 * - tmpbuf, if not null, has at least 2*nskip elements.
 	 */
 	public static void dLDLTAddTL(double[] L, int lOfs, double[] d, int dOfs,
 			final double[] a, int n, int nskip, double[] tmpbuf) {
+		dLDLTAddTL(L, lOfs, d, dOfs, a, 0, n, nskip, tmpbuf);
+	}
+
+	private static void dLDLTAddTL(double[] L, int lOfs, double[] d, int dOfs,
+			final double[] a, int aOfs, int n, int nskip, double[] tmpbuf) {
 		// dAASSERT (L, d, a);
 		dAASSERT(n > 0 && nskip >= n);
 
 		if (n < 2)
 			return;
-		DxWorldProcessMemArena.dummyStatic();
-		double[] W1 = new double[n]; // (double*) ALLOCA (n*sizeof(double));
-		double[] W2 = new double[n]; // (double*) ALLOCA (n*sizeof(double));
+		// dReal *W1 = tmpbuf ? (dReal *)tmpbuf : (dReal*)ALLOCA ((size_t)nskip * (2 * sizeof(dReal)));
+		// dReal *W2 = W1 + nskip;
+		final double[] W1 = tmpbuf != null ? tmpbuf : new double[2 * nskip];
+		final double[] W2 = W1;
+		final int w2 = nskip;
 
 		W1[0] = 0;
-		W2[0] = 0;
+		W2[w2] = 0;
 		for (int j = 1; j < n; j++)
-			W1[j] = W2[j] = (a[j] * M_SQRT1_2);
-		double W11 = ((0.5 * a[0] + 1) * M_SQRT1_2);
-		double W21 = ((0.5 * a[0] - 1) * M_SQRT1_2);
+			W1[j] = W2[w2+j] = (a[aOfs+j] * M_SQRT1_2);
+		double W11 = ((0.5 * a[aOfs] + 1) * M_SQRT1_2);
+		double W21 = ((0.5 * a[aOfs] - 1) * M_SQRT1_2);
 
 		double alpha1 = 1;
 		double alpha2 = 1;
@@ -848,14 +855,14 @@ public class Matrix extends FastDot {
 		        double Wp = W1[p];
 		        double ell = L[ll];//Ofs + p * nskip];
 		        W1[p] = Wp - W11 * ell;
-		        W2[p] = k1 * Wp + k2 * ell;
+		        W2[w2+p] = k1 * Wp + k2 * ell;
 		    }
 		}
 
 		int ll = lOfs + nskip + 1;
 		for (int j = 1; j < n; ll+=nskip+1, j++) {
             double k1 = W1[j];
-            double k2 = W2[j];
+            double k2 = W2[w2+j];
 			double dee = d[dOfs + j];
 			double alphanew = alpha1 + (k1*k1) * dee;
 			//dIASSERT(alphanew != dReal(0.0));
@@ -877,9 +884,9 @@ public class Matrix extends FastDot {
 				double Wp = W1[p] - k1 * ell;
 				ell += gamma1 * Wp;
 				W1[p] = Wp;
-				Wp = W2[p] - k2 * ell;
+				Wp = W2[w2+p] - k2 * ell;
 				ell -= gamma2 * Wp;
-				W2[p] = Wp;
+				W2[w2+p] = Wp;
 				//L[lOfs + p * nskip + j] = ell;
 				L[l] = ell;
 			}
@@ -920,7 +927,7 @@ public class Matrix extends FastDot {
 	// void dLDLTRemove (double [][]A, final int []p, double []L, double []d,
 	// int n1, int n2, int r, int nskip)
 	public static void dLDLTRemove(double[] A, final int[] p, double[] L,
-			double[] d, int n1, int n2, int r, int nskip, BlockPointer tmpbuf) {
+			double[] d, int n1, int n2, int r, int nskip, double[] tmpbuf) {
 		// dAASSERT(A, p, L, d);
 		dAASSERT(n1 > 0 && n2 > 0 && r >= 0 && r < n2 && n1 >= n2
 				&& nskip >= n1);
@@ -932,39 +939,40 @@ public class Matrix extends FastDot {
 		if (r == n2 - 1) {
 			return; // deleting last row/col is easy
 		} else {
-		DxWorldProcessMemArena.dummyStatic();
-//		    int LDLTAddTL_size = _dEstimateLDLTAddTLTmpbufSize(nskip);
-//		    dIASSERT(LDLTAddTL_size % 8 /*sizeof(dReal)*/ == 0);
-//		    double[] tmp = tmpbuf!=null ? tmpbuf : new double[LDLTAddTL_size + n2];
+		    // the first LDLTAddTL_size elements are passed on to dLDLTAddTL()
+		    final int LDLTAddTL_size = 2 * nskip;
+		    double[] tmp = tmpbuf!=null ? tmpbuf : new double[LDLTAddTL_size + n2];
 		    if (r == 0) {
-		        double[] a = new double[n2]; // TZ (double*) ALLOCA (n2 *
-		        // sizeof(double));
+		        double[] a = tmp; // dReal *a = (dReal *)((char *)tmp + LDLTAddTL_size);
+		        final int aP = LDLTAddTL_size;
 		        final int p_0 = p[0];
 		        for (int i = 0; i < n2; i++)
-		            a[i] = -GETA(A, p[i], p_0, nskip);
-		        a[0] += 1.0;
-		        dLDLTAddTL(L, d, a, n2, nskip);
+		            a[aP+i] = -GETA(A, p[i], p_0, nskip);
+		        a[aP] += 1.0;
+		        dLDLTAddTL(L, 0, d, 0, a, aP, n2, nskip, tmp);
 		    } else {
-		        double[] t = new double[r]; // TZ (double*) ALLOCA (r * sizeof(double));
+		        double[] t = tmp; // dReal *t = (dReal *)((char *)tmp + LDLTAddTL_size);
+		        final int tP = LDLTAddTL_size;
 		        {
 		            int Lcurr = r*nskip;
 		            for (int i=0; i<r; ++Lcurr, ++i) {
 		                dIASSERT(d[i] != 0.0);
-		                t[i] = L[Lcurr] / d[i];
+		                t[tP+i] = L[Lcurr] / d[i];
 		            }
 		        }
-		        double[] a = new double[n2 - r]; //dReal *a = t + r;
+		        double[] a = tmp; //dReal *a = t + r;
+		        final int aP = tP + r;
 		        {
 		            int Lcurr = r*nskip;//dReal *Lcurr = L + r*nskip;
 		            //const int *pp_r = p + r, p_r = *pp_r;
 		            int pp_rP = r, p_rP = r; 
 		            final int n2_minus_r = n2-r;
 		            for (int i=0; i<n2_minus_r; Lcurr+=nskip,++i) {
-		                a[i] = dDot(L, Lcurr,t, 0,r) - GETA(A, p[pp_rP+i],p[p_rP], nskip);
+		                a[aP+i] = dDot(L, Lcurr,t, tP,r) - GETA(A, p[pp_rP+i],p[p_rP], nskip);
 		            }
 		        }
-		        a[0] += (1.0);
-		        dLDLTAddTL (L,r*nskip+r, d,r, a, n2-r, nskip, null);
+		        a[aP] += (1.0);
+		        dLDLTAddTL (L,r*nskip+r, d,r, a, aP, n2-r, nskip, tmp);
 		    }
 		}
 //		        double[] a = new double[n2 - r]; // TZ (double*) ALLOCA ((n2-r) * sizeof(double));
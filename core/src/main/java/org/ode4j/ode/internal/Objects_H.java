@@ -28,6 +28,7 @@ import org.ode4j.math.DMatrix3;
 import org.ode4j.math.DMatrix3C;
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DWorld.QuickStepSolver;
 import org.ode4j.ode.threading.DThreadingImplementation;
 import org.ode4j.ode.threading.Threading_H.DThreadingFunctionsInfo;
 
@@ -109,6 +110,12 @@ public class Objects_H {
 	public static class dxQuickStepParameters extends CloneableParameter {
 		public int num_iterations;		// number of SOR iterations to perform
 		public double w;			// the SOR over-relaxation parameter
+		public double warm_start_factor;	// scale of the previous lambda, 0 disables warm starting
+		public double warm_start_tolerance;	// max. distance of matching contacts in the contact cache
+		public double tolerance;		// relative lambda change for an early exit, 0 runs all iterations
+		public int tolerance_check_interval;	// number of iterations between convergence checks
+		public int parallel_threshold;	// min. number of rows of an island for the parallel SOR, 0 disables it
+		public QuickStepSolver solver;	// the iterative method
 		@Override
 		protected dxQuickStepParameters clone() {
 			return cloneThis();
@@ -118,6 +125,12 @@ public class Objects_H {
 	    dxQuickStepParameters() {
 	    	num_iterations = 20;
 	    	w = 1.3;
+	    	warm_start_factor = 0;
+	    	warm_start_tolerance = 0.05;
+	    	tolerance = 0;
+	    	tolerance_check_interval = 4;
+	    	parallel_threshold = 0;
+	    	solver = QuickStepSolver.SOR;
 	    }
 	}
 
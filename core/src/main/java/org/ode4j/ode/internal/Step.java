@@ -52,14 +52,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.ode4j.math.DMatrix3;
 import org.ode4j.math.DVector3;
 import org.ode4j.ode.DJoint.DJointFeedback;
+import org.ode4j.ode.DWorld.StepFactorization;
 import org.ode4j.ode.internal.cpp4j.FILE;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.joints.DxJointNode;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext;
+import org.ode4j.ode.internal.processmem.DxUtil;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dmaxcallcountestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper_fn_t;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.internal.processmem.DxWorldProcessIslandsInfo.dmemestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
 import org.ode4j.ode.threading.Threading_H.CallContext;
@@ -76,7 +77,7 @@ dmaxcallcountestimate_fn_t {
 	//#define dMAX(A,B)  ((B)>(A) ? (B) : (A))
 	//TX: not used
 	//private static final int dMIN(int A, int B) { return ((A)>(B) ? (B) : (A)); }
-	private static final int dMAX(int A, int B) { return ((B)>(A) ? (B) : (A)); }
+	//private static final int dMAX(int A, int B) { return ((B)>(A) ? (B) : (A)); }
 
 
 	//****************************************************************************
@@ -124,47 +125,63 @@ dmaxcallcountestimate_fn_t {
 
 	private static class dxStepperStage1CallContext implements CallContext
 	{
-		dxStepperStage1CallContext(final DxStepperProcessingCallContext stepperCallContext, 
-				BlockPointer stageMemArenaState, double[] invI, 
-				dJointWithInfo1[] jointinfosA, int jointinfosOfs)    {
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
+				int stageMemArenaState, double[] invI, 
+				dJointWithInfo1[] jointinfosA, int jointinfosOfs, 
+				dxStepperObjects objects)    {
 			m_stepperCallContext = stepperCallContext;
 			m_stageMemArenaState = stageMemArenaState; 
 			m_invI = invI;
 			m_jointinfosA = jointinfosA;
 			m_jointinfosOfs = jointinfosOfs;
+			m_objects = objects;
 		}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
-		BlockPointer                    m_stageMemArenaState;
+		DxStepperProcessingCallContext m_stepperCallContext;
+		int                    m_stageMemArenaState;
 		double[]                        m_invI;
 		dJointWithInfo1[]               m_jointinfosA;
 		int				                m_jointinfosOfs;
+		dxStepperObjects                m_objects;
 		final dxStepperStage0Outputs          m_stage0Outputs = new dxStepperStage0Outputs();
 	}
 
 	private static class dxStepperStage0BodiesCallContext implements CallContext
 	{
-		dxStepperStage0BodiesCallContext(final DxStepperProcessingCallContext stepperCallContext, 
-				double[] invI)
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
+				double[] invI, dxStepperInertiaTemporaries[] temporaries)
 				{
 			m_stepperCallContext = stepperCallContext;
 			m_invI = invI; 
-			m_tagsTaken = new AtomicInteger(0);
-			m_gravityTaken = new AtomicInteger(0);
-			//m_inertiaBodyIndex = 0;
+			m_temporaries = temporaries;
+			m_tagsTaken.set(0);
+			m_gravityTaken.set(0);
+			m_inertiaBodyIndex.set(0);
 				}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
+		DxStepperProcessingCallContext m_stepperCallContext;
 		double[]                        m_invI;
-		final AtomicInteger                   m_tagsTaken;
-		final AtomicInteger                   m_gravityTaken;
+		final AtomicInteger                   m_tagsTaken = new AtomicInteger();
+		final AtomicInteger                   m_gravityTaken = new AtomicInteger();
 		//volatile int                    m_inertiaBodyIndex;
 		final AtomicInteger                     m_inertiaBodyIndex = new AtomicInteger();
+		// one set per call instance, Stage0-Bodies is executed by a group of calls
+		dxStepperInertiaTemporaries[]     m_temporaries;
+	}
+
+	private static class dxStepperInertiaTemporaries
+	{
+		final DMatrix3 m_tmp = new DMatrix3();
+		final DMatrix3 m_I = new DMatrix3();
+		final DMatrix3 m_Itild = new DMatrix3();
+		final DMatrix3 m_itInv = new DMatrix3();
+		final DVector3 m_L = new DVector3();
+		final DVector3 m_tau0 = new DVector3();
 	}
 
 	private static class dxStepperStage0JointsCallContext implements CallContext
 	{
-		dxStepperStage0JointsCallContext(final DxStepperProcessingCallContext stepperCallContext, 
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
 				dJointWithInfo1[] jointinfosA, int jointinfosOfs, 
 				dxStepperStage0Outputs stage0Outputs) {
 			m_stepperCallContext = stepperCallContext;
@@ -173,7 +190,7 @@ dmaxcallcountestimate_fn_t {
 			m_stage0Outputs = stage0Outputs;
 		}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
+		DxStepperProcessingCallContext m_stepperCallContext;
 		dJointWithInfo1[]                 m_jointinfosA;
 		int				                  m_jointinfosOfs;
 		dxStepperStage0Outputs            m_stage0Outputs;
@@ -195,7 +212,8 @@ dmaxcallcountestimate_fn_t {
 				int jointinfosOfs,
 				int nj, 
 				int m, int nub, final int[] mindex, int[] findex, 
-				double[] lo, double[] hi, double[] J, double[] A, double[] rhs)
+				double[] lo, double[] hi, double[] J, double[] A, double[] rhs,
+				int[] treeJbody, double[] treeCfm)
 		{
 			m_invI = invI;
 			m_jointinfosA = jointinfosA;
@@ -210,6 +228,8 @@ dmaxcallcountestimate_fn_t {
 			m_J = J;
 			m_A = A;
 			m_rhs = rhs;
+			m_treeJbody = treeJbody;
+			m_treeCfm = treeCfm;
 		}
 
 		double[]                           m_invI;
@@ -225,46 +245,59 @@ dmaxcallcountestimate_fn_t {
 		double[]                           m_J;
 		double[]                           m_A;
 		double[]                           m_rhs;
+		// only for islands solved by TreeSolver, A is null then
+		int[]                              m_treeJbody;
+		double[]                           m_treeCfm;
 	}
 
 	private static class dxStepperStage3CallContext implements CallContext
 	{
 		void Initialize(final DxStepperProcessingCallContext callContext, 
 				final dxStepperLocalContext localContext, 
-				BlockPointer stage1MemArenaState)
+				dxStepperObjects objects, 
+				int stage1MemArenaState)
 		{
 			m_stepperCallContext = callContext;
 			m_localContext = localContext;
+			m_objects = objects;
 			m_stage1MemArenaState = stage1MemArenaState;
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
 		dxStepperLocalContext     m_localContext;
-		BlockPointer                           m_stage1MemArenaState;
+		dxStepperObjects          m_objects;
+		int                           m_stage1MemArenaState;
 	}
 
 	private static class dxStepperStage2CallContext implements CallContext
 	{
 		void Initialize(final DxStepperProcessingCallContext callContext, 
 				final dxStepperLocalContext localContext, 
-				double[] JinvM, double[] rhs_tmp_or_cfm)
+				double[] JinvM, int JinvMP, double[] cfm, double[] rhs_tmp, 
+				DxJoint.Info2Descr[] Jinfos)
 		{
 			m_stepperCallContext = callContext;
 			m_localContext = localContext;
 			m_JinvM = JinvM;
-			m_rhs_tmp_or_cfm = rhs_tmp_or_cfm;
-			//m_ji_J = 0;
-			//m_ji_Ainit = 0;
-			//m_ji_JinvM = 0;
-			//m_ji_Aaddjb = 0;
-			//m_bi_rhs_tmp = 0;
-			//m_ji_rhs.set(0);
+			m_JinvMP = JinvMP;
+			m_cfm = cfm;
+			m_rhs_tmp = rhs_tmp;
+			m_Jinfos = Jinfos;
+			m_ji_J.set(0);
+			m_ji_Ainit.set(0);
+			m_ji_JinvM.set(0);
+			m_ji_Aaddjb.set(0);
+			m_bi_rhs_tmp.set(0);
+			m_ji_rhs.set(0);
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
 		dxStepperLocalContext     m_localContext;
 		double[]                        m_JinvM;
-		double[]                        m_rhs_tmp_or_cfm;
+		int                             m_JinvMP;
+		double[]                        m_cfm;
+		double[]                        m_rhs_tmp;
+		DxJoint.Info2Descr[]            m_Jinfos;
 		//volatile int               m_ji_J;
 		final AtomicInteger               m_ji_J = new AtomicInteger();
 		//volatile int               m_ji_Ainit;
@@ -279,6 +312,79 @@ dmaxcallcountestimate_fn_t {
 		final AtomicInteger              m_ji_rhs = new AtomicInteger();
 	}
 
+	/**
+	 * The call contexts and other objects that C++ allocates from the stepper arena. 
+	 * See DxQuickStep: they are kept with the arena if it is recycling.
+	 */
+	private static class dxStepperObjects
+	{
+		final dxStepperStage1CallContext m_stage1CallContext = new dxStepperStage1CallContext();
+		final dxStepperStage0BodiesCallContext m_stage0BodiesCallContext = new dxStepperStage0BodiesCallContext();
+		final dxStepperStage0JointsCallContext m_stage0JointsCallContext = new dxStepperStage0JointsCallContext();
+		final dxStepperLocalContext m_localContext = new dxStepperLocalContext();
+		final dxStepperStage3CallContext m_stage3CallContext = new dxStepperStage3CallContext();
+		final dxStepperStage2CallContext m_stage2CallContext = new dxStepperStage2CallContext();
+		final Ref<DCallReleasee> m_stage1CallReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee> m_stage3CallReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee> m_stage2bSyncReleasee = new Ref<DCallReleasee>();
+		final Ref<DCallReleasee> m_stage2aSyncReleasee = new Ref<DCallReleasee>();
+		final DxBody.dxStepBodyTemporaries m_stepBodyTemporaries = new DxBody.dxStepBodyTemporaries();
+		final double[] m_data = new double[8];
+		private dJointWithInfo1[] m_jointinfos = new dJointWithInfo1[0];
+		private DxJoint.Info2Descr[] m_Jinfos = new DxJoint.Info2Descr[0];
+		private dxStepperInertiaTemporaries[] m_temporaries = new dxStepperInertiaTemporaries[0];
+
+		dJointWithInfo1[] AllocateJointInfos(int count)
+		{
+			if (m_jointinfos.length < count) {
+				dJointWithInfo1[] jointinfos = new dJointWithInfo1[count];
+				System.arraycopy(m_jointinfos, 0, jointinfos, 0, m_jointinfos.length);
+				for (int i = m_jointinfos.length; i < count; i++) {
+					jointinfos[i] = new dJointWithInfo1();
+				}
+				m_jointinfos = jointinfos;
+			}
+			return m_jointinfos;
+		}
+
+		DxJoint.Info2Descr[] AllocateInfo2Descrs(int count)
+		{
+			if (m_Jinfos.length < count) {
+				DxJoint.Info2Descr[] Jinfos = new DxJoint.Info2Descr[count];
+				System.arraycopy(m_Jinfos, 0, Jinfos, 0, m_Jinfos.length);
+				for (int i = m_Jinfos.length; i < count; i++) {
+					Jinfos[i] = new DxJoint.Info2Descr();
+				}
+				m_Jinfos = Jinfos;
+			}
+			return m_Jinfos;
+		}
+
+		dxStepperInertiaTemporaries[] AllocateInertiaTemporaries(int count)
+		{
+			if (m_temporaries.length < count) {
+				dxStepperInertiaTemporaries[] temporaries = new dxStepperInertiaTemporaries[count];
+				System.arraycopy(m_temporaries, 0, temporaries, 0, m_temporaries.length);
+				for (int i = m_temporaries.length; i < count; i++) {
+					temporaries[i] = new dxStepperInertiaTemporaries();
+				}
+				m_temporaries = temporaries;
+			}
+			return m_temporaries;
+		}
+	}
+
+	private static dxStepperObjects ObtainStepperObjects(DxWorldProcessMemArena memarena)
+	{
+		Object objects = memarena.GetStepperObjects();
+		if (objects instanceof dxStepperObjects) {
+			return (dxStepperObjects) objects;
+		}
+		dxStepperObjects newObjects = new dxStepperObjects();
+		memarena.SetStepperObjects(newObjects);
+		return newObjects;
+	}
+
 	//static int dxStepIsland_Stage2a_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
 	//static int dxStepIsland_Stage2aSync_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
 	//static int dxStepIsland_Stage2b_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
@@ -447,46 +553,41 @@ dmaxcallcountestimate_fn_t {
 		int nb = callContext.m_islandBodiesCount();
 		int _nj = callContext.m_islandJointsCount();
 
-		memarena.dummy();
-		double[] invI = new double[3*4*nb];//memarena.AllocateArray<dReal> (3*4*(size_t)nb);
+		final dxStepperObjects objects = ObtainStepperObjects(memarena);
+
+		double[] invI = memarena.AllocateArrayDReal(3*4*nb);
 		// Reserve twice as much memory and start from the middle so that regardless of 
 		// what direction the array grows to there would be sufficient room available.
 		final int ji_reserve_count = 2 * _nj;
-		memarena.dummy();
-		dJointWithInfo1[] jointinfosA = new dJointWithInfo1[ji_reserve_count];//memarena.AllocateArray<dJointWithInfo1>(ji_reserve_count);
-		//TZ: init
-		for (int i = 0; i < jointinfosA.length; i++) {
-			jointinfosA[i] = new dJointWithInfo1();
-		}
+		dJointWithInfo1[] jointinfosA = objects.AllocateJointInfos(ji_reserve_count);//memarena.AllocateArray<dJointWithInfo1>(ji_reserve_count);
 		int jointinfosOfs = 0;
 
 		final int allowedThreads = callContext.m_stepperAllowedThreads();
 		dIASSERT(allowedThreads != 0);
 
-		BlockPointer stagesMemArenaState = memarena.SaveState();
+		int stagesMemArenaState = memarena.SaveState();
 
 		//dxStepperStage1CallContext stage1CallContext = (dxStepperStage1CallContext *)memarena->AllocateBlock(sizeof(dxStepperStage1CallContext));
 		//new(stage1CallContext) dxStepperStage1CallContext(callContext, stagesMemArenaState, invI, jointinfos);
-		memarena.dummy();
-		final dxStepperStage1CallContext stage1CallContext = new dxStepperStage1CallContext(callContext, 
-				stagesMemArenaState, invI, jointinfosA, jointinfosOfs);
+		final dxStepperStage1CallContext stage1CallContext = objects.m_stage1CallContext;
+		stage1CallContext.Initialize(callContext, 
+				stagesMemArenaState, invI, jointinfosA, jointinfosOfs, objects);
 
 		//dxStepperStage0BodiesCallContext *stage0BodiesCallContext = (dxStepperStage0BodiesCallContext *)memarena->AllocateBlock(sizeof(dxStepperStage0BodiesCallContext));
 		//new(stage0BodiesCallContext) dxStepperStage0BodiesCallContext(callContext, invI);
-		memarena.dummy();
-		final dxStepperStage0BodiesCallContext stage0BodiesCallContext = 
-				new dxStepperStage0BodiesCallContext(callContext, invI);
+		final dxStepperStage0BodiesCallContext stage0BodiesCallContext = objects.m_stage0BodiesCallContext;
+		stage0BodiesCallContext.Initialize(callContext, invI, 
+				objects.AllocateInertiaTemporaries(allowedThreads));
 
 		//dxStepperStage0JointsCallContext *stage0JointsCallContext = (dxStepperStage0JointsCallContext *)memarena->AllocateBlock(sizeof(dxStepperStage0JointsCallContext));
 		//new(stage0JointsCallContext) dxStepperStage0JointsCallContext(callContext, jointinfos, &stage1CallContext->m_stage0Outputs);
-		memarena.dummy();
-		final dxStepperStage0JointsCallContext stage0JointsCallContext = 
-				new dxStepperStage0JointsCallContext(callContext, jointinfosA, jointinfosOfs, 
-						stage1CallContext.m_stage0Outputs);
+		final dxStepperStage0JointsCallContext stage0JointsCallContext = objects.m_stage0JointsCallContext;
+		stage0JointsCallContext.Initialize(callContext, jointinfosA, jointinfosOfs, 
+				stage1CallContext.m_stage0Outputs);
 
 		if (allowedThreads == 1)
 		{
-			dxStepIsland_Stage0_Bodies(stage0BodiesCallContext);
+			dxStepIsland_Stage0_Bodies(stage0BodiesCallContext, 0);
 			dxStepIsland_Stage0_Joints(stage0JointsCallContext);
 			dxStepIsland_Stage1(stage1CallContext);
 		}
@@ -495,7 +596,7 @@ dmaxcallcountestimate_fn_t {
 			int bodyThreads = allowedThreads;
 			int jointThreads = 1;
 
-			Ref<DCallReleasee> stage1CallReleasee = new Ref<DCallReleasee>();
+			Ref<DCallReleasee> stage1CallReleasee = objects.m_stage1CallReleasee;
 			world.threading().PostThreadedCallForUnawareReleasee(null, stage1CallReleasee, 
 					bodyThreads + jointThreads, callContext.m_finalReleasee(), 
 					null, dxStepIsland_Stage1_Callback, stage1CallContext, 0, 
@@ -542,10 +643,9 @@ dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _callContext, 
 				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
 		{
-			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxStepperStage0BodiesCallContext callContext = (dxStepperStage0BodiesCallContext )_callContext;
-			dxStepIsland_Stage0_Bodies(callContext);
+			dxStepIsland_Stage0_Bodies(callContext, callInstanceIndex);
 			return true;
 		}
 	};
@@ -553,7 +653,8 @@ dmaxcallcountestimate_fn_t {
 	private
 	static 
 	//void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext *callContext)
-	void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext callContext)
+	void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext callContext, 
+			int callInstanceIndex)
 	{
 		DxBody[] bodyA = callContext.m_stepperCallContext.m_islandBodiesStartA();
 		final int bOfs = callContext.m_stepperCallContext.m_islandBodiesStartOfs();
@@ -610,10 +711,11 @@ dmaxcallcountestimate_fn_t {
 			int invIrowO = 0;
 			double[] invIrowA = callContext.m_invI;
 			int bodyIndex = ThrsafeIncrementIntUpToLimit(callContext.m_inertiaBodyIndex, nb);
+			dxStepperInertiaTemporaries temporaries = callContext.m_temporaries[callInstanceIndex];
 
 			for (int i = 0; i != nb; invIrowO += 12, ++i) {
 				if (i == bodyIndex) {
-					DMatrix3 tmp = new DMatrix3();
+					DMatrix3 tmp = temporaries.m_tmp;
 					DxBody b = bodyA[i+bOfs];
 
 					// compute inverse inertia tensor in global frame
@@ -624,7 +726,7 @@ dmaxcallcountestimate_fn_t {
 					// if not flagged or the body is kinematic
 					//if ((b.flags & DxBody.dxBodyGyroscopic)&& (b.invMass>0)) {
 					if (b.isFlagsGyroscopic() && (b.invMass>0)) {
-						DMatrix3 I = new DMatrix3();
+						DMatrix3 I = temporaries.m_I;
 						// compute inertia tensor in global frame
 						dMultiply2_333 (tmp,b.mass._I,b.posr().R());
 						dMultiply0_333 (I,b.posr().R(),tmp);
@@ -638,7 +740,7 @@ dmaxcallcountestimate_fn_t {
 						//"Stabilizing Gyroscopic Forces in Rigid Multibody Simulations"
 						// (LacoursiÃ¨re 2006)
 						double h = callContext.m_stepperCallContext.m_stepSize(); // Step size
-						DVector3 L = new DVector3(); // Compute angular momentum
+						DVector3 L = temporaries.m_L; // Compute angular momentum
 						dMultiply0_331(L,I,b.avel);
 
 						// Compute a new effective 'inertia tensor'
@@ -648,7 +750,8 @@ dmaxcallcountestimate_fn_t {
 						// Itild may not be symmetric pos-definite, 
 						// but we can still use it to compute implicit
 						// gyroscopic torques.
-						DMatrix3 Itild=new DMatrix3();//{0};  
+						DMatrix3 Itild = temporaries.m_Itild;//{0};  
+						Itild.setZero();
 						dSetCrossMatrixMinus(Itild,L);//,4);
 						//for (int ii=0;ii<12;++ii) {
 						//	Itild[ii]=Itild[ii]*h+I[ii];
@@ -660,7 +763,7 @@ dmaxcallcountestimate_fn_t {
 						// a sort of "torque"
 						L.scale(dRecip(h));//dScaleVector3(L,dRecip(h));
 						// Invert the pseudo-tensor
-						DMatrix3 itInv = new DMatrix3();
+						DMatrix3 itInv = temporaries.m_itInv;
 						// This is a closed-form inversion.
 						// It's probably not numerically stable
 						// when dealing with small masses with
@@ -682,7 +785,7 @@ dmaxcallcountestimate_fn_t {
 							// to the old inertia matrix as explicit
 							// torques with a semi-implicit update
 							// step.
-							DVector3 tau0 = new DVector3();
+							DVector3 tau0 = temporaries.m_tau0;
 							dMultiply0_331(tau0,Itild,L);
 
 							// Add the gyro torques to the torque 
@@ -939,6 +1042,7 @@ dmaxcallcountestimate_fn_t {
 		dJointWithInfo1[] _jointinfosA = stage1CallContext.m_jointinfosA;
 		int _jointinfosOfs = stage1CallContext.m_jointinfosOfs;
 		double[] invI = stage1CallContext.m_invI;
+		final dxStepperObjects objects = stage1CallContext.m_objects;
 		int ji_start = stage1CallContext.m_stage0Outputs.ji_start;
 		int ji_end = stage1CallContext.m_stage0Outputs.ji_end;
 		int m = stage1CallContext.m_stage0Outputs.m;
@@ -965,12 +1069,13 @@ dmaxcallcountestimate_fn_t {
 		int[] mindex = null;
 		double[] lo = null, hi = null, J = null, A = null, rhs = null;
 		int[] findex = null;
+		int[] treeJbody = null;
+		double[] treeCfm = null;
 
 		// if there are constraints, compute cforce
 		if (m > 0) {
 			//mindex = memarena->AllocateArray<unsigned int>((size_t)(nj + 1));
-			memarena.dummy();
-			mindex = new int[nj + 1];
+			mindex = memarena.AllocateArrayInt(nj + 1);
 			{
 				//unsigned int *mcurr = mindex;
 				int[] mcurrA = mindex;
@@ -1002,72 +1107,80 @@ dmaxcallcountestimate_fn_t {
 			//	        J = memarena->AllocateArray<dReal>(2 * 8 * (size_t)m);
 			//	        A = memarena->AllocateArray<dReal>(m * (size_t)dPAD(m));
 			//	        rhs = memarena->AllocateArray<dReal>(m);
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			findex = new int[m];
-			lo = new double[m];
-			hi = new double[m];
-			J = new double[2 * 8 * m];
-			A = new double[m * dPAD(m)];
-			rhs = new double[m];
+			findex = memarena.AllocateArrayInt(m);
+			lo = memarena.AllocateArrayDReal(m);
+			hi = memarena.AllocateArrayDReal(m);
+			J = memarena.AllocateArrayDReal(2 * 8 * m);
+			rhs = memarena.AllocateArrayDReal(m);
+
+			// islands of only unbounded joints without loops can be solved 
+			// without A
+			if (world.getStepFactorization() == StepFactorization.TREE && nub == nj) {
+				treeJbody = memarena.AllocateArrayInt(2 * nj);
+				if (IsTreeIsland(callContext, jointinfosA, jiP, nj, treeJbody, 
+						memarena.AllocateArrayInt(callContext.m_islandBodiesCount()))) {
+					treeCfm = memarena.AllocateArrayDReal(m);
+				} else {
+					treeJbody = null;
+				}
+			}
+			if (treeJbody == null) {
+				A = memarena.AllocateArrayDReal(m * dPAD(m));
+			}
 		}
 
 		//dxStepperLocalContext *localContext = (dxStepperLocalContext *)memarena->AllocateBlock(sizeof(dxStepperLocalContext));
-		memarena.dummy();
-		dxStepperLocalContext localContext = new dxStepperLocalContext();
-		localContext.Initialize(invI, jointinfosA, jiP, nj, m, nub, mindex, findex, lo, hi, J, A, rhs);
+		dxStepperLocalContext localContext = objects.m_localContext;
+		localContext.Initialize(invI, jointinfosA, jiP, nj, m, nub, mindex, findex, lo, hi, J, A, rhs,
+				treeJbody, treeCfm);
 
-		BlockPointer stage1MemarenaState = memarena.SaveState();
+		int stage1MemarenaState = memarena.SaveState();
 		//dxStepperStage3CallContext *stage3CallContext = (dxStepperStage3CallContext*)memarena->AllocateBlock(sizeof(dxStepperStage3CallContext));
-		memarena.dummy();
-		dxStepperStage3CallContext stage3CallContext = new dxStepperStage3CallContext();
-		stage3CallContext.Initialize(callContext, localContext, stage1MemarenaState);
+		dxStepperStage3CallContext stage3CallContext = objects.m_stage3CallContext;
+		stage3CallContext.Initialize(callContext, localContext, objects, stage1MemarenaState);
 
 		if (m > 0) {
 			// create a constraint equation right hand side vector `c', a constraint
 			// force mixing vector `cfm', and LCP low and high bound vectors, and an
 			// 'findex' vector.
 			//double[] JinvM = memarena->AllocateArray<dReal>(2 * 8 * (size_t)m);
-			memarena.dummy();
-			double[] JinvM = new double[2 * 8 * m];
+			double[] JinvM = memarena.AllocateSlabDReal(2 * 8 * m);
+			final int JinvMP = memarena.SlabOffset();
 			final int nb = callContext.m_islandBodiesCount();
-			int cfm_elem = m, rhs_tmp_elem = nb*8;
 			//dReal *cfm = memarena->AllocateArray<dReal>(dMAX(cfm_elem, rhs_tmp_elem));
-			memarena.dummy();
-			double[] cfm = new double[dMAX(cfm_elem, rhs_tmp_elem)];
+			double[] cfm = memarena.AllocateArrayDReal(m);
 			// dReal *rhs_tmp = cfm; // Reuse the same memory since rhs calculations start after cfm is not needed anymore
+			// Not shared here: with several threads, rhs_tmp is written in Stage2b 
+			// while other threads still read cfm for A and the TreeSolver.
+			double[] rhs_tmp = memarena.AllocateArrayDReal(nb * 8);
 
 			//dxStepperStage2CallContext *stage2CallContext = (dxStepperStage2CallContext *)memarena->AllocateBlock(sizeof(dxStepperStage2CallContext));
-			memarena.dummy();
-			dxStepperStage2CallContext stage2CallContext = new dxStepperStage2CallContext();
-			stage2CallContext.Initialize(callContext, localContext, JinvM, cfm);
-
 			int allowedThreads = callContext.m_stepperAllowedThreads();
 			dIASSERT(allowedThreads != 0);
 
+			dxStepperStage2CallContext stage2CallContext = objects.m_stage2CallContext;
+			stage2CallContext.Initialize(callContext, localContext, JinvM, JinvMP, cfm, rhs_tmp, 
+					objects.AllocateInfo2Descrs(allowedThreads));
+
 			if (allowedThreads == 1)
 			{
-				dxStepIsland_Stage2a(stage2CallContext);
+				dxStepIsland_Stage2a(stage2CallContext, 0);
 				dxStepIsland_Stage2b(stage2CallContext);
 				dxStepIsland_Stage2c(stage2CallContext);
 				dxStepIsland_Stage3(stage3CallContext);
 			}
 			else
 			{
-				Ref<DCallReleasee> stage3CallReleasee = new Ref<DCallReleasee>();
+				Ref<DCallReleasee> stage3CallReleasee = objects.m_stage3CallReleasee;
 				world.threading().PostThreadedCallForUnawareReleasee(null, stage3CallReleasee, 1, 
 						callContext.m_finalReleasee(), 
 						null, dxStepIsland_Stage3_Callback, stage3CallContext, 0, "StepIsland Stage3");
 
-				Ref<DCallReleasee> stage2bSyncReleasee = new Ref<DCallReleasee>();
+				Ref<DCallReleasee> stage2bSyncReleasee = objects.m_stage2bSyncReleasee;
 				world.threading().PostThreadedCall(null, stage2bSyncReleasee, 1, stage3CallReleasee.get(), 
 						null, dxStepIsland_Stage2bSync_Callback, stage2CallContext, 0, "StepIsland Stage2b Sync");
 
-				Ref<DCallReleasee> stage2aSyncReleasee = new Ref<DCallReleasee>();
+				Ref<DCallReleasee> stage2aSyncReleasee = objects.m_stage2aSyncReleasee;
 				world.threading().PostThreadedCall(null, stage2aSyncReleasee, allowedThreads, stage2bSyncReleasee.get(), 
 						null, dxStepIsland_Stage2aSync_Callback, stage2CallContext, 0, "StepIsland Stage2a Sync");
 
@@ -1081,6 +1194,32 @@ dmaxcallcountestimate_fn_t {
 	}
 
 
+	/**
+	 * Check whether an island can be solved by {@link TreeSolver}: all 
+	 * bodies have a finite mass and the joints do not form a loop.
+	 * @param jbody receives the body tags of the joints, 2 per joint
+	 * @param set scratch of size nb
+	 */
+	private static boolean IsTreeIsland(DxStepperProcessingCallContext callContext, 
+			dJointWithInfo1[] jointinfosA, int jiP, int nj, int[] jbody, int[] set)
+	{
+		DxBody[] bodyA = callContext.m_islandBodiesStartA();
+		int bodyP = callContext.m_islandBodiesStartOfs();
+		int nb = callContext.m_islandBodiesCount();
+		for (int i = 0; i < nb; i++) {
+			if (bodyA[bodyP + i].invMass == 0) {
+				return false;
+			}
+		}
+		for (int ji = 0; ji < nj; ji++) {
+			DxJoint joint = jointinfosA[jiP + ji].joint;
+			DxBody jb1 = joint.node[1].body;
+			jbody[2 * ji] = joint.node[0].body.tag;
+			jbody[2 * ji + 1] = jb1 != null ? jb1.tag : -1;
+		}
+		return TreeSolver.isForest(nb, nj, jbody, set);
+	}
+
 	//	static 
 	//	int dxStepIsland_Stage2a_Callback(CallContext _stage2CallContext, 
 	//			int /*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
@@ -1089,16 +1228,16 @@ dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _stage2CallContext, 
 				int /*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
 		{
-			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxStepperStage2CallContext stage2CallContext = (dxStepperStage2CallContext )_stage2CallContext;
-			dxStepIsland_Stage2a(stage2CallContext);
+			dxStepIsland_Stage2a(stage2CallContext, callInstanceIndex);
 			return true;
 		}
 	};
 
 	static 
-	void dxStepIsland_Stage2a(dxStepperStage2CallContext stage2CallContext)
+	void dxStepIsland_Stage2a(dxStepperStage2CallContext stage2CallContext, 
+			int callInstanceIndex)
 	{
 		final DxStepperProcessingCallContext callContext = stage2CallContext.m_stepperCallContext;
 		final dxStepperLocalContext localContext = stage2CallContext.m_localContext;
@@ -1113,7 +1252,7 @@ dmaxcallcountestimate_fn_t {
 		{
 			int[] findex = localContext.m_findex;
 			double[] J = localContext.m_J;
-			double[] cfm = stage2CallContext.m_rhs_tmp_or_cfm;
+			double[] cfm = stage2CallContext.m_cfm;
 			double[] lo = localContext.m_lo;
 			double[] hi = localContext.m_hi;
 			double[] rhs = localContext.m_rhs;
@@ -1139,7 +1278,7 @@ dmaxcallcountestimate_fn_t {
 
 			final double worldERP = world.getERP();
 
-			DxJoint.Info2Descr Jinfo = new DxJoint.Info2Descr();
+			DxJoint.Info2Descr Jinfo = stage2CallContext.m_Jinfos[callInstanceIndex];
 			Jinfo.setRowskip(8);
 			Jinfo.setArrays(J, rhs, cfm, lo, hi, findex); //TZ
 
@@ -1251,7 +1390,7 @@ dmaxcallcountestimate_fn_t {
 			final double stepsizeRecip = dRecip(callContext.m_stepSize());
 
 			double[] A = localContext.m_A;
-			final double[] cfm = stage2CallContext.m_rhs_tmp_or_cfm;
+			final double[] cfm = stage2CallContext.m_cfm;
 			final int m = localContext.m_m;
 
 			final int mskip = dPAD(m);
@@ -1261,6 +1400,15 @@ dmaxcallcountestimate_fn_t {
 				final int ofsi = mindex[ji];
 				final int infom = mindex[ji + 1] - ofsi;
 
+				if (A == null) {
+					// TreeSolver: keep cfm scaled like the diagonal of A
+					double[] treeCfm = localContext.m_treeCfm;
+					for (int i = 0; i != infom; ++i) {
+						treeCfm[ofsi + i] = cfm[ofsi + i] * stepsizeRecip;
+					}
+					continue;
+				}
+
 				double[] ArowA = A;
 				int ArowP = mskip*ofsi;
 				dSetZero(ArowA, ArowP, mskip*infom);
@@ -1274,7 +1422,7 @@ dmaxcallcountestimate_fn_t {
 			}
 		}
 
-		{
+		if (localContext.m_A != null) { // TreeSolver does not need JinvM
 			// Warning!!!
 			// This code depends on J elements and therefore must be in different sub-stage 
 			// from Jacobian construction in Stage2a to ensure proper synchronization 
@@ -1283,6 +1431,7 @@ dmaxcallcountestimate_fn_t {
 			double[] invI = localContext.m_invI;
 			double[] J = localContext.m_J;
 			double[] JinvM = stage2CallContext.m_JinvM;
+			final int JinvMP = stage2CallContext.m_JinvMP;
 
 			IFTIMING_dTimerNow ("compute JinvM");
 
@@ -1294,7 +1443,7 @@ dmaxcallcountestimate_fn_t {
 				final int ofsi = mindex[ji];
 				final int infom = mindex[ji + 1] - ofsi;
 
-				int Jdst = 2*8*ofsi;//JinvM + 2*8*ofsi;
+				int Jdst = JinvMP + 2*8*ofsi;//JinvM + 2*8*ofsi;
 
 				dSetZero(JinvM, Jdst, 2*8*infom);
 
@@ -1342,7 +1491,7 @@ dmaxcallcountestimate_fn_t {
 			int bodyP = callContext.m_islandBodiesStartOfs();
 			final int nb = callContext.m_islandBodiesCount();
 			final double[] invI = localContext.m_invI;
-			double[] rhs_tmp = stage2CallContext.m_rhs_tmp_or_cfm;
+			double[] rhs_tmp = stage2CallContext.m_rhs_tmp;
 
 			// compute the right hand side `rhs'
 			IFTIMING_dTimerNow ("compute rhs_tmp");
@@ -1407,7 +1556,7 @@ dmaxcallcountestimate_fn_t {
 		int nj = localContext.m_nj;
 		final int[] mindex = localContext.m_mindex;
 
-		{
+		if (localContext.m_A != null) {
 			// Warning!!!
 			// This code depends on A elements and JinvM elements and therefore 
 			// must be in different sub-stage from A initialization and JinvM calculation in Stage2b 
@@ -1415,6 +1564,7 @@ dmaxcallcountestimate_fn_t {
 			// Warning!!!
 			double[] A = localContext.m_A;
 			final double[] JinvM = stage2CallContext.m_JinvM;
+			final int JinvMP = stage2CallContext.m_JinvMP;
 			double[] J = localContext.m_J;
 			final int m = localContext.m_m;
 
@@ -1431,7 +1581,7 @@ dmaxcallcountestimate_fn_t {
 				double[] ArowA = A;// + (size_t)mskip*ofsi;
 				int ArowP = mskip*ofsi;
 				double[] JinvMrowA = JinvM;// + 2*8*(size_t)ofsi;
-				int JinvMrowP = 2*8*ofsi;
+				int JinvMrowP = JinvMP + 2*8*ofsi;
 				DxJoint joint = jointinfosA[jointinfosP+ji].joint;
 
 				DxBody jb0 = joint.node[0].body;
@@ -1488,7 +1638,7 @@ dmaxcallcountestimate_fn_t {
 			// proper synchronization and avoid accessing numbers being modified.
 			// Warning!!!
 			double[] J = localContext.m_J;
-			double[] rhs_tmp = stage2CallContext.m_rhs_tmp_or_cfm;
+			double[] rhs_tmp = stage2CallContext.m_rhs_tmp;
 			double[] rhs = localContext.m_rhs;
 
 			// compute the right hand side `rhs'
@@ -1539,6 +1689,7 @@ dmaxcallcountestimate_fn_t {
 	{
 		final DxStepperProcessingCallContext callContext = stage3CallContext.m_stepperCallContext;
 		final dxStepperLocalContext localContext = stage3CallContext.m_localContext;
+		final dxStepperObjects objects = stage3CallContext.m_objects;
 
 		DxWorldProcessMemArena memarena = callContext.m_stepperArena();
 		memarena.RestoreState(stage3CallContext.m_stage1MemArenaState);
@@ -1568,17 +1719,24 @@ dmaxcallcountestimate_fn_t {
 
 		if (m > 0) {
 			//lambda = memarena->AllocateArray<dReal>(m);
-			memarena.dummy();
-			lambda = new double[m];
+			lambda = memarena.AllocateArrayDReal(m);
 
 
-			BlockPointer lcpstate = memarena.BEGIN_STATE_SAVE();
+			int lcpstate = memarena.BEGIN_STATE_SAVE();
 			{
 				IFTIMING_dTimerNow ("solving LCP problem");
 
-				// solve the LCP problem and get lambda.
-				// this will destroy A but that's OK
-				DLCP.dSolveLCP (memarena, m, A, lambda, rhs, null, nub, lo, hi, findex);
+				if (A == null) {
+					// only unbounded rows, so the LCP is a linear system
+					TreeSolver.solve(memarena, nb, nj, localContext.m_mindex, 
+							localContext.m_treeJbody, J, bodyA, bodyP, invI, 
+							localContext.m_treeCfm, rhs, lambda);
+				} else {
+					// solve the LCP problem and get lambda.
+					// this will destroy A but that's OK
+					DLCP.dSolveLCP (memarena, m, A, lambda, rhs, null, nub, lo, hi, findex, 
+							callContext.m_world().getStepFactorization());
+				}
 
 			} 
 			memarena.END_STATE_SAVE(lcpstate);
@@ -1586,8 +1744,7 @@ dmaxcallcountestimate_fn_t {
 
 		// this will be set to the force due to the constraints
 		//dReal *cforce = memarena->AllocateArray<dReal>((size_t)nb * 8);
-		memarena.dummy();
-		double[] cforce = new double[nb * 8];
+		double[] cforce = memarena.AllocateArrayDReal(nb * 8);
 		//dSetZero (cforce,(size_t)nb*8);
 
 		if (m > 0) {
@@ -1615,7 +1772,7 @@ dmaxcallcountestimate_fn_t {
 						// joint is applying to the bodies. we use a slightly slower
 						// computation that splits out the force components and puts them
 						// in the feedback structure.
-						double[] data=new double[8];
+						double[] data = objects.m_data;
 						Multiply1_8q1 (data, 0, J,JJ, lambda,lambdarow, infom);
 
 						DxBody b1 = joint.node[0].body;
@@ -1669,7 +1826,7 @@ dmaxcallcountestimate_fn_t {
 			double stepsize = callContext.m_stepSize();
 
 			// add fe to cforce and multiply cforce by stepsize
-			double[] data = new double[4];
+			double[] data = objects.m_data;
 			int invIrowP = 0;//invI;
 			int cforcecurrP = 0;//cforce;
 			//        dxBody *const *const bodyend = body + nb;
@@ -1704,7 +1861,7 @@ dmaxcallcountestimate_fn_t {
 			//                dxBody *b = *bodycurr;
 			for (int ii = bodyP; ii < bodyP+nb; ii++) {
 				DxBody b = bodyA[ii];
-				b.dxStepBody (stepsize);
+				b.dxStepBody (stepsize, objects.m_stepBodyTemporaries);
 			}
 		}
 
@@ -1829,8 +1986,12 @@ dmaxcallcountestimate_fn_t {
 	@Override
 	public int dxEstimateMemoryRequirements(DxBody[] body, int bodyOfs, int nb,
 			DxJoint[] _joint, int jointOfs, int _nj) {
-		// TODO Auto-generated method stub
-		return 0;
+		// Only the arrays that come from the slabs of the arena are estimated.
+		int m = 0;
+		for (int i = 0; i < _nj; i++) {
+			m += _joint[jointOfs + i].getSureMaxM();
+		}
+		return DxUtil.SIZEOF_DREAL * 2 * 8 * m; // for JinvM
 	}
 
 	@Override
@@ -0,0 +1,472 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dPAD;
+import static org.ode4j.ode.internal.Common.dRecip;
+
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+
+/**
+ * Direct solver for the constraint forces of {@link Step} on islands whose 
+ * joints form a tree and have only unbounded rows, see 
+ * {@link org.ode4j.ode.DWorld.StepFactorization#TREE}.
+ * <p>
+ * Instead of A = J*invM*J' + C, which has m*m elements and costs O(m^3) to 
+ * factorize, it solves the equivalent sparse system
+ * <pre>
+ * [ -M  J' ] [ v      ]   [ 0   ]
+ * [  J  C  ] [ lambda ] = [ rhs ]
+ * </pre>
+ * Its graph has a node for every body and every joint and an edge between 
+ * a joint and each of its bodies. If this graph is a forest, eliminating the 
+ * nodes from the leaves to the roots produces no fill-in, so the cost is 
+ * linear in the number of joints (D. Baraff, "Linear-Time Dynamics using 
+ * Lagrange Multipliers", SIGGRAPH 1996). The diagonal blocks are the 6x6 
+ * mass matrices of the bodies and the blocks of C of the joints, the 
+ * off-diagonal blocks are the Jacobian blocks of J.
+ * <p>
+ * All blocks are stored as 6x6 matrices, blocks of joints with fewer rows 
+ * only use the upper left part. J has the layout of {@link Step}: for every 
+ * joint the rows for the first body, then the rows for the second body, 
+ * 8 elements per row.
+ * <p>
+ * A joint attached to the static environment has a single body, so it is a 
+ * leaf unless it is the root of its tree. The block of a leaf is only its 
+ * part of C, which can be zero. Trees are therefore rooted at such a joint, 
+ * and if another one of the same tree has a zero CFM the island is solved 
+ * with the dense matrix A instead.
+ */
+final class TreeSolver {
+
+	private TreeSolver() {}
+
+	/**
+	 * Check whether the joints of an island do not form a loop. Joints with 
+	 * only one body (attached to the static environment) cannot close a 
+	 * loop.
+	 * @param jbody body tags of the joints, 2 per joint, -1 for none
+	 * @param set scratch of size nb
+	 */
+	static boolean isForest(int nb, int nj, final int[] jbody, int[] set) {
+		for (int b = 0; b < nb; b++) {
+			set[b] = b;
+		}
+		for (int j = 0; j < nj; j++) {
+			final int b1 = jbody[2 * j + 1];
+			if (b1 < 0) {
+				continue;
+			}
+			final int r0 = find(set, jbody[2 * j]);
+			final int r1 = find(set, b1);
+			if (r0 == r1) {
+				return false;
+			}
+			set[r0] = r1;
+		}
+		return true;
+	}
+
+	private static int find(int[] set, int i) {
+		while (set[i] != i) {
+			set[i] = set[set[i]];
+			i = set[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Solve for the constraint forces. The joints must form a forest (see 
+	 * {@link #isForest}) and all bodies must have a finite mass.
+	 * @param mindex first row of every joint, nj+1 entries
+	 * @param jbody body tags of the joints, 2 per joint, -1 for none
+	 * @param invI world frame inverse inertia of the bodies, 12 per body
+	 * @param cfm the diagonal of C, i.e. cfm / stepsize
+	 * @param lambda receives the constraint forces
+	 */
+	static void solve(DxWorldProcessMemArena memarena, int nb, int nj, 
+			final int[] mindex, final int[] jbody, final double[] J, 
+			final DxBody[] bodyA, int bodyP, final double[] invI, 
+			final double[] cfm, final double[] rhs, double[] lambda) {
+		final int n = nb + nj;
+		final double[] D = memarena.AllocateArrayDReal(36 * n);
+		final double[] L = memarena.AllocateArrayDReal(36 * n);
+		final double[] z = memarena.AllocateArrayDReal(6 * n);
+		final double[] H = memarena.AllocateArrayDReal(36 + 6);
+		final int[] parent = memarena.AllocateArrayInt(n);
+		final int[] order = memarena.AllocateArrayInt(n);
+		final int[] adjStart = memarena.AllocateArrayInt(nb + 1);
+		final int[] adj = memarena.AllocateArrayInt(2 * nj);
+
+		// diagonal blocks and right hand side
+		for (int b = 0; b < nb; b++) {
+			final int o = 36 * b;
+			for (int i = 0; i < 36; i++) {
+				D[o + i] = 0;
+			}
+			final double mass = dRecip(bodyA[bodyP + b].invMass);
+			D[o] = -mass;
+			D[o + 7] = -mass;
+			D[o + 14] = -mass;
+			negInvert3(invI, 12 * b, D, o + 21);
+			for (int i = 0; i < 6; i++) {
+				z[6 * b + i] = 0;
+			}
+		}
+		for (int j = 0; j < nj; j++) {
+			final int o = 36 * (nb + j);
+			for (int i = 0; i < 36; i++) {
+				D[o + i] = 0;
+			}
+			final int ofs = mindex[j];
+			final int k = mindex[j + 1] - ofs;
+			for (int r = 0; r < k; r++) {
+				D[o + 7 * r] = cfm[ofs + r];
+				z[6 * (nb + j) + r] = rhs[ofs + r];
+			}
+		}
+
+		// joints of every body
+		for (int b = 0; b <= nb; b++) {
+			adjStart[b] = 0;
+		}
+		for (int i = 0; i < 2 * nj; i++) {
+			if (jbody[i] >= 0) {
+				adjStart[jbody[i] + 1]++;
+			}
+		}
+		for (int b = 0; b < nb; b++) {
+			adjStart[b + 1] += adjStart[b];
+		}
+		for (int i = 0; i < 2 * nj; i++) {
+			final int b = jbody[i];
+			if (b >= 0) {
+				// adjStart[b] is advanced while filling and restored below
+				adj[adjStart[b]++] = i >> 1;
+			}
+		}
+		for (int b = nb; b > 0; b--) {
+			adjStart[b] = adjStart[b - 1];
+		}
+		adjStart[0] = 0;
+
+		// breadth first order of every tree, parents first. The roots are 
+		// joints with a single body and a zero CFM, then other joints with a 
+		// single body, then bodies.
+		for (int i = 0; i < n; i++) {
+			parent[i] = -2;
+		}
+		int tail = 0;
+		for (int j = 0; j < nj; j++) {
+			if (jbody[2 * j + 1] < 0 && hasZeroCfm(j, mindex, cfm)) {
+				tail = addTree(nb + j, tail, nb, jbody, adjStart, adj, parent, order);
+			}
+		}
+		for (int j = 0; j < nj; j++) {
+			if (jbody[2 * j + 1] < 0) {
+				tail = addTree(nb + j, tail, nb, jbody, adjStart, adj, parent, order);
+			}
+		}
+		for (int b = 0; b < nb; b++) {
+			tail = addTree(b, tail, nb, jbody, adjStart, adj, parent, order);
+		}
+		dIASSERT(tail == n);
+
+		for (int j = 0; j < nj; j++) {
+			if (parent[nb + j] >= 0 && jbody[2 * j + 1] < 0 && hasZeroCfm(j, mindex, cfm)) {
+				// this leaf could not be eliminated
+				solveDense(memarena, nb, nj, mindex, jbody, J, bodyA, bodyP, invI, 
+						cfm, rhs, lambda, adjStart, adj);
+				return;
+			}
+		}
+
+		// eliminate from the leaves to the roots:
+		// z_i = D_i^-1 b_i, L_i = D_i^-1 H_ip, D_p -= H_ip' L_i, b_p -= H_ip' z_i
+		for (int idx = n - 1; idx >= 0; idx--) {
+			final int i = order[idx];
+			final int di = dim(i, nb, mindex);
+			final int oi = 36 * i;
+			factor(D, oi, di);
+			solve(D, oi, di, z, 6 * i);
+			final int p = parent[i];
+			if (p < 0) {
+				continue;
+			}
+			final int dp = dim(p, nb, mindex);
+			coupling(i, p, nb, mindex, jbody, J, H);
+			for (int c = 0; c < dp; c++) {
+				for (int r = 0; r < di; r++) {
+					H[36 + r] = H[6 * r + c];
+				}
+				solve(D, oi, di, H, 36);
+				for (int r = 0; r < di; r++) {
+					L[oi + 6 * r + c] = H[36 + r];
+				}
+			}
+			final int op = 36 * p;
+			for (int a = 0; a < dp; a++) {
+				for (int c = 0; c <= a; c++) {
+					double s = 0;
+					for (int r = 0; r < di; r++) {
+						s += H[6 * r + a] * L[oi + 6 * r + c];
+					}
+					D[op + 6 * a + c] -= s;
+				}
+				double s = 0;
+				for (int r = 0; r < di; r++) {
+					s += H[6 * r + a] * z[6 * i + r];
+				}
+				z[6 * p + a] -= s;
+			}
+		}
+
+		// back substitution from the roots: x_i = z_i - L_i x_p
+		for (int idx = 0; idx < n; idx++) {
+			final int i = order[idx];
+			final int p = parent[i];
+			if (p < 0) {
+				continue;
+			}
+			final int di = dim(i, nb, mindex);
+			final int dp = dim(p, nb, mindex);
+			final int oi = 36 * i;
+			for (int r = 0; r < di; r++) {
+				double s = 0;
+				for (int c = 0; c < dp; c++) {
+					s += L[oi + 6 * r + c] * z[6 * p + c];
+				}
+				z[6 * i + r] -= s;
+			}
+		}
+
+		for (int j = 0; j < nj; j++) {
+			final int ofs = mindex[j];
+			final int k = mindex[j + 1] - ofs;
+			for (int r = 0; r < k; r++) {
+				lambda[ofs + r] = z[6 * (nb + j) + r];
+			}
+		}
+	}
+
+	/**
+	 * Append the nodes of the tree of root to order, unless the root is 
+	 * already part of an earlier tree.
+	 * @return the new end of order
+	 */
+	private static int addTree(int root, int tail, int nb, final int[] jbody, 
+			final int[] adjStart, final int[] adj, int[] parent, int[] order) {
+		if (parent[root] != -2) {
+			return tail;
+		}
+		int head = tail;
+		parent[root] = -1;
+		order[tail++] = root;
+		while (head < tail) {
+			final int i = order[head++];
+			if (i < nb) {
+				for (int a = adjStart[i]; a < adjStart[i + 1]; a++) {
+					final int node = nb + adj[a];
+					if (parent[node] == -2) {
+						parent[node] = i;
+						order[tail++] = node;
+					}
+				}
+			} else {
+				for (int s = 0; s < 2; s++) {
+					final int b = jbody[2 * (i - nb) + s];
+					if (b >= 0 && parent[b] == -2) {
+						parent[b] = i;
+						order[tail++] = b;
+					}
+				}
+			}
+		}
+		return tail;
+	}
+
+	private static boolean hasZeroCfm(int j, final int[] mindex, final double[] cfm) {
+		for (int r = mindex[j]; r < mindex[j + 1]; r++) {
+			if (cfm[r] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Solve A*lambda = rhs with A = J*invM*J' + C like the dense LCP solver 
+	 * does for unbounded rows. Only the blocks of joints that share a body 
+	 * are not zero.
+	 */
+	private static void solveDense(DxWorldProcessMemArena memarena, int nb, int nj, 
+			final int[] mindex, final int[] jbody, final double[] J, 
+			final DxBody[] bodyA, int bodyP, final double[] invI, 
+			final double[] cfm, final double[] rhs, double[] lambda, 
+			final int[] adjStart, final int[] adj) {
+		final int m = mindex[nj];
+		final int mskip = dPAD(m);
+		final double[] A = memarena.AllocateArrayDReal(m * mskip);
+		final double[] d = memarena.AllocateArrayDReal(m);
+		final double[] t = memarena.AllocateArrayDReal(6);
+		for (int b = 0; b < nb; b++) {
+			final double invMass = bodyA[bodyP + b].invMass;
+			for (int a1 = adjStart[b]; a1 < adjStart[b + 1]; a1++) {
+				final int j1 = adj[a1];
+				final int k1 = mindex[j1 + 1] - mindex[j1];
+				final int base1 = 2 * 8 * mindex[j1] + (jbody[2 * j1] == b ? 0 : 8 * k1);
+				for (int r1 = 0; r1 < k1; r1++) {
+					// t = invM * (row r1 of the block of j1 for b)'
+					final int row1 = base1 + 8 * r1;
+					for (int c = 0; c < 3; c++) {
+						t[c] = invMass * J[row1 + c];
+						t[3 + c] = invI[12 * b + 4 * c] * J[row1 + 4] 
+								+ invI[12 * b + 4 * c + 1] * J[row1 + 5] 
+								+ invI[12 * b + 4 * c + 2] * J[row1 + 6];
+					}
+					final int Arow = mskip * (mindex[j1] + r1);
+					for (int a2 = adjStart[b]; a2 < adjStart[b + 1]; a2++) {
+						final int j2 = adj[a2];
+						final int k2 = mindex[j2 + 1] - mindex[j2];
+						final int base2 = 2 * 8 * mindex[j2] + (jbody[2 * j2] == b ? 0 : 8 * k2);
+						for (int r2 = 0; r2 < k2; r2++) {
+							final int row2 = base2 + 8 * r2;
+							A[Arow + mindex[j2] + r2] += t[0] * J[row2] + t[1] * J[row2 + 1] 
+									+ t[2] * J[row2 + 2] + t[3] * J[row2 + 4] 
+									+ t[4] * J[row2 + 5] + t[5] * J[row2 + 6];
+						}
+					}
+				}
+			}
+		}
+		for (int i = 0; i < m; i++) {
+			A[mskip * i + i] += cfm[i];
+			lambda[i] = rhs[i];
+		}
+		Matrix.dFactorLDLT(A, d, m, mskip);
+		Matrix.dSolveLDLT(A, d, lambda, m, mskip);
+	}
+
+	private static int dim(int node, int nb, final int[] mindex) {
+		return node < nb ? 6 : mindex[node - nb + 1] - mindex[node - nb];
+	}
+
+	/**
+	 * Off-diagonal block between node i and its parent p, dim(i) x dim(p), 
+	 * into H with a row stride of 6. That is the Jacobian block of the joint 
+	 * for the body, or its transpose if i is the body.
+	 */
+	private static void coupling(int i, int p, int nb, final int[] mindex, 
+			final int[] jbody, final double[] J, double[] H) {
+		final int j = i < nb ? p - nb : i - nb;
+		final int b = i < nb ? i : p;
+		final int ofs = mindex[j];
+		final int k = mindex[j + 1] - ofs;
+		final int side = jbody[2 * j] == b ? 0 : 1;
+		final int base = 2 * 8 * ofs + side * 8 * k;
+		for (int r = 0; r < k; r++) {
+			for (int c = 0; c < 6; c++) {
+				final double v = J[base + 8 * r + (c < 3 ? c : c + 1)];
+				if (i < nb) {
+					H[6 * c + r] = v;
+				} else {
+					H[6 * r + c] = v;
+				}
+			}
+		}
+	}
+
+	/**
+	 * L*D*L' factorization of the n x n block at o (row stride 6), using its 
+	 * lower triangle. L is written below the diagonal, D on the diagonal. 
+	 * No pivoting: the blocks are either positive or negative definite.
+	 */
+	private static void factor(double[] A, int o, int n) {
+		for (int j = 0; j < n; j++) {
+			final int rj = o + 6 * j;
+			double dj = A[rj + j];
+			for (int p = 0; p < j; p++) {
+				final double l = A[rj + p];
+				dj -= l * l * A[o + 7 * p];
+			}
+			A[rj + j] = dj;
+			final double djRecip = dRecip(dj);
+			for (int i = j + 1; i < n; i++) {
+				final int ri = o + 6 * i;
+				double s = A[ri + j];
+				for (int p = 0; p < j; p++) {
+					s -= A[ri + p] * A[rj + p] * A[o + 7 * p];
+				}
+				A[ri + j] = s * djRecip;
+			}
+		}
+	}
+
+	/**
+	 * Solve L*D*L'*x = b for a block factorized by {@link #factor}, x 
+	 * overwrites b at xo.
+	 */
+	private static void solve(final double[] A, int o, int n, double[] x, int xo) {
+		for (int i = 1; i < n; i++) {
+			final int ri = o + 6 * i;
+			double s = x[xo + i];
+			for (int p = 0; p < i; p++) {
+				s -= A[ri + p] * x[xo + p];
+			}
+			x[xo + i] = s;
+		}
+		for (int i = 0; i < n; i++) {
+			x[xo + i] /= A[o + 7 * i];
+		}
+		for (int i = n - 1; i > 0; i--) {
+			final int ri = o + 6 * i;
+			final double xi = x[xo + i];
+			for (int p = 0; p < i; p++) {
+				x[xo + p] -= A[ri + p] * xi;
+			}
+		}
+	}
+
+	/**
+	 * Write the negated inverse of the symmetric 3x3 matrix at m[mo] (row 
+	 * stride 4) into the 3x3 block at dst[o] (row stride 6).
+	 */
+	private static void negInvert3(final double[] m, int mo, double[] dst, int o) {
+		final double a = m[mo], b = m[mo + 1], c = m[mo + 2];
+		final double d = m[mo + 4], e = m[mo + 5], f = m[mo + 6];
+		final double g = m[mo + 8], h = m[mo + 9], k = m[mo + 10];
+		final double c00 = e * k - f * h, c01 = c * h - b * k, c02 = b * f - c * e;
+		final double det = a * c00 + d * c01 + g * c02;
+		final double s = -dRecip(det);
+		dst[o] = c00 * s;
+		dst[o + 1] = c01 * s;
+		dst[o + 2] = c02 * s;
+		dst[o + 6] = (f * g - d * k) * s;
+		dst[o + 7] = (a * k - c * g) * s;
+		dst[o + 8] = (c * d - a * f) * s;
+		dst[o + 12] = (d * h - e * g) * s;
+		dst[o + 13] = (b * g - a * h) * s;
+		dst[o + 14] = (a * e - b * d) * s;
+	}
+}
@@ -90,6 +90,10 @@ public class GimAABBSet { //Formerly GimBoxPruning
 	GIM_RSORT_TOKEN[] m_sorted_mincoords;//!< sorted min coords (lower corners), with their coord value as the m_key and m_value as the box index
 	char m_shared;//!< if m_shared == 0 then the memory is allocated and the set must be destroyed, else the pointers are shared and the set should't be destroyed
 	//	};
+	/** Optional tree over the boxes, replaces sorting and linear queries. */
+	private GimBvh m_bvh;
+	/** Node boxes of m_bvh, refitted in gim_aabbset_update(). */
+	private float[] m_bvh_bounds;
 	//typedef  struct _GIM_AABB_SET GIM_AABB_SET;
 
 	public aabb3f getGlobalBound() {
@@ -680,8 +684,57 @@ public class GimAABBSet { //Formerly GimBoxPruning
 	}
 
 
+	/**
+	 * NxM Bipartite box pruning with a tree. Queries the tree of one set 
+	 * with each box of the other one. If aabbset1 has a tree the pairs 
+	 * come in the same order as with the brute force approach.
+	 * @pre at least one of the sets has a tree, both are updated.
+	 */
+	static void gim_aabbset_bipartite_intersections_bvh(GimAABBSet aabbset1, GimAABBSet aabbset2, 
+			GimDynArray<GIM_PAIR> collision_pairs)
+	{
+		collision_pairs.m_size = 0;
+		if(AABBCOLLISION(aabbset1.m_global_bound,aabbset2.m_global_bound) == false) return;
+
+		aabb3f int_abbb = new aabb3f();
+		BOXINTERSECTION(aabbset1.m_global_bound,aabbset2.m_global_bound, int_abbb);
+
+		final boolean query1 = aabbset1.m_bvh != null;
+		final GimAABBSet tree = query1 ? aabbset1 : aabbset2;
+		final GimAABBSet boxes = query1 ? aabbset2 : aabbset1;
+		GimDynArrayInt collided = GimDynArrayInt.GIM_CREATE_BOXQUERY_LIST();
+		for (int i = 0; i < boxes.m_count; i++)
+		{
+			aabb3f box = boxes.m_boxes[i];
+			if(AABBCOLLISION(box,int_abbb) == false) continue;
+			collided.m_size = 0;
+			tree.m_bvh.gim_bvh_box_collision(tree.m_bvh_bounds, box, collided);
+			for (int j = 0; j < collided.m_size; j++)
+			{
+				if (query1) {
+					PUSH_PAIR(collided.m_pdata[j],i,collision_pairs);
+				} else {
+					PUSH_PAIR(i,collided.m_pdata[j],collision_pairs);
+				}
+			}
+		}
+	}
+
+
 	//Use these functions for general initialization
 
+	/**
+	 * Uses a tree for the queries of this set.
+	 * @param bvh tree over the m_count boxes, or null for the default
+	 * pruning
+	 */
+	void gim_aabbset_set_bvh(GimBvh bvh)
+	{
+		assert bvh == null || bvh.getCount() == m_count;
+		m_bvh = bvh;
+		m_bvh_bounds = bvh == null ? null : new float[bvh.getNodeCount() * 6];
+	}
+
 	/**
 	 * Initalizes the set. Sort Boxes if needed.
 	 * @pre aabbset must be allocated. And the boxes must be already set.
@@ -691,6 +744,12 @@ public class GimAABBSet { //Formerly GimBoxPruning
 	//void gim_aabbset_update(GIM_AABB_SET * aabbset)
 	void gim_aabbset_update()
 	{
+		if (m_bvh != null)
+		{//Tree: refit instead of sorting
+			m_bvh.gim_bvh_refit(m_boxes, m_bvh_bounds);
+			m_bvh.gim_bvh_get_root_bound(m_bvh_bounds, m_global_bound);
+			return;
+		}
 		if(m_count < GIM_MIN_SORTED_BIPARTITE_PRUNING_BOXES)  //TODO TZ check this!!! Performance!
 		{//Brute force approach
 			gim_aabbset_calc_global_bound();
@@ -715,7 +774,11 @@ public class GimAABBSet { //Formerly GimBoxPruning
 	static void gim_aabbset_bipartite_intersections(GimAABBSet aabbset1, 
 			GimAABBSet aabbset2, GimDynArray<GIM_PAIR> collision_pairs)
 	{
-		if(aabbset1.m_sorted_mincoords == null||aabbset2.m_sorted_mincoords == null)
+		if(aabbset1.m_bvh != null||aabbset2.m_bvh != null)
+		{//Tree approach
+			gim_aabbset_bipartite_intersections_bvh(aabbset1,aabbset2,collision_pairs);
+		}
+		else if(aabbset1.m_sorted_mincoords == null||aabbset2.m_sorted_mincoords == null)
 		{//Brute force approach
 			gim_aabbset_bipartite_intersections_brute_force(aabbset1,aabbset2,collision_pairs);
 		}
@@ -740,6 +803,12 @@ public class GimAABBSet { //Formerly GimBoxPruning
 		boolean intersected = GimGeometry.AABBCOLLISION(m_global_bound,test_aabb);
 		if(intersected == false) return;
 
+		if(m_bvh != null)
+		{
+			m_bvh.gim_bvh_box_collision(m_bvh_bounds, test_aabb, collided);
+			return;
+		}
+
 		int i;
 		int count = m_count;
 		aabb3f[] paabb = m_boxes;
@@ -775,6 +844,12 @@ public class GimAABBSet { //Formerly GimBoxPruning
 		GimGeometry.BOX_INTERSECTS_RAY(m_global_bound, vorigin, vdir, tparam, tmax,intersected);
 		if(intersected.b==false) return;
 
+		if(m_bvh != null)
+		{
+			m_bvh.gim_bvh_ray_collision(m_bvh_bounds, vorigin, vdir, tmax, collided);
+			return;
+		}
+
 		int i;
 		int count = m_count;
 		aabb3f[] paabb = m_boxes;
@@ -0,0 +1,281 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal.gimpact;
+
+import java.util.Arrays;
+
+import org.ode4j.ode.internal.gimpact.GimGeometry.aabb3f;
+import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
+
+/**
+ * Bounding volume hierarchy over the triangles of a trimesh.
+ * <p>
+ * The topology is built once from the untransformed triangles and can be 
+ * shared by all trimeshes with the same data. The node boxes are stored 
+ * per {@link GimAABBSet} in a flat array and refitted bottom-up whenever 
+ * the triangle boxes change, which is O(n) and does not allocate.
+ * <p>
+ * The nodes are stored in pre-order with one triangle per leaf. The first
+ * child of an inner node is the next node, the traversal is stackless: 
+ * every node knows the index where its subtree ends.
+ */
+public final class GimBvh {
+
+	/** Below this number of triangles testing every box is as fast. */
+	public static final int GIM_MIN_BVH_BOXES = 32;
+
+	/** Number of triangles. */
+	private final int m_count;
+	/** Per node: index of the first node after the subtree of the node. */
+	private final int[] m_escape;
+	/** Per node: triangle index for leaves, -1 for inner nodes. */
+	private final int[] m_primitive;
+
+	private GimBvh(int count) {
+		m_count = count;
+		m_escape = new int[2 * count - 1];
+		m_primitive = new int[2 * count - 1];
+	}
+
+	/**
+	 * Builds the tree with median splits along the longest axis of the 
+	 * triangle centres.
+	 * @param vertices x, y, z per vertex
+	 * @param indices three vertex indices per triangle
+	 * @return the tree or <code>null</code> for less than 
+	 * {@link #GIM_MIN_BVH_BOXES} triangles
+	 */
+	public static GimBvh gim_bvh_build(float[] vertices, int[] indices) {
+		int count = indices.length / 3;
+		if (count < GIM_MIN_BVH_BOXES) {
+			return null;
+		}
+		float[] centres = new float[count * 3];
+		for (int i = 0; i < count; i++) {
+			for (int k = 0; k < 3; k++) {
+				float a = vertices[indices[i * 3] * 3 + k];
+				float b = vertices[indices[i * 3 + 1] * 3 + k];
+				float c = vertices[indices[i * 3 + 2] * 3 + k];
+				centres[i * 3 + k] = 0.5f * (Math.min(a, Math.min(b, c)) + Math.max(a, Math.max(b, c)));
+			}
+		}
+		int[] perm = new int[count];
+		for (int i = 0; i < count; i++) {
+			perm[i] = i;
+		}
+		GimBvh bvh = new GimBvh(count);
+		int end = bvh.build(centres, perm, 0, count, 0);
+		assert end == bvh.getNodeCount();
+		return bvh;
+	}
+
+	/**
+	 * Emits the subtree of perm[lo..hi) starting at node <code>node</code>.
+	 * @return the index of the first node after the subtree
+	 */
+	private int build(float[] centres, int[] perm, int lo, int hi, int node) {
+		if (hi - lo == 1) {
+			m_primitive[node] = perm[lo];
+			m_escape[node] = node + 1;
+			return node + 1;
+		}
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = lo; i < hi; i++) {
+			int c = perm[i] * 3;
+			minX = Math.min(minX, centres[c]);
+			maxX = Math.max(maxX, centres[c]);
+			minY = Math.min(minY, centres[c + 1]);
+			maxY = Math.max(maxY, centres[c + 1]);
+			minZ = Math.min(minZ, centres[c + 2]);
+			maxZ = Math.max(maxZ, centres[c + 2]);
+		}
+		int axis = 0;
+		if (maxY - minY > maxX - minX) {
+			axis = 1;
+		}
+		if (maxZ - minZ > Math.max(maxX - minX, maxY - minY)) {
+			axis = 2;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(centres, axis, perm, lo, hi - 1, mid);
+		m_primitive[node] = -1;
+		int right = build(centres, perm, lo, mid, node + 1);
+		int end = build(centres, perm, mid, hi, right);
+		m_escape[node] = end;
+		return end;
+	}
+
+	/**
+	 * Partially sorts perm[lo..hi] (inclusive) so that perm[k] has the k-th
+	 * smallest centre along <code>axis</code> and is preceded by smaller and
+	 * followed by larger ones (quickselect).
+	 */
+	private static void select(float[] centres, int axis, int[] perm, int lo, int hi, int k) {
+		while (hi > lo) {
+			float pivot = centres[perm[(lo + hi) >>> 1] * 3 + axis];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (centres[perm[i] * 3 + axis] < pivot) i++;
+				while (centres[perm[j] * 3 + axis] > pivot) j--;
+				if (i <= j) {
+					int t = perm[i];
+					perm[i] = perm[j];
+					perm[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/** @return Number of triangles. */
+	public int getCount() {
+		return m_count;
+	}
+
+	/** @return Number of nodes, the size of a bounds array is 6 times this. */
+	public int getNodeCount() {
+		return m_escape.length;
+	}
+
+	/**
+	 * Recomputes the node boxes from the triangle boxes.
+	 * @param boxes triangle boxes
+	 * @param bounds minX, maxX, minY, maxY, minZ, maxZ per node
+	 */
+	void gim_bvh_refit(aabb3f[] boxes, float[] bounds) {
+		for (int node = m_escape.length - 1; node >= 0; node--) {
+			int b = node * 6;
+			int prim = m_primitive[node];
+			if (prim >= 0) {
+				aabb3f box = boxes[prim];
+				bounds[b] = box.minX;
+				bounds[b + 1] = box.maxX;
+				bounds[b + 2] = box.minY;
+				bounds[b + 3] = box.maxY;
+				bounds[b + 4] = box.minZ;
+				bounds[b + 5] = box.maxZ;
+			} else {
+				int l = (node + 1) * 6;
+				int r = m_escape[node + 1] * 6;
+				bounds[b] = Math.min(bounds[l], bounds[r]);
+				bounds[b + 1] = Math.max(bounds[l + 1], bounds[r + 1]);
+				bounds[b + 2] = Math.min(bounds[l + 2], bounds[r + 2]);
+				bounds[b + 3] = Math.max(bounds[l + 3], bounds[r + 3]);
+				bounds[b + 4] = Math.min(bounds[l + 4], bounds[r + 4]);
+				bounds[b + 5] = Math.max(bounds[l + 5], bounds[r + 5]);
+			}
+		}
+	}
+
+	/** Copies the box of the root node. */
+	void gim_bvh_get_root_bound(float[] bounds, aabb3f bound) {
+		bound.minX = bounds[0];
+		bound.maxX = bounds[1];
+		bound.minY = bounds[2];
+		bound.maxY = bounds[3];
+		bound.minZ = bounds[4];
+		bound.maxZ = bounds[5];
+	}
+
+	/**
+	 * Appends the triangles whose boxes overlap the test box, in ascending 
+	 * order. The overlap test is the same as {@link GimGeometry#AABBCOLLISION}.
+	 */
+	void gim_bvh_box_collision(float[] bounds, aabb3f test, GimDynArrayInt collided) {
+		final int first = collided.m_size;
+		final int n = m_escape.length;
+		int node = 0;
+		while (node < n) {
+			int b = node * 6;
+			if (bounds[b] > test.maxX || bounds[b + 1] < test.minX ||
+					bounds[b + 2] > test.maxY || bounds[b + 3] < test.minY ||
+					bounds[b + 4] > test.maxZ || bounds[b + 5] < test.minZ) {
+				node = m_escape[node];
+			} else {
+				if (m_primitive[node] >= 0) {
+					collided.GIM_DYNARRAY_PUSH_ITEM(m_primitive[node]);
+				}
+				node++;
+			}
+		}
+		Arrays.sort(collided.m_pdata, first, collided.m_size);
+	}
+
+	/**
+	 * Appends the triangles whose boxes are hit by the ray, in ascending 
+	 * order. The test is the same as {@link GimGeometry#BOX_INTERSECTS_RAY}, 
+	 * so a node is hit whenever one of its triangles is hit.
+	 */
+	void gim_bvh_ray_collision(float[] bounds, vec3f origin, vec3f dir, float tmax, 
+			GimDynArrayInt collided) {
+		final int first = collided.m_size;
+		final int n = m_escape.length;
+		final float[] o = origin.f;
+		final float[] d = dir.f;
+		int node = 0;
+		while (node < n) {
+			int b = node * 6;
+			if (rayHitsBox(bounds, b, o, d, tmax)) {
+				if (m_primitive[node] >= 0) {
+					collided.GIM_DYNARRAY_PUSH_ITEM(m_primitive[node]);
+				}
+				node++;
+			} else {
+				node = m_escape[node];
+			}
+		}
+		Arrays.sort(collided.m_pdata, first, collided.m_size);
+	}
+
+	private static boolean rayHitsBox(float[] bounds, int b, float[] o, float[] d, float tmax) {
+		float tfirst = 0.0f, tlast = tmax;
+		for (int k = 0; k < 3; k++) {
+			float min = bounds[b + 2 * k];
+			float max = bounds[b + 2 * k + 1];
+			if (GimMath.IS_ZERO(d[k])) {
+				if (o[k] < min || o[k] > max) {
+					return false;
+				}
+			} else {
+				float a0 = (min - o[k]) / d[k];
+				float a1 = (max - o[k]) / d[k];
+				if (a0 > a1) { float ax = a0; a0 = a1; a1 = ax; }
+				tfirst = GimMath.MAX(a0, tfirst);
+				tlast = GimMath.MIN(a1, tlast);
+				if (tlast < tfirst) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -920,6 +920,17 @@ public class GimTrimesh implements GimConstants {
 	}
 
 	
+	/**
+	 * Uses an AABB tree for the box and ray queries and trimesh-trimesh
+	 * pruning of this trimesh.
+	 * @param bvh tree over the triangles of this trimesh, or null
+	 */
+	public void gim_trimesh_set_bvh(GimBvh bvh)
+	{
+		m_aabbset.gim_aabbset_set_bvh(bvh);
+		gim_trimesh_post_update();
+	}
+
 	public GimAABBSet getAabbSet() {
 		return m_aabbset;
 	}
@@ -272,6 +272,38 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 	public DJoint.DJointFeedback feedback;   // optional feedback structure
 	//public double[] lambda = new double[6];            // lambda generated by last step
 	public final double[] lambda;            // lambda generated by last step
+	private dxJointTemporaries temporaries;  // created on first use
+	// joints such as contacts are created between steps, so this is not created 
+	// on first use
+	private final SureMaxInfo sureMaxInfo = new SureMaxInfo();
+
+	/**
+	 * Scratch vectors of getInfo1(), getInfo2() and the helpers they use, so that 
+	 * stepping does not allocate. Each joint is processed by a single thread at a time.
+	 * The helpers use a1, a2, e, d, q1 and q2, the v* vectors are left to the joint classes.
+	 */
+	static final class dxJointTemporaries
+	{
+		final DVector3 a1 = new DVector3();
+		final DVector3 a2 = new DVector3();
+		final DVector3 e = new DVector3();
+		final DVector3 d = new DVector3();
+		final DVector3 v1 = new DVector3();
+		final DVector3 v2 = new DVector3();
+		final DVector3 v3 = new DVector3();
+		final DVector3 v4 = new DVector3();
+		final DVector3 v5 = new DVector3();
+		final DQuaternion q1 = new DQuaternion();
+		final DQuaternion q2 = new DQuaternion();
+	}
+
+	final dxJointTemporaries temporaries()
+	{
+		if (temporaries == null) {
+			temporaries = new dxJointTemporaries();
+		}
+		return temporaries;
+	}
 
 	
     /// Set values which are relative with respect to bodies.
@@ -289,6 +321,16 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
     // This call quickly!!! estimates maximum value of "m" that could be returned by getInfo1()
     // See comments at definition of SureMaxInfo for defails.
     abstract void getSureMaxInfo( SureMaxInfo info );
+
+    /**
+     * Used by the memory requirement estimates of the steppers.
+     * @return The estimate of the maximal value of "m", see getSureMaxInfo().
+     */
+    public final int getSureMaxM()
+    {
+        getSureMaxInfo(sureMaxInfo);
+        return sureMaxInfo.max_m;
+    }
 //	abstract dJointType type();// const = 0;
 //	abstract int size();
 
@@ -402,7 +444,8 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 			DVector3 anchor1, DVector3 anchor2 )
 	{
 		// anchor points in global coordinates with respect to body PORs.
-		DVector3 a1 = new DVector3(), a2 = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DVector3 a1 = tmp.a1, a2 = tmp.a2;
 
 		int s = info.rowskip();
 
@@ -469,13 +512,14 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 			DVector3 axis, double erp1 )
 	{
 		// anchor points in global coordinates with respect to body PORs.
-		DVector3 a1 = new DVector3(), a2 = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DVector3 a1 = tmp.a1, a2 = tmp.a2;
 
 		int s = info.rowskip();
 
 		// get vectors normal to the axis. in setBall() axis,q1,q2 is [1 0 0],
 		// [0 1 0] and [0 0 1], which makes everything much easier.
-		DVector3 q1 = new DVector3(), q2 = new DVector3();
+		DVector3 q1 = tmp.e, q2 = tmp.d;
 		dPlaneSpace( axis, q1, q2 );
 
 		// set jacobian
@@ -534,15 +578,15 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 		{
 //			for ( i = 0; i < 3; i++ ) a2.v[i] += joint.node[1].body._posr.pos.v[i];
 			a2.add(b1.posr().pos());
-			DVector3 a2_minus_a1 = new DVector3();
-			a2_minus_a1.eqDiff(a2, a1);
+			DVector3 a2_minus_a1 = a2;
+			a2_minus_a1.sub(a1);
 			info.setC(0, k1 * ( dCalcVectorDot3( axis, a2_minus_a1 ) ));
 			info.setC(1, k * ( dCalcVectorDot3( q1, a2_minus_a1 ) ));
 			info.setC(2, k * ( dCalcVectorDot3( q2, a2_minus_a1 ) ));
 		}
 		else
 		{
-            DVector3 anchor2_minus_a1 = new DVector3();
+            DVector3 anchor2_minus_a1 = a2;
             anchor2_minus_a1.eqDiff(anchor2, a1);
 			info.setC(0, k1 * ( dCalcVectorDot3( axis, anchor2_minus_a1 ) ));
 			info.setC(1, k * ( dCalcVectorDot3( q1, anchor2_minus_a1 ) ));
@@ -592,12 +636,13 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 		//    q = [cos(theta/2) sin(theta/2)*u] = [s v]
 
 		// get qerr = relative rotation (rotation error) between two bodies
-		DQuaternion qerr = new DQuaternion();
-		DVector3 e = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DQuaternion qerr = tmp.q1;
+		DVector3 e = tmp.e;
 		DxBody b0 = joint.node[0].body;
 		if ( b1 != null)
 		{
-			DQuaternion qq = new DQuaternion();
+			DQuaternion qq = tmp.q2;
 			dQMultiply1( qq, b0._q, b1._q );
 			dQMultiply2( qerr, qq, qrel );
 		}
@@ -613,7 +658,7 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 		}
 		//TZ:
 //		dMULTIPLY0_331( e, joint.node[0].body.posr.R, qerr + 1 );  // @@@ bad SIMD padding!
-		DVector3 qerr2 = new DVector3();
+		DVector3 qerr2 = tmp.d;
 		qerr2.set0( qerr.get1() );
 		qerr2.set1( qerr.get2() );
 		qerr2.set2( qerr.get3() );
@@ -851,10 +896,11 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 			DQuaternion q_initial )
 	{
 		// get qrel = relative rotation between the two bodies
-		DQuaternion qrel = new DQuaternion();
+		final dxJointTemporaries tmp = temporaries();
+		DQuaternion qrel = tmp.q1;
 		if ( body2 != null )
 		{
-			DQuaternion qq = new DQuaternion();
+			DQuaternion qq = tmp.q2;
 			dQMultiply1( qq, body1._q, body2._q );
 			dQMultiply2( qrel, qq, q_initial );
 		}
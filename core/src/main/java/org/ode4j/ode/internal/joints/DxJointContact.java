@@ -65,6 +65,9 @@ public class DxJointContact extends DxJoint implements DContactJoint
 	//        dxJoint( w )
 	{
 		super (w);
+		// contacts are created between steps, so create the scratch here
+		// rather than in getInfo2()
+		temporaries();
 	}
 
 	@Override
@@ -138,7 +141,8 @@ public class DxJointContact extends DxJoint implements DContactJoint
 	    int rollRow=3;
 
 	    // get normal, with sign adjusted for body1/body2 polarity
-		DVector3 normal = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DVector3 normal = tmp.v1;
 		if ( isFlagsReverse() )
 		{
 //			normal.v[0] = - contact.geom.normal.v[0];
@@ -156,7 +160,8 @@ public class DxJointContact extends DxJoint implements DContactJoint
 		//normal.v[3] = 0; // @@@ hmmm
 
 		// c1,c2 = contact points with respect to body PORs
-		DVector3 c1 = new DVector3(), c2 = new DVector3(); //{0,0,0};
+		DVector3 c1 = tmp.v2, c2 = tmp.v3; //{0,0,0};
+		c2.setZero();
 //		c1.v[0] = contact.geom.pos.v[0] - node[0].body._posr.pos.v[0];
 //		c1.v[1] = contact.geom.pos.v[1] - node[0].body._posr.pos.v[1];
 //		c1.v[2] = contact.geom.pos.v[2] - node[0].body._posr.pos.v[2];
@@ -238,7 +243,7 @@ public class DxJointContact extends DxJoint implements DContactJoint
 		    return;
 
 		// now do jacobian for tangential forces
-		DVector3 t1 = new DVector3(), t2 = new DVector3(); // two vectors tangential to normal
+		DVector3 t1 = tmp.v4, t2 = tmp.v5; // two vectors tangential to normal
 
 		if (( contact.surface.mode & dContactFDir1) != 0)   // use fdir1 ?
 		{
@@ -342,46 +347,43 @@ public class DxJointContact extends DxJoint implements DContactJoint
 
 	    // Handle rolling/spinning friction
 	    if ((contact.surface.mode&OdeConstants.dContactRolling)!=0) {
-	        double[] rho = new double[3];
-	        DVector3[] ax = new DVector3[3];
-	        int[] approx = new int[3];
-	  
 	        // Get the coefficients
-	        rho[0] = contact.surface.rho;
-	        if ((contact.surface.mode&OdeConstants.dContactAxisDep)!=0) {
-	            rho[1] = contact.surface.rho2;
-	            rho[2] = contact.surface.rhoN;
-	        } else {
-	            rho[1] = rho[0];
-	            rho[2] = rho[0];
-	        }
-	        ax[0] = t1; // Rolling around t1 creates movement parallel to t2
-	        ax[1] = t2;
-	        ax[2] = normal; // Spinning axis
+	        final double rho = contact.surface.rho;
+	        final boolean axisDep = (contact.surface.mode&OdeConstants.dContactAxisDep)!=0;
 	        // Should we use proportional force?
-	        approx[0] = contact.surface.mode & dContactApprox1_1;
-	        approx[1] = contact.surface.mode & dContactApprox1_2;
-	        approx[2] = contact.surface.mode & dContactApprox1_N;
-
-	        for (int ii=0;ii<3;++ii) {
-	            if (rho[ii]>0) {
-	              // Set the angular axis
-	              OdeMath.dCopyVector3(info._J, info.J1ap+rollRow*s, ax[ii]);
-	              if ( b1!=null ) {
-	                OdeMath.dCopyNegatedVector3(info._J, info.J2ap+rollRow*s, ax[ii]);
-	              }
-	              // Set the lcp limits
-	              info.setLo( rollRow, -rho[ii]);
-	              info.setHi( rollRow, rho[ii]);
-	              // Make limits proportional to normal force
-	              if (approx[ii]!=0) info.setFindex( rollRow, 0);
-	              rollRow++;
-	            }
-	        }
+	        // Rolling around t1 creates movement parallel to t2
+	        rollRow = setRollingRow(info, rollRow, b1, t1, rho, 
+	        		contact.surface.mode & dContactApprox1_1);
+	        rollRow = setRollingRow(info, rollRow, b1, t2, axisDep ? contact.surface.rho2 : rho, 
+	        		contact.surface.mode & dContactApprox1_2);
+	        // Spinning axis
+	        rollRow = setRollingRow(info, rollRow, b1, normal, axisDep ? contact.surface.rhoN : rho, 
+	        		contact.surface.mode & dContactApprox1_N);
 		}
 	}
 
 
+	private static int setRollingRow(DxJoint.Info2Descr info, int rollRow, DxBody b1, 
+			DVector3 ax, double rho, int approx)
+	{
+		if (rho>0) {
+			int s = info.rowskip();
+			// Set the angular axis
+			OdeMath.dCopyVector3(info._J, info.J1ap+rollRow*s, ax);
+			if ( b1!=null ) {
+				OdeMath.dCopyNegatedVector3(info._J, info.J2ap+rollRow*s, ax);
+			}
+			// Set the lcp limits
+			info.setLo( rollRow, -rho);
+			info.setHi( rollRow, rho);
+			// Make limits proportional to normal force
+			if (approx!=0) info.setFindex( rollRow, 0);
+			rollRow++;
+		}
+		return rollRow;
+	}
+
+
 	@Override
 	public double getParam(PARAM_N parameter) {
 		throw new UnsupportedOperationException();
@@ -107,7 +107,7 @@ public class DxJointFixed extends DxJoint implements DFixedJoint {
 
 	    DxBody b0 = node[0].body, b1 = node[1].body;
 
-	    DVector3 ofs = new DVector3();
+	    DVector3 ofs = temporaries().v1;
 		dMultiply0_331 ( ofs, b0.posr().R(), offset );
 		if ( b1 != null )
 		{
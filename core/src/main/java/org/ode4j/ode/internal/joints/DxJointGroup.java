@@ -24,10 +24,19 @@
  *************************************************************************/
 package org.ode4j.ode.internal.joints;
 
+import static org.ode4j.ode.internal.Common.dAASSERT;
+
 import java.util.ArrayList;
 
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContact.DSurfaceParameters;
+import org.ode4j.ode.DContactBatch;
+import org.ode4j.ode.DContactBuffer;
 import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DWorld;
 import org.ode4j.ode.internal.DBase;
+import org.ode4j.ode.internal.DxWorld;
 
 /** 
  * joint group. NOTE: any joints in the group that have their world destroyed
@@ -41,6 +50,9 @@ public class DxJointGroup extends DBase implements DJointGroup
     
 	//TODO use LinkedList?
 	private final ArrayList<DxJoint> _stack = new ArrayList<DxJoint>(); 
+	// contacts of the joints created by createContactJoints(), recycled by empty()
+	private final DContactBuffer _contactPool = new DContactBuffer(0);
+	private int _contactPoolUsed = 0;
 
 	
 //    template<class T>
@@ -155,9 +167,36 @@ public class DxJointGroup extends DBase implements DJointGroup
         	j.FinalizeAndDestroyJointInstance(false);
         }
         _stack.clear();
+        _contactPoolUsed = 0;
     }
 
 
+    int dJointGroupCreateContactJoints (DxWorld world, DContactBatch contacts, 
+    		DSurfaceParameters surface)
+    {
+    	dAASSERT (world, contacts, surface);
+    	final int n = contacts.size();
+    	_contactPool.ensureCapacity(_contactPoolUsed + n);
+    	_stack.ensureCapacity(_stack.size() + n);
+    	int created = 0;
+    	for (int i = 0; i < n; i++) {
+    		DBody b1 = contacts.getGeom1(i).getBody();
+    		DBody b2 = contacts.getGeom2(i).getBody();
+    		if (b1 == null && b2 == null) {
+    			continue;
+    		}
+    		DContact c = _contactPool.get(_contactPoolUsed++);
+    		contacts.get(i, c.geom);
+    		c.surface.set(surface);
+    		DxJointContact j = new DxJointContact(world);
+    		j.contact = c;
+    		addJoint(j);
+    		j.dJointAttach(b1, b2);
+    		created++;
+    	}
+    	return created;
+    }
+
     void addJoint(DxJoint j) {
 //		stack.add(j);
 //		num++;
@@ -178,6 +217,11 @@ public class DxJointGroup extends DBase implements DJointGroup
 	{ empty(); }
 
 
+	@Override
+	public int createContactJoints(DWorld world, DContactBatch contacts, 
+			DSurfaceParameters surface) {
+		return dJointGroupCreateContactJoints((DxWorld) world, contacts, surface);
+	}
 	@Override
 	public void destroy() {
 		dJointGroupDestroy();
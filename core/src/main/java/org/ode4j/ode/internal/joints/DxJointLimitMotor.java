@@ -53,6 +53,9 @@ public class DxJointLimitMotor {
 	// variables used between getInfo1() and getInfo2()
 	public int limit;          // 0=free, 1=at lo limit, 2=at hi limit
 	double limit_err;    // if at limit, amount over limit
+	// scratch vectors of addLimot(), so that stepping does not allocate
+	private final DVector3 ltdScratch = new DVector3();
+	private final DVector3 cScratch = new DVector3();
 
 	//****************************************************************************
 	// dxJointLimitMotor
@@ -224,11 +227,12 @@ public class DxJointLimitMotor {
 			// extra tiny bit of computation) in doing this adjustment. note that we
 			// only need to do this if the constraint connects two bodies.
 
-			DVector3 ltd = new DVector3(0, 0, 0);//{0,0,0}); // Linear Torque Decoupling vector (a torque)
+			DVector3 ltd = ltdScratch;//{0,0,0}); // Linear Torque Decoupling vector (a torque)
+			ltd.setZero();
 			if ( (!rotational) && (b1 != null))
 			{
 				DxBody b0 = joint.node[0].body;
-				DVector3 c = new DVector3();
+				DVector3 c = cScratch;
 //				c.v[0] = 0.5 * ( joint.node[1].body._posr.pos.v[0] - joint.node[0].body._posr.pos.v[0] );
 //				c.v[1] = 0.5 * ( joint.node[1].body._posr.pos.v[1] - joint.node[0].body._posr.pos.v[1] );
 //				c.v[2] = 0.5 * ( joint.node[1].body._posr.pos.v[2] - joint.node[0].body._posr.pos.v[2] );
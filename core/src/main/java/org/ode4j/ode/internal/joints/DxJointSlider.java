@@ -72,7 +72,8 @@ public class DxJointSlider extends DxJoint implements DSliderJoint
 	public double dJointGetSliderPosition ( )
 	{
 		// get axis1 in global coordinates
-		DVector3 ax1 = new DVector3(), q = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DVector3 ax1 = tmp.v1, q = tmp.v2;
 		dMultiply0_331 ( ax1, node[0].body.posr().R(), axis1 );
 
 		if ( node[1].body!= null )
@@ -184,7 +185,8 @@ public class DxJointSlider extends DxJoint implements DSliderJoint
 		DVector3C pos1, pos2;
 		DMatrix3C R1;
 		DMatrix3C R2;
-		DVector3 c = new DVector3();
+		final dxJointTemporaries tmp = temporaries();
+		DVector3 c = tmp.v1;
 		pos1 = node[0].body.posr().pos();
 		R1 = node[0].body.posr().R();
 		if ( node[1].body!= null )
@@ -207,25 +209,25 @@ public class DxJointSlider extends DxJoint implements DSliderJoint
 		// so that sliding along the slider axis is disregarded. for symmetry we
 		// also substitute (w1+w2)/2 for w1, as w1 is supposed to equal w2.
 
-		DVector3 ax1 = new DVector3(); // joint axis in global coordinates (unit length)
-		DVector3 p = new DVector3(), q = new DVector3(); // plane space of ax1
+		DVector3 ax1 = tmp.v2; // joint axis in global coordinates (unit length)
+		DVector3 p = tmp.v3, q = tmp.v4; // plane space of ax1
 		dMultiply0_331 ( ax1, R1, axis1 );
 		dPlaneSpace ( ax1, p, q );
 		if ( node[1].body!= null )
 		{
-			DVector3 tmp = new DVector3();
+			DVector3 cp = tmp.v5;
 			//dCalcVectorCross3 ( tmp, =  0.5 * , c, p );
-			dCalcVectorCross3 ( tmp, c, p );
-			tmp.scale(0.5);
+			dCalcVectorCross3 ( cp, c, p );
+			cp.scale(0.5);
 
-			for ( i = 0; i < 3; i++ ) info._J[info.J1ap+s3+i] = tmp.get(i);
-			for ( i = 0; i < 3; i++ ) info._J[info.J2ap+s3+i] = tmp.get(i);
+			for ( i = 0; i < 3; i++ ) info._J[info.J1ap+s3+i] = cp.get(i);
+			for ( i = 0; i < 3; i++ ) info._J[info.J2ap+s3+i] = cp.get(i);
 			//dCalcVectorCross3 ( tmp, = 0.5 * , c, q );
-			dCalcVectorCross3 ( tmp, c, p );
-			tmp.scale(0.5);
+			dCalcVectorCross3 ( cp, c, p );
+			cp.scale(0.5);
 
-			for ( i = 0; i < 3; i++ ) info._J[info.J1ap+s4+i] = tmp.get(i);
-			for ( i = 0; i < 3; i++ ) info._J[info.J2ap+s4+i] = tmp.get(i);
+			for ( i = 0; i < 3; i++ ) info._J[info.J1ap+s4+i] = cp.get(i);
+			for ( i = 0; i < 3; i++ ) info._J[info.J2ap+s4+i] = cp.get(i);
 			for ( i = 0; i < 3; i++ ) info._J[info.J2lp+s3+i] = -p.get(i);
 			for ( i = 0; i < 3; i++ ) info._J[info.J2lp+s4+i] = -q.get(i);
 		}
@@ -237,7 +239,7 @@ public class DxJointSlider extends DxJoint implements DSliderJoint
 		double k = worldFPS * worldERP;
 		if ( node[1].body != null)
 		{
-			DVector3 ofs = new DVector3();  // offset point in global coordinates
+			DVector3 ofs = tmp.v5;  // offset point in global coordinates
 			dMultiply0_331 ( ofs, R2, offset );
 			//for ( i = 0; i < 3; i++ ) c.v[i] += ofs.v[i];
 			c.add(ofs);
@@ -246,7 +248,7 @@ public class DxJointSlider extends DxJoint implements DSliderJoint
 		}
 		else
 		{
-			DVector3 ofs = new DVector3();  // offset point in global coordinates
+			DVector3 ofs = tmp.v5;  // offset point in global coordinates
 			//for ( i = 0; i < 3; i++ ) ofs.v[i] = offset.v[i] - pos1[i];
 			ofs.eqDiff(offset, pos1);
 			info.setC(3, k * dCalcVectorDot3 ( p, ofs ) );
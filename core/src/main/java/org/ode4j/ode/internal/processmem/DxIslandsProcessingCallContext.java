@@ -24,6 +24,7 @@
  *************************************************************************/
 package org.ode4j.ode.internal.processmem;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ode4j.ode.internal.Common;
@@ -32,7 +33,6 @@ import org.ode4j.ode.internal.DxWorld;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper_fn_t;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.threading.ThreadingUtils;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
@@ -40,20 +40,69 @@ import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 
 public class DxIslandsProcessingCallContext implements CallContext {
 
-	public DxIslandsProcessingCallContext(DxWorld world, DxWorldProcessIslandsInfo islandsInfo, 
+	/**
+	 * The context is kept by the world and initialized for every step.
+	 */
+	public void Initialize(DxWorld world, DxWorldProcessIslandsInfo islandsInfo, 
 			double stepSize, dstepper_fn_t stepper) {
 		m_world = world;
 		m_islandsInfo = islandsInfo;
 		m_stepSize = stepSize;
 		m_stepper = stepper;
 		m_groupReleasee = null;
-		//m_islandToProcessStorage = 0;
+		m_islandToProcessStorage.set(0);
 		m_stepperAllowedThreads = 0;
+		m_islandOrder = null;
 	}
 
 	public void AssignGroupReleasee(DCallReleasee groupReleasee) { m_groupReleasee = groupReleasee; }
 	public void SetStepperAllowedThreads(int allowedThreadsLimit) { m_stepperAllowedThreads = allowedThreadsLimit; }
 
+	/**
+	 * Makes the island search hand out the islands in the order of decreasing
+	 * size (bodies plus joints) instead of the order they were found in.
+	 * Starting the largest islands first keeps a single large island from
+	 * being picked up last and stepped while all the other threads are idle.
+	 */
+	public void AssignLargestFirstIslandOrder()
+	{
+		final DxWorldProcessIslandsInfo islandsInfo = m_islandsInfo;
+		int[] islandSizes = islandsInfo.GetIslandSizes();
+		final int islandSizesP = islandsInfo.GetIslandSizesP();
+		final int islandsCount = islandsInfo.GetIslandsCount();
+
+		if (m_islandOrderBuffer.length < islandsCount) {
+			m_islandOrderBuffer = new int[islandsCount];
+			m_islandBodiesStarts = new int[islandsCount];
+			m_islandJointsStarts = new int[islandsCount];
+			m_sortKeys = new long[islandsCount];
+		}
+		int[] islandBodiesStarts = m_islandBodiesStarts;
+		int[] islandJointsStarts = m_islandJointsStarts;
+		long[] sortKeys = m_sortKeys;
+		int bodiesStart = 0, jointsStart = 0;
+
+		for (int islandIndex = 0; islandIndex != islandsCount; ++islandIndex) {
+			int bcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
+			int jcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
+			islandBodiesStarts[islandIndex] = bodiesStart;
+			islandJointsStarts[islandIndex] = jointsStart;
+			bodiesStart += bcount;
+			jointsStart += jcount;
+			// Ascending sort of the keys, equal sizes keep their original order when read backwards
+			sortKeys[islandIndex] = ((long)(bcount + jcount) << 32) | (Integer.MAX_VALUE - islandIndex);
+		}
+
+		Arrays.sort(sortKeys, 0, islandsCount);
+
+		int[] islandOrder = m_islandOrderBuffer;
+		for (int i = 0; i != islandsCount; ++i) {
+			islandOrder[i] = Integer.MAX_VALUE - (int)sortKeys[islandsCount - 1 - i];
+		}
+
+		m_islandOrder = islandOrder;
+	}
+
 //    static int ThreadedProcessGroup_Callback(void callContext, 
 //    		dcallindex_t callInstanceIndex, DCallReleasee callThisReleasee);
 //    boolean ThreadedProcessGroup();
@@ -72,14 +121,21 @@ public class DxIslandsProcessingCallContext implements CallContext {
 //
 //    int ObtainNextIslandToBeProcessed(int islandsCount);
 
-    final DxWorld                   m_world;
-    final DxWorldProcessIslandsInfo m_islandsInfo;
-    final double                    m_stepSize;
-    final dstepper_fn_t             m_stepper;
+    DxWorld                   m_world;
+    DxWorldProcessIslandsInfo m_islandsInfo;
+    double                    m_stepSize;
+    dstepper_fn_t             m_stepper;
     DCallReleasee                 m_groupReleasee;
     //volatile int                  m_islandToProcessStorage;
     final AtomicInteger             m_islandToProcessStorage = new AtomicInteger();
     int                        m_stepperAllowedThreads;
+    // Islands in processing order with their offsets, null for the original order
+    int[]                         m_islandOrder;
+    int[]                         m_islandBodiesStarts = new int[0];
+    int[]                         m_islandJointsStarts = new int[0];
+    // Buffers of AssignLargestFirstIslandOrder(), kept for the next steps
+    private int[]                 m_islandOrderBuffer = new int[0];
+    private long[]                m_sortKeys = new long[0];
 
     
     public static dThreadedCallFunction ThreadedProcessGroup_Callback = new dThreadedCallFunction() {
@@ -122,12 +178,15 @@ public class DxIslandsProcessingCallContext implements CallContext {
         DxBody[] islandBodiesStart = islandsInfo.GetBodiesArray();
         DxJoint[] islandJointsStart = islandsInfo.GetJointsArray();
         
-        DxSingleIslandCallContext stepperCallContext = null;//TZ (DxSingleIslandCallContext)stepperArena.AllocateBlock(sizeof(dxSingleIslandCallContext));
+        DxSingleIslandCallContext stepperCallContext = stepperArena.GetIslandCallContext();//TZ (DxSingleIslandCallContext)stepperArena.AllocateBlock(sizeof(dxSingleIslandCallContext));
+        if (stepperCallContext == null) {
+        	stepperCallContext = new DxSingleIslandCallContext();
+        	stepperArena.SetIslandCallContext(stepperCallContext);
+        }
         // Save area state after context allocation to be restored for the stepper
-        BlockPointer arenaState = stepperArena.SaveState();
+        int arenaState = stepperArena.SaveState();
         //new(stepperCallContext) DxSingleIslandCallContext(this, stepperArena, arenaState, islandBodiesStart, islandJointsStart);
-        //stepperCallContext = new DxSingleIslandCallContext(this, stepperArena, arenaState, islandBodiesStart, islandJointsStart);
-        stepperCallContext = new DxSingleIslandCallContext(this, stepperArena, arenaState, 
+        stepperCallContext.Initialize(this, stepperArena, arenaState, 
         		islandBodiesStart, 
     			islandJointsStart);
         
@@ -156,11 +215,25 @@ public class DxIslandsProcessingCallContext implements CallContext {
 
         final DxWorldProcessIslandsInfo islandsInfo = m_islandsInfo;
         int[] islandSizes = islandsInfo.GetIslandSizes();
+        final int islandSizesP = islandsInfo.GetIslandSizesP();
 
         final int islandsCount = islandsInfo.GetIslandsCount();
         int islandToProcess = ObtainNextIslandToBeProcessed(islandsCount);
 
-        if (islandToProcess != islandsCount) {
+        if (islandToProcess == islandsCount) {
+            finalizeJob = true;
+        }
+        else if (m_islandOrder != null) {
+            int islandIndex = m_islandOrder[islandToProcess];
+            int bcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
+            int jcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
+
+            ProcessSelectedIsland(stepperCallContext, 
+            		stepperCallContext.GetSelectedIslandBodiesA(), m_islandBodiesStarts[islandIndex], 
+            		stepperCallContext.GetSelectedIslandJointsA(), m_islandJointsStarts[islandIndex], 
+            		bcount, jcount, islandIndex, islandIndex + 1);
+        }
+        else {
             // First time, the counts are zeros and on next passes, adding counts will skip island that has just been processed by stepper
             DxBody[] islandBodiesStartA = stepperCallContext.GetSelectedIslandBodiesA();
             int islandBodiesStartP = stepperCallContext.GetSelectedIslandBodiesEndP();
@@ -169,33 +242,14 @@ public class DxIslandsProcessingCallContext implements CallContext {
             int islandIndex = stepperCallContext.m_islandIndex;
 
             for (; ; ++islandIndex) {
-                int bcount = islandSizes[islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
-                int jcount = islandSizes[islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
+                int bcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
+                int jcount = islandSizes[islandSizesP + islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
 
                 if (islandIndex == islandToProcess) {
-                    // Store selected island details
-                    stepperCallContext.AssignIslandSelection(
+                    // Next search continues after the selected island
+                    ProcessSelectedIsland(stepperCallContext, 
                     		islandBodiesStartA, islandBodiesStartP, 
-                    		islandJointsStartA, islandJointsStartP, bcount, jcount);
-
-                    // Store next island index to continue search from
-                    ++islandIndex;
-                    stepperCallContext.AssignIslandSearchProgress(islandIndex);
-
-                    // Restore saved stepper memory arena position
-                    stepperCallContext.RestoreSavedMemArenaStateForStepper();
-
-                    Ref<DCallReleasee> nextSearchReleasee = new Ref<DCallReleasee>();
-
-                    // Summary fault flag may be omitted as any failures will automatically propagate to dependent releasee (i.e. to m_groupReleasee)
-                    m_world.threading().PostThreadedCallForUnawareReleasee(null, nextSearchReleasee, 1, m_groupReleasee, null, 
-                        DxIslandsProcessingCallContext.ThreadedProcessIslandSearch_Callback, stepperCallContext, 0, "World Islands Stepping Selection");
-
-                    stepperCallContext.AssignStepperCallFinalReleasee(nextSearchReleasee.get());
-
-                    m_world.threading().PostThreadedCall(null, null, 0, nextSearchReleasee.get(), null, 
-                        DxIslandsProcessingCallContext.ThreadedProcessIslandStepper_Callback, stepperCallContext, 0, "Island Stepping Job Start");
-
+                    		islandJointsStartA, islandJointsStartP, bcount, jcount, islandIndex, islandIndex + 1);
                     break;
                 }
 
@@ -203,9 +257,6 @@ public class DxIslandsProcessingCallContext implements CallContext {
                 islandJointsStartP += jcount;
             }
         }
-        else {
-            finalizeJob = true;
-        }
 
         if (finalizeJob) {
             DxWorldProcessMemArena stepperArena = stepperCallContext.m_stepperArena;
@@ -217,6 +268,33 @@ public class DxIslandsProcessingCallContext implements CallContext {
         }
     }
 
+    private void ProcessSelectedIsland(DxSingleIslandCallContext stepperCallContext, 
+    		DxBody[] islandBodiesStartA, int islandBodiesStartP, 
+    		DxJoint[] islandJointsStartA, int islandJointsStartP, 
+    		int bcount, int jcount, int islandIndex, int nextIslandIndex)
+    {
+        // Store selected island details
+        stepperCallContext.AssignIslandSelection(
+        		islandBodiesStartA, islandBodiesStartP, 
+        		islandJointsStartA, islandJointsStartP, bcount, jcount, islandIndex);
+
+        stepperCallContext.AssignIslandSearchProgress(nextIslandIndex);
+
+        // Restore saved stepper memory arena position
+        stepperCallContext.RestoreSavedMemArenaStateForStepper();
+
+        Ref<DCallReleasee> nextSearchReleasee = stepperCallContext.m_nextSearchReleasee;
+
+        // Summary fault flag may be omitted as any failures will automatically propagate to dependent releasee (i.e. to m_groupReleasee)
+        m_world.threading().PostThreadedCallForUnawareReleasee(null, nextSearchReleasee, 1, m_groupReleasee, null, 
+            DxIslandsProcessingCallContext.ThreadedProcessIslandSearch_Callback, stepperCallContext, 0, "World Islands Stepping Selection");
+
+        stepperCallContext.AssignStepperCallFinalReleasee(nextSearchReleasee.get());
+
+        m_world.threading().PostThreadedCall(null, null, 0, nextSearchReleasee.get(), null, 
+            DxIslandsProcessingCallContext.ThreadedProcessIslandStepper_Callback, stepperCallContext, 0, "Island Stepping Job Start");
+    }
+
     public static dThreadedCallFunction ThreadedProcessIslandStepper_Callback = new dThreadedCallFunction() {
 		@Override
 		public boolean run(CallContext callContext, 
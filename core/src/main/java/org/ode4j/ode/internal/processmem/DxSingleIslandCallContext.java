@@ -25,20 +25,25 @@
 package org.ode4j.ode.internal.processmem;
 
 import org.ode4j.ode.internal.DxBody;
+import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
 
 public class DxSingleIslandCallContext implements CallContext {
-	DxSingleIslandCallContext(DxIslandsProcessingCallContext islandsProcessingContext, 
-			DxWorldProcessMemArena stepperArena, DxUtil.BlockPointer arenaInitialState, 
+	/**
+	 * The context may be kept with the stepper arena and initialized again 
+	 * for the following steps.
+	 */
+	void Initialize(DxIslandsProcessingCallContext islandsProcessingContext, 
+			DxWorldProcessMemArena stepperArena, int arenaInitialState, 
 			DxBody[] islandBodiesStart, 
 			DxJoint[] islandJointsStart) {
 		m_islandsProcessingContext = islandsProcessingContext;
 		m_islandIndex = 0; 
 		m_stepperArena = stepperArena;
 		m_arenaInitialState = arenaInitialState; 
-		m_stepperCallContext = new DxStepperProcessingCallContext(islandsProcessingContext.m_world, 
+		m_stepperCallContext.Initialize(islandsProcessingContext.m_world, 
 				islandsProcessingContext.m_stepSize, 
 				islandsProcessingContext.m_stepperAllowedThreads, 
 				stepperArena, 
@@ -57,11 +62,11 @@ public class DxSingleIslandCallContext implements CallContext {
 
 	void AssignIslandSelection(DxBody[] islandBodiesStartA, int islandBodiesStartP, 
 			DxJoint[] islandJointsStartA, int islandJointsStartP, 
-			int islandBodiesCount, int islandJointsCount)
+			int islandBodiesCount, int islandJointsCount, int islandIndex)
 	{
 		m_stepperCallContext.AssignIslandSelection(islandBodiesStartA, islandBodiesStartP, 
 				islandJointsStartA, islandJointsStartP, 
-				islandBodiesCount, islandJointsCount);
+				islandBodiesCount, islandJointsCount, islandIndex);
 	}
 
 	DxBody[] GetSelectedIslandBodiesA() { 
@@ -90,8 +95,9 @@ public class DxSingleIslandCallContext implements CallContext {
 	DxIslandsProcessingCallContext  m_islandsProcessingContext;
 	int                          	m_islandIndex;
 	DxWorldProcessMemArena          m_stepperArena;
-	DxUtil.BlockPointer            	m_arenaInitialState;
-	DxStepperProcessingCallContext  m_stepperCallContext;
+	int                            	m_arenaInitialState;
+	final DxStepperProcessingCallContext  m_stepperCallContext = new DxStepperProcessingCallContext();
+	final Ref<DCallReleasee>        m_nextSearchReleasee = new Ref<DCallReleasee>();
 
 
 }
@@ -66,9 +66,12 @@ public class DxStepWorkingMemory {
     //public:
     public void CleanupMemory()
     {
-        //delete 
-        m_ppcProcessingContext.DESTRUCTOR();
-        m_ppcProcessingContext = null;
+        if (m_ppcProcessingContext != null)
+        {
+            //delete 
+            m_ppcProcessingContext.DESTRUCTOR();
+            m_ppcProcessingContext = null;
+        }
     }
 
     public void CleanupWorldReferences(DxWorld world)
@@ -42,7 +42,7 @@ public final class DxStepperProcessingCallContext {
 
 	
 	
-	DxStepperProcessingCallContext(DxWorld world, double stepSize, int stepperAllowedThreads, 
+	void Initialize(DxWorld world, double stepSize, int stepperAllowedThreads, 
 			DxWorldProcessMemArena stepperArena, 
 			DxBody[] islandBodiesStart,
 			DxJoint[] islandJointsStart) {
@@ -56,12 +56,13 @@ public final class DxStepperProcessingCallContext {
 		m_islandJointsStartOfs = 0;
 		m_islandBodiesCount = 0;
 		m_islandJointsCount = 0;
+		m_islandIndex = 0;
 		m_stepperAllowedThreads = stepperAllowedThreads;
 	}
 
 	void AssignIslandSelection(DxBody[] islandBodiesStartA, int islandBodiesStartOfs,
 			DxJoint[] islandJointsStartA, int islandJointsStartOfs,
-			int islandBodiesCount, int islandJointsCount)
+			int islandBodiesCount, int islandJointsCount, int islandIndex)
 	{
 		m_islandBodiesStartA = islandBodiesStartA;
 		m_islandBodiesStartOfs = islandBodiesStartOfs;
@@ -69,6 +70,7 @@ public final class DxStepperProcessingCallContext {
 		m_islandJointsStartOfs = islandJointsStartOfs;
 		m_islandBodiesCount = islandBodiesCount;
 		m_islandJointsCount = islandJointsCount;
+		m_islandIndex = islandIndex;
 	}
 
 	int/*DxBody[]*/ GetSelectedIslandBodiesEnd() { return m_islandBodiesStartOfs + m_islandBodiesCount; }
@@ -89,6 +91,7 @@ public final class DxStepperProcessingCallContext {
 	private int  		       m_islandJointsStartOfs;
 	private int                m_islandBodiesCount;
 	private int                m_islandJointsCount;
+	private int                m_islandIndex;
 	private int                m_stepperAllowedThreads;
 	
 	public DxWorldProcessMemArena m_stepperArena() {
@@ -107,6 +110,14 @@ public final class DxStepperProcessingCallContext {
 		return m_islandJointsCount;
 	}
 
+	/**
+	 * @return the index of the island in the order in which the islands 
+	 * have been found, independent of the order in which they are stepped
+	 */
+	public int m_islandIndex() {
+		return m_islandIndex;
+	}
+
 	public int m_stepperAllowedThreads() {
 		return m_stepperAllowedThreads;
 	}
@@ -73,6 +73,10 @@ public class DxUtil {
         return sizeof(o.getClass());
     }
     
+    /** Element sizes used by the memory requirement estimates. */
+    public static final int SIZEOF_DREAL = 8;
+    public static final int SIZEOF_INT = 4;
+
     static final int EFFICIENT_ALIGNMENT = 16;
     
 //  #define dEFFICIENT_SIZE(x) (((x)+(EFFICIENT_ALIGNMENT-1)) & ~((size_t)(EFFICIENT_ALIGNMENT-1)))
@@ -144,6 +148,10 @@ public class DxUtil {
             }
             return (DxWorldProcessMemArena) o;
         }
+        /** Unlike asDxWorldProcessMemArena() this does not create an arena for NULL. */
+        DxWorldProcessMemArena asDxWorldProcessMemArenaOrNull() {
+            return (DxWorldProcessMemArena) o;
+        }
         void setTo(DxWorldProcessMemArena x) {
         	o = x;
         }
@@ -29,7 +29,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.ode4j.ode.internal.Common;
 import org.ode4j.ode.internal.DxWorld;
 import org.ode4j.ode.internal.processmem.DxWorldProcessIslandsInfo.dmemestimate_fn_t;
-import org.ode4j.ode.threading.DxThreadingBase.DxMutexGroupLockHelper;
+import org.ode4j.ode.threading.DxThreadingBase;
 import org.ode4j.ode.threading.ThreadingUtils;
 import org.ode4j.ode.threading.Threading_H.DCallWait;
 import org.ode4j.ode.threading.Threading_H.DMutexGroup;
@@ -226,15 +226,16 @@ public class DxWorldProcessContext {
 
             // Extraction must be locked so that other thread does not "steal" head arena,
             // use it and then reinsert back with a different "next"
-            DxMutexGroupLockHelper lhLockHelper = 
-            		new DxMutexGroupLockHelper(m_pswObjectsAllocWorld.threading(), 
-            				m_pmgStepperMutexGroup, 
-            				dxProcessContextMutex.dxPCM_STEPPER_ARENA_OBTAIN);
+            // (the lock helper is not used to avoid allocating it in every step)
+            DxThreadingBase threading = m_pswObjectsAllocWorld.threading();
+            threading.LockMutexGroupMutex(m_pmgStepperMutexGroup, 
+            		dxProcessContextMutex.dxPCM_STEPPER_ARENA_OBTAIN);
 
             DxWorldProcessMemArena pmaArenasHead = GetStepperArenasHead(); // Arenas head must be re-extracted after mutex has been locked
             boolean bExchangeResult = pmaArenasHead != null && TryExtractingStepperArenasHead(pmaArenasHead);
 
-            lhLockHelper.UnlockMutex();
+            threading.UnlockMutexGroupMutex(m_pmgStepperMutexGroup, 
+            		dxProcessContextMutex.dxPCM_STEPPER_ARENA_OBTAIN);
 
             if (bExchangeResult)
             {
@@ -357,6 +358,15 @@ public class DxWorldProcessContext {
     	return bResult;
     }
 
+    void SetStepperArenasRecycling(boolean recycle)
+    {
+    	for (DxWorldProcessMemArena pmaArena = GetStepperArenasList(); pmaArena != null; 
+    			pmaArena = pmaArena.GetNextMemArena())
+    	{
+    		pmaArena.SetRecycling(recycle);
+    	}
+    }
+
     void FreeArenasList(DxWorldProcessMemArena pmaExistingArenas)
     {
 //    	while (pmaExistingArenas != null)
@@ -453,6 +463,8 @@ public class DxWorldProcessContext {
     			break;
     		}
     		Common.dIASSERT(islandsArena.IsStructureValid());
+    		final boolean recycleArenas = world.dWorldGetZeroGarbageStepping();
+    		islandsArena.SetRecycling(recycleArenas);
 
     		int stepperReq = 
     				DxWorldProcessIslandsInfo.BuildIslandsAndEstimateStepperMemoryRequirements(
@@ -468,6 +480,7 @@ public class DxWorldProcessContext {
     		{
     			break;
     		}
+    		context.SetStepperArenasRecycling(recycleArenas);
 
     		result = true;
     	}
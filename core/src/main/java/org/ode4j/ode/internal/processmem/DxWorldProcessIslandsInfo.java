@@ -29,15 +29,16 @@ import org.ode4j.ode.internal.DxBody;
 import org.ode4j.ode.internal.DxWorld;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.joints.DxJointNode;
-import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import static org.ode4j.ode.internal.ErrorHandler.*;
 
 public class DxWorldProcessIslandsInfo {
 
-    void AssignInfo(int islandcount, int[] islandsizes, DxBody[] bodies, DxJoint[] joints)
+    void AssignInfo(int islandcount, int[] islandsizes, int islandsizesP, 
+            DxBody[] bodies, DxJoint[] joints)
     {
         m_IslandCount = islandcount;
         m_pIslandSizes = islandsizes;
+        m_pIslandSizesP = islandsizesP;
         m_pBodies = bodies;
         m_pBodiesP = 0;
         m_pJoints = joints;
@@ -46,6 +47,7 @@ public class DxWorldProcessIslandsInfo {
 
     public int GetIslandsCount() { return m_IslandCount; }
     public int[] GetIslandSizes() { return m_pIslandSizes; }
+    public int GetIslandSizesP() { return m_pIslandSizesP; }
     public DxBody[] GetBodiesArray() { return m_pBodies; }
     public int GetBodiesArrayP() { return m_pBodiesP; }
     public DxJoint[] GetJointsArray() { return m_pJoints; }
@@ -54,6 +56,7 @@ public class DxWorldProcessIslandsInfo {
     //private:
     private int m_IslandCount;
     private int[] m_pIslandSizes;
+    private int m_pIslandSizesP;
     private DxBody[] m_pBodies;
     private int m_pBodiesP;
     private DxJoint[] m_pJoints;
@@ -89,14 +92,15 @@ public class DxWorldProcessIslandsInfo {
 
         int nb = world.nb, nj = world.nj;
         // Make array for island body/joint counts
-        int[] islandsizes = memarena.AllocateArrayInt(2 * nb);
+        int[] islandsizes = memarena.AllocateSlabInt(2 * nb);
+        final int islandsizesP = memarena.SlabOffset();
         int sizescurrP;
 
         // make arrays for body and joint lists (for a single island) to go into
         DxBody[] body = memarena.AllocateArrayDxBody(nb);
         DxJoint[] joint = memarena.AllocateArrayDxJoint(nj);
 
-        BlockPointer stackstate = memarena.BEGIN_STATE_SAVE();
+        int stackstate = memarena.BEGIN_STATE_SAVE();
         {
             // allocate a stack of unvisited bodies in the island. the maximum size of
             // the stack can be the lesser of the number of bodies or joints, because
@@ -111,7 +115,7 @@ public class DxWorldProcessIslandsInfo {
                 for (DxJoint j=world.firstjoint.get(); j!=null; j=(DxJoint)j.getNext()) j.tag = 0;
             }
 
-            sizescurrP = 0;//islandsizes;
+            sizescurrP = islandsizesP;//islandsizes;
             int bodystart = 0;//body;
             int jointstart = 0;//joint;
             for (DxBody bb=world.firstbody.get(); bb!=null; bb=(DxBody) bb.getNext()) {
@@ -217,8 +221,8 @@ public class DxWorldProcessIslandsInfo {
         }//# endif
 
         //int islandcount = ((size_t)(sizescurr - islandsizes) / sizeelements);
-        int islandcount = sizescurrP / dxISE__MAX;
-        islandsinfo.AssignInfo(islandcount, islandsizes, body, joint);
+        int islandcount = (sizescurrP - islandsizesP) / dxISE__MAX;
+        islandsinfo.AssignInfo(islandcount, islandsizes, islandsizesP, body, joint);
 
         return maxreq;
     }
@@ -24,6 +24,8 @@
  *************************************************************************/
 package org.ode4j.ode.internal.processmem;
 
+import java.util.Arrays;
+
 import org.ode4j.ode.internal.Common;
 import org.ode4j.ode.internal.DxBody;
 import org.ode4j.ode.internal.joints.DxJoint;
@@ -69,19 +71,26 @@ public final class DxWorldProcessMemArena {
         return m_pAllocEnd.toInt() - m_pAllocBegin.toInt();
     }
 
-    public BlockPointer SaveState() //const
+    /**
+     * @return State that can be passed to {@link #RestoreState(int)} to hand 
+     * out the arrays allocated after this call again.
+     */
+    public int SaveState() //const
     {
-        return m_pAllocCurrentOrNextArena;
+        return SaveSlotsState();
     }
 
-    public void RestoreState(BlockPointer state)
+    public void RestoreState(int state)
     {
-    	m_pAllocCurrentOrNextArena = state;
+        RestoreSlotsState(state);
     }
 
     void ResetState()
     {
     	m_pAllocCurrentOrNextArena = m_pAllocBegin;
+    	ResetSlotsState();
+    	m_slabsDReal.Reset();
+    	m_slabsInt.Reset();
     }
 
     public BlockPointer PeekBufferRemainder() //const
@@ -122,7 +131,7 @@ public final class DxWorldProcessMemArena {
     //    }
 
     //dxWorldProcessMemArena *GetNextMemArena() const { return (dxWorldProcessMemArena *)m_pAllocCurrentOrNextArena; }
-    DxWorldProcessMemArena GetNextMemArena() { return m_pAllocCurrentOrNextArena.asDxWorldProcessMemArena(); }
+    DxWorldProcessMemArena GetNextMemArena() { return m_pAllocCurrentOrNextArena.asDxWorldProcessMemArenaOrNull(); }
     //void SetNextMemArena(dxWorldProcessMemArena *pArenaInstance) { m_pAllocCurrentOrNextArena = pArenaInstance; }
     void SetNextMemArena(DxWorldProcessMemArena pArenaInstance) { m_pAllocCurrentOrNextArena.setTo( pArenaInstance ); }
 
@@ -164,28 +173,33 @@ public final class DxWorldProcessMemArena {
                 int memreq_with_reserve = memreq + (arenareq_with_reserve - arenareq);
 
                 if (oldarena != null) {
-                    oldarena.m_pArenaMemMgr.m_fnFree.run(pOldArenaBuffer, nOldArenaSize);
+                    // The Java arena object is the memory block, it is kept so that 
+                    // its slabs are grown in place and not dropped with the arena.
+                    arena = oldarena;
                     oldarena = null;
 
                     // Zero variables to avoid another freeing on exit
                     pOldArenaBuffer = null;
                     nOldArenaSize = 0;
                 }
-
-                // Allocate new arena
-                BlockPointer pNewArenaBuffer = memmgr.m_fnAlloc.run(arenareq_with_reserve);
-                if (pNewArenaBuffer == null) {
-                    break;
+                else {
+                    // Allocate new arena
+                    BlockPointer pNewArenaBuffer = memmgr.m_fnAlloc.run(arenareq_with_reserve);
+                    if (pNewArenaBuffer == null) {
+                        break;
+                    }
+
+                    arena = DxUtil.dEFFICIENT_PTR(pNewArenaBuffer).asDxWorldProcessMemArena();
+                    arena.m_pArenaBegin = pNewArenaBuffer;
                 }
 
-                arena = DxUtil.dEFFICIENT_PTR(pNewArenaBuffer).asDxWorldProcessMemArena();
-
                 BlockPointer blockbegin = DxUtil.dEFFICIENT_PTR(arena, 1);
-                BlockPointer blockend = DxUtil.dOFFSET_EFFICIENTLY(blockbegin, memreq_with_reserve);
+                // dOFFSET_EFFICIENTLY() does not move the pointer, keep the size 
+                // so that the arena is only reallocated if it needs to grow.
+                BlockPointer blockend = new BlockPointer(arena, blockbegin.toInt() + memreq_with_reserve);
 
                 arena.m_pAllocBegin = blockbegin;
                 arena.m_pAllocEnd = blockend;
-                arena.m_pArenaBegin = pNewArenaBuffer;
                 arena.m_pAllocCurrentOrNextArena.setTo(null);
                 arena.m_pArenaMemMgr = memmgr;
             }
@@ -252,11 +266,66 @@ public final class DxWorldProcessMemArena {
     // ***********************************************
 
     public final double[] AllocateArrayDReal(int size) {
-        return new double[size];
+        if (!m_recycleArrays) {
+            return new double[size];
+        }
+        double[] array = (double[]) m_slotsDReal.Current();
+        if (array == null || array.length < size) {
+            array = new double[size];
+        } else {
+            Arrays.fill(array, 0, size, 0);
+        }
+        m_slotsDReal.Advance(array);
+        return array;
+    }
+
+    /**
+     * Hands out a zeroed range of <tt>size</tt> elements of a dReal slab. 
+     * This is the Java counterpart of <tt>AllocateArray&lt;dReal&gt;()</tt> for 
+     * callers that work with an offset: the range starts at {@link #SlabOffset()} 
+     * and stays valid until the state saved before the call is restored.
+     * Unlike the arrays of {@link #AllocateArrayDReal(int)} the memory is 
+     * reused in all stepping modes.
+     * @param size Number of elements
+     * @return The slab that contains the range
+     */
+    public final double[] AllocateSlabDReal(int size) {
+        double[] slab = (double[]) m_slabsDReal.Allocate(size);
+        m_slabOffset = m_slabsDReal.m_lastOffset;
+        return slab;
+    }
+
+    /**
+     * Like {@link #AllocateSlabDReal(int)}, for int ranges.
+     * @param size Number of elements
+     * @return The slab that contains the range
+     */
+    public final int[] AllocateSlabInt(int size) {
+        int[] slab = (int[]) m_slabsInt.Allocate(size);
+        m_slabOffset = m_slabsInt.m_lastOffset;
+        return slab;
+    }
+
+    /**
+     * @return Offset of the range handed out by the last call to 
+     * {@link #AllocateSlabDReal(int)} or {@link #AllocateSlabInt(int)}.
+     */
+    public final int SlabOffset() {
+        return m_slabOffset;
     }
 
     public final int[] AllocateArrayInt(int size) {
-        return new int[size];
+        if (!m_recycleArrays) {
+            return new int[size];
+        }
+        int[] array = (int[]) m_slotsInt.Current();
+        if (array == null || array.length < size) {
+            array = new int[size];
+        } else {
+            Arrays.fill(array, 0, size, 0);
+        }
+        m_slotsInt.Advance(array);
+        return array;
     }
 
     /**
@@ -281,18 +350,38 @@ public final class DxWorldProcessMemArena {
     }
 
     public final double[][] AllocateArrayDRealDReal(int n) {
-        return new double[n][];
+        if (!m_recycleArrays) {
+            return new double[n][];
+        }
+        double[][] array = (double[][]) m_slotsDRealDReal.Current();
+        if (array == null || array.length < n) {
+            array = new double[n][];
+        } else {
+            Arrays.fill(array, 0, n, null);
+        }
+        m_slotsDRealDReal.Advance(array);
+        return array;
     }
 
     public final boolean[] AllocateArrayBool(int n) {
-        return new boolean[n];
+        if (!m_recycleArrays) {
+            return new boolean[n];
+        }
+        boolean[] array = (boolean[]) m_slotsBool.Current();
+        if (array == null || array.length < n) {
+            array = new boolean[n];
+        } else {
+            Arrays.fill(array, 0, n, false);
+        }
+        m_slotsBool.Advance(array);
+        return array;
     }
 
-    public BlockPointer BEGIN_STATE_SAVE() {
+    public int BEGIN_STATE_SAVE() {
         return SaveState();
     }
 
-    public void END_STATE_SAVE(BlockPointer saveInner) {
+    public void END_STATE_SAVE(int saveInner) {
         RestoreState(saveInner);
     }
 
@@ -307,11 +396,320 @@ public final class DxWorldProcessMemArena {
     }
 
     public DxBody[] AllocateArrayDxBody(int nb) {
-        return new DxBody[nb];
+        if (!m_recycleArrays) {
+            return new DxBody[nb];
+        }
+        DxBody[] array = (DxBody[]) m_slotsDxBody.Current();
+        if (array == null || array.length < nb) {
+            array = new DxBody[nb];
+        } else {
+            Arrays.fill(array, 0, nb, null);
+        }
+        m_slotsDxBody.Advance(array);
+        return array;
     }
 
     public DxJoint[] AllocateArrayDxJoint(int nj) {
-        return new DxJoint[nj];
+        if (!m_recycleArrays) {
+            return new DxJoint[nj];
+        }
+        DxJoint[] array = (DxJoint[]) m_slotsDxJoint.Current();
+        if (array == null || array.length < nj) {
+            array = new DxJoint[nj];
+        } else {
+            Arrays.fill(array, 0, nj, null);
+        }
+        m_slotsDxJoint.Advance(array);
+        return array;
+    }
+
+    /**
+     * Enables or disables recycling of the arrays and objects handed out 
+     * by this arena. With recycling enabled the arrays allocated after a
+     * saved state are kept and handed out again (zeroed) once that state 
+     * has been restored, like the memory of the C++ arena. Arrays may then 
+     * be longer than requested.
+     * Disabling recycling drops all kept arrays and objects.
+     * @param recycle Whether to recycle
+     */
+    public void SetRecycling(boolean recycle) {
+        if (m_recycleArrays != recycle) {
+            m_recycleArrays = recycle;
+            m_slotsDReal.Clear();
+            m_slotsInt.Clear();
+            m_slotsDRealDReal.Clear();
+            m_slotsBool.Clear();
+            m_slotsDxBody.Clear();
+            m_slotsDxJoint.Clear();
+            m_stepperObjects = null;
+            m_solverObjects = null;
+            m_islandCallContext = null;
+        }
+    }
+
+    public boolean IsRecycling() {
+        return m_recycleArrays;
+    }
+
+    /**
+     * Stepper specific objects (call contexts etc.) are allocated from the 
+     * arena in C++. In Java the stepper creates them and stores them here
+     * so that they can be reused by following steps.
+     * @return The objects stored by the stepper or <tt>null</tt>. 
+     */
+    public Object GetStepperObjects() {
+        return m_stepperObjects;
+    }
+
+    /**
+     * @param stepperObjects Objects to be returned by 
+     * {@link #GetStepperObjects()}, ignored unless the arena is recycling.
+     */
+    public void SetStepperObjects(Object stepperObjects) {
+        if (m_recycleArrays) {
+            m_stepperObjects = stepperObjects;
+        }
+    }
+
+    /**
+     * Like {@link #GetStepperObjects()}, for the objects of the LCP solver.
+     * @return The objects stored by the solver or <tt>null</tt>. 
+     */
+    public Object GetSolverObjects() {
+        return m_solverObjects;
+    }
+
+    /**
+     * @param solverObjects Objects to be returned by 
+     * {@link #GetSolverObjects()}, ignored unless the arena is recycling.
+     */
+    public void SetSolverObjects(Object solverObjects) {
+        if (m_recycleArrays) {
+            m_solverObjects = solverObjects;
+        }
+    }
+
+    DxSingleIslandCallContext GetIslandCallContext() {
+        return m_islandCallContext;
+    }
+
+    void SetIslandCallContext(DxSingleIslandCallContext islandCallContext) {
+        if (m_recycleArrays) {
+            m_islandCallContext = islandCallContext;
+        }
+    }
+
+    private int SaveSlotsState() {
+        int state = m_savedStatesCount++;
+        int ofs = state * STATE_SIZE;
+        if (ofs + STATE_SIZE > m_savedStates.length) {
+            m_savedStates = Arrays.copyOf(m_savedStates, 2 * (ofs + STATE_SIZE));
+        }
+        m_savedStates[ofs] = m_slotsDReal.m_position;
+        m_savedStates[ofs + 1] = m_slotsInt.m_position;
+        m_savedStates[ofs + 2] = m_slotsDRealDReal.m_position;
+        m_savedStates[ofs + 3] = m_slotsBool.m_position;
+        m_savedStates[ofs + 4] = m_slotsDxBody.m_position;
+        m_savedStates[ofs + 5] = m_slotsDxJoint.m_position;
+        m_slabsDReal.SaveState(m_savedStates, ofs + SLOTS_COUNT);
+        m_slabsInt.SaveState(m_savedStates, ofs + SLOTS_COUNT + dxSlabChain.STATE_SIZE);
+        return state;
+    }
+
+    private void RestoreSlotsState(int state) {
+        Common.dIASSERT(state < m_savedStatesCount);
+        // States saved after the restored one are invalid, as with a bump pointer
+        m_savedStatesCount = state + 1;
+        int ofs = state * STATE_SIZE;
+        m_slotsDReal.m_position = m_savedStates[ofs];
+        m_slotsInt.m_position = m_savedStates[ofs + 1];
+        m_slotsDRealDReal.m_position = m_savedStates[ofs + 2];
+        m_slotsBool.m_position = m_savedStates[ofs + 3];
+        m_slotsDxBody.m_position = m_savedStates[ofs + 4];
+        m_slotsDxJoint.m_position = m_savedStates[ofs + 5];
+        m_slabsDReal.RestoreState(m_savedStates, ofs + SLOTS_COUNT);
+        m_slabsInt.RestoreState(m_savedStates, ofs + SLOTS_COUNT + dxSlabChain.STATE_SIZE);
+    }
+
+    private void ResetSlotsState() {
+        m_savedStatesCount = 0;
+        m_slotsDReal.m_position = 0;
+        m_slotsInt.m_position = 0;
+        m_slotsDRealDReal.m_position = 0;
+        m_slotsBool.m_position = 0;
+        m_slotsDxBody.m_position = 0;
+        m_slotsDxJoint.m_position = 0;
+    }
+
+    /**
+     * Arrays of one element type in the order they were handed out. 
+     * Each element type has its own list so that islands with different 
+     * allocation sequences still get back the arrays they used before.
+     */
+    private static final class dxArraySlots {
+        private Object[] m_arrays = new Object[8];
+        int m_position;
+
+        /** @return The array kept for the current position or <tt>null</tt>. */
+        Object Current() {
+            return m_position < m_arrays.length ? m_arrays[m_position] : null;
+        }
+
+        /** Stores the array handed out for the current position and advances. */
+        void Advance(Object array) {
+            if (m_position == m_arrays.length) {
+                m_arrays = Arrays.copyOf(m_arrays, 2 * m_arrays.length);
+            }
+            m_arrays[m_position++] = array;
+        }
+
+        void Clear() {
+            Arrays.fill(m_arrays, null);
+            m_position = 0;
+        }
     }
 
+    /**
+     * Large arrays that zeroed ranges are handed out from with a bump pointer, 
+     * like the memory block of the C++ arena. If the current slab is exhausted 
+     * the following ranges come from the next slab of the chain. Once the arena 
+     * is reset the chain is merged into a single slab that fits the peak usage, 
+     * so from then on the ranges are served from one array. 
+     * The memory requirement estimates do not tell how many bytes are needed 
+     * for dReals and how many for ints, so the slabs are only sized by their use.
+     */
+    private static abstract class dxSlabChain {
+        static final int STATE_SIZE = 3;
+        private static final int MIN_SLAB_SIZE = 256;
+
+        private Object[] m_slabs = new Object[4];
+        private int m_slabCount;
+        private int m_index;      // slab the ranges are currently handed out from
+        private int m_top;        // first free element of that slab
+        private int m_usedBefore; // elements of the slabs before m_index
+        private int m_peak;       // most elements in use since the last reset
+        int m_lastOffset;
+
+        abstract Object NewSlab(int size);
+
+        abstract int Length(Object slab);
+
+        abstract void Zero(Object slab, int from, int to);
+
+        final Object Allocate(int size) {
+            Object slab = m_index < m_slabCount ? m_slabs[m_index] : null;
+            if (slab == null || m_top + size > Length(slab)) {
+                slab = NextSlab(slab, size);
+            }
+            m_lastOffset = m_top;
+            m_top += size;
+            Zero(slab, m_lastOffset, m_top);
+            int used = m_usedBefore + m_top;
+            if (used > m_peak) {
+                m_peak = used;
+            }
+            return slab;
+        }
+
+        private Object NextSlab(Object current, int size) {
+            int minSize = MIN_SLAB_SIZE;
+            if (current != null) {
+                // The rest of the current slab stays unused until it is restored
+                m_usedBefore += Length(current);
+                m_index++;
+                minSize = 2 * Length(current);
+            }
+            // Slabs after the current one do not hold any ranges
+            Object slab = m_index < m_slabCount ? m_slabs[m_index] : null;
+            if (slab == null || Length(slab) < size) {
+                slab = NewSlab(Math.max(size, minSize));
+                if (m_index == m_slabs.length) {
+                    m_slabs = Arrays.copyOf(m_slabs, 2 * m_slabs.length);
+                }
+                m_slabs[m_index] = slab;
+                m_slabCount = Math.max(m_slabCount, m_index + 1);
+            }
+            m_top = 0;
+            return slab;
+        }
+
+        /** Must only be called if no range is in use. */
+        final void Reset() {
+            if (m_slabCount > 1) {
+                Arrays.fill(m_slabs, null);
+                m_slabs[0] = NewSlab(m_peak);
+                m_slabCount = 1;
+            }
+            m_index = 0;
+            m_top = 0;
+            m_usedBefore = 0;
+            m_peak = 0;
+        }
+
+        final void SaveState(int[] states, int ofs) {
+            states[ofs] = m_index;
+            states[ofs + 1] = m_top;
+            states[ofs + 2] = m_usedBefore;
+        }
+
+        final void RestoreState(int[] states, int ofs) {
+            m_index = states[ofs];
+            m_top = states[ofs + 1];
+            m_usedBefore = states[ofs + 2];
+        }
+    }
+
+    private static final class dxDRealSlabChain extends dxSlabChain {
+        @Override
+        Object NewSlab(int size) {
+            return new double[size];
+        }
+
+        @Override
+        int Length(Object slab) {
+            return ((double[]) slab).length;
+        }
+
+        @Override
+        void Zero(Object slab, int from, int to) {
+            Arrays.fill((double[]) slab, from, to, 0);
+        }
+    }
+
+    private static final class dxIntSlabChain extends dxSlabChain {
+        @Override
+        Object NewSlab(int size) {
+            return new int[size];
+        }
+
+        @Override
+        int Length(Object slab) {
+            return ((int[]) slab).length;
+        }
+
+        @Override
+        void Zero(Object slab, int from, int to) {
+            Arrays.fill((int[]) slab, from, to, 0);
+        }
+    }
+
+    private static final int SLOTS_COUNT = 6;
+    private static final int STATE_SIZE = SLOTS_COUNT + 2 * dxSlabChain.STATE_SIZE;
+
+    private boolean m_recycleArrays = false;
+    private final dxArraySlots m_slotsDReal = new dxArraySlots();
+    private final dxArraySlots m_slotsInt = new dxArraySlots();
+    private final dxArraySlots m_slotsDRealDReal = new dxArraySlots();
+    private final dxArraySlots m_slotsBool = new dxArraySlots();
+    private final dxArraySlots m_slotsDxBody = new dxArraySlots();
+    private final dxArraySlots m_slotsDxJoint = new dxArraySlots();
+    private final dxSlabChain m_slabsDReal = new dxDRealSlabChain();
+    private final dxSlabChain m_slabsInt = new dxIntSlabChain();
+    private int m_slabOffset;
+    private int[] m_savedStates = new int[4 * STATE_SIZE];
+    private int m_savedStatesCount;
+    private Object m_stepperObjects;
+    private Object m_solverObjects;
+    private DxSingleIslandCallContext m_islandCallContext;
+
 }
@@ -24,11 +24,11 @@
  *************************************************************************/
 package org.ode4j.ode.threading;
 
+import org.ode4j.ode.threading.ThreadingWorkStealing.dxThreadPool;
 
 /**
  * 
  * @author Tilmann Zäschke
- * @Deprecated Not supported in ode4j.
  */
 public abstract class DThreadingThreadPool {
 
@@ -36,21 +36,14 @@ public abstract class DThreadingThreadPool {
 	 * Creates an instance of built-in thread pool object that can be used to serve
 	 * multi-threaded threading implementations.
 	 *
-	 * The threads allocated inherit priority of caller thread. Their affinity is not
-	 * explicitly adjusted and gets the value the system assigns by default. Threads 
-	 * have their stack memory fully committed immediately on start. On POSIX platforms 
-	 * threads are started with all the possible signals blocked. Threads execute 
-	 * calls to {@code dAllocateODEDataForThread} with {@code ode_data_allocate_flags} 
-	 * on initialization.
-	 *
-	 * On POSIX platforms this function must be called with signals masked 
-	 * or other measures must be taken to prevent reception of signals by calling thread 
-	 * for the duration of the call.
+	 * The threads allocated are daemon threads and inherit priority of caller thread.
+	 * ode4j does not need per-thread data, so {@code ode_data_allocate_flags} is ignored.
 	 * 
 	 * @param thread_count Number of threads to start in pool
 	 * @param stack_size Size of stack to be used for every thread or 0 for system default value
-	 * @param ode_data_allocate_flags Flags to be passed to @c dAllocateODEDataForThread on behalf of each thread
-	 * @return ID of object allocated or NULL on failure
+	 * @param ode_data_allocate_flags Ignored in ode4j
+	 * @param reserved Reserved, pass {@code null}
+	 * @return allocated object
 	 *
 	 * @see DxThreadingImplementation#dThreadingAllocateMultiThreadedImplementation
 	 * @see DThreadingImplementation#shutdownProcessing()
@@ -58,7 +51,7 @@ public abstract class DThreadingThreadPool {
 	 */
 	public static DThreadingThreadPool allocateThreadPool(int thread_count, 
 	  int stack_size, int ode_data_allocate_flags, Object[][] reserved/*=NULL*/) {
-		throw new UnsupportedOperationException();
+		return new dxThreadPool(thread_count, stack_size);
 	}
 
 	/**
@@ -72,6 +65,8 @@ public abstract class DThreadingThreadPool {
 	 *
 	 * This function waits for threads to register within implementation before returning.
 	 * So, after the function call exits the implementation can be used immediately.
+	 * If a pool thread fails to serve the implementation the function does not
+	 * wait for it but throws a {@code RuntimeException} with the failure as cause.
 	 * 
 	 * @param impl Implementation ID of implementation to be served
 	 *
@@ -96,6 +91,9 @@ public abstract class DThreadingThreadPool {
 	 * It is OK to call this function even if pool was not serving any threading implementation
 	 * in which case the call exits immediately with minimal delay.
 	 * 
+	 * A failure of a pool thread while serving is thrown as cause of a 
+	 * {@code RuntimeException}.
+	 * 
 	 * @see #allocateThreadPool(int, int, int, Object[][])
 	 * @see DThreadingImplementation#shutdownProcessing()
 	 * @see #freeThreadPool()
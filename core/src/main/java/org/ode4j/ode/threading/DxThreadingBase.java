@@ -42,7 +42,9 @@ public class DxThreadingBase {
 	{
 	//public:
 	    //virtual const dxThreadingFunctionsInfo *RetrieveThreadingDefaultImpl(dThreadingImplementationID &out_default_impl) = 0;
-		DxThreadingFunctionsInfo RetrieveThreadingDefaultImpl(Ref<DThreadingImplementation> out_default_impl);
+		// split in two so that callers do not need to allocate a Ref for the out parameter
+		DxThreadingFunctionsInfo RetrieveThreadingDefaultFunctions();
+		DThreadingImplementation RetrieveThreadingDefaultImpl();
 	};
 
 
@@ -75,17 +77,17 @@ public class DxThreadingBase {
 	    //public 
 	    public DMutexGroup AllocMutexGroup(dxProcessContextMutex /*dmutexindex_t*/ Mutex_count, String[] Mutex_names_ptr/*=NULL*/)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        return functions.alloc_mutex_group.run(impl.get(), Mutex_count, Mutex_names_ptr);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        return functions.alloc_mutex_group.run(impl, Mutex_count, Mutex_names_ptr);
 	    }
 
 	    //public 
 	    public void FreeMutexGroup(DMutexGroup mutex_group) 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.free_mutex_group.run(impl.get(), mutex_group);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.free_mutex_group.run(impl, mutex_group);
 	    }
 
 	    //public 
@@ -93,9 +95,9 @@ public class DxThreadingBase {
 	    		//int /*dmutexindex_t*/ mutex_index)
 	    		dxProcessContextMutex mutex_index)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.lock_group_mutex.run(impl.get(), mutex_group, mutex_index);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.lock_group_mutex.run(impl, mutex_group, mutex_index);
 	    }
 
 //	     bool TryLockMutexGroupMutex(dMutexGroupID mutex_group, dmutexindex_t mutex_index) const
@@ -109,30 +111,30 @@ public class DxThreadingBase {
 	    		//int /*dmutexindex_t*/ mutex_index)
 	    		dxProcessContextMutex mutex_index)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.unlock_group_mutex.run(impl.get(), mutex_group, mutex_index);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.unlock_group_mutex.run(impl, mutex_group, mutex_index);
 	    }
 
 	    public DCallWait AllocThreadedCallWait() 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        return functions.alloc_call_wait.run(impl.get());
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        return functions.alloc_call_wait.run(impl);
 	    }
 
 	    void ResetThreadedCallWait(DCallWait call_wait)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.reset_call_wait.run(impl.get(), call_wait);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.reset_call_wait.run(impl, call_wait);
 	    }
 
 	    public void FreeThreadedCallWait(DCallWait call_wait)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.free_call_wait.run(impl.get(), call_wait);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.free_call_wait.run(impl, call_wait);
 	    }
 
 //	    void PostThreadedCall(int *out_summary_fault/*=NULL*/, 
@@ -152,9 +154,9 @@ public class DxThreadingBase {
 		        int /*dcallindex_t*/ instance_index, 
 		        String call_name/*=NULL*/)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.post_call.run(impl.get(), out_summary_fault, out_post_releasee, dependencies_count, 
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.post_call.run(impl, out_summary_fault, out_post_releasee, dependencies_count, 
 	        		dependent_releasee, call_wait, call_func, call_context, instance_index, 
 	        		call_name);
 	    }
@@ -162,9 +164,9 @@ public class DxThreadingBase {
 	    public void AlterThreadedCallDependenciesCount(DCallReleasee target_releasee, 
 	        int /*ddependencychange_t*/ dependencies_count_change) 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.alter_call_dependencies_count.run(impl.get(), target_releasee, dependencies_count_change);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.alter_call_dependencies_count.run(impl, target_releasee, dependencies_count_change);
 	    }
 
 //	    void WaitThreadedCallExclusively(int *out_wait_status/*=NULL*/, 
@@ -174,10 +176,10 @@ public class DxThreadingBase {
 		        DCallWait call_wait, DThreadedWaitTime timeout_time_ptr/*=NULL*/, 
 		        String wait_name/*=NULL*/) 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.wait_call.run(impl.get(), out_wait_status, call_wait, timeout_time_ptr, wait_name);
-	        functions.reset_call_wait.run(impl.get(), call_wait);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.wait_call.run(impl, out_wait_status, call_wait, timeout_time_ptr, wait_name);
+	        functions.reset_call_wait.run(impl, call_wait);
 	    }
 
 //	    void WaitThreadedCallCollectively(int *out_wait_status/*=NULL*/, 
@@ -187,23 +189,23 @@ public class DxThreadingBase {
 		        DCallWait call_wait, DThreadedWaitTime timeout_time_ptr/*=NULL*/, 
 		        String wait_name/*=NULL*/) 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        functions.wait_call.run(impl.get(), out_wait_status, call_wait, timeout_time_ptr, wait_name);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        functions.wait_call.run(impl, out_wait_status, call_wait, timeout_time_ptr, wait_name);
 	    }
 
 	    public int RetrieveThreadingThreadCount() 
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        return functions.retrieve_thread_count.run(impl.get());
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        return functions.retrieve_thread_count.run(impl);
 	    }
 
 	    public boolean PreallocateResourcesForThreadedCalls(int max_simultaneous_calls_estimate)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	        DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
-	        return functions.preallocate_resources_for_calls.run(impl.get(), max_simultaneous_calls_estimate);// != 0;
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	        DThreadingImplementation impl = FindThreadingImpl();
+	        return functions.preallocate_resources_for_calls.run(impl, max_simultaneous_calls_estimate);// != 0;
 	    }
 
 	//public:
@@ -245,12 +247,12 @@ public class DxThreadingBase {
 	    		dThreadedCallFunction call_func, CallContext call_context, 
 	    		String call_name/*=NULL*/)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	    	DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	    	DThreadingImplementation impl = FindThreadingImpl();
 
 	    	for (int member_index = 0; member_index != member_count; ++member_index) {
 	    		// Post individual group member jobs
-	    		functions.post_call.run(impl.get(), out_summary_fault, null, 0, dependent_releasee, null, 
+	    		functions.post_call.run(impl, out_summary_fault, null, 0, dependent_releasee, null, 
 	    				call_func, call_context, member_index, call_name);
 	    	}
 	    }
@@ -273,29 +275,31 @@ public class DxThreadingBase {
 	    		int /*dcallindex_t*/ instance_index, 
 	    		String call_name/*=NULL*/)
 	    {
-	        Ref<DThreadingImplementation> impl = new Ref<DThreadingImplementation>();
-	    	DxThreadingFunctionsInfo functions = FindThreadingImpl(impl);
+	        DxThreadingFunctionsInfo functions = FindThreadingFunctions();
+	    	DThreadingImplementation impl = FindThreadingImpl();
 
-	    	functions.alter_call_dependencies_count.run(impl.get(), dependent_releasee, 1);
-	    	functions.post_call.run(impl.get(), out_summary_fault, out_post_releasee, dependencies_count, dependent_releasee, call_wait, call_func, call_context, instance_index, call_name);
+	    	functions.alter_call_dependencies_count.run(impl, dependent_releasee, 1);
+	    	functions.post_call.run(impl, out_summary_fault, out_post_releasee, dependencies_count, dependent_releasee, call_wait, call_func, call_context, instance_index, call_name);
 	    }
 
 //	    	const dxThreadingFunctionsInfo *dxThreadingBase::FindThreadingImpl(dThreadingImplementationID &out_impl_found) const
-	    DxThreadingFunctionsInfo FindThreadingImpl(Ref<DThreadingImplementation> out_impl_found)
+	    DxThreadingFunctionsInfo FindThreadingFunctions()
 	    {
 	    	DxThreadingFunctionsInfo functions_found = GetFunctionsInfo();
 
-	    	if (functions_found != null)
+	    	if (functions_found == null)
 	    	{
-	    		out_impl_found.set( GetThreadingImpl() );
-	    	}
-	    	else
-	    	{
-	    		functions_found = m_default_impl_provider.RetrieveThreadingDefaultImpl(out_impl_found);
+	    		functions_found = m_default_impl_provider.RetrieveThreadingDefaultFunctions();
 	    	}
 
 	    	return functions_found;
 	    }
+
+	    DThreadingImplementation FindThreadingImpl()
+	    {
+	    	return GetFunctionsInfo() != null ? GetThreadingImpl() 
+	    			: m_default_impl_provider.RetrieveThreadingDefaultImpl();
+	    }
 	    
 //	}  //End of dxThreadingBase
 
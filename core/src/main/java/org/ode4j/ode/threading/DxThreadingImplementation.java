@@ -26,9 +26,13 @@ package org.ode4j.ode.threading;
 
 import static org.ode4j.ode.internal.Common.dAASSERT;
 
+import java.util.concurrent.Executor;
+
 import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
 import org.ode4j.ode.internal.processmem.DxWorldProcessContext.dxProcessContextMutex;
+import org.ode4j.ode.threading.ThreadingExecutor.dxExecutorThreading;
+import org.ode4j.ode.threading.ThreadingWorkStealing.dxMultiThreadedThreading;
 import org.ode4j.ode.threading.ThreadingImpl_H.dxSelfThreadedThreading;
 import org.ode4j.ode.threading.ThreadingTemplates.dIMutexGroup;
 import org.ode4j.ode.threading.ThreadingTemplates.dxICallWait;
@@ -57,7 +61,6 @@ import org.ode4j.ode.threading.Threading_H.dThreadingImplThreadCountRetrieveFunc
 /**
  * 
  * @author Tilmann Zaeschke
- * @Deprecated Not supported in ode4j.
  */
 public abstract class DxThreadingImplementation extends DThreadingImplementation {
 
@@ -123,26 +126,52 @@ public abstract class DxThreadingImplementation extends DThreadingImplementation
 		return impl;
 	}
 
+	/**
+	 * Allocates threading implementation object that processes posted calls
+	 * with a {@link java.util.concurrent.Executor}.
+	 *
+	 * The executor is not shut down on {@link #free()} and may be shared with other 
+	 * code. The thread waiting for call completion helps
+	 * processing ready calls. If {@code executor} is {@code null} all the calls are
+	 * processed by the waiting thread itself (caller-runs) and the thread count is 1.
+	 *
+	 * @param executor Executor to run the posted calls or {@code null}
+	 * @param thread_count Number of threads the steppers may distribute their work to,
+	 * 0 to use the number of available processors
+	 * @return allocated object
+	 *
+	 * @see DThreadingImplementation#free()
+	 */
+	public static DThreadingImplementation dThreadingAllocateExecutorImplementation(
+			Executor executor, int thread_count)
+	{
+		dAASSERT(thread_count >= 0);
+		if (thread_count == 0)
+		{
+			thread_count = Runtime.getRuntime().availableProcessors();
+		}
+		return new dxExecutorThreading(executor, thread_count);
+	}
+
+	/**
+	 * Allocates built-in multi-threaded threading implementation object.
+	 *
+	 * The implementation has to be served by a thread pool (see
+	 * {@link DThreadingThreadPool#allocateThreadPool(int, int, int, Object[][])})
+	 * or by external threads calling
+	 * {@link #dExternalThreadingServeMultiThreadedImplementation}.
+	 * Every serving thread keeps its own queue of ready calls and steals calls
+	 * from the other threads when its queue is empty. The thread waiting for
+	 * call completion helps processing ready calls.
+	 *
+	 * @return allocated object
+	 *
+	 * @see DThreadingImplementation#shutdownProcessing()
+	 * @see DThreadingImplementation#free()
+	 */
 	/*extern */public static DThreadingImplementation dThreadingAllocateMultiThreadedImplementation()
 	{
-		throw new UnsupportedOperationException();
-//		dxIThreadingImplementation threading = null;
-//		if (dBUILTIN_THREADING_IMPL_ENABLED) {
-//			//dxMultiThreadedThreading 
-//			threading = new dxMultiThreadedThreading();
-//
-//			if (threading != null && !threading.InitializeObject())
-//			{
-//				//delete threading;
-//				threading.DESTRUCTOR();
-//				threading = null;
-//			}
-//			//			} else {
-//			//				dxIThreadingImplementation threading = null;
-//		}//endif // #if dBUILTIN_THREADING_IMPL_ENABLED
-//
-//		dxIThreadingImplementation impl = threading;
-//		return (DThreadingImplementation)impl;
+		return new dxMultiThreadedThreading();
 	}
 
 	@Override
@@ -0,0 +1,592 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.threading;
+
+import static org.ode4j.ode.internal.Common.dIASSERT;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.ode4j.ode.internal.DBase;
+import org.ode4j.ode.internal.cpp4j.java.Ref;
+import org.ode4j.ode.internal.cpp4j.java.RefInt;
+import org.ode4j.ode.internal.processmem.DxWorldProcessContext.dxProcessContextMutex;
+import org.ode4j.ode.threading.ThreadingTemplates.dIMutexGroup;
+import org.ode4j.ode.threading.ThreadingTemplates.dxICallWait;
+import org.ode4j.ode.threading.ThreadingTemplates.dxIThreadingImplementation;
+import org.ode4j.ode.threading.Threading_H.CallContext;
+import org.ode4j.ode.threading.Threading_H.DCallReleasee;
+import org.ode4j.ode.threading.Threading_H.DMutexGroup;
+import org.ode4j.ode.threading.Threading_H.DThreadedWaitTime;
+import org.ode4j.ode.threading.Threading_H.DxThreadedWaitTime;
+import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
+
+/**
+ * Threading implementation that hands posted calls over to a
+ * {@link java.util.concurrent.Executor}.
+ *
+ * Each world can be assigned its own executor (a ForkJoinPool, a virtual
+ * thread executor, a fixed thread pool, ...), so that worlds stepped from
+ * different application threads do not contend on a shared queue.
+ * <p>
+ * Calls that have become ready are put into a queue owned by the
+ * implementation. For every ready call one drain task is submitted to the
+ * executor. A thread waiting for call completion does not block idly
+ * but processes ready calls itself, so progress is guaranteed even if the
+ * executor is saturated. Without executor all the calls are processed by the
+ * waiting thread (caller-runs).
+ */
+class ThreadingExecutor {
+
+	/************************************************************************/
+	/* dxExecutorJobInfo class definition                                   */
+	/************************************************************************/
+
+	static class dxExecutorJobInfo extends DBase implements DCallReleasee
+	{
+		dxExecutorJobInfo(int /*ddependencycount_t*/ dependencies_count,
+				dxExecutorJobInfo dependent_job,
+				dxExecutorCallWait call_wait,
+				RefInt fault_accumulator_ptr,
+				dThreadedCallFunction call_function,
+				CallContext call_context, int /*dcallindex_t*/ call_index)
+		{
+			m_dependencies_count = new AtomicInteger(dependencies_count);
+			m_dependent_job = dependent_job;
+			m_call_wait = call_wait;
+			m_fault_accumulator_ptr = fault_accumulator_ptr;
+
+			m_call_fault = 0;
+			m_call_function = call_function;
+			m_call_context = call_context;
+			m_call_index = call_index;
+		}
+
+		boolean InvokeCallFunction()
+		{
+			return m_call_function.run(m_call_context, m_call_index, this);
+		}
+
+		// Counts the unfinished dependencies before the job is started and
+		// the job itself plus its unfinished child calls afterwards.
+		final AtomicInteger 		m_dependencies_count;
+		volatile boolean			m_started;
+		final dxExecutorJobInfo    	m_dependent_job;
+		final dxExecutorCallWait   	m_call_wait;
+		final RefInt				m_fault_accumulator_ptr;
+
+		volatile int                m_call_fault;
+		final dThreadedCallFunction m_call_function;
+		final CallContext           m_call_context;
+		final int /*dcallindex_t*/  m_call_index;
+	}
+
+
+	/************************************************************************/
+	/* dxExecutorCallWait class definition                                  */
+	/************************************************************************/
+
+	static class dxExecutorCallWait extends dxICallWait
+	{
+		dxExecutorCallWait(Object wakeup_monitor) {
+			m_wakeup_monitor = wakeup_monitor;
+		}
+
+		@Override
+		public void ResetTheWait() {
+			synchronized (m_wakeup_monitor) {
+				m_signalled = false;
+			}
+		}
+
+		@Override
+		public void SignalTheWait() {
+			synchronized (m_wakeup_monitor) {
+				m_signalled = true;
+				m_wakeup_monitor.notifyAll();
+			}
+		}
+
+		boolean IsSignalled() {
+			synchronized (m_wakeup_monitor) {
+				return m_signalled;
+			}
+		}
+
+		private final Object m_wakeup_monitor;
+		// guarded by m_wakeup_monitor
+		boolean m_signalled;
+	}
+
+
+	/************************************************************************/
+	/* dxLockMutexGroup class definition                                    */
+	/************************************************************************/
+
+	/**
+	 * Mutex group of real locks. The template mutex group is built from
+	 * fake mutexes, which do not serialize calls running on several threads.
+	 */
+	static class dxLockMutexGroup implements dIMutexGroup, DMutexGroup
+	{
+		dxLockMutexGroup(dxProcessContextMutex /*dmutexindex_t*/ Mutex_count) {
+			m_mutex_array = new ReentrantLock[Mutex_count.ordinal()];
+			for (int i = 0; i < m_mutex_array.length; i++) {
+				m_mutex_array[i] = new ReentrantLock();
+			}
+		}
+
+		void LockMutex(dxProcessContextMutex /*dmutexindex_t*/ mutex_index) {
+			m_mutex_array[mutex_index.ordinal()].lock();
+		}
+
+		void UnlockMutex(dxProcessContextMutex /*dmutexindex_t*/ mutex_index) {
+			m_mutex_array[mutex_index.ordinal()].unlock();
+		}
+
+		private final ReentrantLock[] m_mutex_array;
+	}
+
+
+	/************************************************************************/
+	/* dxJobQueueThreading class definition                                 */
+	/************************************************************************/
+
+	/**
+	 * Common part of the threading implementations that keep ready calls in
+	 * queues. The subclasses define how ready calls are stored and picked.
+	 */
+	abstract static class dxJobQueueThreading extends dxIThreadingImplementation
+	{
+		//protected:
+		/** Store a call that has become ready for execution. */
+		abstract void EnqueueReadyJob(dxExecutorJobInfo job_instance);
+		/** @return a ready call or {@code null} if none is available to the current thread */
+		abstract dxExecutorJobInfo DequeueReadyJob();
+		/** Hook called after a ready call has been stored. */
+		void ProcessActiveJobAddition() {}
+
+		@Override
+		public void FreeInstance()
+		{
+			dIASSERT(m_ready_job_count.get() == 0);
+		}
+
+		@Override
+		public dIMutexGroup AllocMutexGroup(dxProcessContextMutex /*dmutexindex_t*/ Mutex_count)
+		{
+			return new dxLockMutexGroup(Mutex_count);
+		}
+
+		@Override
+		public void FreeMutexGroup(dIMutexGroup mutex_group)
+		{
+			// Nothing to free
+		}
+
+		@Override
+		public void LockMutexGroupMutex(dIMutexGroup mutex_group,
+				dxProcessContextMutex /*dmutexindex_t*/ mutex_index)
+		{
+			((dxLockMutexGroup)mutex_group).LockMutex(mutex_index);
+		}
+
+		@Override
+		public void UnlockMutexGroupMutex(dIMutexGroup mutex_group,
+				dxProcessContextMutex /*dmutexindex_t*/ mutex_index)
+		{
+			((dxLockMutexGroup)mutex_group).UnlockMutex(mutex_index);
+		}
+
+		@Override
+		public dxICallWait AllocACallWait()
+		{
+			return new dxExecutorCallWait(m_wakeup_monitor);
+		}
+
+		@Override
+		public void ResetACallWait(dxICallWait call_wait)
+		{
+			call_wait.ResetTheWait();
+		}
+
+		@Override
+		public void FreeACallWait(dxICallWait call_wait)
+		{
+			// Do nothing
+		}
+
+		@Override
+		public boolean PreallocateJobInfos(int /*ddependencycount_t*/ max_simultaneous_calls_estimate)
+		{
+			// Job infos are allocated on demand
+			return true;
+		}
+
+		@Override
+		public void ScheduleNewJob(RefInt fault_accumulator_ptr/*=NULL*/,
+				Ref<DCallReleasee> out_post_releasee_ptr/*=NULL*/,
+				int /*ddependencycount_t*/ dependencies_count,
+				DCallReleasee dependent_releasee/*=NULL*/,
+				dxICallWait call_wait/*=NULL*/,
+				dThreadedCallFunction call_func, CallContext call_context,
+				int /*dcallindex_t*/ instance_index)
+		{
+			dxExecutorJobInfo new_job = new dxExecutorJobInfo(dependencies_count,
+					(dxExecutorJobInfo)dependent_releasee, (dxExecutorCallWait)call_wait,
+					fault_accumulator_ptr, call_func, call_context, instance_index);
+
+			if (out_post_releasee_ptr != null)
+			{
+				out_post_releasee_ptr.set(new_job);
+			}
+
+			if (dependencies_count == 0)
+			{
+				QueueReadyJob(new_job);
+			}
+		}
+
+		@Override
+		public void AlterJobDependenciesCount(DCallReleasee target_releasee,
+				int /*ddependencychange_t*/ dependencies_count_change)
+		{
+			dIASSERT(dependencies_count_change != 0);
+
+			SettleJobDependencies((dxExecutorJobInfo)target_releasee, dependencies_count_change);
+		}
+
+		@Override
+		public void WaitJobCompletion(RefInt out_wait_status_ptr/*=NULL*/,
+				dxICallWait call_wait, final DThreadedWaitTime timeout_time_ptr/*=NULL*/)
+		{
+			dIASSERT(call_wait != null);
+
+			boolean wait_status = HelpUntilSignalled((dxExecutorCallWait)call_wait,
+					(DxThreadedWaitTime)timeout_time_ptr);
+			dIASSERT(timeout_time_ptr != null || wait_status);
+
+			if (out_wait_status_ptr != null)
+			{
+				out_wait_status_ptr.set( wait_status ? 1 : 0 );
+			}
+
+			Throwable failure = m_failure.getAndSet(null);
+			if (failure instanceof RuntimeException)
+			{
+				throw (RuntimeException) failure;
+			}
+			else if (failure instanceof Error)
+			{
+				throw (Error) failure;
+			}
+			else if (failure != null)
+			{
+				throw new RuntimeException(failure);
+			}
+		}
+
+		private void QueueReadyJob(dxExecutorJobInfo job_instance)
+		{
+			EnqueueReadyJob(job_instance);
+			m_ready_job_count.incrementAndGet();
+
+			if (m_sleeping_thread_count.get() != 0)
+			{
+				synchronized (m_wakeup_monitor)
+				{
+					m_wakeup_monitor.notify();
+				}
+			}
+
+			ProcessActiveJobAddition();
+		}
+
+		/**
+		 * Runs one ready call if there is any.
+		 * @return {@code false} if no call was available
+		 */
+		final boolean ProcessAReadyJob()
+		{
+			dxExecutorJobInfo job_instance = DequeueReadyJob();
+
+			if (job_instance == null)
+			{
+				return false;
+			}
+
+			m_ready_job_count.decrementAndGet();
+
+			job_instance.m_started = true;
+			// It is OK to assign in unsafe manner - dependencies count should not be changed
+			// after the job has become ready for execution
+			job_instance.m_dependencies_count.set(1);
+
+			boolean job_result = false;
+			try
+			{
+				job_result = job_instance.InvokeCallFunction();
+			}
+			catch (Throwable t)
+			{
+				// Report to the waiting thread, the fault flag is propagated as usual
+				m_failure.compareAndSet(null, t);
+			}
+
+			if (!job_result)
+			{
+				// Accumulate call fault (be careful to not reset it!!!)
+				job_instance.m_call_fault = 1;
+			}
+
+			SettleJobDependencies(job_instance, -1);
+			return true;
+		}
+
+		private void SettleJobDependencies(dxExecutorJobInfo job_instance,
+				int /*ddependencychange_t*/ dependencies_count_change)
+		{
+			dxExecutorJobInfo current_job = job_instance;
+			int count_change = dependencies_count_change;
+
+			while (current_job.m_dependencies_count.addAndGet(count_change) == 0)
+			{
+				if (!current_job.m_started)
+				{
+					QueueReadyJob(current_job);
+					break;
+				}
+
+				int call_fault = current_job.m_call_fault;
+
+				if (current_job.m_fault_accumulator_ptr != null)
+				{
+					current_job.m_fault_accumulator_ptr.set( call_fault );
+				}
+
+				if (current_job.m_call_wait != null)
+				{
+					current_job.m_call_wait.SignalTheWait();
+				}
+
+				dxExecutorJobInfo dependent_job = current_job.m_dependent_job;
+
+				if (dependent_job == null)
+				{
+					break;
+				}
+
+				if (call_fault != 0)
+				{
+					// Accumulate call fault (be careful to not reset it!!!)
+					dependent_job.m_call_fault = 1;
+				}
+
+				current_job = dependent_job;
+				count_change = -1;
+			}
+		}
+
+		private boolean HelpUntilSignalled(dxExecutorCallWait call_wait,
+				DxThreadedWaitTime timeout_time_ptr)
+		{
+			long deadline = timeout_time_ptr != null
+					? System.nanoTime() + timeout_time_ptr.wait_sec * 1000000000L + timeout_time_ptr.wait_nsec
+					: 0;
+
+			while (true)
+			{
+				if (ProcessAReadyJob())
+				{
+					continue;
+				}
+
+				long wait_nanos = timeout_time_ptr != null ? deadline - System.nanoTime() : 0;
+				if (timeout_time_ptr != null && wait_nanos <= 0)
+				{
+					return call_wait.IsSignalled();
+				}
+
+				if (SleepUntilJobAddition(call_wait, wait_nanos))
+				{
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Blocks the current thread until a call becomes ready, the wait given is
+		 * signalled or {@link #WakeupAllThreads()} is called.
+		 *
+		 * @param call_wait Wait to check or {@code null}
+		 * @param wait_nanos Maximum time to block or 0 for no limit
+		 * @return {@code true} if {@code call_wait} has been signalled
+		 */
+		final boolean SleepUntilJobAddition(dxExecutorCallWait call_wait, long wait_nanos)
+		{
+			m_sleeping_thread_count.incrementAndGet();
+			try
+			{
+				synchronized (m_wakeup_monitor)
+				{
+					if (call_wait != null && call_wait.m_signalled)
+					{
+						return true;
+					}
+
+					if (m_ready_job_count.get() != 0 || IsWakeupRequested())
+					{
+						return false;
+					}
+
+					if (wait_nanos > 0)
+					{
+						m_wakeup_monitor.wait(wait_nanos / 1000000L, (int) (wait_nanos % 1000000L));
+					}
+					else
+					{
+						m_wakeup_monitor.wait();
+					}
+
+					return call_wait != null && call_wait.m_signalled;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			finally
+			{
+				m_sleeping_thread_count.decrementAndGet();
+			}
+		}
+
+		/** @return {@code true} if sleeping threads must not block, checked under the wakeup monitor */
+		boolean IsWakeupRequested() { return false; }
+
+		/** Wakes up all the threads sleeping in {@link #SleepUntilJobAddition}. */
+		final void WakeupAllThreads()
+		{
+			synchronized (m_wakeup_monitor)
+			{
+				m_wakeup_monitor.notifyAll();
+			}
+		}
+
+		private final AtomicInteger m_ready_job_count = new AtomicInteger();
+		private final AtomicInteger m_sleeping_thread_count = new AtomicInteger();
+		private final Object 		m_wakeup_monitor = new Object();
+		private final AtomicReference<Throwable> m_failure = new AtomicReference<Throwable>();
+	}
+
+
+	/************************************************************************/
+	/* dxExecutorThreading class definition                                 */
+	/************************************************************************/
+
+	static class dxExecutorThreading extends dxJobQueueThreading
+	{
+		/**
+		 * @param executor Executor to run the calls with or {@code null}
+		 * to process all calls in the waiting thread
+		 * @param thread_count Number of threads the stepper may distribute
+		 * its work to
+		 */
+		dxExecutorThreading(Executor executor, int thread_count) {
+			dIASSERT(thread_count > 0);
+			m_executor = executor;
+			m_thread_count = executor != null ? thread_count : 1;
+		}
+
+		@Override
+		void EnqueueReadyJob(dxExecutorJobInfo job_instance)
+		{
+			m_ready_jobs.add(job_instance);
+		}
+
+		@Override
+		dxExecutorJobInfo DequeueReadyJob()
+		{
+			return m_ready_jobs.poll();
+		}
+
+		@Override
+		void ProcessActiveJobAddition()
+		{
+			if (m_executor != null)
+			{
+				try
+				{
+					m_executor.execute(m_drain_task);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// The job stays queued and is picked up by the waiting thread
+				}
+			}
+		}
+
+		@Override
+		public int RetrieveActiveThreadsCount()
+		{
+			return m_thread_count;
+		}
+
+		@Override
+		public void StickToJobsProcessing(DThreadReadyToServeCallback readiness_callback/*=NULL*/,
+				CallContext callback_context/*=NULL*/)
+		{
+			dIASSERT(false); // The implementation is served by its executor
+		}
+
+		@Override
+		public void ShutdownProcessing()
+		{
+			// Do nothing
+		}
+
+		@Override
+		public void CleanupForRestart()
+		{
+			// Do nothing
+		}
+
+		private final Runnable m_drain_task = new Runnable() {
+			@Override
+			public void run() {
+				ProcessAReadyJob();
+			}
+		};
+
+		private final Executor 		m_executor;
+		private final int 			m_thread_count;
+		private final ConcurrentLinkedQueue<dxExecutorJobInfo> m_ready_jobs =
+				new ConcurrentLinkedQueue<dxExecutorJobInfo>();
+	}
+
+}
@@ -391,6 +391,8 @@ class ThreadingTemplates {
 
 		dxThreadedJobInfo       m_next_job;
 		Ref<dxThreadedJobInfo>   m_prev_job_next_ptr;
+		// reused by InsertJobInfoIntoListHead() instead of allocating a Ref per job
+		final Ref<dxThreadedJobInfo> m_prev_job_next_storage = new Ref<dxThreadedJobInfo>();
 
 		int/*ddependencycount_t*/ m_dependencies_count;
 		dxThreadedJobInfo       m_dependent_job;
@@ -551,10 +553,13 @@ class ThreadingTemplates {
 			}
 
 			//dxMutexLockHelper list_access(m_list_access_lock);
-			dxtemplateThreadingLockHelper list_access = new dxtemplateThreadingLockHelper(m_list_access_lock);
-
-			dxThreadedJobInfo picked_job = PickNextPendingJob(out_last_job_flag);
-			return picked_job;
+			m_list_access_lock.LockMutex();
+			try {
+				dxThreadedJobInfo picked_job = PickNextPendingJob(out_last_job_flag);
+				return picked_job;
+			} finally {
+				m_list_access_lock.UnlockMutex();
+			}
 		}
 
 		//template<class tThreadLull, class tThreadMutex, class tAtomicsProvider>
@@ -662,9 +667,12 @@ class ThreadingTemplates {
 		public void QueueJobForProcessing(dxThreadedJobInfo job_instance)
 		{
 			//dxMutexLockHelper list_access(m_list_access_lock);
-			dxtemplateThreadingLockHelper list_access = new dxtemplateThreadingLockHelper(m_list_access_lock);
-
-			InsertJobInfoIntoListHead(job_instance);
+			m_list_access_lock.LockMutex();
+			try {
+				InsertJobInfoIntoListHead(job_instance);
+			} finally {
+				m_list_access_lock.UnlockMutex();
+			}
 		}
 
 
@@ -719,8 +727,8 @@ class ThreadingTemplates {
 
 			if (job_list_head != null)
 			{
-				job_list_head.m_prev_job_next_ptr = 
-						new Ref<dxThreadedJobInfo>(job_instance.m_next_job);
+				job_list_head.m_prev_job_next_ptr = job_list_head.m_prev_job_next_storage;
+				job_list_head.m_prev_job_next_ptr.set(job_instance.m_next_job);
 			}
 
 			job_instance.m_prev_job_next_ptr = m_job_list;
@@ -772,19 +780,22 @@ class ThreadingTemplates {
 				// Extraction must be locked so that other thread does not "steal" head info,
 				// use it and then reinsert back with a different "next"
 				//dxMutexLockHelper pool_access(m_pool_access_lock);
-				dxtemplateThreadingLockHelper pool_access = new dxtemplateThreadingLockHelper(m_pool_access_lock);
+				m_pool_access_lock.LockMutex();
+				try {
+					dxThreadedJobInfo head_info = m_info_pool.get(); // Head info must be re-read after mutex had been locked
 
-				dxThreadedJobInfo head_info = m_info_pool.get(); // Head info must be re-read after mutex had been locked
-
-				if (head_info != null)
-				{
-					dxThreadedJobInfo next_info = head_info.m_next_job;
-					//if (tAtomicsProvider::CompareExchangeTargetPtr(&m_info_pool, (atomicptr_t)head_info, (atomicptr_t)next_info))
-					if (CompareExchangeTargetPtr(m_info_pool, head_info, next_info))
+					if (head_info != null)
 					{
-						result_info = head_info;
-						break;
+						dxThreadedJobInfo next_info = head_info.m_next_job;
+						//if (tAtomicsProvider::CompareExchangeTargetPtr(&m_info_pool, (atomicptr_t)head_info, (atomicptr_t)next_info))
+						if (CompareExchangeTargetPtr(m_info_pool, head_info, next_info))
+						{
+							result_info = head_info;
+							break;
+						}
 					}
+				} finally {
+					m_pool_access_lock.UnlockMutex();
 				}
 			}
 
@@ -1035,6 +1046,7 @@ class ThreadingTemplates {
 
 		//private:
 		private tJobListContainer       m_job_list_ptr;
+		private final RefBoolean        m_dummy_last_job_flag = new RefBoolean(false);
 
 		/************************************************************************/
 		/* Implementation of dxtemplateJobListSelfHandler                       */
@@ -1093,7 +1105,8 @@ class ThreadingTemplates {
 
 			while (true)
 			{
-				RefBoolean dummy_last_job_flag = new RefBoolean(false);
+				RefBoolean dummy_last_job_flag = m_dummy_last_job_flag;
+				dummy_last_job_flag.set(false);
 				current_job = m_job_list_ptr.ReleaseAJobAndPickNextPendingOne(
 						current_job, job_result, dxCallWait.AbstractSignalTheWait, dummy_last_job_flag);
 
@@ -1234,6 +1247,8 @@ class ThreadingTemplates {
 		//TZ TOD why on earth are there two separate fields?
 		private final tJobListContainer     m_list_container;
 		private final tJobListHandler       m_list_handler;
+		// self-threaded, so the out parameter can be reused
+		private final RefBoolean            m_job_has_become_ready = new RefBoolean(false);
 
 		/************************************************************************/
 		/* Implementation of dxtemplateThreadingImplementation                          */
@@ -1382,7 +1397,8 @@ class ThreadingTemplates {
 
 			dxThreadedJobInfo job_instance = dMAKE_RELEASEE_JOBINSTANCE(target_releasee);
 
-			RefBoolean job_has_become_ready = new RefBoolean(false);
+			RefBoolean job_has_become_ready = m_job_has_become_ready;
+			job_has_become_ready.set(false);
 			m_list_container.AlterJobProcessingDependencies(job_instance, dependencies_count_change, job_has_become_ready);
 
 			if (job_has_become_ready.get())
@@ -0,0 +1,468 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.threading;
+
+import static org.ode4j.ode.internal.Common.dAASSERT;
+import static org.ode4j.ode.internal.Common.dIASSERT;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+
+import org.ode4j.ode.threading.DThreadingImplementation.DThreadReadyToServeCallback;
+import org.ode4j.ode.threading.ThreadingExecutor.dxExecutorJobInfo;
+import org.ode4j.ode.threading.ThreadingExecutor.dxJobQueueThreading;
+import org.ode4j.ode.threading.Threading_H.CallContext;
+
+/**
+ * Built-in multi-threaded threading implementation and the thread pool
+ * serving it.
+ * <p>
+ * Every serving thread owns a job deque. Calls that become ready in a serving
+ * thread are pushed to its own deque and popped from the same end (LIFO), which
+ * keeps the data of the island or stage just processed in the cache. Calls
+ * posted from other threads go to a shared deque. Threads that run out of work
+ * take calls from the shared deque and then steal from the opposite end (FIFO)
+ * of the other threads' deques.
+ */
+class ThreadingWorkStealing {
+
+	/************************************************************************/
+	/* dxWorkerJobQueue class definition                                    */
+	/************************************************************************/
+
+	private static class dxWorkerJobQueue
+	{
+		dxWorkerJobQueue(int index) {
+			m_index = index;
+		}
+
+		synchronized void PushJob(dxExecutorJobInfo job_instance) {
+			m_jobs.addLast(job_instance);
+		}
+
+		synchronized dxExecutorJobInfo PopJob() {
+			return m_jobs.pollLast();
+		}
+
+		synchronized dxExecutorJobInfo StealJob() {
+			return m_jobs.pollFirst();
+		}
+
+		final int m_index;
+		private final ArrayDeque<dxExecutorJobInfo> m_jobs = new ArrayDeque<dxExecutorJobInfo>();
+	}
+
+
+	/************************************************************************/
+	/* dxMultiThreadedThreading class definition                            */
+	/************************************************************************/
+
+	static class dxMultiThreadedThreading extends dxJobQueueThreading
+	{
+		dxMultiThreadedThreading() {
+			// Nothing
+		}
+
+		@Override
+		void EnqueueReadyJob(dxExecutorJobInfo job_instance)
+		{
+			dxWorkerJobQueue own_queue = m_current_worker.get();
+
+			if (own_queue != null)
+			{
+				own_queue.PushJob(job_instance);
+			}
+			else
+			{
+				m_shared_queue.PushJob(job_instance);
+			}
+		}
+
+		@Override
+		dxExecutorJobInfo DequeueReadyJob()
+		{
+			dxWorkerJobQueue own_queue = m_current_worker.get();
+			dxExecutorJobInfo job_instance = null;
+			int first_victim = 0;
+
+			if (own_queue != null)
+			{
+				job_instance = own_queue.PopJob();
+				first_victim = own_queue.m_index + 1;
+			}
+
+			if (job_instance == null)
+			{
+				job_instance = m_shared_queue.StealJob();
+			}
+
+			if (job_instance == null)
+			{
+				dxWorkerJobQueue[] worker_queues = m_worker_queues;
+				final int worker_count = worker_queues.length;
+
+				for (int i = 0; i != worker_count && job_instance == null; ++i)
+				{
+					dxWorkerJobQueue victim = worker_queues[(first_victim + i) % worker_count];
+
+					if (victim != own_queue)
+					{
+						job_instance = victim.StealJob();
+					}
+				}
+			}
+
+			return job_instance;
+		}
+
+		@Override
+		public int RetrieveActiveThreadsCount()
+		{
+			int worker_count = m_worker_queues.length;
+			return worker_count != 0 ? worker_count : 1;
+		}
+
+		@Override
+		public void StickToJobsProcessing(DThreadReadyToServeCallback readiness_callback/*=NULL*/,
+				CallContext callback_context/*=NULL*/)
+		{
+			dxWorkerJobQueue own_queue = RegisterAsActiveThread();
+
+			try
+			{
+				if (readiness_callback != null)
+				{
+					readiness_callback.run(callback_context);
+				}
+
+				PerformJobProcessingUntilShutdown();
+			}
+			finally
+			{
+				UnregisterAsActiveThread(own_queue);
+			}
+		}
+
+		private void PerformJobProcessingUntilShutdown()
+		{
+			while (true)
+			{
+				if (ProcessAReadyJob())
+				{
+					continue;
+				}
+
+				// It is expected that new jobs will not be queued any longer after shutdown had been requested
+				if (m_shutdown_requested)
+				{
+					break;
+				}
+
+				SleepUntilJobAddition(null, 0);
+			}
+		}
+
+		@Override
+		boolean IsWakeupRequested()
+		{
+			return m_shutdown_requested;
+		}
+
+		@Override
+		public void ShutdownProcessing()
+		{
+			m_shutdown_requested = true;
+			WakeupAllThreads();
+		}
+
+		@Override
+		public void CleanupForRestart()
+		{
+			m_shutdown_requested = false;
+		}
+
+		private synchronized dxWorkerJobQueue RegisterAsActiveThread()
+		{
+			dIASSERT(m_current_worker.get() == null);
+
+			dxWorkerJobQueue[] old_queues = m_worker_queues;
+			dxWorkerJobQueue own_queue = new dxWorkerJobQueue(old_queues.length);
+			dxWorkerJobQueue[] new_queues = new dxWorkerJobQueue[old_queues.length + 1];
+			System.arraycopy(old_queues, 0, new_queues, 0, old_queues.length);
+			new_queues[old_queues.length] = own_queue;
+			m_worker_queues = new_queues;
+
+			m_current_worker.set(own_queue);
+			return own_queue;
+		}
+
+		private synchronized void UnregisterAsActiveThread(dxWorkerJobQueue own_queue)
+		{
+			m_current_worker.remove();
+
+			dxWorkerJobQueue[] old_queues = m_worker_queues;
+			dxWorkerJobQueue[] new_queues = new dxWorkerJobQueue[old_queues.length - 1];
+			// Queue indices are only used to spread the stealing, they are not renumbered
+			for (int i = 0, j = 0; i != old_queues.length; ++i)
+			{
+				if (old_queues[i] != own_queue)
+				{
+					new_queues[j++] = old_queues[i];
+				}
+			}
+			m_worker_queues = new_queues;
+
+			// Hand over anything left behind, this can only happen if the thread is interrupted
+			dxExecutorJobInfo job_instance;
+			while ((job_instance = own_queue.StealJob()) != null)
+			{
+				m_shared_queue.PushJob(job_instance);
+			}
+		}
+
+		private final dxWorkerJobQueue m_shared_queue = new dxWorkerJobQueue(-1);
+		private volatile dxWorkerJobQueue[] m_worker_queues = new dxWorkerJobQueue[0];
+		private final ThreadLocal<dxWorkerJobQueue> m_current_worker = new ThreadLocal<dxWorkerJobQueue>();
+		private volatile boolean m_shutdown_requested;
+	}
+
+
+	/************************************************************************/
+	/* dxThreadPool class definition                                        */
+	/************************************************************************/
+
+	static class dxThreadPool extends DThreadingThreadPool
+	{
+		dxThreadPool(int thread_count, int stack_size)
+		{
+			dAASSERT(thread_count > 0);
+
+			m_threads = new Thread[thread_count];
+			for (int i = 0; i != thread_count; ++i)
+			{
+				Thread thread = new Thread(null, m_thread_loop, "ode4j-pool-" + i, stack_size);
+				thread.setDaemon(true);
+				m_threads[i] = thread;
+			}
+			for (Thread thread: m_threads)
+			{
+				thread.start();
+			}
+		}
+
+		@Override
+		public void serveMultiThreadedImplementation(DThreadingImplementation impl)
+		{
+			CountDownLatch ready_latch = new CountDownLatch(m_threads.length);
+
+			synchronized (this)
+			{
+				dAASSERT(!m_free_requested);
+				m_serve_impl = impl;
+				m_ready_latch = ready_latch;
+				++m_serve_generation;
+				notifyAll();
+			}
+
+			try
+			{
+				ready_latch.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			synchronized (this)
+			{
+				RethrowServeFailure();
+			}
+		}
+
+		@Override
+		public synchronized void waitIdleState()
+		{
+			try
+			{
+				while (m_busy_thread_count != 0)
+				{
+					wait();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			RethrowServeFailure();
+		}
+
+		// guarded by this
+		private void RethrowServeFailure()
+		{
+			Throwable failure = m_serve_failure;
+			if (failure != null)
+			{
+				m_serve_failure = null;
+				throw new RuntimeException("Thread pool thread failed to serve the threading implementation", failure);
+			}
+		}
+
+		@Override
+		public void freeThreadPool()
+		{
+			synchronized (this)
+			{
+				m_free_requested = true;
+				notifyAll();
+			}
+
+			try
+			{
+				for (Thread thread: m_threads)
+				{
+					thread.join();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+
+		private void ServeImplementations()
+		{
+			int served_generation = 0;
+
+			while (true)
+			{
+				DThreadingImplementation impl;
+				final CountDownLatch ready_latch;
+
+				synchronized (this)
+				{
+					try
+					{
+						while (!m_free_requested && m_serve_generation == served_generation)
+						{
+							wait();
+						}
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+
+					if (m_free_requested)
+					{
+						return;
+					}
+
+					served_generation = m_serve_generation;
+					impl = m_serve_impl;
+					ready_latch = m_ready_latch;
+					++m_busy_thread_count;
+				}
+
+				dxReadyCountDown ready_count_down = new dxReadyCountDown(ready_latch);
+				try
+				{
+					impl.dExternalThreadingServeMultiThreadedImplementation(ready_count_down, null);
+				}
+				catch (Throwable t)
+				{
+					// Keep the thread for later serve requests, the failure is 
+					// reported to the caller of serve or wait
+					synchronized (this)
+					{
+						if (m_serve_failure == null)
+						{
+							m_serve_failure = t;
+						}
+					}
+				}
+				finally
+				{
+					// Do not leave the serve request waiting if the thread failed 
+					// or returned before it was ready
+					ready_count_down.CountDownOnce();
+					synchronized (this)
+					{
+						--m_busy_thread_count;
+						notifyAll();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Counts the ready latch down once for a serving thread.
+		 */
+		private static class dxReadyCountDown implements DThreadReadyToServeCallback
+		{
+			dxReadyCountDown(CountDownLatch ready_latch)
+			{
+				m_ready_latch = ready_latch;
+			}
+
+			@Override
+			public void run(CallContext callback_context)
+			{
+				CountDownOnce();
+			}
+
+			void CountDownOnce()
+			{
+				if (!m_counted_down)
+				{
+					m_counted_down = true;
+					m_ready_latch.countDown();
+				}
+			}
+
+			private final CountDownLatch m_ready_latch;
+			// only accessed by the serving thread
+			private boolean m_counted_down;
+		}
+
+		private final Runnable m_thread_loop = new Runnable() {
+			@Override
+			public void run() {
+				ServeImplementations();
+			}
+		};
+
+		private final Thread[] 				m_threads;
+		// guarded by this
+		private DThreadingImplementation	m_serve_impl;
+		private CountDownLatch 				m_ready_latch;
+		private int 						m_serve_generation;
+		private int 						m_busy_thread_count;
+		private boolean 					m_free_requested;
+		private Throwable 					m_serve_failure;
+	}
+
+}
@@ -37,7 +37,7 @@ import org.ode4j.ode.internal.processmem.DxWorldProcessContext.dxProcessContextM
  */
 public class Threading_H {
 
-	public static boolean dTHREADING_INTF_DISABLED = true;
+	public static boolean dTHREADING_INTF_DISABLED = false;
 
 //	struct dxThreadingImplementation;
 //	typedef struct dxThreadingImplementation *dThreadingImplementationID;
@@ -0,0 +1,207 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DQuaternion;
+import org.ode4j.math.DQuaternionC;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Bulk body state copies of DWorld against the per-body accessors.
+ */
+public class BodyStateBulkTest {
+
+	private static final int BODIES = 50;
+	private static final int S = DWorld.BODY_STATE_SIZE;
+
+	private DWorld world;
+	private DBody[] bodies;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Before
+	public void createBodies() {
+		world = OdeHelper.createWorld();
+		Random rnd = new Random(1);
+		for (int i = 0; i < BODIES; i++) {
+			DBody b = OdeHelper.createBody(world);
+			b.setPosition(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble());
+			DQuaternion q = new DQuaternion(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble());
+			q.normalize();
+			b.setQuaternion(q);
+			b.setLinearVel(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble());
+			b.setAngularVel(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble());
+		}
+		bodies = new DBody[world.getBodyCount()];
+		assertEquals(BODIES, world.getBodies(bodies));
+	}
+
+	private static void assertState(DBody b, double[] s, int offset) {
+		assertVector(b.getPosition(), s, offset);
+		DQuaternionC q = b.getQuaternion();
+		for (int k = 0; k < 4; k++) {
+			assertEquals(q.get(k), s[offset + 3 + k], 0);
+		}
+		assertVector(b.getLinearVel(), s, offset + 7);
+		assertVector(b.getAngularVel(), s, offset + 10);
+	}
+
+	private static void assertVector(DVector3C v, double[] s, int offset) {
+		for (int k = 0; k < 3; k++) {
+			assertEquals(v.get(k), s[offset + k], 0);
+		}
+	}
+
+	@Test
+	public void testGetAll() {
+		double[] states = new double[2 + BODIES * S];
+		assertEquals(BODIES, world.getBodyStates(states, 2));
+		for (int i = 0; i < BODIES; i++) {
+			assertState(bodies[i], states, 2 + i * S);
+		}
+		world.destroy();
+	}
+
+	@Test
+	public void testSetAll() {
+		double[] states = new double[BODIES * S];
+		world.getBodyStates(states, 0);
+		for (int i = 0; i < states.length; i++) {
+			states[i] += 0.25;
+		}
+		world.setBodyStates(states, 0);
+		for (int i = 0; i < BODIES; i++) {
+			// the quaternions have been normalized
+			DQuaternion q = new DQuaternion(states[i * S + 3], states[i * S + 4], 
+					states[i * S + 5], states[i * S + 6]);
+			q.normalize();
+			for (int k = 0; k < 4; k++) {
+				states[i * S + 3 + k] = q.get(k);
+			}
+			assertState(bodies[i], states, i * S);
+		}
+		world.destroy();
+	}
+
+	@Test
+	public void testSelectedBodiesDirectBuffer() {
+		DBody[] selected = {bodies[7], bodies[3], bodies[40]};
+		DoubleBuffer buf = ByteBuffer.allocateDirect(selected.length * S * 8)
+				.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		world.getBodyStates(selected, buf);
+		assertEquals(0, buf.remaining());
+		buf.flip();
+		double[] states = new double[selected.length * S];
+		buf.get(states);
+		for (int i = 0; i < selected.length; i++) {
+			assertState(selected[i], states, i * S);
+		}
+
+		// copy the state of body 3 to body 7 and 40
+		buf.clear();
+		for (int i = 0; i < selected.length; i++) {
+			buf.put(states, S, S);
+		}
+		buf.flip();
+		world.setBodyStates(selected, buf);
+		assertState(bodies[7], states, S);
+		assertState(bodies[40], states, S);
+		world.destroy();
+	}
+
+	@Test
+	public void testSlicedHeapBuffer() {
+		// the buffer starts at index 1 of the array, the states at index 3
+		double[] array = new double[3 + BODIES * S];
+		DoubleBuffer buf = DoubleBuffer.wrap(array, 1, array.length - 1).slice();
+		buf.position(2);
+		assertEquals(BODIES, world.getBodyStates(buf));
+		assertEquals(0, buf.remaining());
+		for (int i = 0; i < BODIES; i++) {
+			assertState(bodies[i], array, 3 + i * S);
+		}
+
+		// each body gets the state of the next one
+		double[] first = new double[S];
+		System.arraycopy(array, 3, first, 0, S);
+		System.arraycopy(array, 3 + S, array, 3, (BODIES - 1) * S);
+		System.arraycopy(first, 0, array, 3 + (BODIES - 1) * S, S);
+		buf.position(2);
+		world.setBodyStates(buf);
+		assertEquals(0, buf.remaining());
+		for (int i = 0; i < BODIES; i++) {
+			int o = 3 + i * S;
+			// the quaternions have been normalized
+			DQuaternion q = new DQuaternion(array[o + 3], array[o + 4], array[o + 5], array[o + 6]);
+			q.normalize();
+			for (int k = 0; k < 4; k++) {
+				array[o + 3 + k] = q.get(k);
+			}
+			assertState(bodies[i], array, o);
+		}
+		world.destroy();
+	}
+
+	@Test
+	public void testGeomsFollow() {
+		DGeom g = OdeHelper.createSphere(null, 1);
+		g.setBody(bodies[5]);
+		double[] states = new double[BODIES * S];
+		world.getBodyStates(states, 0);
+		states[5 * S] = 10;
+		states[5 * S + 1] = 20;
+		states[5 * S + 2] = 30;
+		world.setBodyStates(states, 0);
+		assertEquals(10, g.getPosition().get0(), 0);
+		assertEquals(20, g.getPosition().get1(), 0);
+		assertEquals(30, g.getPosition().get2(), 0);
+		assertEquals(29, g.getAABB().getMin2(), 1e-12);
+		assertSame(bodies[5], g.getBody());
+		g.destroy();
+		world.destroy();
+	}
+}
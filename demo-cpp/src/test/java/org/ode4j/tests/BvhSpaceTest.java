@@ -0,0 +1,228 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.tests.SpaceTestHelper.collide;
+import static org.ode4j.tests.SpaceTestHelper.collide2;
+import static org.ode4j.tests.SpaceTestHelper.createBox;
+import static org.ode4j.tests.SpaceTestHelper.key;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DBvhSpace;
+import org.ode4j.ode.DBvhSpace.DBvhQueryCallback;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DRay;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares the pairs reported by the BVH space with the simple space.
+ */
+public class BvhSpaceTest {
+
+	private static final int N = 300;
+	private static final int STEPS = 60;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static class QueryCollector implements DBvhQueryCallback {
+		final Set<Integer> geoms = new HashSet<Integer>();
+		@Override
+		public void call(Object data, DGeom geom) {
+			assertTrue("geom reported twice", geoms.add((Integer) geom.getData()));
+		}
+	}
+
+	@Test
+	public void testPairsMatchSimpleSpace() {
+		Random r = new Random(42);
+		DSpace ref = OdeHelper.createSimpleSpace();
+		DBvhSpace bvh = OdeHelper.createBvhSpace();
+		assertEquals(DGeom.dBvhSpaceClass, bvh.getClassID());
+
+		DBox[] refGeoms = new DBox[N];
+		DBox[] bvhGeoms = new DBox[N];
+		for (int i = 0; i < N; i++) {
+			refGeoms[i] = createBox(ref, i);
+			bvhGeoms[i] = createBox(bvh, i);
+		}
+		OdeHelper.createPlane(ref, 0, 0, 1, 0).setData(N);
+		OdeHelper.createPlane(bvh, 0, 0, 1, 0).setData(N);
+		DRay refRay = OdeHelper.createRay(null, 30);
+		DRay bvhRay = OdeHelper.createRay(null, 30);
+		refRay.setData(N + 1);
+		DContactGeomBuffer contacts = new DContactGeomBuffer(1);
+		bvhRay.setData(N + 1);
+
+		for (int step = 0; step < STEPS; step++) {
+			for (int i = 0; i < N; i++) {
+				// the first steps move everything, later on only a few geoms move
+				if (step > 2 && r.nextInt(10) != 0) {
+					continue;
+				}
+				// large jumps as well as small moves within the margin
+				double d = r.nextBoolean() ? 20 : 0.05;
+				DVector3 p = new DVector3(refGeoms[i].getPosition());
+				if (d > 1) {
+					p.set(r.nextDouble() * d, r.nextDouble() * d, r.nextDouble() * d - 1);
+				} else {
+					p.add(r.nextDouble() * d, r.nextDouble() * d, r.nextDouble() * d);
+				}
+				refGeoms[i].setPosition(p);
+				bvhGeoms[i].setPosition(p);
+			}
+			if (step % 10 == 5) {
+				// remove, re-add and resize some geoms
+				for (int i = step % 7; i < N; i += 13) {
+					refGeoms[i].destroy();
+					bvhGeoms[i].destroy();
+					refGeoms[i] = createBox(ref, i);
+					bvhGeoms[i] = createBox(bvh, i);
+					double x = r.nextDouble() * 20;
+					refGeoms[i].setPosition(x, 5, 5);
+					bvhGeoms[i].setPosition(x, 5, 5);
+				}
+				for (int i = step % 3; i < N; i += 29) {
+					double l = 0.5 + r.nextDouble() * 3;
+					refGeoms[i].setLengths(l, l, l);
+					bvhGeoms[i].setLengths(l, l, l);
+				}
+			}
+			if (step % 10 == 8) {
+				for (int i = step % 5; i < N; i += 17) {
+					if (refGeoms[i].isEnabled()) {
+						refGeoms[i].disable();
+						bvhGeoms[i].disable();
+					} else {
+						refGeoms[i].enable();
+						bvhGeoms[i].enable();
+					}
+				}
+			}
+			assertEquals("step " + step, collide(ref), collide(bvh));
+
+			double rx = r.nextDouble() * 20, ry = r.nextDouble() * 20;
+			refRay.set(rx, ry, -5, r.nextDouble() - 0.5, r.nextDouble() - 0.5, 1);
+			bvhRay.set(new DVector3(rx, ry, -5), refRay.getDirection());
+			// the BVH space skips geoms whose AABB is not hit by the ray
+			Set<Long> refRayPairs = collide2(ref, refRay);
+			Set<Long> bvhRayPairs = collide2(bvh, bvhRay);
+			assertTrue("step " + step, refRayPairs.containsAll(bvhRayPairs));
+			for (int i = 0; i < N; i++) {
+				if (refGeoms[i].isEnabled() 
+						&& OdeHelper.collide(refRay, refGeoms[i], 1, contacts) > 0) {
+					assertTrue("step " + step, bvhRayPairs.contains(key(refRay, refGeoms[i])));
+				}
+			}
+			assertEquals("step " + step, 
+					collide2(ref, refGeoms[step]), collide2(bvh, bvhGeoms[step]));
+		}
+
+		ref.destroy();
+		bvh.destroy();
+	}
+
+	@Test
+	public void testQueries() {
+		Random r = new Random(7);
+		DBvhSpace bvh = OdeHelper.createBvhSpace();
+		bvh.setMargin(0.5);
+		assertEquals(0.5, bvh.getMargin(), 0);
+		DGeom[] geoms = new DGeom[N];
+		for (int i = 0; i < N; i++) {
+			geoms[i] = createBox(bvh, i);
+			geoms[i].setPosition(r.nextDouble() * 50, r.nextDouble() * 50, r.nextDouble() * 50);
+		}
+		geoms[0].disable();
+
+		for (int q = 0; q < 20; q++) {
+			DVector3 min = new DVector3(r.nextDouble() * 40, r.nextDouble() * 40, r.nextDouble() * 40);
+			DAABB aabb = new DAABB();
+			aabb.set(min.get0(), min.get0() + 10, min.get1(), min.get1() + 10, 
+					min.get2(), min.get2() + 10);
+			QueryCollector c = new QueryCollector();
+			bvh.queryAABB(aabb, null, c);
+			Set<Integer> expected = new HashSet<Integer>();
+			for (int i = 1; i < N; i++) {
+				if (!geoms[i].getAABB().isDisjoint(aabb)) {
+					expected.add(i);
+				}
+			}
+			assertEquals(expected, c.geoms);
+
+			// ray along the x axis through the query box
+			DVector3 start = new DVector3(-1, min.get1() + 5, min.get2() + 5);
+			c = new QueryCollector();
+			bvh.queryRay(start, new DVector3(1, 0, 0), 100, null, c);
+			expected.clear();
+			for (int i = 1; i < N; i++) {
+				DAABB a = (DAABB) geoms[i].getAABB();
+				if (a.getMin1() <= start.get1() && a.getMax1() >= start.get1() 
+						&& a.getMin2() <= start.get2() && a.getMax2() >= start.get2()) {
+					expected.add(i);
+				}
+			}
+			assertEquals(expected, c.geoms);
+		}
+		bvh.destroy();
+	}
+
+	@Test
+	public void testNestedAndEmpty() {
+		DBvhSpace outer = OdeHelper.createBvhSpace();
+		DBvhSpace inner = OdeHelper.createBvhSpace(outer);
+		inner.setData(100);
+		assertTrue(collide(outer).isEmpty());
+		DGeom a = createBox(outer, 0);
+		DGeom b = createBox(inner, 1);
+		b.setPosition(0.5, 0, 0);
+		assertEquals(1, collide(outer).size());
+		b.setPosition(5, 0, 0);
+		assertTrue(collide(outer).isEmpty());
+		a.destroy();
+		b.destroy();
+		assertFalse(collide(outer).size() > 0);
+		outer.destroy();
+	}
+}
@@ -0,0 +1,253 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.math.DMatrix3C;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DConvex;
+import org.ode4j.ode.DRotation;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Convexes with many points use hill-climbing over the vertex adjacency 
+ * for their support queries. The AABB and the libccd colliders must give
+ * the same result as a scan over all points, also when the orientation
+ * changes from call to call and after the shape is replaced.
+ */
+public class ConvexSupportTest {
+
+	private static final double EPS = 1e-12;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	/**
+	 * A polyhedral sphere from <code>slices</code> meridians and 
+	 * <code>stacks</code> parallels, with quads in between and triangles
+	 * at the poles.
+	 */
+	private static final class Globe {
+		final double[] points;
+		final double[] planes;
+		final int[] polygons;
+		final int pointCount;
+		final int planeCount;
+
+		Globe(double r, int slices, int stacks) {
+			pointCount = 2 + slices * (stacks - 1);
+			planeCount = slices * stacks;
+			points = new double[pointCount * 3];
+			points[2] = r;
+			points[pointCount * 3 - 1] = -r;
+			for (int i = 1; i < stacks; i++) {
+				double theta = Math.PI * i / stacks;
+				for (int j = 0; j < slices; j++) {
+					double phi = 2 * Math.PI * j / slices;
+					int p = 3 * point(i, j, slices, stacks);
+					points[p] = r * Math.sin(theta) * Math.cos(phi);
+					points[p + 1] = r * Math.sin(theta) * Math.sin(phi);
+					points[p + 2] = r * Math.cos(theta);
+				}
+			}
+			planes = new double[planeCount * 4];
+			polygons = new int[2 * slices * 4 + (stacks - 2) * slices * 5];
+			int pos = 0;
+			int plane = 0;
+			for (int i = 0; i < stacks; i++) {
+				for (int j = 0; j < slices; j++) {
+					int j1 = (j + 1) % slices;
+					int[] face;
+					if (i == 0) {
+						face = new int[] {0, point(1, j, slices, stacks), point(1, j1, slices, stacks)};
+					} else if (i == stacks - 1) {
+						face = new int[] {pointCount - 1, point(i, j1, slices, stacks), point(i, j, slices, stacks)};
+					} else {
+						face = new int[] {point(i, j, slices, stacks), point(i + 1, j, slices, stacks), 
+								point(i + 1, j1, slices, stacks), point(i, j1, slices, stacks)};
+					}
+					polygons[pos++] = face.length;
+					for (int f: face) {
+						polygons[pos++] = f;
+					}
+					setPlane(plane++, face[0], face[1], face[2]);
+				}
+			}
+		}
+
+		private static int point(int stack, int slice, int slices, int stacks) {
+			return 1 + (stack - 1) * slices + slice;
+		}
+
+		private void setPlane(int plane, int a, int b, int c) {
+			double ux = points[b * 3] - points[a * 3];
+			double uy = points[b * 3 + 1] - points[a * 3 + 1];
+			double uz = points[b * 3 + 2] - points[a * 3 + 2];
+			double vx = points[c * 3] - points[a * 3];
+			double vy = points[c * 3 + 1] - points[a * 3 + 1];
+			double vz = points[c * 3 + 2] - points[a * 3 + 2];
+			double nx = uy * vz - uz * vy;
+			double ny = uz * vx - ux * vz;
+			double nz = ux * vy - uy * vx;
+			double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+			nx /= len;
+			ny /= len;
+			nz /= len;
+			planes[plane * 4] = nx;
+			planes[plane * 4 + 1] = ny;
+			planes[plane * 4 + 2] = nz;
+			planes[plane * 4 + 3] = nx * points[a * 3] + ny * points[a * 3 + 1] + nz * points[a * 3 + 2];
+		}
+
+		DConvex create() {
+			return OdeHelper.createConvex(planes, planeCount, points, pointCount, polygons);
+		}
+	}
+
+	private static void assertAABB(DConvex convex, double[] points, int pointCount) {
+		DMatrix3C R = convex.getRotation();
+		DVector3C pos = convex.getPosition();
+		double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+		double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+		for (int i = 0; i < pointCount; i++) {
+			for (int k = 0; k < 3; k++) {
+				double v = R.get(k, 0) * points[i * 3] + R.get(k, 1) * points[i * 3 + 1] 
+						+ R.get(k, 2) * points[i * 3 + 2] + pos.get(k);
+				min[k] = Math.min(min[k], v);
+				max[k] = Math.max(max[k], v);
+			}
+		}
+		DAABBC aabb = convex.getAABB();
+		for (int k = 0; k < 3; k++) {
+			assertEquals(min[k], aabb.getMin(k), EPS);
+			assertEquals(max[k], aabb.getMax(k), EPS);
+		}
+	}
+
+	@Test
+	public void testAABBRandomRotations() {
+		Globe globe = new Globe(1, 40, 30);
+		DConvex convex = globe.create();
+		Random rnd = new Random(19);
+		DMatrix3 R = new DMatrix3();
+		for (int n = 0; n < 200; n++) {
+			DRotation.dRFromAxisAndAngle(R, rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5, 
+					rnd.nextDouble() - 0.5, rnd.nextDouble() * 2 * Math.PI);
+			convex.setRotation(R);
+			convex.setPosition(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble());
+			assertAABB(convex, globe.points, globe.pointCount);
+		}
+		convex.destroy();
+	}
+
+	@Test
+	public void testAABBSlowRotation() {
+		// an elongated shape, so the support vertices really move
+		Globe globe = new Globe(1, 64, 48);
+		for (int i = 0; i < globe.pointCount; i++) {
+			globe.points[i * 3] *= 3;
+		}
+		DConvex convex = globe.create();
+		DMatrix3 R = new DMatrix3();
+		for (int n = 0; n < 500; n++) {
+			DRotation.dRFromAxisAndAngle(R, 0.3, 1, 0.2, n * 0.01);
+			convex.setRotation(R);
+			assertAABB(convex, globe.points, globe.pointCount);
+		}
+		convex.destroy();
+	}
+
+	@Test
+	public void testSetConvexRebuildsAdjacency() {
+		Globe small = new Globe(1, 8, 6);
+		Globe large = new Globe(2, 50, 20);
+		DConvex convex = small.create();
+		DMatrix3 R = new DMatrix3();
+		DRotation.dRFromAxisAndAngle(R, 1, 2, 3, 0.7);
+		convex.setRotation(R);
+		assertAABB(convex, small.points, small.pointCount);
+		convex.setConvex(large.planes, large.planeCount, large.points, large.pointCount, large.polygons);
+		convex.setRotation(R);
+		assertAABB(convex, large.points, large.pointCount);
+		convex.setConvex(small.planes, small.planeCount, small.points, small.pointCount, small.polygons);
+		convex.setRotation(R);
+		assertAABB(convex, small.points, small.pointCount);
+		convex.destroy();
+	}
+
+	@Test
+	public void testCollideSphere() {
+		DConvex convex = new Globe(1, 64, 48).create();
+		DSphere sphere = OdeHelper.createSphere(0.5);
+		DContactGeomBuffer contacts = new DContactGeomBuffer(4);
+		DMatrix3 R = new DMatrix3();
+		for (int n = 0; n < 50; n++) {
+			// rotate about z, the poles stay where they are
+			DRotation.dRFromAxisAndAngle(R, 0, 0, 1, n * 0.1);
+			convex.setRotation(R);
+			sphere.setPosition(0, 0, 1.5 - 0.01);
+			assertEquals(1, OdeHelper.collide(convex, sphere, 4, contacts));
+			assertEquals(0.01, contacts.get(0).depth, 1e-4);
+			sphere.setPosition(0, 0, 1.5 + 0.01);
+			assertEquals(0, OdeHelper.collide(convex, sphere, 4, contacts));
+		}
+		sphere.destroy();
+		convex.destroy();
+	}
+
+	@Test
+	public void testCollideConvex() {
+		Globe globe = new Globe(1, 64, 48);
+		DConvex c1 = globe.create();
+		DConvex c2 = globe.create();
+		DContactGeomBuffer contacts = new DContactGeomBuffer(4);
+		// both globes have points on the x axis, so this gap is exact
+		c2.setPosition(2.01, 0, 0);
+		assertEquals(0, OdeHelper.collide(c1, c2, 4, contacts));
+		for (int n = 0; n < 50; n++) {
+			double phi = n * 0.1;
+			c2.setPosition(1.99 * Math.cos(phi), 0, 1.99 * Math.sin(phi));
+			assertTrue(OdeHelper.collide(c1, c2, 4, contacts) > 0);
+		}
+		c2.destroy();
+		c1.destroy();
+	}
+}
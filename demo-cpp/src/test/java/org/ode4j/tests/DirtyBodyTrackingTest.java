@@ -0,0 +1,207 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Dirty body tracking of DWorld.
+ */
+public class DirtyBodyTrackingTest {
+
+	// more than one word of the bit set
+	private static final int BODIES = 150;
+
+	private DWorld world;
+	private DBody[] bodies;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Before
+	public void createBodies() {
+		world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -10);
+		world.setAutoDisableFlag(false);
+		bodies = new DBody[BODIES];
+		for (int i = 0; i < BODIES; i++) {
+			bodies[i] = OdeHelper.createBody(world);
+			bodies[i].setPosition(i, 0, 0);
+		}
+	}
+
+	@After
+	public void destroyWorld() {
+		world.destroy();
+	}
+
+	private Set<DBody> drainAll() {
+		DBody[] out = new DBody[world.getBodyCount()];
+		int n = world.drainDirtyBodies(out, null);
+		assertEquals(0, world.getDirtyBodyCount());
+		return new HashSet<DBody>(Arrays.asList(out).subList(0, n));
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		assertFalse(world.getDirtyBodyTracking());
+		assertEquals(0, world.getDirtyBodyCount());
+		assertEquals(0, world.drainDirtyBodies(new DBody[BODIES], null));
+	}
+
+	@Test
+	public void testDrain() {
+		world.setDirtyBodyTracking(true);
+		assertEquals(BODIES, world.getDirtyBodyCount());
+
+		// partial drain
+		DBody[] out = new DBody[100];
+		assertEquals(100, world.drainDirtyBodies(out, null));
+		assertEquals(BODIES - 100, world.getDirtyBodyCount());
+		Set<DBody> drained = new HashSet<DBody>(Arrays.asList(out));
+		drained.addAll(drainAll());
+		assertEquals(BODIES, drained.size());
+
+		// setters
+		bodies[3].setLinearVel(1, 0, 0);
+		bodies[70].setPosition(0, 1, 0);
+		bodies[149].setQuaternion(bodies[149].getQuaternion());
+		DBody b = OdeHelper.createBody(world);
+		assertEquals(new HashSet<DBody>(Arrays.asList(bodies[3], bodies[70], bodies[149], b)), drainAll());
+
+		// destroyed bodies are removed, their index is reused
+		bodies[10].setPosition(1, 1, 1);
+		bodies[10].destroy();
+		assertEquals(0, world.getDirtyBodyCount());
+		DBody c = OdeHelper.createBody(world);
+		assertEquals(new HashSet<DBody>(Arrays.asList(c)), drainAll());
+	}
+
+	@Test
+	public void testDrainStates() {
+		world.setDirtyBodyTracking(true);
+		drainAll();
+		bodies[5].setPosition(5, 6, 7);
+		bodies[120].setAngularVel(1, 2, 3);
+		DBody[] out = new DBody[4];
+		DoubleBuffer states = DoubleBuffer.allocate(4 * DWorld.BODY_STATE_SIZE);
+		assertEquals(2, world.drainDirtyBodies(out, states));
+		assertEquals(2 * DWorld.BODY_STATE_SIZE, states.position());
+		DoubleBuffer expected = DoubleBuffer.allocate(2 * DWorld.BODY_STATE_SIZE);
+		world.getBodyStates(new DBody[] {out[0], out[1]}, expected);
+		states.flip();
+		expected.flip();
+		assertEquals(expected, states);
+	}
+
+	@Test
+	public void testStepThreshold() {
+		world.setDirtyBodyTracking(true);
+		world.setDirtyBodyThreshold(0.01, 0.1);
+		for (int i = 0; i < BODIES; i += 2) {
+			bodies[i].disable();
+		}
+		drainAll();
+
+		// falls 10 / 2 * 0.01^2 = 0.0005 per step at first
+		world.step(0.01);
+		assertEquals(0, world.getDirtyBodyCount());
+		// 0.5 * 10 * 0.05^2 = 0.0125 after 5 steps
+		for (int i = 0; i < 4; i++) {
+			world.step(0.01);
+		}
+		Set<DBody> dirty = drainAll();
+		assertEquals(BODIES / 2, dirty.size());
+		for (DBody b: dirty) {
+			assertTrue(b.isEnabled());
+		}
+
+		// spinning
+		world.setGravity(0, 0, 0);
+		for (DBody b: bodies) {
+			b.setLinearVel(0, 0, 0);
+		}
+		bodies[1].setAngularVel(0, 0, 5);
+		drainAll();
+		world.step(0.01);
+		world.step(0.01);
+		assertEquals(0, world.getDirtyBodyCount());
+		world.step(0.01);
+		assertEquals(new HashSet<DBody>(Arrays.asList(bodies[1])), drainAll());
+	}
+
+	@Test
+	public void testThreadedStep() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			world.setStepExecutor(executor, 4);
+			world.setDirtyBodyTracking(true);
+			drainAll();
+			// every body is an island
+			world.quickStep(0.01);
+			assertEquals(BODIES, world.getDirtyBodyCount());
+			assertEquals(BODIES, drainAll().size());
+			world.setStepExecutor(null, 0);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testDisable() {
+		world.setDirtyBodyTracking(true);
+		world.setDirtyBodyTracking(false);
+		assertFalse(world.getDirtyBodyTracking());
+		bodies[0].setPosition(1, 2, 3);
+		OdeHelper.createBody(world).destroy();
+		world.step(0.01);
+		assertEquals(0, world.getDirtyBodyCount());
+		world.setDirtyBodyTracking(true);
+		assertEquals(BODIES, world.getDirtyBodyCount());
+	}
+}
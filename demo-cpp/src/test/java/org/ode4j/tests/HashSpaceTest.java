@@ -0,0 +1,127 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.ode4j.tests.SpaceTestHelper.collide;
+import static org.ode4j.tests.SpaceTestHelper.createBox;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DHashSpace;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares the pairs reported by the hash space with the simple space.
+ */
+public class HashSpaceTest {
+
+	private static final int N = 300;
+	private static final int STEPS = 60;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Test
+	public void testPairsMatchSimpleSpace() {
+		Random r = new Random(42);
+		DSpace ref = OdeHelper.createSimpleSpace();
+		DHashSpace hash = OdeHelper.createHashSpace();
+
+		DBox[] refGeoms = new DBox[N];
+		DBox[] hashGeoms = new DBox[N];
+		for (int i = 0; i < N; i++) {
+			refGeoms[i] = createBox(ref, i);
+			hashGeoms[i] = createBox(hash, i);
+		}
+		OdeHelper.createPlane(ref, 0, 0, 1, 0).setData(N);
+		OdeHelper.createPlane(hash, 0, 0, 1, 0).setData(N);
+
+		for (int step = 0; step < STEPS; step++) {
+			for (int i = 0; i < N; i++) {
+				// the first steps move everything, later on only a few geoms move
+				if (step > 2 && r.nextInt(10) != 0) {
+					continue;
+				}
+				// large jumps as well as small moves within the cells
+				DVector3 p = new DVector3(refGeoms[i].getPosition());
+				if (r.nextBoolean()) {
+					p.set(r.nextDouble() * 20 - 10, r.nextDouble() * 20 - 10, r.nextDouble() * 20 - 1);
+				} else {
+					p.add(r.nextDouble() * 0.05, r.nextDouble() * 0.05, r.nextDouble() * 0.05);
+				}
+				refGeoms[i].setPosition(p);
+				hashGeoms[i].setPosition(p);
+			}
+			if (step % 10 == 5) {
+				// remove, re-add and resize some geoms, some are too big for 
+				// the hash table
+				for (int i = step % 7; i < N; i += 13) {
+					refGeoms[i].destroy();
+					hashGeoms[i].destroy();
+					refGeoms[i] = createBox(ref, i);
+					hashGeoms[i] = createBox(hash, i);
+					double x = r.nextDouble() * 20;
+					refGeoms[i].setPosition(x, 5, 5);
+					hashGeoms[i].setPosition(x, 5, 5);
+				}
+				for (int i = step % 3; i < N; i += 29) {
+					double l = 0.05 + r.nextDouble() * (i % 2 == 0 ? 3 : 20);
+					refGeoms[i].setLengths(l, l, l);
+					hashGeoms[i].setLengths(l, l, l);
+				}
+			}
+			if (step % 10 == 8) {
+				for (int i = step % 5; i < N; i += 17) {
+					if (refGeoms[i].isEnabled()) {
+						refGeoms[i].disable();
+						hashGeoms[i].disable();
+					} else {
+						refGeoms[i].enable();
+						hashGeoms[i].enable();
+					}
+				}
+			}
+			if (step == 30) {
+				hash.setLevels(-2, 2);
+			}
+			assertEquals("step " + step, collide(ref), collide(hash));
+		}
+
+		ref.destroy();
+		hash.destroy();
+	}
+}
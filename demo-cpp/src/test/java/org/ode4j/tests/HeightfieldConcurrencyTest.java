@@ -0,0 +1,197 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DHeightfield;
+import org.ode4j.ode.DHeightfieldData;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Heightfield collisions from several threads against the same terrain.
+ */
+public class HeightfieldConcurrencyTest {
+
+	private static final int SAMPLES = 64;
+	private static final int PLACEMENTS = 200;
+	private static final int MAX_CONTACTS = 16;
+	private static final int THREADS = 4;
+
+	private static DHeightfieldData data;
+	private static DHeightfield terrain;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+		double[] heights = new double[SAMPLES * SAMPLES];
+		for (int z = 0; z < SAMPLES; z++) {
+			for (int x = 0; x < SAMPLES; x++) {
+				heights[x + z * SAMPLES] = Math.sin(x * 0.3) * Math.cos(z * 0.2);
+			}
+		}
+		data = OdeHelper.createHeightfieldData();
+		data.build(heights, false, SAMPLES - 1, SAMPLES - 1, SAMPLES, SAMPLES, 1, 0, 1, false);
+		data.setBounds(-1, 1);
+		terrain = OdeHelper.createHeightfield(null, data, true);
+		terrain.getAABB();
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		terrain.destroy();
+		data.destroy();
+		OdeHelper.closeODE();
+	}
+
+	/** Sphere and box positions near the surface, x/z in [-30, 30]. */
+	private static double[] createPlacements(long seed) {
+		Random rnd = new Random(seed);
+		double[] pos = new double[PLACEMENTS * 3];
+		for (int i = 0; i < pos.length; i += 3) {
+			pos[i] = rnd.nextDouble() * 60 - 30;
+			pos[i + 1] = rnd.nextDouble() * 2 - 0.5;
+			pos[i + 2] = rnd.nextDouble() * 60 - 30;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return number, position and depth of the contacts of each placement
+	 */
+	private static double[] collideAll(DGeom[] geoms, double[] placements, DContactGeomBuffer contacts) {
+		double[] result = new double[PLACEMENTS * geoms.length * (1 + MAX_CONTACTS * 4)];
+		int pos = 0;
+		for (int i = 0; i < PLACEMENTS; i++) {
+			for (DGeom g: geoms) {
+				g.setPosition(placements[i * 3], placements[i * 3 + 1], placements[i * 3 + 2]);
+				g.getAABB();
+				int n = OdeHelper.collide(terrain, g, MAX_CONTACTS, contacts);
+				result[pos] = n;
+				for (int k = 0; k < n; k++) {
+					DContactGeom c = contacts.get(k);
+					result[pos + 1 + k * 4] = c.pos.get0();
+					result[pos + 2 + k * 4] = c.pos.get1();
+					result[pos + 3 + k * 4] = c.pos.get2();
+					result[pos + 4 + k * 4] = c.depth;
+				}
+				pos += 1 + MAX_CONTACTS * 4;
+			}
+		}
+		return result;
+	}
+
+	private static DGeom[] createGeoms() {
+		return new DGeom[] {
+				OdeHelper.createSphere(0.7),
+				OdeHelper.createBox(1.5, 1, 0.8),
+				OdeHelper.createCapsule(0.4, 1.5)};
+	}
+
+	private static void destroy(DGeom[] geoms) {
+		for (DGeom g: geoms) {
+			g.destroy();
+		}
+	}
+
+	private static int contactCount(double[] result) {
+		int n = 0;
+		for (int i = 0; i < result.length; i += 1 + MAX_CONTACTS * 4) {
+			n += (int) result[i];
+		}
+		return n;
+	}
+
+	@Test
+	public void testConcurrentCollisions() throws InterruptedException {
+		final double[] placements = createPlacements(1);
+		DGeom[] refGeoms = createGeoms();
+		final double[] expected = collideAll(refGeoms, placements, new DContactGeomBuffer(MAX_CONTACTS));
+		destroy(refGeoms);
+		assertTrue(contactCount(expected) > PLACEMENTS);
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final DGeom[] geoms = createGeoms();
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+						for (int i = 0; i < 20; i++) {
+							double[] result = collideAll(geoms, placements, contacts);
+							for (int k = 0; k < expected.length; k++) {
+								assertEquals(expected[k], result[k], 0);
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+		}
+		for (Thread t: threads) {
+			t.start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		assertNull(failure.get());
+	}
+
+	/**
+	 * A large box grows the scratch buffers beyond the retained size, later 
+	 * queries must not be affected.
+	 */
+	@Test
+	public void testLargeQuery() {
+		double[] placements = createPlacements(2);
+		DGeom[] geoms = createGeoms();
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+		double[] expected = collideAll(geoms, placements, contacts);
+
+		DGeom large = OdeHelper.createBox(50, 1.5, 50);
+		large.setPosition(0, 0, 0);
+		large.getAABB();
+		assertTrue(OdeHelper.collide(terrain, large, MAX_CONTACTS, contacts) > 0);
+		large.destroy();
+
+		double[] result = collideAll(geoms, placements, contacts);
+		for (int k = 0; k < expected.length; k++) {
+			assertEquals(expected[k], result[k], 0);
+		}
+		destroy(geoms);
+	}
+}
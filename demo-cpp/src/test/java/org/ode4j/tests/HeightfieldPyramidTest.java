@@ -0,0 +1,213 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DHeightfield;
+import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
+import org.ode4j.ode.DHeightfieldData;
+import org.ode4j.ode.DRay;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Array heightfields use a min/max pyramid, callback heightfields don't.
+ * Both must give the same contacts for the same heights.
+ */
+public class HeightfieldPyramidTest {
+
+	private static final int SAMPLES = 129;
+	private static final double SIZE = 128;
+	private static final int PLACEMENTS = 300;
+	private static final int MAX_CONTACTS = 16;
+
+	private static final double[] heights = new double[SAMPLES * SAMPLES];
+	private static DHeightfieldData arrayData;
+	private static DHeightfieldData callbackData;
+	private static DHeightfield arrayTerrain;
+	private static DHeightfield callbackTerrain;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+		// hills on a flat floor
+		for (int z = 0; z < SAMPLES; z++) {
+			for (int x = 0; x < SAMPLES; x++) {
+				heights[x + z * SAMPLES] = Math.max(0, 3 * Math.sin(x * 0.1) * Math.cos(z * 0.07));
+			}
+		}
+		arrayData = OdeHelper.createHeightfieldData();
+		arrayData.build(heights, false, SIZE, SIZE, SAMPLES, SAMPLES, 1, 0, 1, false);
+		arrayData.setBounds(0, 3);
+		callbackData = OdeHelper.createHeightfieldData();
+		callbackData.buildCallback(null, new DHeightfieldGetHeight() {
+			@Override
+			public double call(Object pUserData, int x, int z) {
+				return heights[x + z * SAMPLES];
+			}
+		}, SIZE, SIZE, SAMPLES, SAMPLES, 1, 0, 1, false);
+		callbackData.setBounds(0, 3);
+		arrayTerrain = OdeHelper.createHeightfield(null, arrayData, true);
+		arrayTerrain.getAABB();
+		callbackTerrain = OdeHelper.createHeightfield(null, callbackData, true);
+		callbackTerrain.getAABB();
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		arrayTerrain.destroy();
+		callbackTerrain.destroy();
+		arrayData.destroy();
+		callbackData.destroy();
+		OdeHelper.closeODE();
+	}
+
+	private static void assertSameContacts(DGeom g, DContactGeomBuffer expected, DContactGeomBuffer actual) {
+		int n = OdeHelper.collide(callbackTerrain, g, MAX_CONTACTS, expected);
+		assertEquals(n, OdeHelper.collide(arrayTerrain, g, MAX_CONTACTS, actual));
+		for (int i = 0; i < n; i++) {
+			DContactGeom e = expected.get(i);
+			DContactGeom a = actual.get(i);
+			assertEquals(0, e.pos.distance(a.pos), 0);
+			assertEquals(0, e.normal.distance(a.normal), 0);
+			assertEquals(e.depth, a.depth, 0);
+		}
+	}
+
+	@Test
+	public void testSameContacts() {
+		Random rnd = new Random(1);
+		DGeom[] geoms = {
+				OdeHelper.createSphere(0.7),
+				OdeHelper.createBox(1.5, 1, 0.8),
+				OdeHelper.createCapsule(0.4, 1.5),
+				// spans several pyramid blocks
+				OdeHelper.createBox(20, 1, 12)};
+		DContactGeomBuffer expected = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer actual = new DContactGeomBuffer(MAX_CONTACTS);
+		int total = 0;
+		for (int i = 0; i < PLACEMENTS; i++) {
+			double x = rnd.nextDouble() * 120 - 60;
+			double y = rnd.nextDouble() * 3.5 - 0.5;
+			double z = rnd.nextDouble() * 120 - 60;
+			for (DGeom g: geoms) {
+				g.setPosition(x, y, z);
+				g.getAABB();
+				assertSameContacts(g, expected, actual);
+				total += OdeHelper.collide(arrayTerrain, g, MAX_CONTACTS, actual);
+			}
+		}
+		assertTrue(total > PLACEMENTS);
+		for (DGeom g: geoms) {
+			g.destroy();
+		}
+	}
+
+	/**
+	 * The nearest ray hit must be on the surface and no farther than the
+	 * hit of the callback heightfield.
+	 */
+	@Test
+	public void testRayNearestHit() {
+		Random rnd = new Random(2);
+		DRay ray = OdeHelper.createRay(200);
+		DContactGeomBuffer expected = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer actual = new DContactGeomBuffer(MAX_CONTACTS);
+		int hits = 0;
+		for (int i = 0; i < PLACEMENTS; i++) {
+			DVector3 start = new DVector3(rnd.nextDouble() * 120 - 60, 5 + rnd.nextDouble() * 5, 
+					rnd.nextDouble() * 120 - 60);
+			DVector3 dir = new DVector3(rnd.nextDouble() - 0.5, -rnd.nextDouble(), rnd.nextDouble() - 0.5);
+			dir.normalize();
+			ray.set(start, dir);
+			ray.getAABB();
+			int ne = OdeHelper.collide(callbackTerrain, ray, MAX_CONTACTS, expected);
+			int na = OdeHelper.collide(arrayTerrain, ray, MAX_CONTACTS, actual);
+			assertEquals(ne > 0, na > 0);
+			if (na == 0) {
+				continue;
+			}
+			hits++;
+			double nearest = Double.MAX_VALUE;
+			for (int k = 0; k < ne; k++) {
+				nearest = Math.min(nearest, expected.get(k).depth);
+			}
+			DContactGeom c = actual.get(0);
+			assertEquals(nearest, c.depth, 1e-9);
+			for (int k = 1; k < na; k++) {
+				assertTrue(actual.get(k).depth >= actual.get(k - 1).depth);
+			}
+			// on the surface: the terrain is centered, sample = 1 unit
+			double h = heightAt(c.pos.get0() + SIZE / 2, c.pos.get2() + SIZE / 2);
+			assertEquals(h, c.pos.get1(), 1e-9);
+			assertTrue(c.normal.get1() < 0);
+		}
+		assertTrue(hits > PLACEMENTS / 2);
+		ray.destroy();
+	}
+
+	/**
+	 * A ray totally under the terrain gets the single upward contact of 
+	 * the other geoms.
+	 */
+	@Test
+	public void testRayUnderTerrain() {
+		DRay ray = OdeHelper.createRay(5);
+		DContactGeomBuffer expected = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer actual = new DContactGeomBuffer(MAX_CONTACTS);
+		// top of a hill at the border z = -64, heights above 2.3
+		ray.set(new DVector3(14.5, 0.5, -60), new DVector3(0, 0, 1));
+		ray.getAABB();
+		assertEquals(1, OdeHelper.collide(callbackTerrain, ray, MAX_CONTACTS, expected));
+		assertEquals(1, OdeHelper.collide(arrayTerrain, ray, MAX_CONTACTS, actual));
+		assertEquals(0, expected.get(0).pos.distance(actual.get(0).pos), 0);
+		assertEquals(0, expected.get(0).normal.distance(actual.get(0).normal), 0);
+		assertEquals(expected.get(0).depth, actual.get(0).depth, 0);
+		ray.destroy();
+	}
+
+	/** Height of the triangulated surface at heightfield position (x, z). */
+	private static double heightAt(double x, double z) {
+		int cx = Math.min((int) Math.floor(x), SAMPLES - 2);
+		int cz = Math.min((int) Math.floor(z), SAMPLES - 2);
+		double fx = x - cx, fz = z - cz;
+		double hA = heights[cx + cz * SAMPLES];
+		double hB = heights[cx + 1 + cz * SAMPLES];
+		double hC = heights[cx + (cz + 1) * SAMPLES];
+		double hD = heights[cx + 1 + (cz + 1) * SAMPLES];
+		if (fx + fz <= 1) {
+			return hA + fx * (hB - hA) + fz * (hC - hA);
+		}
+		return hD + (1 - fx) * (hC - hD) + (1 - fz) * (hB - hD);
+	}
+}
@@ -0,0 +1,225 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DHeightfield;
+import org.ode4j.ode.DHeightfield.DHeightfieldGetHeight;
+import org.ode4j.ode.DHeightfieldData;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Heightfields read from a tiled file must collide like the same heights
+ * in an array, also with a cache much smaller than the terrain.
+ */
+public class HeightfieldTilesTest {
+
+	// not a multiple of the tile size
+	private static final int WIDTH_SAMPLES = 150;
+	private static final int DEPTH_SAMPLES = 101;
+	private static final int TILE_SIZE = 16;
+	private static final int PLACEMENTS = 300;
+	private static final int MAX_CONTACTS = 16;
+
+	private static final float[] heights = new float[WIDTH_SAMPLES * DEPTH_SAMPLES];
+	private static File file;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		OdeHelper.initODE2(0);
+		for (int z = 0; z < DEPTH_SAMPLES; z++) {
+			for (int x = 0; x < WIDTH_SAMPLES; x++) {
+				heights[x + z * WIDTH_SAMPLES] = (float) (2 * Math.sin(x * 0.13) * Math.cos(z * 0.09));
+			}
+		}
+		file = File.createTempFile("heightfield", ".tiles");
+		file.deleteOnExit();
+		OdeHelper.writeHeightfieldTiles(file, new DHeightfieldGetHeight() {
+			@Override
+			public double call(Object pUserData, int x, int z) {
+				return heights[x + z * WIDTH_SAMPLES];
+			}
+		}, null, WIDTH_SAMPLES, DEPTH_SAMPLES, TILE_SIZE);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		file.delete();
+		OdeHelper.closeODE();
+	}
+
+	private static void testSameContacts(int maxCachedTiles, boolean wrap) throws IOException {
+		DHeightfieldData arrayData = OdeHelper.createHeightfieldData();
+		arrayData.build(heights, false, WIDTH_SAMPLES - 1, DEPTH_SAMPLES - 1, 
+				WIDTH_SAMPLES, DEPTH_SAMPLES, 1.5, 0.5, 1, wrap);
+		DHeightfieldData tiledData = OdeHelper.createHeightfieldData();
+		tiledData.buildTiled(file, maxCachedTiles, WIDTH_SAMPLES - 1, DEPTH_SAMPLES - 1, 1.5, 0.5, 1, wrap);
+		DHeightfield arrayTerrain = OdeHelper.createHeightfield(null, arrayData, true);
+		DHeightfield tiledTerrain = OdeHelper.createHeightfield(null, tiledData, true);
+		// bounds from the file header
+		DAABBC a = arrayTerrain.getAABB();
+		DAABBC t = tiledTerrain.getAABB();
+		assertEquals(a.getMin1(), t.getMin1(), 0);
+		assertEquals(a.getMax1(), t.getMax1(), 0);
+
+		Random rnd = new Random(maxCachedTiles);
+		DGeom[] geoms = {
+				OdeHelper.createSphere(0.7),
+				OdeHelper.createBox(1.5, 1, 0.8),
+				OdeHelper.createCapsule(0.4, 1.5),
+				OdeHelper.createBox(30, 1, 20)};
+		DContactGeomBuffer expected = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer actual = new DContactGeomBuffer(MAX_CONTACTS);
+		int total = 0;
+		for (int i = 0; i < PLACEMENTS; i++) {
+			double x = rnd.nextDouble() * 160 - 80;
+			double y = rnd.nextDouble() * 4 - 1.5;
+			double z = rnd.nextDouble() * 110 - 55;
+			for (DGeom g: geoms) {
+				g.setPosition(x, y, z);
+				g.getAABB();
+				int n = OdeHelper.collide(arrayTerrain, g, MAX_CONTACTS, expected);
+				assertEquals(n, OdeHelper.collide(tiledTerrain, g, MAX_CONTACTS, actual));
+				for (int k = 0; k < n; k++) {
+					DContactGeom e = expected.get(k);
+					DContactGeom c = actual.get(k);
+					assertEquals(0, e.pos.distance(c.pos), 1e-9);
+					assertEquals(0, e.normal.distance(c.normal), 1e-9);
+					assertEquals(e.depth, c.depth, 1e-9);
+				}
+				total += n;
+			}
+		}
+		assertTrue(total > PLACEMENTS);
+
+		for (DGeom g: geoms) {
+			g.destroy();
+		}
+		arrayTerrain.destroy();
+		tiledTerrain.destroy();
+		arrayData.destroy();
+		tiledData.destroy();
+	}
+
+	@Test
+	public void testSameContacts() throws IOException {
+		testSameContacts(1000, false);
+	}
+
+	@Test
+	public void testSameContactsSmallCache() throws IOException {
+		// the large box needs more tiles than are cached
+		testSameContacts(2, false);
+	}
+
+	@Test
+	public void testSameContactsWrapped() throws IOException {
+		testSameContacts(4, true);
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		File bad = File.createTempFile("heightfield", ".tiles");
+		try {
+			RandomAccessFile out = new RandomAccessFile(bad, "rw");
+			out.writeInt(42);
+			out.close();
+			DHeightfieldData data = OdeHelper.createHeightfieldData();
+			try {
+				data.buildTiled(bad, 4, 1, 1, 1, 0, 0, false);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+			data.destroy();
+		} finally {
+			bad.delete();
+		}
+	}
+
+	private static String buildTiledError(File f, int tileSize) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(f, "rw");
+		out.setLength(0);
+		// header only, see HeightfieldTiles
+		out.writeInt(0x4f444854);
+		out.writeInt(1);
+		out.writeInt(WIDTH_SAMPLES);
+		out.writeInt(DEPTH_SAMPLES);
+		out.writeInt(tileSize);
+		out.writeInt(0);
+		out.writeFloat(-2);
+		out.writeFloat(2);
+		out.close();
+		DHeightfieldData data = OdeHelper.createHeightfieldData();
+		try {
+			data.buildTiled(f, 4, 1, 1, 1, 0, 0, false);
+			fail();
+			return null;
+		} catch (IOException e) {
+			return e.getMessage();
+		} finally {
+			data.destroy();
+		}
+	}
+
+	@Test
+	public void testTileSizeLimit() throws IOException {
+		// 4 * 32768^2 bytes per tile overflow an int
+		DHeightfieldGetHeight flat = new DHeightfieldGetHeight() {
+			@Override
+			public double call(Object pUserData, int x, int z) {
+				return 0;
+			}
+		};
+		File bad = File.createTempFile("heightfield", ".tiles");
+		try {
+			try {
+				OdeHelper.writeHeightfieldTiles(bad, flat, null, WIDTH_SAMPLES, DEPTH_SAMPLES, 1 << 15);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertEquals(0, bad.length());
+			// the largest tile size passes the header check
+			assertTrue(buildTiledError(bad, 1 << 14).startsWith("Truncated"));
+			assertTrue(buildTiledError(bad, 1 << 15).startsWith("Invalid"));
+		} finally {
+			bad.delete();
+		}
+	}
+}
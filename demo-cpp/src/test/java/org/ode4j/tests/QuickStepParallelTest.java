@@ -0,0 +1,192 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.threading.DThreadingImplementation;
+import org.ode4j.ode.threading.DThreadingThreadPool;
+
+/**
+ * Net of bodies connected by ball joints, a single large island, solved by 
+ * the colored parallel QuickStep SOR.
+ */
+public class QuickStepParallelTest {
+
+	private static final int N = 16;
+	private static final int STEPS = 50;
+	private static final int THRESHOLD = 100;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static double[] simulate(int threads, int threshold) {
+		return simulate(threads, threshold, 20);
+	}
+
+	/**
+	 * @param threads number of threads of the thread pool, 0 for the default 
+	 * self-threaded implementation
+	 * @return the body positions after STEPS steps
+	 */
+	private static double[] simulate(int threads, int threshold, int iterations) {
+		// the sequential solver reorders rows randomly
+		DMisc.dRandSetSeed(0);
+		DWorld world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -9.81);
+		world.setQuickStepNumIterations(iterations);
+		world.setQuickStepParallelThreshold(threshold);
+		DThreadingImplementation threading = null;
+		DThreadingThreadPool pool = null;
+		if (threads > 0) {
+			threading = OdeHelper.allocateMultiThreaded();
+			pool = OdeHelper.allocateThreadPool(threads, 0, null);
+			pool.serveMultiThreadedImplementation(threading);
+			world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+		}
+		try {
+			DBody[] bodies = new DBody[N * N];
+			DMass m = OdeHelper.createMass();
+			m.setSphere(1, 0.2);
+			for (int y = 0; y < N; y++) {
+				for (int x = 0; x < N; x++) {
+					DBody b = OdeHelper.createBody(world);
+					b.setMass(m);
+					b.setPosition(x, y, 10);
+					bodies[y * N + x] = b;
+					if (x > 0) {
+						connect(world, bodies[y * N + x - 1], b);
+					}
+					if (y > 0) {
+						connect(world, bodies[(y - 1) * N + x], b);
+					}
+				}
+			}
+			// fix the corners
+			for (int i : new int[] { 0, N - 1, N * (N - 1), N * N - 1 }) {
+				DBallJoint j = OdeHelper.createBallJoint(world);
+				j.attach(bodies[i], null);
+				j.setAnchor(bodies[i].getPosition());
+			}
+
+			for (int i = 0; i < STEPS; i++) {
+				world.quickStep(0.01);
+			}
+			assertEquals(1, world.getQuickStepIslandCount());
+			assertEquals(N * N, world.getQuickStepIslandBodyCount(0));
+			assertEquals(iterations, world.getQuickStepIslandIterations(0));
+
+			double[] result = new double[bodies.length * 3];
+			for (int i = 0; i < bodies.length; i++) {
+				DVector3C p = bodies[i].getPosition();
+				result[i * 3] = p.get0();
+				result[i * 3 + 1] = p.get1();
+				result[i * 3 + 2] = p.get2();
+			}
+			return result;
+		} finally {
+			world.destroy();
+			if (threading != null) {
+				threading.shutdownProcessing();
+				pool.waitIdleState();
+				threading.free();
+				pool.freeThreadPool();
+			}
+		}
+	}
+
+	private static void connect(DWorld world, DBody b1, DBody b2) {
+		DBallJoint j = OdeHelper.createBallJoint(world);
+		j.attach(b1, b2);
+		DVector3C p1 = b1.getPosition();
+		DVector3C p2 = b2.getPosition();
+		j.setAnchor((p1.get0() + p2.get0()) / 2, (p1.get1() + p2.get1()) / 2, 10);
+	}
+
+	@Test
+	public void testParameters() {
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(0, world.getQuickStepParallelThreshold());
+		world.setQuickStepParallelThreshold(1000);
+		assertEquals(1000, world.getQuickStepParallelThreshold());
+		world.destroy();
+	}
+
+	@Test
+	public void testSingleThreadUsesSequentialSolver() {
+		double[] expected = simulate(0, 0);
+		assertArrayEquals(expected, simulate(0, THRESHOLD), 0);
+	}
+
+	@Test
+	public void testDeterministic() {
+		double[] parallel2 = simulate(2, THRESHOLD);
+		double[] parallel4 = simulate(4, THRESHOLD);
+		assertArrayEquals(parallel2, simulate(2, THRESHOLD), 0);
+		// the colors do not depend on the thread count
+		assertArrayEquals(parallel2, parallel4, 0);
+	}
+
+	private static double maxDistance(double[] a, double[] b) {
+		double d = 0;
+		for (int i = 0; i < a.length; i++) {
+			d = Math.max(d, Math.abs(a[i] - b[i]));
+		}
+		return d;
+	}
+
+	@Test
+	public void testAsAccurateAsSequential() {
+		double[] sequential = simulate(4, 0);
+		double[] parallel = simulate(4, THRESHOLD);
+		// different row order, so not exactly the same
+		assertFalse(Arrays.equals(sequential, parallel));
+		// the net converges slowly, compare both with a nearly converged solution
+		double[] reference = simulate(4, 0, 500);
+		double sequentialError = maxDistance(sequential, reference);
+		double parallelError = maxDistance(parallel, reference);
+		assertTrue(sequentialError + " / " + parallelError, parallelError < 1.5 * sequentialError);
+	}
+}
@@ -0,0 +1,214 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.DWorld.QuickStepSolver;
+import org.ode4j.ode.OdeConstants;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * The QuickStep solvers on a long chain of ball joints with a heavy end: 
+ * one step from a swinging state is compared with a reference solution 
+ * from SOR with many iterations.
+ */
+public class QuickStepSolverTest {
+
+	private static final int LINKS = 40;
+
+	private static double[] reference;
+	/** iterations of the last step of chainStep() */
+	private static int lastIterations;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+		reference = chainStep(QuickStepSolver.SOR, 20000, 0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	/**
+	 * Lets a horizontal chain swing for 50 steps, then performs one step 
+	 * with the given solver.
+	 * @return the velocities of the links after that step
+	 */
+	private static double[] chainStep(QuickStepSolver solver, int iterations, 
+			double tolerance) {
+		DMisc.dRandSetSeed(0);
+		DWorld world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -9.81);
+		world.setQuickStepNumIterations(200);
+		DMass m = OdeHelper.createMass();
+		DBody[] links = new DBody[LINKS];
+		DBody prev = null;
+		for (int i = 0; i < LINKS; i++) {
+			links[i] = OdeHelper.createBody(world);
+			m.setSphereTotal(i == LINKS - 1 ? 20 : 1, 0.1);
+			links[i].setMass(m);
+			links[i].setPosition(0.2 * (i + 1), 0, 10);
+			DBallJoint j = OdeHelper.createBallJoint(world);
+			j.attach(links[i], prev);
+			j.setAnchor(0.2 * i + 0.1, 0, 10);
+			prev = links[i];
+		}
+		for (int s = 0; s < 50; s++) {
+			world.quickStep(0.01);
+		}
+		world.setQuickStepSolver(solver);
+		world.setQuickStepNumIterations(iterations);
+		world.setQuickStepTolerance(tolerance);
+		world.quickStep(0.01);
+		lastIterations = world.getQuickStepIslandIterations(0);
+
+		double[] v = new double[LINKS * 6];
+		for (int i = 0; i < LINKS; i++) {
+			for (int k = 0; k < 3; k++) {
+				v[i * 6 + k] = links[i].getLinearVel().get(k);
+				v[i * 6 + 3 + k] = links[i].getAngularVel().get(k);
+			}
+		}
+		world.destroy();
+		return v;
+	}
+
+	private static double error(double[] v) {
+		double e = 0, n = 0;
+		for (int i = 0; i < v.length; i++) {
+			e += (v[i] - reference[i]) * (v[i] - reference[i]);
+			n += reference[i] * reference[i];
+		}
+		return Math.sqrt(e / n);
+	}
+
+	@Test
+	public void testDefault() {
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(QuickStepSolver.SOR, world.getQuickStepSolver());
+		world.setQuickStepSolver(QuickStepSolver.CG);
+		assertEquals(QuickStepSolver.CG, world.getQuickStepSolver());
+		world.destroy();
+	}
+
+	@Test
+	public void testCG() {
+		double sor = error(chainStep(QuickStepSolver.SOR, 40, 0));
+		double cg = error(chainStep(QuickStepSolver.CG, 40, 0));
+		assertTrue("sor=" + sor + " cg=" + cg, cg < 0.1 * sor);
+		// the chain has 120 rows, CG is exact after that many iterations
+		assertEquals(0, error(chainStep(QuickStepSolver.CG, 120, 0)), 1e-9);
+	}
+
+	@Test
+	public void testCGTolerance() {
+		double cg = error(chainStep(QuickStepSolver.CG, 200, 1e-8));
+		assertTrue(lastIterations < 200);
+		assertEquals(0, cg, 1e-6);
+	}
+
+	@Test
+	public void testAcceleratedPGS() {
+		double sor = error(chainStep(QuickStepSolver.SOR, 80, 0));
+		double apgs = error(chainStep(QuickStepSolver.ACCELERATED_PGS, 80, 0));
+		assertTrue("sor=" + sor + " apgs=" + apgs, apgs < 0.2 * sor);
+	}
+
+	/**
+	 * CG can not solve contacts, islands with contacts are solved with SOR.
+	 */
+	@Test
+	public void testCGWithContacts() {
+		double[] sor = boxStack(QuickStepSolver.SOR);
+		double[] cg = boxStack(QuickStepSolver.CG);
+		for (int i = 0; i < sor.length; i++) {
+			assertEquals(sor[i], cg[i], 0);
+		}
+	}
+
+	private static double[] boxStack(QuickStepSolver solver) {
+		DMisc.dRandSetSeed(0);
+		final DWorld world = OdeHelper.createWorld();
+		final DSpace space = OdeHelper.createHashSpace();
+		final DJointGroup contactGroup = OdeHelper.createJointGroup();
+		world.setGravity(0, 0, -9.81);
+		world.setQuickStepSolver(solver);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+		DMass m = OdeHelper.createMass();
+		m.setBox(1, 1, 1, 1);
+		DBody[] boxes = new DBody[5];
+		for (int i = 0; i < boxes.length; i++) {
+			boxes[i] = OdeHelper.createBody(world);
+			boxes[i].setMass(m);
+			boxes[i].setPosition(0.1 * i, 0, 0.5 + i);
+			OdeHelper.createBox(space, 1, 1, 1).setBody(boxes[i]);
+		}
+		DNearCallback cb = new DNearCallback() {
+			@Override
+			public void call(Object data, DGeom o1, DGeom o2) {
+				DContactBuffer contacts = new DContactBuffer(4);
+				int n = OdeHelper.collide(o1, o2, contacts.size(), contacts.getGeomBuffer());
+				for (int i = 0; i < n; i++) {
+					DContact c = contacts.get(i);
+					c.surface.mode = OdeConstants.dContactApprox1;
+					c.surface.mu = 0.8;
+					OdeHelper.createContactJoint(world, contactGroup, c)
+							.attach(o1.getBody(), o2.getBody());
+				}
+			}
+		};
+		for (int s = 0; s < 100; s++) {
+			space.collide(null, cb);
+			world.quickStep(0.01);
+			contactGroup.empty();
+		}
+		double[] z = new double[boxes.length * 3];
+		for (int i = 0; i < boxes.length; i++) {
+			for (int k = 0; k < 3; k++) {
+				z[i * 3 + k] = boxes[i].getPosition().get(k);
+			}
+		}
+		contactGroup.destroy();
+		space.destroy();
+		world.destroy();
+		return z;
+	}
+}
@@ -0,0 +1,217 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeConstants;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Convergence based early exit of QuickStep: a single resting box and a 
+ * box stack are separate islands, the single box should need far fewer 
+ * iterations.
+ */
+public class QuickStepToleranceTest {
+
+	private static final int BOXES = 10;
+	private static final int ITERATIONS = 100;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static class Scene implements DNearCallback {
+		final DWorld world = OdeHelper.createWorld();
+		final DSpace space = OdeHelper.createHashSpace();
+		final DJointGroup contactGroup = OdeHelper.createJointGroup();
+		final DBody single;
+		final DBody[] stack = new DBody[BOXES];
+
+		Scene(double tolerance) {
+			world.setGravity(0, 0, -9.81);
+			world.setQuickStepNumIterations(ITERATIONS);
+			world.setQuickStepTolerance(tolerance);
+			world.setContactSurfaceLayer(0.001);
+			OdeHelper.createPlane(space, 0, 0, 1, 0);
+			DMass m = OdeHelper.createMass();
+			m.setBox(1, 1, 1, 1);
+			single = createBox(m, -5, 0.5);
+			for (int i = 0; i < BOXES; i++) {
+				stack[i] = createBox(m, 5, 0.5 + i);
+			}
+		}
+
+		private DBody createBox(DMass m, double x, double z) {
+			DBody b = OdeHelper.createBody(world);
+			b.setMass(m);
+			b.setPosition(x, 0, z);
+			OdeHelper.createBox(space, 1, 1, 1).setBody(b);
+			return b;
+		}
+
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			DContactBuffer contacts = new DContactBuffer(4);
+			int n = OdeHelper.collide(o1, o2, contacts.size(), contacts.getGeomBuffer());
+			for (int i = 0; i < n; i++) {
+				DContact c = contacts.get(i);
+				c.surface.mode = OdeConstants.dContactApprox1;
+				c.surface.mu = 0.8;
+				DJoint j = OdeHelper.createContactJoint(world, contactGroup, c);
+				j.attach(o1.getBody(), o2.getBody());
+			}
+		}
+
+		void step(int steps) {
+			for (int s = 0; s < steps; s++) {
+				space.collide(null, this);
+				world.quickStep(0.01);
+				contactGroup.empty();
+			}
+		}
+
+		/** @return the island index of the island with <tt>nb</tt> bodies. */
+		int island(int nb) {
+			for (int i = 0; i < world.getQuickStepIslandCount(); i++) {
+				if (world.getQuickStepIslandBodyCount(i) == nb) {
+					return i;
+				}
+			}
+			throw new IllegalStateException("no island with " + nb + " bodies");
+		}
+
+		void destroy() {
+			contactGroup.destroy();
+			space.destroy();
+			world.destroy();
+		}
+	}
+
+	@Test
+	public void testParameters() {
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(0, world.getQuickStepTolerance(), 0);
+		assertEquals(4, world.getQuickStepToleranceCheckInterval());
+		assertEquals(0, world.getQuickStepIslandCount());
+		world.setQuickStepTolerance(0.01);
+		world.setQuickStepToleranceCheckInterval(2);
+		assertEquals(0.01, world.getQuickStepTolerance(), 0);
+		assertEquals(2, world.getQuickStepToleranceCheckInterval());
+		world.destroy();
+	}
+
+	@Test
+	public void testFullBudgetWithoutTolerance() {
+		Scene scene = new Scene(0);
+		scene.step(100);
+		assertEquals(2, scene.world.getQuickStepIslandCount());
+		int single = scene.island(1);
+		int stack = scene.island(BOXES);
+		assertEquals(ITERATIONS, scene.world.getQuickStepIslandIterations(single));
+		assertEquals(ITERATIONS, scene.world.getQuickStepIslandIterations(stack));
+		assertEquals(4 * 3, scene.world.getQuickStepIslandRowCount(single));
+		assertEquals(BOXES * 4 * 3, scene.world.getQuickStepIslandRowCount(stack));
+		scene.destroy();
+	}
+
+	@Test
+	public void testQuietIslandExitsEarly() {
+		Scene scene = new Scene(0.001);
+		scene.step(100);
+		assertEquals(2, scene.world.getQuickStepIslandCount());
+		int single = scene.island(1);
+		int stack = scene.island(BOXES);
+		int singleIterations = scene.world.getQuickStepIslandIterations(single);
+		int stackIterations = scene.world.getQuickStepIslandIterations(stack);
+		assertTrue("single " + singleIterations, singleIterations < ITERATIONS / 4);
+		assertTrue(singleIterations + " / " + stackIterations, singleIterations < stackIterations);
+		// iterations are a multiple of the check interval, or the full budget
+		assertTrue(singleIterations % 4 == 0);
+		assertTrue(scene.world.getQuickStepIslandResidual(single) <= 0.001);
+		// the early exit does not change the result noticeably
+		assertEquals(0.5, scene.single.getPosition().get2(), 0.01);
+		assertEquals(BOXES - 0.5, scene.stack[BOXES - 1].getPosition().get2(), 0.05);
+		scene.destroy();
+	}
+
+	/** @return the body counts of the islands of the last QuickStep */
+	private static int[] islandBodyCounts(DWorld world) {
+		int[] result = new int[world.getQuickStepIslandCount()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = world.getQuickStepIslandBodyCount(i);
+		}
+		return result;
+	}
+
+	/** Islands solved concurrently keep the index they have when solved one after the other. */
+	@Test
+	public void testIslandOrderWithExecutor() {
+		// chains of different lengths, so that the islands can be told apart
+		final int[] links = WorldStepTestHelper.ascending(20);
+		DWorld world = OdeHelper.createWorld();
+		WorldStepTestHelper.createChains(world, null, links);
+		world.quickStep(0.01);
+		int[] expected = islandBodyCounts(world);
+		assertEquals(links.length, expected.length);
+		world.destroy();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			world = OdeHelper.createWorld();
+			world.setStepExecutor(executor, 4);
+			WorldStepTestHelper.createChains(world, null, links);
+			for (int s = 0; s < 50; s++) {
+				world.quickStep(0.01);
+				assertArrayEquals("step " + s, expected, islandBodyCounts(world));
+			}
+			world.destroy();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
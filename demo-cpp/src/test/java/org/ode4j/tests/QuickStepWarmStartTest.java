@@ -0,0 +1,153 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeConstants;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Box stack with few QuickStep iterations, with and without warm starting.
+ */
+public class QuickStepWarmStartTest {
+
+	private static final int BOXES = 10;
+	private static final int STEPS = 500;
+	private static final int ITERATIONS = 10;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static class Stack implements DNearCallback {
+		final DWorld world = OdeHelper.createWorld();
+		final DSpace space = OdeHelper.createHashSpace();
+		final DJointGroup contactGroup = OdeHelper.createJointGroup();
+		final DBody[] bodies = new DBody[BOXES];
+
+		Stack(double warmStartFactor) {
+			world.setGravity(0, 0, -9.81);
+			world.setQuickStepNumIterations(ITERATIONS);
+			world.setQuickStepWarmStartFactor(warmStartFactor);
+			world.setContactSurfaceLayer(0.001);
+			OdeHelper.createPlane(space, 0, 0, 1, 0);
+			DMass m = OdeHelper.createMass();
+			m.setBox(1, 1, 1, 1);
+			for (int i = 0; i < BOXES; i++) {
+				bodies[i] = OdeHelper.createBody(world);
+				bodies[i].setMass(m);
+				bodies[i].setPosition(0, 0, 0.5 + i);
+				OdeHelper.createBox(space, 1, 1, 1).setBody(bodies[i]);
+			}
+		}
+
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			// the joints keep the contacts, so they must not be reused
+			DContactBuffer contacts = new DContactBuffer(4);
+			int n = OdeHelper.collide(o1, o2, contacts.size(), contacts.getGeomBuffer());
+			for (int i = 0; i < n; i++) {
+				DContact c = contacts.get(i);
+				c.surface.mode = OdeConstants.dContactApprox1;
+				c.surface.mu = 0.8;
+				DJoint j = OdeHelper.createContactJoint(world, contactGroup, c);
+				j.attach(o1.getBody(), o2.getBody());
+			}
+		}
+
+		/** @return Sum of the body speeds over the last 100 steps. */
+		double run() {
+			double speed = 0;
+			for (int s = 0; s < STEPS; s++) {
+				space.collide(null, this);
+				world.quickStep(0.01);
+				contactGroup.empty();
+				if (s >= STEPS - 100) {
+					for (DBody b : bodies) {
+						speed += b.getLinearVel().length();
+					}
+				}
+			}
+			return speed;
+		}
+
+		double sink() {
+			return BOXES - 0.5 - bodies[BOXES - 1].getPosition().get2();
+		}
+
+		void destroy() {
+			contactGroup.destroy();
+			space.destroy();
+			world.destroy();
+		}
+	}
+
+	@Test
+	public void testParameters() {
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(0, world.getQuickStepWarmStartFactor(), 0);
+		assertEquals(0.05, world.getQuickStepWarmStartTolerance(), 0);
+		world.setQuickStepWarmStartFactor(0.9);
+		world.setQuickStepWarmStartTolerance(0.1);
+		assertEquals(0.9, world.getQuickStepWarmStartFactor(), 0);
+		assertEquals(0.1, world.getQuickStepWarmStartTolerance(), 0);
+		world.destroy();
+	}
+
+	@Test
+	public void testWarmStartSettlesStack() {
+		Stack cold = new Stack(0);
+		Stack warm = new Stack(0.9);
+		double coldSpeed = cold.run();
+		double warmSpeed = warm.run();
+		// the stack neither collapses nor drifts away
+		assertTrue("sink " + warm.sink(), Math.abs(warm.sink()) < 0.02);
+		assertTrue("x " + warm.bodies[BOXES - 1].getPosition(), Math.abs(warm.bodies[BOXES - 1].getPosition().get0()) < 0.05);
+		// less jitter and less sinking with the same number of iterations
+		assertTrue(coldSpeed + " / " + warmSpeed, warmSpeed < coldSpeed / 2);
+		assertTrue(cold.sink() + " / " + warm.sink(), warm.sink() < cold.sink());
+		cold.destroy();
+		warm.destroy();
+	}
+}
@@ -0,0 +1,154 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.tests.SpaceTestHelper.createBox;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DSapSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares the pairs reported by the incremental mode of the SAP space with 
+ * the default mode.
+ */
+public class SapSpaceIncrementalTest {
+
+	private static final int N = 300;
+	private static final int STEPS = 100;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static Set<Long> collide(DSapSpace space) {
+		// the default mode pairs geoms with infinite AABBs with all geoms
+		return SpaceTestHelper.collideOverlapping(space);
+	}
+
+	@Test
+	public void testPairsMatchDefaultMode() {
+		Random r = new Random(42);
+		DSapSpace ref = OdeHelper.createSapSpace(DSapSpace.AXES.XZY);
+		DSapSpace inc = OdeHelper.createSapSpace(DSapSpace.AXES.XZY);
+		inc.setIncremental(true);
+		assertTrue(inc.isIncremental());
+		assertFalse(ref.isIncremental());
+
+		DGeom[] refGeoms = new DGeom[N];
+		DGeom[] incGeoms = new DGeom[N];
+		for (int i = 0; i < N; i++) {
+			refGeoms[i] = createBox(ref, i);
+			incGeoms[i] = createBox(inc, i);
+		}
+		OdeHelper.createPlane(ref, 0, 0, 1, 0).setData(N);
+		OdeHelper.createPlane(inc, 0, 0, 1, 0).setData(N);
+
+		for (int step = 0; step < STEPS; step++) {
+			for (int i = 0; i < N; i++) {
+				// the first steps move everything, later on only a few geoms move
+				if (step > 2 && r.nextInt(10) != 0) {
+					continue;
+				}
+				double x = r.nextDouble() * 20;
+				double y = r.nextDouble() * 20;
+				double z = r.nextDouble() * 20 - 1;
+				refGeoms[i].setPosition(x, y, z);
+				incGeoms[i].setPosition(x, y, z);
+			}
+			if (step % 10 == 5) {
+				// remove and re-add some geoms
+				for (int i = step % 7; i < N; i += 13) {
+					refGeoms[i].destroy();
+					incGeoms[i].destroy();
+					refGeoms[i] = createBox(ref, i);
+					incGeoms[i] = createBox(inc, i);
+					double x = r.nextDouble() * 20;
+					refGeoms[i].setPosition(x, 5, 5);
+					incGeoms[i].setPosition(x, 5, 5);
+				}
+			}
+			if (step % 10 == 8) {
+				for (int i = step % 5; i < N; i += 17) {
+					boolean enabled = !refGeoms[i].isEnabled();
+					setEnabled(refGeoms[i], enabled);
+					setEnabled(incGeoms[i], enabled);
+				}
+			}
+			Set<Long> expected = collide(ref);
+			Set<Long> actual = collide(inc);
+			assertEquals("step " + step, expected, actual);
+		}
+
+		// switching back to the default mode
+		inc.setIncremental(false);
+		assertEquals(collide(ref), collide(inc));
+		inc.setIncremental(true);
+		assertEquals(collide(ref), collide(inc));
+
+		ref.destroy();
+		inc.destroy();
+	}
+
+	@Test
+	public void testStaticGeoms() {
+		DSapSpace inc = OdeHelper.createSapSpace(DSapSpace.AXES.XYZ);
+		inc.setIncremental(true);
+		DGeom a = createBox(inc, 0);
+		DGeom b = createBox(inc, 1);
+		b.setPosition(0.5, 0, 0);
+		assertEquals(1, collide(inc).size());
+		// nothing moved, the pair is still reported
+		assertEquals(1, collide(inc).size());
+		b.setPosition(3, 0, 0);
+		assertEquals(0, collide(inc).size());
+		a.setPosition(3, 0, 1);
+		assertEquals(1, collide(inc).size());
+		b.destroy();
+		assertEquals(0, collide(inc).size());
+		inc.destroy();
+	}
+
+	private static void setEnabled(DGeom g, boolean enabled) {
+		if (enabled) {
+			g.enable();
+		} else {
+			g.disable();
+		}
+	}
+}
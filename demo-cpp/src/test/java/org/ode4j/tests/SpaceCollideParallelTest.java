@@ -0,0 +1,299 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContact.DSurfaceParameters;
+import org.ode4j.ode.DContactBatch;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactJoint;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DSpace.DParallelNearCallback;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeConstants;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares <tt>DSpace.collideParallel()</tt> and 
+ * <tt>DSpace.collideContacts()</tt> with a serial collide.
+ */
+public class SpaceCollideParallelTest {
+
+	private static final int N = 400;
+	private static final int MAX_CONTACTS = 4;
+	private static final int THREADS = 4;
+
+	private ExecutorService executor;
+	private DSpace space;
+	private DSpace sub;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS - 1);
+		Random r = new Random(7);
+		space = OdeHelper.createHashSpace();
+		// a sub-space, to check that pairs with spaces are expanded
+		sub = OdeHelper.createSimpleSpace(space);
+		int id = 0;
+		for (int i = 0; i < N; i++) {
+			DGeom g;
+			if (i % 2 == 0) {
+				g = OdeHelper.createBox(i % 10 == 0 ? sub : space, 1, 1, 1);
+			} else {
+				g = OdeHelper.createSphere(space, 0.6);
+			}
+			g.setPosition(r.nextDouble() * 12, r.nextDouble() * 12, r.nextDouble() * 6 - 0.5);
+			g.setData(id++);
+		}
+		OdeHelper.createPlane(space, 0, 0, 1, 0).setData(id);
+	}
+
+	@After
+	public void tearDown() {
+		space.destroy();
+		executor.shutdownNow();
+	}
+
+	private static String key(DContact c) {
+		return key(c.geom);
+	}
+
+	private static String key(DContactGeom c) {
+		return c.g1.getData() + "/" + c.g2.getData() + " " + c.pos + " " + c.depth;
+	}
+
+	/** Reference: a serial near callback that expands space pairs, like collideParallel(). */
+	private static class SerialCollector implements DNearCallback {
+		final List<String> contacts = new ArrayList<String>();
+		final DContactBuffer buf = new DContactBuffer(MAX_CONTACTS);
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (o1 instanceof DSpace || o2 instanceof DSpace) {
+				OdeHelper.spaceCollide2(o1, o2, data, this);
+				return;
+			}
+			int n = OdeHelper.collide(o1, o2, MAX_CONTACTS, buf.getGeomBuffer());
+			for (int i = 0; i < n; i++) {
+				contacts.add(key(buf.get(i)));
+			}
+		}
+	}
+
+	private static final DParallelNearCallback CONTACTS = new DParallelNearCallback() {
+		@Override
+		public int call(Object data, DGeom o1, DGeom o2, DContactBuffer contacts) {
+			assertFalse(o1 instanceof DSpace);
+			assertFalse(o2 instanceof DSpace);
+			assertEquals(MAX_CONTACTS, contacts.size());
+			return OdeHelper.collide(o1, o2, contacts.size(), contacts.getGeomBuffer());
+		}
+	};
+
+	@Test
+	public void testMergedContactsMatchSerial() {
+		SerialCollector ref = new SerialCollector();
+		space.collide(null, ref);
+		sub.collide(null, ref);
+		assertTrue(ref.contacts.size() > 100);
+
+		DContactBuffer contacts = new DContactBuffer(0);
+		for (int threads = 1; threads <= THREADS; threads++) {
+			// repeat to exercise the reuse of the internal buffers
+			for (int rep = 0; rep < 3; rep++) {
+				int n = space.collideParallel(null, CONTACTS, MAX_CONTACTS, contacts, executor, threads);
+				assertEquals(ref.contacts.size(), n);
+				assertTrue(contacts.size() >= n);
+				for (int i = 0; i < n; i++) {
+					assertEquals("threads=" + threads, ref.contacts.get(i), key(contacts.get(i)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNearCallbackPairs() {
+		final Set<String> ref = new HashSet<String>();
+		DNearCallback refCallback = new DNearCallback() {
+			@Override
+			public void call(Object data, DGeom o1, DGeom o2) {
+				if (o1 instanceof DSpace || o2 instanceof DSpace) {
+					OdeHelper.spaceCollide2(o1, o2, data, this);
+					return;
+				}
+				assertTrue(ref.add(o1.getData() + "/" + o2.getData()));
+			}
+		};
+		space.collide(null, refCallback);
+		sub.collide(null, refCallback);
+
+		final Object data = new Object();
+		final Set<String> pairs = Collections.synchronizedSet(new HashSet<String>());
+		space.collideParallel(data, new DNearCallback() {
+			@Override
+			public void call(Object d, DGeom o1, DGeom o2) {
+				assertSame(data, d);
+				assertTrue(pairs.add(o1.getData() + "/" + o2.getData()));
+			}
+		}, executor, THREADS);
+		assertEquals(ref, pairs);
+	}
+
+	@Test
+	public void testExceptionIsPropagated() {
+		try {
+			space.collideParallel(null, new DNearCallback() {
+				@Override
+				public void call(Object data, DGeom o1, DGeom o2) {
+					throw new IllegalStateException("test");
+				}
+			}, executor, THREADS);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("test", e.getMessage());
+		}
+		// the space must be unlocked again
+		OdeHelper.createSphere(space, 1).destroy();
+	}
+
+	@Test
+	public void testCollideContactsMatchSerial() {
+		SerialCollector ref = new SerialCollector();
+		space.collide(null, ref);
+		sub.collide(null, ref);
+
+		DContactBatch batch = new DContactBatch(1);
+		DContactGeom c = new DContactGeom();
+		for (int threads = 1; threads <= THREADS; threads++) {
+			for (int rep = 0; rep < 2; rep++) {
+				batch.clear();
+				int n = threads == 1 ? space.collideContacts(MAX_CONTACTS, batch) :
+					space.collideContacts(MAX_CONTACTS, batch, executor, threads);
+				assertEquals(ref.contacts.size(), n);
+				assertEquals(n, batch.size());
+				for (int i = 0; i < n; i++) {
+					batch.get(i, c);
+					assertEquals("threads=" + threads, ref.contacts.get(i), key(c));
+					assertEquals(c.depth, batch.getDepths()[i], 0);
+					assertEquals(c.pos.get2(), batch.getPositions()[3*i+2], 0);
+				}
+			}
+		}
+		// contacts are appended
+		int n = batch.size();
+		assertEquals(n, space.collideContacts(MAX_CONTACTS, batch));
+		assertEquals(2*n, batch.size());
+	}
+
+	@Test
+	public void testCreateContactJoints() {
+		DWorld world = OdeHelper.createWorld();
+		DJointGroup group = OdeHelper.createJointGroup();
+		// give every sphere a body, boxes stay static
+		List<DBody> bodies = new ArrayList<DBody>();
+		for (int i = 0; i < space.getNumGeoms(); i++) {
+			DGeom g = space.getGeom(i);
+			if (g.getClassID() == DGeom.dSphereClass) {
+				DBody b = OdeHelper.createBody(world);
+				b.setPosition(g.getPosition());
+				g.setBody(b);
+				bodies.add(b);
+			}
+		}
+		DSurfaceParameters surface = new DContactBuffer(1).get(0).surface;
+		surface.mode = OdeConstants.dContactBounce;
+		surface.mu = 0.5;
+		surface.bounce = 0.1;
+
+		DContactBatch batch = new DContactBatch();
+		for (int step = 0; step < 3; step++) {
+			batch.clear();
+			space.collideContacts(MAX_CONTACTS, batch);
+			int expected = 0;
+			int expectedLinks = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				DBody b1 = batch.getGeom1(i).getBody();
+				DBody b2 = batch.getGeom2(i).getBody();
+				if (b1 != null || b2 != null) {
+					expected++;
+					expectedLinks += (b1 != null ? 1 : 0) + (b2 != null ? 1 : 0);
+				}
+			}
+			assertTrue(expected > 0);
+			assertEquals(expected, group.createContactJoints(world, batch, surface));
+			assertEquals(expectedLinks, countJoints(bodies));
+			for (DBody b : bodies) {
+				for (int i = 0; i < b.getNumJoints(); i++) {
+					assertTrue(b.getJoint(i) instanceof DContactJoint);
+				}
+			}
+			world.quickStep(0.01);
+			group.empty();
+			assertEquals(0, countJoints(bodies));
+		}
+		group.destroy();
+		world.destroy();
+	}
+
+	private static int countJoints(List<DBody> bodies) {
+		int n = 0;
+		for (DBody b : bodies) {
+			n += b.getNumJoints();
+		}
+		return n;
+	}
+}
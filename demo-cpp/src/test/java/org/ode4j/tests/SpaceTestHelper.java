@@ -0,0 +1,109 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Collects the pairs reported by spaces, for the tests that compare spaces. 
+ * Geoms are identified by their Integer data.
+ */
+final class SpaceTestHelper {
+
+	private SpaceTestHelper() {}
+
+	/**
+	 * @return A key of the unordered pair of the data of the geoms
+	 */
+	static long key(DGeom o1, DGeom o2) {
+		int i1 = (Integer) o1.getData();
+		int i2 = (Integer) o2.getData();
+		return i1 < i2 ? ((long)i1 << 32) | i2 : ((long)i2 << 32) | i1;
+	}
+
+	static class PairCollector implements DNearCallback {
+		final Set<Long> pairs = new HashSet<Long>();
+		private final boolean overlappingOnly;
+		private final boolean distinct;
+
+		/**
+		 * @param overlappingOnly Ignore pairs whose AABBs do not overlap
+		 * @param distinct Fail for pairs of a geom with itself
+		 */
+		PairCollector(boolean overlappingOnly, boolean distinct) {
+			this.overlappingOnly = overlappingOnly;
+			this.distinct = distinct;
+		}
+
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (overlappingOnly && o1.getAABB().isDisjoint(o2.getAABB())) {
+				return;
+			}
+			assertTrue(!distinct || o1 != o2);
+			assertTrue("pair reported twice", pairs.add(key(o1, o2)));
+		}
+	}
+
+	static Set<Long> collide(DSpace space) {
+		PairCollector c = new PairCollector(false, true);
+		space.collide(null, c);
+		return c.pairs;
+	}
+
+	/**
+	 * Like {@link #collide(DSpace)}, pairs whose AABBs do not overlap are ignored.
+	 */
+	static Set<Long> collideOverlapping(DSpace space) {
+		PairCollector c = new PairCollector(true, true);
+		space.collide(null, c);
+		return c.pairs;
+	}
+
+	/**
+	 * If <tt>geom</tt> is in the space, the pair of it with itself is collected.
+	 */
+	static Set<Long> collide2(DSpace space, DGeom geom) {
+		PairCollector c = new PairCollector(false, false);
+		OdeHelper.spaceCollide2(space, geom, null, c);
+		return c.pairs;
+	}
+
+	/**
+	 * @return A unit box with data <tt>i</tt>
+	 */
+	static DBox createBox(DSpace space, int i) {
+		DBox g = OdeHelper.createBox(space, 1, 1, 1);
+		g.setData(i);
+		return g;
+	}
+}
@@ -0,0 +1,330 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DHingeJoint;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.DWorld.StepFactorization;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * The factorizations of <code>DWorld.step()</code> must give the same 
+ * result as the default one, up to rounding errors. The chains are long 
+ * enough to span several blocks of the blocked factorization.
+ * <p>
+ * The worlds use a CFM of 1e-5. With the default of 1e-10 a chain of 120 
+ * links is so badly conditioned that the different elimination order of 
+ * the tree solver changes the velocities by up to 1e-6. Short chains are 
+ * also checked with a CFM of 0.
+ */
+public class StepFactorizationTest {
+
+	private static final int LINKS = 120;
+	private static final int STEPS = 20;
+	private static final double EPS = 1e-8;
+	private static final int THREADS = 4;
+	private static final int RUNS = 20;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	/**
+	 * Lets a horizontal chain swing for some steps.
+	 * @param hinges hinge joints with tight limits instead of ball joints, 
+	 * so that the island also has bounded rows
+	 * @param shuffle create the joints in an order that is not along the 
+	 * chain
+	 * @return positions and velocities of the links
+	 */
+	private static double[] chain(StepFactorization factorization, 
+			boolean hinges, boolean shuffle) {
+		return chain(createWorld(factorization), hinges, shuffle);
+	}
+
+	private static double[] chain(DWorld world, boolean hinges, boolean shuffle) {
+		DBody[] links = createLinks(world, LINKS);
+		for (int k = 0; k < LINKS; k++) {
+			// 37 and LINKS are coprime, so this visits every link once
+			int i = shuffle ? (k * 37) % LINKS : k;
+			if (hinges) {
+				DHingeJoint h = OdeHelper.createHingeJoint(world);
+				h.attach(links[i], i == 0 ? null : links[i - 1]);
+				h.setAnchor(0.2 * i, 0, 10);
+				h.setAxis(0, 1, 0);
+				h.setParamLoStop(-0.05);
+				h.setParamHiStop(0.05);
+			} else {
+				DBallJoint b = OdeHelper.createBallJoint(world);
+				b.attach(links[i], i == 0 ? null : links[i - 1]);
+				b.setAnchor(0.2 * i, 0, 10);
+			}
+		}
+		return simulate(world, links, STEPS);
+	}
+
+	/**
+	 * A body with six legs of 20 links each.
+	 * @param ring connect the ends of two legs, which closes a loop
+	 */
+	private static double[] spider(StepFactorization factorization, boolean ring) {
+		final int legs = 6, legLinks = 20;
+		DWorld world = createWorld(factorization);
+		DBody[] links = createLinks(world, 1 + legs * legLinks);
+		for (int l = 0; l < legs; l++) {
+			double dx = Math.cos(l * Math.PI / 3), dy = Math.sin(l * Math.PI / 3);
+			for (int i = 0; i < legLinks; i++) {
+				DBody b = links[1 + l * legLinks + i];
+				b.setPosition(dx * 0.2 * (i + 1), dy * 0.2 * (i + 1), 10);
+				DBallJoint j = OdeHelper.createBallJoint(world);
+				j.attach(b, i == 0 ? links[0] : links[l * legLinks + i]);
+				j.setAnchor(dx * (0.2 * i + 0.1), dy * (0.2 * i + 0.1), 10);
+			}
+		}
+		// hold the body at two points, so that it does not just fall
+		DHingeJoint hold = OdeHelper.createHingeJoint(world);
+		hold.attach(links[0], null);
+		hold.setAnchor(0, 0, 10);
+		hold.setAxis(0, 1, 0);
+		if (ring) {
+			DBallJoint j = OdeHelper.createBallJoint(world);
+			j.attach(links[legLinks], links[2 * legLinks]);
+			j.setAnchor(links[legLinks].getPosition());
+		}
+		return simulate(world, links, STEPS);
+	}
+
+	/**
+	 * A horizontal chain of ball joints without constraint force mixing.
+	 * @param bothEnds also attach the last link to the static environment
+	 */
+	private static double[] zeroCfmChain(StepFactorization factorization, 
+			boolean bothEnds) {
+		return zeroCfmChain(createWorld(factorization), bothEnds);
+	}
+
+	private static double[] zeroCfmChain(DWorld world, boolean bothEnds) {
+		final int n = 10;
+		world.setCFM(0);
+		DBody[] links = createLinks(world, n);
+		for (int i = 0; i < n; i++) {
+			DBallJoint b = OdeHelper.createBallJoint(world);
+			b.attach(links[i], i == 0 ? null : links[i - 1]);
+			b.setAnchor(0.2 * i, 0, 10);
+		}
+		if (bothEnds) {
+			DBallJoint b = OdeHelper.createBallJoint(world);
+			b.attach(links[n - 1], null);
+			b.setAnchor(0.2 * n, 0, 10);
+		}
+		return simulate(world, links, STEPS);
+	}
+
+	private static DWorld createWorld(StepFactorization factorization) {
+		DWorld world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -9.81);
+		world.setCFM(1e-5);
+		world.setStepFactorization(factorization);
+		return world;
+	}
+
+	/** Bodies along the x axis, 0.2 apart. */
+	private static DBody[] createLinks(DWorld world, int n) {
+		DMass m = OdeHelper.createMass();
+		m.setBox(1, 0.2, 0.1, 0.1);
+		DBody[] links = new DBody[n];
+		for (int i = 0; i < n; i++) {
+			links[i] = OdeHelper.createBody(world);
+			links[i].setMass(m);
+			links[i].setPosition(0.2 * i + 0.1, 0, 10);
+		}
+		return links;
+	}
+
+	/**
+	 * @return positions and velocities of the bodies after the steps
+	 */
+	private static double[] simulate(DWorld world, DBody[] links, int steps) {
+		for (int s = 0; s < steps; s++) {
+			world.step(0.01);
+		}
+		double[] r = new double[links.length * 9];
+		for (int i = 0; i < links.length; i++) {
+			for (int k = 0; k < 3; k++) {
+				r[i * 9 + k] = links[i].getPosition().get(k);
+				r[i * 9 + 3 + k] = links[i].getLinearVel().get(k);
+				r[i * 9 + 6 + k] = links[i].getAngularVel().get(k);
+			}
+		}
+		world.destroy();
+		return r;
+	}
+
+	private static void assertSame(double[] expected, double[] actual, double eps, 
+			String msg) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < actual.length; i++) {
+			assertEquals(msg + " " + i, expected[i], actual[i], eps);
+		}
+	}
+
+	private static void assertSame(boolean hinges, boolean shuffle) {
+		double[] dense = chain(StepFactorization.DENSE, hinges, shuffle);
+		for (StepFactorization f : StepFactorization.values()) {
+			assertSame(dense, chain(f, hinges, shuffle), EPS, f.toString());
+		}
+		// the chain must actually have moved
+		assertTrue(dense[(LINKS - 1) * 9 + 2] < 9.9);
+	}
+
+	@Test
+	public void testDefault() {
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(StepFactorization.DENSE, world.getStepFactorization());
+		world.setStepFactorization(StepFactorization.ENVELOPE);
+		assertEquals(StepFactorization.ENVELOPE, world.getStepFactorization());
+		world.destroy();
+	}
+
+	/** Only unbounded rows, the LCP solver just factors and solves. */
+	@Test
+	public void testBallChain() {
+		assertSame(false, false);
+	}
+
+	@Test
+	public void testBallChainShuffled() {
+		assertSame(false, true);
+	}
+
+	/** Limits add bounded rows, the factorization is then extended row by row. */
+	@Test
+	public void testHingeChainWithLimits() {
+		assertSame(true, false);
+	}
+
+	@Test
+	public void testHingeChainWithLimitsShuffled() {
+		assertSame(true, true);
+	}
+
+	/** A body with several joints is a branch of the tree. */
+	@Test
+	public void testBranchedTree() {
+		assertSame(spider(StepFactorization.DENSE, false), 
+				spider(StepFactorization.TREE, false), EPS, "TREE");
+	}
+
+	/** A loop falls back to the dense factorization. */
+	@Test
+	public void testLoopFallsBack() {
+		assertSame(spider(StepFactorization.DENSE, true), 
+				spider(StepFactorization.TREE, true), 0, "TREE");
+	}
+
+	/** The joint to the static environment must not be eliminated first. */
+	@Test
+	public void testZeroCfmChain() {
+		double[] dense = zeroCfmChain(StepFactorization.DENSE, false);
+		for (StepFactorization f : StepFactorization.values()) {
+			assertSame(dense, zeroCfmChain(f, false), EPS, f.toString());
+		}
+		assertTrue(dense[9 * 9 + 2] < 9.9);
+	}
+
+	/** Only one of the joints to the static environment can be the root. */
+	@Test
+	public void testZeroCfmChainHeldAtBothEnds() {
+		double[] dense = zeroCfmChain(StepFactorization.DENSE, true);
+		for (StepFactorization f : StepFactorization.values()) {
+			assertSame(dense, zeroCfmChain(f, true), EPS, f.toString());
+		}
+	}
+
+	private static DWorld createThreadedWorld(StepFactorization factorization, 
+			Executor executor) {
+		DWorld world = createWorld(factorization);
+		world.setStepExecutor(executor, THREADS);
+		return world;
+	}
+
+	/** 
+	 * Several threads build the rows of one island, the CFM handed to the 
+	 * tree solver must not be overwritten meanwhile.
+	 */
+	@Test
+	public void testTreeThreaded() {
+		double[] chain = chain(StepFactorization.TREE, true, true);
+		double[] zeroCfm = zeroCfmChain(StepFactorization.TREE, false);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			// races show only in some runs
+			for (int r = 0; r < RUNS; r++) {
+				assertSame(chain, chain(createThreadedWorld(StepFactorization.TREE, executor), 
+						true, true), 0, "run " + r);
+				assertSame(zeroCfm, zeroCfmChain(createThreadedWorld(StepFactorization.TREE, executor), 
+						false), 0, "run " + r);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/** 3000 rows: A would have 9 million elements. */
+	@Test
+	public void testLongChain() {
+		final int n = 1000;
+		double[][] r = new double[2][];
+		StepFactorization[] f = { StepFactorization.ENVELOPE, StepFactorization.TREE };
+		for (int k = 0; k < 2; k++) {
+			DWorld world = createWorld(f[k]);
+			DBody[] links = createLinks(world, n);
+			for (int i = 0; i < n; i++) {
+				DBallJoint j = OdeHelper.createBallJoint(world);
+				j.attach(links[i], i == 0 ? null : links[i - 1]);
+				j.setAnchor(0.2 * i, 0, 10);
+			}
+			r[k] = simulate(world, links, 5);
+		}
+		assertSame(r[0], r[1], 1e-6, "TREE");
+	}
+}
@@ -0,0 +1,263 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DRay;
+import org.ode4j.ode.DRotation;
+import org.ode4j.ode.DTriMesh;
+import org.ode4j.ode.DTriMeshData;
+import org.ode4j.ode.OdeConfig;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Trimeshes with <code>OdeConfig.TRIMESH.BVH</code> data find their 
+ * triangles with an AABB tree, but must give exactly the same contacts 
+ * as plain GIMPACT trimeshes, also after the trimesh has moved.
+ */
+public class TrimeshBvhTest {
+
+	private static final int GRID = 40;
+	private static final int MAX_CONTACTS = 64;
+
+	private final DContactGeomBuffer contacts1 = new DContactGeomBuffer(MAX_CONTACTS);
+	private final DContactGeomBuffer contacts2 = new DContactGeomBuffer(MAX_CONTACTS);
+
+	private DTriMesh gimpact, bvh;
+	private OdeConfig.TRIMESH type;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Before
+	public void createMeshes() {
+		type = OdeConfig.getTrimeshType();
+		gimpact = createMesh(OdeConfig.TRIMESH.GIMPACT);
+		bvh = createMesh(OdeConfig.TRIMESH.BVH);
+	}
+
+	@After
+	public void destroyMeshes() {
+		gimpact.destroy();
+		bvh.destroy();
+		OdeConfig.setTrimeshType(type);
+	}
+
+	private static DTriMesh createMesh(OdeConfig.TRIMESH type) {
+		return createMesh(type, GRID);
+	}
+
+	private static DTriMesh createMesh(OdeConfig.TRIMESH type, int n) {
+		OdeConfig.setTrimeshType(type);
+		DTriMesh m = OdeHelper.createTriMesh(null, createGrid(n), null, null, null);
+		m.getAABB();
+		return m;
+	}
+
+	/**
+	 * A bumpy grid of unit cells at z~0.
+	 */
+	private static DTriMeshData createGrid(int n) {
+		int nV = n + 1;
+		float[] vertices = new float[nV * nV * 3];
+		for (int y = 0; y < nV; y++) {
+			for (int x = 0; x < nV; x++) {
+				int pos = (x + y * nV) * 3;
+				vertices[pos] = x;
+				vertices[pos + 1] = y;
+				vertices[pos + 2] = (float) (0.3 * Math.sin(x * 0.7) * Math.cos(y * 0.5));
+			}
+		}
+		int[] indices = new int[n * n * 6];
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				int i0 = x + y * nV;
+				int pos = (x + y * n) * 6;
+				indices[pos] = i0;
+				indices[pos + 1] = i0 + 1;
+				indices[pos + 2] = i0 + 1 + nV;
+				indices[pos + 3] = i0;
+				indices[pos + 4] = i0 + 1 + nV;
+				indices[pos + 5] = i0 + nV;
+			}
+		}
+		DTriMeshData data = OdeHelper.createTriMeshData();
+		data.build(vertices, indices);
+		return data;
+	}
+
+	private static void place(DGeom g, Random rnd, double z) {
+		DMatrix3 R = new DMatrix3();
+		DRotation.dRFromAxisAndAngle(R, rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5, 
+				rnd.nextDouble() - 0.5, rnd.nextDouble() * 2 * Math.PI);
+		g.setRotation(R);
+		g.setPosition(rnd.nextDouble() * GRID, rnd.nextDouble() * GRID, z + rnd.nextDouble() * 0.4 - 0.2);
+		// some colliders use the cached AABB of the geom
+		g.getAABB();
+	}
+
+	/**
+	 * Collides <code>g</code> with both trimeshes, which must be at the 
+	 * same place, and compares the contacts.
+	 * @return number of contacts
+	 */
+	private int compare(DGeom g) {
+		int n1 = OdeHelper.collide(gimpact, g, MAX_CONTACTS, contacts1);
+		int n2 = OdeHelper.collide(bvh, g, MAX_CONTACTS, contacts2);
+		assertEquals(n1, n2);
+		for (int i = 0; i < n1; i++) {
+			DContactGeom c1 = contacts1.get(i);
+			DContactGeom c2 = contacts2.get(i);
+			assertEquals(c1.pos, c2.pos);
+			assertEquals(c1.normal, c2.normal);
+			assertEquals(c1.depth, c2.depth, 0);
+			assertEquals(c1.side1, c2.side1);
+			assertEquals(c1.side2, c2.side2);
+		}
+		return n1;
+	}
+
+	private void compareAll(DGeom g, double z, Random rnd) {
+		int total = 0;
+		for (int i = 0; i < 100; i++) {
+			place(g, rnd, z);
+			total += compare(g);
+		}
+		// make sure the comparison is not trivial
+		assertTrue(total > 50);
+	}
+
+	private void moveMeshes(double x, double y, double angle) {
+		DMatrix3 R = new DMatrix3();
+		DRotation.dRFromAxisAndAngle(R, 0.1, 0.2, 1, angle);
+		for (DTriMesh m: new DTriMesh[] {gimpact, bvh}) {
+			m.setPosition(x, y, 0);
+			m.setRotation(R);
+			m.getAABB();
+		}
+	}
+
+	@Test
+	public void testSphere() {
+		DGeom g = OdeHelper.createSphere(0.5);
+		compareAll(g, 0.3, new Random(1));
+		g.destroy();
+	}
+
+	@Test
+	public void testBox() {
+		DGeom g = OdeHelper.createBox(1, 0.7, 0.5);
+		compareAll(g, 0.2, new Random(2));
+		g.destroy();
+	}
+
+	@Test
+	public void testCapsule() {
+		DGeom g = OdeHelper.createCapsule(0.3, 1.2);
+		compareAll(g, 0.2, new Random(3));
+		g.destroy();
+	}
+
+	@Test
+	public void testCylinder() {
+		DGeom g = OdeHelper.createCylinder(0.5, 1);
+		compareAll(g, 0.3, new Random(4));
+		g.destroy();
+	}
+
+	@Test
+	public void testRay() {
+		DRay ray = OdeHelper.createRay(5);
+		Random rnd = new Random(5);
+		int total = 0;
+		for (int i = 0; i < 100; i++) {
+			ray.set(rnd.nextDouble() * GRID, rnd.nextDouble() * GRID, 2, 
+					rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5, -1);
+			ray.setClosestHit(i % 2 == 0);
+			ray.getAABB();
+			total += compare(ray);
+		}
+		assertTrue(total > 50);
+		ray.destroy();
+	}
+
+	@Test
+	public void testTrimesh() {
+		// less than 600 triangles, so GIMPACT uses brute force pruning 
+		// and reports the triangle pairs in the same order
+		DTriMesh other = createMesh(OdeConfig.TRIMESH.GIMPACT, 16);
+		DMatrix3 R = new DMatrix3();
+		DRotation.dRFromAxisAndAngle(R, 1, 0.3, 0.2, 0.5);
+		other.setRotation(R);
+		other.setPosition(GRID * 0.3, GRID * 0.2, -1);
+		other.getAABB();
+		assertTrue(compare(other) > 0);
+		other.destroy();
+	}
+
+	@Test
+	public void testMovingMesh() {
+		DGeom sphere = OdeHelper.createSphere(0.5);
+		DGeom box = OdeHelper.createBox(1, 0.7, 0.5);
+		Random rnd = new Random(6);
+		int total = 0;
+		for (int i = 0; i < 30; i++) {
+			moveMeshes(i * 0.3, -i * 0.2, i * 0.05);
+			// in mesh coordinates, the geoms are placed on the grid
+			for (DGeom g: new DGeom[] {sphere, box}) {
+				for (int k = 0; k < 5; k++) {
+					place(g, rnd, 0.2);
+					DVector3 pos = new DVector3();
+					bvh.getRelPointPos(g.getPosition().get0(), g.getPosition().get1(), 
+							g.getPosition().get2(), pos);
+					g.setPosition(pos);
+					total += compare(g);
+				}
+			}
+		}
+		assertTrue(total > 50);
+		box.destroy();
+		sphere.destroy();
+	}
+}
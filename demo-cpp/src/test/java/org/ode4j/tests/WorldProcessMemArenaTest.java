@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+
+/**
+ * Checks the slab ranges of {@link DxWorldProcessMemArena}.
+ */
+public class WorldProcessMemArenaTest {
+
+	@Test
+	public void testRestoreHandsOutRangeAgain() {
+		DxWorldProcessMemArena arena = DxWorldProcessMemArena.allocateTemporary(0, null, null);
+		double[] a = arena.AllocateSlabDReal(10);
+		int aOfs = arena.SlabOffset();
+		for (int i = 0; i < 10; i++) {
+			a[aOfs + i] = i + 1;
+		}
+
+		int state = arena.SaveState();
+		double[] b = arena.AllocateSlabDReal(5);
+		int bOfs = arena.SlabOffset();
+		assertTrue(b != a || bOfs >= aOfs + 10);
+		for (int i = 0; i < 5; i++) {
+			b[bOfs + i] = -1;
+		}
+		arena.RestoreState(state);
+
+		double[] c = arena.AllocateSlabDReal(5);
+		assertSame(b, c);
+		assertEquals(bOfs, arena.SlabOffset());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, c[bOfs + i], 0);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i + 1, a[aOfs + i], 0);
+		}
+	}
+
+	@Test
+	public void testExhaustedSlabKeepsRanges() {
+		DxWorldProcessMemArena arena = DxWorldProcessMemArena.allocateTemporary(0, null, null);
+		int[] first = arena.AllocateSlabInt(4);
+		int firstOfs = arena.SlabOffset();
+		for (int i = 0; i < 4; i++) {
+			first[firstOfs + i] = 7;
+		}
+		for (int n = 1; n < 10000; n *= 2) {
+			int[] r = arena.AllocateSlabInt(n);
+			int ofs = arena.SlabOffset();
+			assertTrue(ofs + n <= r.length);
+			for (int i = 0; i < n; i++) {
+				assertEquals(0, r[ofs + i]);
+				r[ofs + i] = n;
+			}
+		}
+		for (int i = 0; i < 4; i++) {
+			assertEquals(7, first[firstOfs + i]);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.tests.WorldStepTestHelper.ascending;
+import static org.ode4j.tests.WorldStepTestHelper.assertPositions;
+import static org.ode4j.tests.WorldStepTestHelper.simulate;
+import static org.ode4j.tests.WorldStepTestHelper.uniform;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Steps worlds with many islands through {@link DWorld#setStepExecutor}.
+ */
+public class WorldStepExecutorTest {
+
+	private static final int[] LINKS = uniform(24, 4);
+	// islands large enough to be stepped by several threads each
+	private static final int[] LARGE_LINKS = ascending(20);
+	private static final int STEPS = 50;
+	// races between the threads of an island show only in some runs
+	private static final int RUNS = 20;
+	private static final String THREAD_NAME = "step-executor";
+
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+		executor = Executors.newFixedThreadPool(4, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, THREAD_NAME + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		executor.shutdown();
+		OdeHelper.closeODE();
+	}
+
+	/**
+	 * Counts the tasks handed to the wrapped executor.
+	 */
+	private static class CountingExecutor implements Executor {
+		private final Executor executor;
+		final AtomicInteger executeCount = new AtomicInteger();
+
+		CountingExecutor(Executor executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			executeCount.incrementAndGet();
+			executor.execute(command);
+		}
+	}
+
+	private static double[] simulateDefault(boolean quick) {
+		return simulate(OdeHelper.createWorld(), STEPS, quick, null, LINKS);
+	}
+
+	private static double[] simulateExecutor(Executor executor, int threadCount, boolean quick, 
+			Set<String> steppingThreads) {
+		return simulateExecutor(executor, threadCount, quick, steppingThreads, LINKS);
+	}
+
+	private static double[] simulateExecutor(Executor executor, int threadCount, boolean quick, 
+			Set<String> steppingThreads, int[] links) {
+		DWorld world = OdeHelper.createWorld();
+		world.setStepExecutor(executor, threadCount);
+		return simulate(world, STEPS, quick, steppingThreads, links);
+	}
+
+	private static boolean anyExecutorThread(Set<String> threadNames) {
+		for (String name : threadNames) {
+			if (name.startsWith(THREAD_NAME)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testStepMatchesDefaultThreading() {
+		double[] expected = simulateDefault(false);
+		CountingExecutor counting = new CountingExecutor(executor);
+		Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		double[] actual = simulateExecutor(counting, 4, false, threads);
+		assertPositions(expected, actual, 0);
+		assertTrue(counting.executeCount.get() > 0);
+		assertTrue(threads.toString(), anyExecutorThread(threads));
+	}
+
+	@Test
+	public void testLargeIslandsMatchDefaultThreading() {
+		double[] expected = simulate(OdeHelper.createWorld(), STEPS, false, null, LARGE_LINKS);
+		for (int r = 0; r < RUNS; r++) {
+			double[] actual = simulateExecutor(executor, 4, false, null, LARGE_LINKS);
+			assertPositions(expected, actual, 0);
+		}
+	}
+
+	@Test
+	public void testQuickStep() {
+		double[] expected = simulateDefault(true);
+		CountingExecutor counting = new CountingExecutor(executor);
+		Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		double[] actual = simulateExecutor(counting, 0, true, threads);
+		// the constraint order is randomized, so results are only similar
+		assertPositions(expected, actual, 0.1);
+		assertTrue(counting.executeCount.get() > 0);
+		assertTrue(threads.toString(), anyExecutorThread(threads));
+	}
+
+	@Test
+	public void testSingleThreadExecutor() {
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			double[] expected = simulateDefault(false);
+			CountingExecutor counting = new CountingExecutor(single);
+			double[] actual = simulateExecutor(counting, 8, false, null);
+			assertPositions(expected, actual, 0);
+			assertTrue(counting.executeCount.get() > 0);
+		} finally {
+			single.shutdown();
+		}
+	}
+
+	@Test
+	public void testNoExecutorRunsOnCaller() {
+		Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		double[] expected = simulateDefault(false);
+		double[] actual = simulateExecutor(null, 0, false, threads);
+		assertPositions(expected, actual, 0);
+		assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+	}
+}
@@ -0,0 +1,241 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.tests.WorldStepTestHelper.ascending;
+import static org.ode4j.tests.WorldStepTestHelper.assertPositions;
+import static org.ode4j.tests.WorldStepTestHelper.createChains;
+import static org.ode4j.tests.WorldStepTestHelper.simulate;
+import static org.ode4j.tests.WorldStepTestHelper.step;
+import static org.ode4j.tests.WorldStepTestHelper.uniform;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.threading.DThreadingImplementation;
+import org.ode4j.ode.threading.DThreadingThreadPool;
+import org.ode4j.ode.threading.DxThreadingImplementation;
+
+/**
+ * Steps worlds with islands of different sizes through the built-in
+ * multi-threaded threading implementation and thread pool.
+ */
+public class WorldStepMultiThreadedTest {
+
+	private static final int[] LINKS = ascending(20);
+	private static final int STEPS = 50;
+	// races between the threads of an island show only in some runs
+	private static final int RUNS = 20;
+	// many small islands, so that several threads move geoms at the same time
+	private static final int[] GEOM_LINKS = uniform(100, 3);
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static DWorld createWorld(DThreadingImplementation threading) {
+		DWorld world = OdeHelper.createWorld();
+		if (threading != null) {
+			world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+		}
+		return world;
+	}
+
+	private static Set<String> newThreadSet() {
+		return Collections.synchronizedSet(new HashSet<String>());
+	}
+
+	@Test
+	public void testThreadPool() {
+		double[] expected = simulate(createWorld(null), STEPS, false, null, LINKS);
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		try {
+			Set<String> threads = newThreadSet();
+			for (int r = 0; r < RUNS; r++) {
+				double[] actual = simulate(createWorld(threading), STEPS, false, threads, LINKS);
+				assertPositions(expected, actual, 0);
+			}
+			assertTrue(threads.toString(), threads.size() > 1);
+		} finally {
+			threading.shutdownProcessing();
+			pool.waitIdleState();
+			threading.free();
+			pool.freeThreadPool();
+		}
+	}
+
+	@Test
+	public void testRestartAndExternalThreads() throws InterruptedException {
+		double[] expected = simulate(createWorld(null), STEPS, false, null, LINKS);
+
+		final DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(2, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		simulate(createWorld(threading), STEPS, false, null, LINKS);
+		threading.shutdownProcessing();
+		pool.waitIdleState();
+		pool.freeThreadPool();
+
+		// Serve the same implementation with external threads after restart
+		threading.dThreadingImplementationCleanupForRestart();
+		Thread[] threads = new Thread[3];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread("external-" + i) {
+				@Override
+				public void run() {
+					threading.dExternalThreadingServeMultiThreadedImplementation(null, null);
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			Set<String> steppingThreads = newThreadSet();
+			for (int r = 0; r < RUNS; r++) {
+				double[] actual = simulate(createWorld(threading), STEPS, false, steppingThreads, LINKS);
+				assertPositions(expected, actual, 0);
+			}
+			assertTrue(steppingThreads.toString(), steppingThreads.size() > 1);
+		} finally {
+			threading.shutdownProcessing();
+			for (Thread t : threads) {
+				t.join(10000);
+				assertTrue(!t.isAlive());
+			}
+			threading.free();
+		}
+	}
+
+	@Test
+	public void testServeWithoutReadyThreads() throws InterruptedException {
+		// Executor implementations are not served by threads, the pool threads 
+		// return without becoming ready
+		final DThreadingImplementation threading = 
+				DxThreadingImplementation.dThreadingAllocateExecutorImplementation(null, 1);
+		final DThreadingThreadPool pool = OdeHelper.allocateThreadPool(2, 0, null);
+		Thread serve = new Thread("serve") {
+			@Override
+			public void run() {
+				pool.serveMultiThreadedImplementation(threading);
+			}
+		};
+		serve.setDaemon(true);
+		serve.start();
+		serve.join(10000);
+		assertFalse(serve.isAlive());
+		pool.waitIdleState();
+		threading.free();
+		pool.freeThreadPool();
+	}
+
+	private static class PairCounter implements DNearCallback {
+		int pairs;
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			pairs++;
+		}
+	}
+
+	/**
+	 * The islands move the geoms of their bodies concurrently, the space must 
+	 * still see every moved geom.
+	 */
+	private static void checkGeomsInSpace(DSpace space) {
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(8, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		DWorld world = createWorld(threading);
+		world.setGravity(0, 0, -9.81);
+		try {
+			DBody[] bodies = createChains(world, space, GEOM_LINKS);
+			for (int i = 0; i < STEPS; i++) {
+				step(world, false);
+				PairCounter counter = new PairCounter();
+				space.collide(null, counter);
+				assertEquals("step " + i, bodies.length, space.getNumGeoms());
+				Set<DGeom> geoms = Collections.newSetFromMap(new IdentityHashMap<DGeom, Boolean>());
+				for (int g = 0; g < bodies.length; g++) {
+					assertTrue("step " + i, geoms.add(space.getGeom(g)));
+				}
+				assertEquals("step " + i, countOverlaps(space), counter.pairs);
+			}
+		} finally {
+			world.destroy();
+			space.destroy();
+			threading.shutdownProcessing();
+			pool.waitIdleState();
+			threading.free();
+			pool.freeThreadPool();
+		}
+	}
+
+	private static int countOverlaps(DSpace space) {
+		int n = space.getNumGeoms();
+		int result = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				if (!space.getGeom(i).getAABB().isDisjoint(space.getGeom(j).getAABB())) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testGeomsInHashSpace() {
+		checkGeomsInSpace(OdeHelper.createHashSpace());
+	}
+
+	@Test
+	public void testGeomsInBvhSpace() {
+		checkGeomsInSpace(OdeHelper.createBvhSpace());
+	}
+
+	@Test
+	public void testGeomsInSimpleSpace() {
+		checkGeomsInSpace(OdeHelper.createSimpleSpace());
+	}
+}
@@ -0,0 +1,174 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DHingeJoint;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Chains of jointed bodies shared by the world stepping tests.
+ * Every chain forms its own island.
+ */
+final class WorldStepTestHelper {
+
+	static final double STEP_SIZE = 0.01;
+
+	private WorldStepTestHelper() {}
+
+	/**
+	 * @return {@code chains} times the same chain length
+	 */
+	static int[] uniform(int chains, int links) {
+		int[] result = new int[chains];
+		Arrays.fill(result, links);
+		return result;
+	}
+
+	/**
+	 * @return chain c has c+1 links, so that the islands differ in size
+	 */
+	static int[] ascending(int chains) {
+		int[] result = new int[chains];
+		for (int c = 0; c < chains; c++) {
+			result[c] = c + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Chain c has links[c] bodies connected alternately by hinge and ball joints,
+	 * its first body is jointed to the static environment.
+	 * @param space if not {@code null}, every body gets a box geom in this space
+	 * that overlaps the boxes of its neighbours in the chain
+	 * @return the bodies of all chains
+	 */
+	static DBody[] createChains(DWorld world, DSpace space, int... links) {
+		int total = 0;
+		for (int l : links) {
+			total += l;
+		}
+		DBody[] bodies = new DBody[total];
+		DMass m = OdeHelper.createMass();
+		m.setBox(1, 0.2, 0.2, 1);
+		int n = 0;
+		for (int c = 0; c < links.length; c++) {
+			DBody prev = null;
+			for (int l = 0; l < links[c]; l++) {
+				DBody b = OdeHelper.createBody(world);
+				b.setMass(m);
+				b.setPosition(c * 2, l, 10);
+				b.setAngularVel(0.1 * l, 0, 0.1 * c);
+				if (space != null) {
+					OdeHelper.createBox(space, 0.2, 1.2, 0.2).setBody(b);
+				}
+				if (l % 2 == 0) {
+					DHingeJoint h = OdeHelper.createHingeJoint(world);
+					h.attach(b, prev);
+					h.setAnchor(c * 2, l - 0.5, 10);
+					h.setAxis(1, 0, 0);
+				} else {
+					DBallJoint j = OdeHelper.createBallJoint(world);
+					j.attach(b, prev);
+					j.setAnchor(c * 2, l - 0.5, 10);
+				}
+				bodies[n++] = b;
+				prev = b;
+			}
+		}
+		return bodies;
+	}
+
+	static void step(DWorld world, boolean quick) {
+		if (quick) {
+			assertTrue(world.quickStep(STEP_SIZE));
+		} else {
+			world.step(STEP_SIZE);
+		}
+	}
+
+	static double[] positions(DBody[] bodies) {
+		double[] result = new double[bodies.length * 3];
+		for (int i = 0; i < bodies.length; i++) {
+			DVector3C p = bodies[i].getPosition();
+			result[i * 3] = p.get0();
+			result[i * 3 + 1] = p.get1();
+			result[i * 3 + 2] = p.get2();
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the chains in the (otherwise configured) world, steps it and destroys it.
+	 * @param steppingThreads if not {@code null}, receives the names of the threads
+	 * that moved the bodies
+	 * @return the body positions after the last step
+	 */
+	static double[] simulate(DWorld world, int steps, boolean quick, 
+			final Set<String> steppingThreads, int... links) {
+		// the QuickStep solver reorders rows randomly
+		DMisc.dRandSetSeed(0);
+		world.setGravity(0, 0, -9.81);
+		DBody[] bodies = createChains(world, null, links);
+		if (steppingThreads != null) {
+			DBody.BodyMoveCallBack callback = new DBody.BodyMoveCallBack() {
+				@Override
+				public void run(DBody b) {
+					steppingThreads.add(Thread.currentThread().getName());
+				}
+			};
+			for (DBody b : bodies) {
+				b.setMovedCallback(callback);
+			}
+		}
+		try {
+			for (int i = 0; i < steps; i++) {
+				step(world, quick);
+			}
+			return positions(bodies);
+		} finally {
+			world.destroy();
+		}
+	}
+
+	static void assertPositions(double[] expected, double[] actual, double delta) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertFalse(Double.isNaN(actual[i]));
+			assertEquals(expected[i], actual[i], delta);
+		}
+	}
+}
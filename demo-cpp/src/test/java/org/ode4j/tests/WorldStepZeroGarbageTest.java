@@ -0,0 +1,235 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.ode.OdeConstants.dContactApprox1;
+import static org.ode4j.ode.OdeConstants.dContactRolling;
+import static org.ode4j.tests.WorldStepTestHelper.assertPositions;
+import static org.ode4j.tests.WorldStepTestHelper.createChains;
+import static org.ode4j.tests.WorldStepTestHelper.step;
+import static org.ode4j.tests.WorldStepTestHelper.uniform;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DContact.DSurfaceParameters;
+import org.ode4j.ode.DContactBatch;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DFixedJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DSliderJoint;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Checks that {@link DWorld#setZeroGarbageStepping(boolean)} stepping does not
+ * allocate once the working memory has been warmed up.
+ */
+public class WorldStepZeroGarbageTest {
+
+	private static final int[] LINKS = uniform(10, 5);
+	private static final int GRID = 4;
+	private static final int MAX_CONTACTS = 4;
+	private static final int WARMUP_STEPS = 1000;
+	private static final int STEPS = 100;
+	// The JVM itself sometimes allocates on the stepping thread, e.g. while 
+	// compiling. Garbage of the stepper shows in every window of STEPS steps.
+	private static final int WINDOWS = 5;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static double[] simulate(boolean zeroGarbage, boolean quick) {
+		DWorld world = OdeHelper.createWorld();
+		world.setZeroGarbageStepping(zeroGarbage);
+		assertEquals(zeroGarbage, world.isZeroGarbageStepping());
+		return WorldStepTestHelper.simulate(world, STEPS, quick, null, LINKS);
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(allocBean.isThreadAllocatedMemorySupported());
+		allocBean.setThreadAllocatedMemoryEnabled(true);
+		return allocBean;
+	}
+
+	/**
+	 * @return the fewest bytes allocated in a window of STEPS steps
+	 */
+	private static long allocatedBytes(boolean quick) {
+		com.sun.management.ThreadMXBean allocBean = allocationBean();
+		long threadId = Thread.currentThread().getId();
+
+		DWorld world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -9.81);
+		world.setZeroGarbageStepping(true);
+		createChains(world, null, LINKS);
+		try {
+			for (int i = 0; i < WARMUP_STEPS; i++) {
+				step(world, quick);
+			}
+			long min = Long.MAX_VALUE;
+			for (int w = 0; w < WINDOWS && min > 0; w++) {
+				long before = allocBean.getThreadAllocatedBytes(threadId);
+				for (int i = 0; i < STEPS; i++) {
+					step(world, quick);
+				}
+				long after = allocBean.getThreadAllocatedBytes(threadId);
+				min = Math.min(min, after - before);
+			}
+			return min;
+		} finally {
+			world.destroy();
+		}
+	}
+
+	/**
+	 * A grid of boxes resting on a plane with rolling friction. The boxes of the 
+	 * first rows are paired by powered sliders with limits, those of the last 
+	 * row by fixed joints.
+	 */
+	private static DBody[] createBoxes(DWorld world, DSpace space) {
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+		DBody[] bodies = new DBody[GRID * GRID];
+		DMass m = OdeHelper.createMass();
+		m.setBox(1, 1, 1, 1);
+		for (int i = 0; i < bodies.length; i++) {
+			DBody b = OdeHelper.createBody(world);
+			b.setMass(m);
+			b.setPosition((i % GRID) * 2, (i / GRID) * 2, 0.5);
+			OdeHelper.createBox(space, 1, 1, 1).setBody(b);
+			bodies[i] = b;
+			if (i % 2 == 0) {
+				continue;
+			}
+			if (i / GRID < GRID - 1) {
+				DSliderJoint s = OdeHelper.createSliderJoint(world);
+				s.attach(bodies[i - 1], b);
+				s.setAxis(1, 0, 0);
+				s.setParamLoStop(-0.1);
+				s.setParamHiStop(0.1);
+				s.setParamVel(1);
+				s.setParamFMax(1);
+			} else {
+				DFixedJoint f = OdeHelper.createFixedJoint(world);
+				f.attach(bodies[i - 1], b);
+				f.setFixed();
+			}
+		}
+		return bodies;
+	}
+
+	/**
+	 * Only the steps are measured, collision and the creation of the contact 
+	 * joints are not part of the stepping.
+	 * @return the fewest bytes allocated in a window of STEPS steps
+	 */
+	private static long allocatedContactBytes(boolean quick) {
+		com.sun.management.ThreadMXBean allocBean = allocationBean();
+		long threadId = Thread.currentThread().getId();
+
+		DWorld world = OdeHelper.createWorld();
+		world.setGravity(0, 0, -9.81);
+		world.setZeroGarbageStepping(true);
+		DSpace space = OdeHelper.createSimpleSpace();
+		DJointGroup contactGroup = OdeHelper.createJointGroup();
+		DContactBatch batch = new DContactBatch();
+		DSurfaceParameters surface = new DContactBuffer(1).get(0).surface;
+		surface.mode = dContactApprox1 | dContactRolling;
+		surface.mu = 0.5;
+		surface.rho = 0.01;
+		createBoxes(world, space);
+		try {
+			long allocated = 0, min = Long.MAX_VALUE;
+			for (int i = 0; i < WARMUP_STEPS + WINDOWS * STEPS && min > 0; i++) {
+				contactGroup.empty();
+				batch.clear();
+				space.collideContacts(MAX_CONTACTS, batch);
+				assertTrue(contactGroup.createContactJoints(world, batch, surface) > 0);
+				long before = allocBean.getThreadAllocatedBytes(threadId);
+				step(world, quick);
+				long after = allocBean.getThreadAllocatedBytes(threadId);
+				if (i >= WARMUP_STEPS) {
+					allocated += after - before;
+					if ((i - WARMUP_STEPS) % STEPS == STEPS - 1) {
+						min = Math.min(min, allocated);
+						allocated = 0;
+					}
+				}
+			}
+			return min;
+		} finally {
+			contactGroup.destroy();
+			space.destroy();
+			world.destroy();
+		}
+	}
+
+	@Test
+	public void testStepDoesNotAllocate() {
+		assertEquals(0, allocatedBytes(false));
+	}
+
+	@Test
+	public void testQuickStepDoesNotAllocate() {
+		assertEquals(0, allocatedBytes(true));
+	}
+
+	@Test
+	public void testStepWithContactsDoesNotAllocate() {
+		assertEquals(0, allocatedContactBytes(false));
+	}
+
+	@Test
+	public void testQuickStepWithContactsDoesNotAllocate() {
+		assertEquals(0, allocatedContactBytes(true));
+	}
+
+	@Test
+	public void testStepMatchesDefault() {
+		assertPositions(simulate(false, false), simulate(true, false), 0);
+	}
+
+	@Test
+	public void testQuickStepMatchesDefault() {
+		assertPositions(simulate(false, true), simulate(true, true), 0);
+	}
+}